@@ -7,11 +7,16 @@ import com.google.common.collect.Lists;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import zemberek.apps.ConsoleApp;
 import zemberek.core.logging.Log;
+import zemberek.core.quantization.QuantizerType;
+import zemberek.lm.compression.CompressionReport;
 import zemberek.lm.compression.MultiFileUncompressedLm;
 import zemberek.lm.compression.UncompressedToSmoothLmConverter;
+import zemberek.lm.compression.UncompressedToSmoothLmConverter.NgramDataBlock;
 
 /**
  * A command line utility class for generating compressed SmoothLm model from an Arpa language model
@@ -37,10 +42,23 @@ public class CompressLm extends ConsoleApp {
   @Parameter(names = {"-spaceUsage"},
       description = "How many bits of space to be used for fingerprint, probability " +
           "and back-off values in the compressed language model. Value must be in x-y-z format. " +
-          "By default it is 24-8-8 which means all values " +
-          "will be 2 bytes (16 bits). Values must be an order of 8, maximum 32 is allowed.")
+          "By default it is 24-8-8. Fingerprints can be 1 to 32, probabilities and back-offs "
+          + "2 to 24 bits. If a value is not a multiple of 8, n-gram data is bit packed. "
+          + "Different values can be given for each order separated with commas starting from "
+          + "uni-grams, such as 24-8-8,24-8-8,16-6-6. Last value is used for missing orders.")
   public String spaceUsageStr = "24-8-8";
 
+  @Parameter(names = {"-quantizer"},
+      description = "Quantizer of probability and back-off values. BINNING, BINNING_WEIGHTED, "
+          + "KMEANS or LINEAR. Different quantizers can be given for each order separated with "
+          + "commas starting from uni-grams. Default is BINNING.")
+  public String quantizerStr = "BINNING";
+
+  @Parameter(names = {"-report"},
+      description = "If used, false positive rates, quantization errors and sizes of each order "
+          + "are reported after compression.")
+  public boolean report;
+
   @Parameter(names = {"-chunkBits"},
       description = "Defines the size of chunks when compressing very large models." +
           " By default it is 21 bits meaning that chunks of 2^21 n-grams are used."
@@ -52,7 +70,11 @@ public class CompressLm extends ConsoleApp {
           + "before applying quantization. Default value is 4 digits.")
   public int fractionDigits = 4;
 
-  private int[] spaceUsage = new int[3];
+  @Parameter(names = {"-threadCount"},
+      description = "Amount of threads used for parsing the Arpa file and generating data of "
+          + "different orders concurrently. By default half of the available processors are used."
+          + " Output does not depend on this value.")
+  public int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
 
   public static void main(String[] args) {
     new CompressLm().execute(args);
@@ -78,37 +100,69 @@ public class CompressLm extends ConsoleApp {
 
     Preconditions.checkArgument(spaceUsageStr != null && spaceUsageStr.trim().length() > 0,
         "Improper -spaceUsageStr value: " + spaceUsageStr + ". Argument seems to be empty.");
+    List<int[]> spaceUsages = new ArrayList<>();
+    for (String orderUsage : Splitter.on(",").omitEmptyStrings().trimResults()
+        .split(spaceUsageStr)) {
+      spaceUsages.add(parseSpaceUsage(orderUsage));
+    }
+    List<QuantizerType> quantizers = new ArrayList<>();
+    for (String quantizer : Splitter.on(",").omitEmptyStrings().trimResults()
+        .split(quantizerStr)) {
+      quantizers.add(QuantizerType.valueOf(quantizer.toUpperCase(Locale.ENGLISH)));
+    }
+    Preconditions.checkArgument(spaceUsages.size() > 0 && quantizers.size() > 0,
+        "Space usage and quantizer values must not be empty.");
 
+    Preconditions.checkArgument(chunkBits >= 16 && chunkBits <= 31,
+        "Unexpected chunkBits value. Value must be between 16 to 31. But it is : " + chunkBits);
+    Preconditions.checkArgument(threadCount > 0,
+        "Unexpected threadCount value. Value must be positive. But it is : " + threadCount);
+
+    MultiFileUncompressedLm lm =
+        MultiFileUncompressedLm.generate(arpaFile, tmpDir, "utf-8", fractionDigits, threadCount);
+    int[] usage = spaceUsages.get(spaceUsages.size() - 1);
+    NgramDataBlock block = new NgramDataBlock(usage[0], usage[1], usage[2])
+        .quantizer(quantizers.get(quantizers.size() - 1));
+    for (int n = 1; n <= lm.getOrder(); n++) {
+      if (n <= spaceUsages.size()) {
+        usage = spaceUsages.get(n - 1);
+        block.order(n, usage[0], usage[1], usage[2]);
+      }
+      if (n <= quantizers.size()) {
+        block.quantizer(n, quantizers.get(n - 1));
+      }
+    }
+    UncompressedToSmoothLmConverter converter = new UncompressedToSmoothLmConverter(
+        compressedLmFile, tmpDir, threadCount);
+    converter.convertLarge(lm.getLmDir(), block, chunkBits);
+
+    if (report) {
+      Log.info("Compression report:%n%s", CompressionReport.generate(compressedLmFile, lm));
+    }
+  }
+
+  private int[] parseSpaceUsage(String str) {
     List<String> tokens = Lists
-        .newArrayList(Splitter.on("-").omitEmptyStrings().trimResults().split(spaceUsageStr));
+        .newArrayList(Splitter.on("-").omitEmptyStrings().trimResults().split(str));
 
     Preconditions.checkArgument(tokens.size() == 3,
-        "Improper -spaceUsageStr value: " + spaceUsageStr
-            + ". Three value is expected in x-y-z format.");
-
+        "Improper -spaceUsageStr value: " + str + ". Three value is expected in x-y-z format.");
+    int[] spaceUsage = new int[3];
     for (int i = 0; i < spaceUsage.length; i++) {
       try {
         final int val = Integer.parseInt(tokens.get(i));
-        if (val <= 0 || val > 32 || val % 8 != 0) {
-          throw new IllegalArgumentException(
-              "Improper -spaceUsageStr value: " + spaceUsageStr + ". Values can be 8,16,24 or 32");
+        int min = i == 0 ? 1 : 2;
+        int max = i == 0 ? 32 : 24;
+        if (val < min || val > max) {
+          throw new IllegalArgumentException("Improper -spaceUsageStr value: " + str
+              + ". Values must be between " + min + " and " + max);
         }
         spaceUsage[i] = val;
       } catch (NumberFormatException e) {
         throw new IllegalArgumentException(
-            "Improper -spaceUsageStr value: " + spaceUsageStr + ". Values must be integers");
+            "Improper -spaceUsageStr value: " + str + ". Values must be integers");
       }
     }
-    Preconditions.checkArgument(chunkBits >= 16 && chunkBits <= 31,
-        "Unexpected chunkBits value. Value must be between 16 to 31. But it is : " + chunkBits);
-
-    UncompressedToSmoothLmConverter converter = new UncompressedToSmoothLmConverter(
-        compressedLmFile, tmpDir);
-    converter.convertLarge(
-        MultiFileUncompressedLm.generate(arpaFile, tmpDir, "utf-8", fractionDigits)
-            .getLmDir(),
-        new UncompressedToSmoothLmConverter.NgramDataBlock(spaceUsage[0], spaceUsage[1],
-            spaceUsage[2]),
-        chunkBits);
+    return spaceUsage;
   }
 }
@@ -0,0 +1,130 @@
+package zemberek.apps.lm;
+
+import com.beust.jcommander.Parameter;
+import com.google.common.base.Preconditions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import zemberek.apps.ConsoleApp;
+import zemberek.core.logging.Log;
+import zemberek.core.text.BlockTextLoader;
+import zemberek.lm.compression.MultiFileUncompressedLm;
+import zemberek.lm.compression.UncompressedToSmoothLmConverter;
+import zemberek.lm.estimation.KneserNeyEstimator;
+import zemberek.lm.estimation.NgramCounter;
+import zemberek.lm.estimation.NgramCounter.NgramCounts;
+
+/**
+ * A command line utility for estimating an interpolated modified Kneser-Ney language model from a
+ * text corpus and saving it as a compressed SmoothLm model. Run the main method to see the options.
+ * <p>
+ * Counting and compression use several threads and bounded memory. Estimation step does not: it
+ * runs on a single thread and keeps lower order n-grams on the heap, see {@link
+ * KneserNeyEstimator}. Heap size should be set according to the n-gram counts of the corpus.
+ */
+public class EstimateLm extends ConsoleApp {
+
+  @Parameter(names = {"-in"},
+      required = true,
+      description = "Corpus file or a directory of corpus files. Each line should contain a "
+          + "sentence with space separated tokens.")
+  public File corpus;
+
+  @Parameter(names = {"-out"},
+      required = true,
+      description = "SmoothLm output file.")
+  public File compressedLmFile;
+
+  @Parameter(names = {"-order"},
+      description = "Order of the language model. Default is 3.")
+  public int order = 3;
+
+  @Parameter(names = {"-arpa"},
+      description = "If defined, model is also saved to this file in Arpa format.")
+  public File arpaFile;
+
+  @Parameter(names = {"-tmpDir"},
+      description = "Temporary folder for count and intermediate files. " +
+          "Operating System's temporary dir with a random folder is used by default.")
+  public File tmpDir;
+
+  @Parameter(names = {"-threadCount"},
+      description = "Amount of threads used for counting and compression. Estimation step "
+          + "is single threaded. By default half of the available processors are used.")
+  public int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  @Parameter(names = {"-maxEntriesInMemory"},
+      description = "Maximum amount of n-grams kept in counting tables before they are written "
+          + "to disk. This does not bound estimation step, it keeps lower order n-grams in "
+          + "memory. Default is 50 million.")
+  public long maxEntriesInMemory = 50_000_000;
+
+  @Parameter(names = {"-chunkBits"},
+      description = "Defines the size of chunks when compressing very large models." +
+          " By default it is 21 bits meaning that chunks of 2^21 n-grams are used."
+          + " Value must be between 16 to 31 (inclusive).")
+  public int chunkBits = 21;
+
+  public static void main(String[] args) {
+    new EstimateLm().execute(args);
+  }
+
+  @Override
+  public String description() {
+    return "Estimates an interpolated modified Kneser-Ney language model from a text corpus and "
+        + "generates a compressed binary language model (Smooth-Lm). Counting and compression "
+        + "are multi threaded with bounded memory. Estimation is single threaded and keeps "
+        + "lower order n-grams in memory, so heap usage grows with the n-gram counts.";
+  }
+
+  @Override
+  public void run() throws IOException {
+    Preconditions.checkArgument(corpus.exists(), corpus + " does not exist. ");
+    Preconditions.checkArgument(order > 0, "Order must be positive but it is " + order);
+    Preconditions.checkArgument(threadCount > 0,
+        "Unexpected threadCount value. Value must be positive. But it is : " + threadCount);
+    Preconditions.checkArgument(chunkBits >= 16 && chunkBits <= 31,
+        "Unexpected chunkBits value. Value must be between 16 to 31. But it is : " + chunkBits);
+
+    if (tmpDir == null) {
+      tmpDir = com.google.common.io.Files.createTempDir();
+      tmpDir.deleteOnExit();
+      Log.info(("Using temporary directory: " + tmpDir));
+    } else {
+      Files.createDirectories(tmpDir.toPath());
+    }
+
+    List<Path> paths = new ArrayList<>();
+    if (corpus.isDirectory()) {
+      paths.addAll(Files.walk(corpus.toPath(), 1)
+          .filter(s -> s.toFile().isFile())
+          .collect(Collectors.toList()));
+    } else {
+      paths.add(corpus.toPath());
+    }
+
+    NgramCounts counts = NgramCounter.builder(order, new File(tmpDir, "counts"))
+        .threadCount(threadCount)
+        .maxEntriesInMemory(maxEntriesInMemory)
+        .build()
+        .count(BlockTextLoader.fromPaths(paths));
+
+    MultiFileUncompressedLm lm = new KneserNeyEstimator(counts, new File(tmpDir, "estimation"))
+        .estimate(new File(tmpDir, "model"));
+    if (arpaFile != null) {
+      Log.info("Saving Arpa file %s", arpaFile);
+      lm.saveArpa(arpaFile);
+    }
+
+    UncompressedToSmoothLmConverter converter = new UncompressedToSmoothLmConverter(
+        compressedLmFile, tmpDir, threadCount);
+    converter.convertLarge(
+        lm.getLmDir(),
+        new UncompressedToSmoothLmConverter.NgramDataBlock(24, 8, 8),
+        chunkBits);
+  }
+}
@@ -0,0 +1,214 @@
+package zemberek.apps.lm;
+
+import com.beust.jcommander.Parameter;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+import zemberek.apps.ConsoleApp;
+import zemberek.core.io.IOUtil;
+import zemberek.core.logging.Log;
+import zemberek.lm.LmVocabulary;
+import zemberek.lm.compression.MultiFileUncompressedLm;
+import zemberek.lm.compression.SmoothLm;
+import zemberek.lm.compression.UncompressedToSmoothLmConverter;
+import zemberek.lm.estimation.NgramCounter.NgramCounts;
+import zemberek.lm.estimation.NgramPruner;
+import zemberek.lm.estimation.NgramPruner.PruneResult;
+
+/**
+ * A command line utility for pruning a language model with relative entropy and count criteria
+ * and generating a compressed SmoothLm model from the result. N-gram counts before and after
+ * pruning, model sizes and perplexity changes are reported. Run the main method to see the
+ * options.
+ */
+public class PruneLm extends ConsoleApp {
+
+  @Parameter(names = {"-in"},
+      required = true,
+      description = "Arpa input file or a directory that contains an uncompressed model.")
+  public File input;
+
+  @Parameter(names = {"-out"},
+      required = true,
+      description = "SmoothLm output file of the pruned model.")
+  public File compressedLmFile;
+
+  @Parameter(names = {"-tmpDir"},
+      description = "Temporary folder for intermediate files. " +
+          "Operating System's temporary dir with a random folder is used by default.")
+  public File tmpDir;
+
+  @Parameter(names = {"-threshold"},
+      description = "Relative entropy pruning threshold. An n-gram is removed if the relative "
+          + "perplexity increase caused by its removal is below this value. Typical values are "
+          + "between 1e-9 and 1e-6. Default is 0, no entropy pruning.")
+  public double threshold = 0;
+
+  @Parameter(names = {"-minCounts"},
+      description = "Minimum counts of n-grams for each order in x-y-z format, starting from "
+          + "uni-grams. Uni-grams are not pruned. Last value is used for missing orders. "
+          + "Requires -countDir.")
+  public String minCountsStr;
+
+  @Parameter(names = {"-countDir"},
+      description = "Directory of n-gram counts generated during estimation. "
+          + "EstimateLm keeps them in [tmpDir]/counts.")
+  public File countDir;
+
+  @Parameter(names = {"-testFile"},
+      description = "A text file with one sentence per line. If provided, perplexities of "
+          + "original and pruned models are calculated on it.")
+  public File testFile;
+
+  @Parameter(names = {"-spaceUsage"},
+      description = "How many bits of space to be used for fingerprint, probability " +
+          "and back-off values in the compressed language model. Value must be in x-y-z format. "
+          + "Default is 24-8-8.")
+  public String spaceUsageStr = "24-8-8";
+
+  @Parameter(names = {"-chunkBits"},
+      description = "Defines the size of chunks when compressing very large models." +
+          " By default it is 21 bits meaning that chunks of 2^21 n-grams are used."
+          + " Value must be between 16 to 31 (inclusive).")
+  public int chunkBits = 21;
+
+  @Parameter(names = {"-threadCount"},
+      description = "Amount of threads used for parsing the Arpa file and compressing the model."
+          + " By default half of the available processors are used.")
+  public int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  public static void main(String[] args) {
+    new PruneLm().execute(args);
+  }
+
+  @Override
+  public String description() {
+    return "Prunes a language model with relative entropy and count thresholds and generates a "
+        + "compressed binary language model (Smooth-Lm).";
+  }
+
+  private static int[] parseValues(String str, String name) {
+    List<String> tokens = Splitter.on("-").omitEmptyStrings().trimResults().splitToList(str);
+    Preconditions.checkArgument(tokens.size() > 0, "Improper " + name + " value: " + str);
+    int[] values = new int[tokens.size()];
+    for (int i = 0; i < values.length; i++) {
+      try {
+        values[i] = Integer.parseInt(tokens.get(i));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            "Improper " + name + " value: " + str + ". Values must be integers");
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public void run() throws IOException {
+    Preconditions.checkArgument(input.exists(), input + " does not exist. ");
+    Preconditions.checkArgument(threshold >= 0,
+        "Threshold must not be negative. But it is : " + threshold);
+    Preconditions.checkArgument(minCountsStr == null || countDir != null,
+        "-countDir is required for count pruning.");
+    Preconditions.checkArgument(chunkBits >= 16 && chunkBits <= 31,
+        "Unexpected chunkBits value. Value must be between 16 to 31. But it is : " + chunkBits);
+    Preconditions.checkArgument(threadCount > 0,
+        "Unexpected threadCount value. Value must be positive. But it is : " + threadCount);
+    int[] spaceUsage = parseValues(spaceUsageStr, "-spaceUsage");
+    Preconditions.checkArgument(spaceUsage.length == 3,
+        "Improper -spaceUsage value: " + spaceUsageStr + ". Three values are expected.");
+
+    // only a directory created here is removed after the run.
+    boolean deleteTmpDir = tmpDir == null;
+    if (deleteTmpDir) {
+      tmpDir = com.google.common.io.Files.createTempDir();
+      Log.info("Using temporary directory: " + tmpDir);
+    } else {
+      Files.createDirectories(tmpDir.toPath());
+    }
+
+    try {
+      prune(spaceUsage);
+    } finally {
+      if (deleteTmpDir) {
+        IOUtil.deleteTempDir(tmpDir.toPath());
+      }
+    }
+  }
+
+  private void prune(int[] spaceUsage) throws IOException {
+    MultiFileUncompressedLm lm;
+    if (input.isDirectory()) {
+      lm = new MultiFileUncompressedLm(input);
+    } else {
+      lm = MultiFileUncompressedLm.generate(
+          input, new File(tmpDir, "original"), "utf-8", 4, threadCount);
+    }
+
+    NgramPruner.Builder builder = NgramPruner.builder(lm).entropyThreshold(threshold);
+    if (minCountsStr != null) {
+      builder.minCounts(NgramCounts.load(countDir), parseValues(minCountsStr, "-minCounts"));
+    }
+    PruneResult result = builder.build().prune(new File(tmpDir, "pruned"));
+
+    UncompressedToSmoothLmConverter.NgramDataBlock block =
+        new UncompressedToSmoothLmConverter.NgramDataBlock(
+            spaceUsage[0], spaceUsage[1], spaceUsage[2]);
+    new UncompressedToSmoothLmConverter(compressedLmFile, tmpDir, threadCount)
+        .convertLarge(result.model.getLmDir(), block, chunkBits);
+
+    long originalTotal = 0, prunedTotal = 0;
+    for (int n = 1; n <= lm.getOrder(); n++) {
+      Log.info("%d-grams: %d -> %d", n, result.getOriginalCount(n), result.getPrunedCount(n));
+      originalTotal += result.getOriginalCount(n);
+      prunedTotal += result.getPrunedCount(n);
+    }
+    Log.info("Total: %d -> %d (%.2f%%)", originalTotal, prunedTotal,
+        prunedTotal * 100d / originalTotal);
+    Log.info("Pruned model size: %d bytes", compressedLmFile.length());
+    Log.info("Estimated perplexity increase: %.4f%%",
+        result.getEstimatedPerplexityIncrease() * 100);
+
+    if (testFile != null) {
+      File originalLmFile = new File(tmpDir, "original.slm");
+      new UncompressedToSmoothLmConverter(originalLmFile, tmpDir, threadCount)
+          .convertLarge(lm.getLmDir(), block, chunkBits);
+      Log.info("Original model size: %d bytes", originalLmFile.length());
+      List<String> sentences = Files.readAllLines(testFile.toPath(), StandardCharsets.UTF_8)
+          .stream().filter(s -> s.trim().length() > 0).collect(Collectors.toList());
+      double original = perplexity(SmoothLm.builder(originalLmFile).build(), sentences);
+      double pruned = perplexity(SmoothLm.builder(compressedLmFile).build(), sentences);
+      Log.info("Perplexity of original model: %.3f", original);
+      Log.info("Perplexity of pruned model: %.3f (%.4f%% increase)", pruned,
+          (pruned / original - 1) * 100);
+    }
+  }
+
+  // sentence begin marker is not predicted, sentence end marker is.
+  private static double perplexity(SmoothLm lm, List<String> sentences) {
+    LmVocabulary vocabulary = lm.getVocabulary();
+    double total = 0;
+    long count = 0;
+    for (String sentence : sentences) {
+      List<String> words = Splitter.on(' ').omitEmptyStrings().trimResults()
+          .splitToList(sentence);
+      int[] ids = new int[words.size() + 2];
+      ids[0] = vocabulary.getSentenceStartIndex();
+      for (int i = 0; i < words.size(); i++) {
+        ids[i + 1] = vocabulary.indexOf(words.get(i));
+      }
+      ids[ids.length - 1] = vocabulary.getSentenceEndIndex();
+      float[] scores = new float[ids.length];
+      lm.scoreSentence(ids, scores);
+      for (int i = 1; i < ids.length; i++) {
+        total += scores[i];
+      }
+      count += ids.length - 1;
+    }
+    return Math.pow(lm.getLogBase(), -total / count);
+  }
+}
@@ -0,0 +1,76 @@
+package zemberek.apps.normalization;
+
+import com.beust.jcommander.Parameter;
+import com.google.common.base.Preconditions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import zemberek.apps.ConsoleApp;
+import zemberek.core.logging.Log;
+import zemberek.core.text.TextIO;
+import zemberek.normalization.CompactLookupTable;
+
+/**
+ * Converts text lookup files of the normalization data directory to compiled lookup tables.
+ * TurkishSentenceNormalizer memory maps a compiled file instead of loading the text file if it
+ * exists next to it and it is not older than the text file.
+ */
+public class CompileNormalizationLookups extends ConsoleApp {
+
+  // lookup files with "key=val1,val2" lines.
+  private static final String[] MULTI_VALUE_FILES = {"lookup-from-graph", "ascii-map"};
+  // lookup files with "key=value" lines.
+  private static final String[] SINGLE_VALUE_FILES = {"split"};
+
+  @Parameter(names = {"-dataRoot"},
+      required = true,
+      description = "Normalization data directory that contains text lookup files.")
+  public Path dataRoot;
+
+  @Parameter(names = {"-outDir"},
+      description = "Output directory of compiled files. Default is data directory.")
+  public Path outDir;
+
+  public static void main(String[] args) {
+    new CompileNormalizationLookups().execute(args);
+  }
+
+  @Override
+  public String description() {
+    return "Converts text lookup files of normalization data to compact binary lookup tables "
+        + "that can be memory mapped.";
+  }
+
+  @Override
+  public void run() throws IOException {
+    Preconditions.checkArgument(Files.isDirectory(dataRoot), dataRoot + " is not a directory.");
+    if (outDir == null) {
+      outDir = dataRoot;
+    }
+    Files.createDirectories(outDir);
+    for (String name : MULTI_VALUE_FILES) {
+      compile(name, true);
+    }
+    for (String name : SINGLE_VALUE_FILES) {
+      compile(name, false);
+    }
+  }
+
+  private void compile(String name, boolean multiValue) throws IOException {
+    Path in = dataRoot.resolve(name);
+    if (!Files.exists(in)) {
+      Log.warn("%s does not exist, skipping.", in);
+      return;
+    }
+    List<String> lines = TextIO.loadLines(in);
+    CompactLookupTable table = multiValue ?
+        CompactLookupTable.fromMultiValueLines(lines) :
+        CompactLookupTable.fromSingleValueLines(lines);
+    File out = outDir.resolve(name + CompactLookupTable.COMPILED_FILE_SUFFIX).toFile();
+    table.save(out);
+    Log.info("%s: %d keys, %d bytes in memory, compiled to %s (%d bytes).",
+        name, table.size(), table.sizeInBytes(), out, out.length());
+  }
+}
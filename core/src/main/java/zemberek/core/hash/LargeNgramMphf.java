@@ -12,6 +12,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import zemberek.core.logging.Log;
 
 /**
@@ -67,6 +73,20 @@ public class LargeNgramMphf implements Mphf {
    * @throws IOException If an error occurs during file access.
    */
   public static LargeNgramMphf generate(File file, int chunkBits) throws IOException {
+    return generate(file, chunkBits, 1);
+  }
+
+  /**
+   * Same as generate(File file, int chunkBits) but MPHFs of chunks are generated concurrently with
+   * `threadCount` threads. Result is the same for any thread count. At most `threadCount` chunks
+   * are loaded to memory at the same time. MPHF of a chunk is generated in a single thread, so no
+   * more than `threadCount` threads are used.
+   */
+  public static LargeNgramMphf generate(File file, int chunkBits, int threadCount)
+      throws IOException {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("Thread count must be positive but it is " + threadCount);
+    }
     File tmp = Files.createTempDir();
     Splitter splitter = new Splitter(file, tmp, chunkBits);
     Log.info("Gram count: " + splitter.gramCount);
@@ -79,19 +99,33 @@ public class LargeNgramMphf implements Mphf {
       bucketBits = 1;
     }
     MultiLevelMphf[] mphfs = new MultiLevelMphf[splitter.pageCount];
+    ExecutorService service = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threadCount, splitter.pageCount)));
+    try {
+      List<Future<MultiLevelMphf>> futures = new ArrayList<>(splitter.pageCount);
+      for (int i = 0; i < splitter.pageCount; i++) {
+        final int segment = i;
+        final int bits = bucketBits;
+        futures.add(service.submit(() -> generateSegment(splitter, segment, bits)));
+      }
+      for (int i = 0; i < splitter.pageCount; i++) {
+        mphfs[i] = futures.get(i).get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted during MPHF generation.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Cannot generate MPHF.", e.getCause());
+    } finally {
+      service.shutdownNow();
+    }
     int[] offsets = new int[splitter.pageCount];
     int total = 0;
     for (int i = 0; i < splitter.pageCount; i++) {
-      final ByteGramProvider keySegment = splitter.getKeySegment(i);
-      Log.debug("Segment key count: " + keySegment.keyAmount());
-      Log.debug("Segment bucket ratio: " + ((double) keySegment.keyAmount() / (1 << bucketBits)));
-      total += keySegment.keyAmount();
-      MultiLevelMphf mphf = MultiLevelMphf.generate(keySegment);
-      Log.info("MPHF is generated for segment %d with %d keys. Average bits per key: %.3f",
-          i,
-          mphf.size(),
-          mphf.averageBitsPerKey());
-      mphfs[i] = mphf;
+      total += mphfs[i].size();
       if (i > 0) {
         offsets[i] = offsets[i - 1] + mphfs[i - 1].size();
       }
@@ -102,6 +136,19 @@ public class LargeNgramMphf implements Mphf {
     return new LargeNgramMphf(maxMask, bucketMask, splitter.pageShift, mphfs, offsets);
   }
 
+  private static MultiLevelMphf generateSegment(Splitter splitter, int segment, int bucketBits)
+      throws IOException {
+    final ByteGramProvider keySegment = splitter.getKeySegment(segment);
+    Log.debug("Segment key count: " + keySegment.keyAmount());
+    Log.debug("Segment bucket ratio: " + ((double) keySegment.keyAmount() / (1 << bucketBits)));
+    MultiLevelMphf mphf = MultiLevelMphf.generate(keySegment);
+    Log.info("MPHF is generated for segment %d with %d keys. Average bits per key: %.3f",
+        segment,
+        mphf.size(),
+        mphf.averageBitsPerKey());
+    return mphf;
+  }
+
   /**
    * A custom deserializer.
    *
@@ -9,11 +9,18 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import zemberek.core.collections.LongBitVector;
+import zemberek.core.io.MappedDataInputStream;
 import zemberek.core.logging.Log;
 
 /**
@@ -56,14 +63,40 @@ public class MultiLevelMphf implements Mphf {
   }
 
   public static MultiLevelMphf generate(IntHashKeyProvider keyProvider) {
-    BucketCalculator bc = new BucketCalculator(keyProvider);
-    return new MultiLevelMphf(bc.calculate());
+    return generate(keyProvider, 1);
+  }
+
+  /**
+   * Generates a MPHF. Bucket indexes of keys are calculated with `threadCount` threads. A single
+   * thread pool is created for the call and it is shut down before returning. Placement of buckets
+   * is sequential, so generated function is the same for any thread count. Key provider must allow
+   * concurrent getKey calls if threadCount is larger than one.
+   */
+  public static MultiLevelMphf generate(IntHashKeyProvider keyProvider, int threadCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("Thread count must be positive but it is " + threadCount);
+    }
+    int taskCount = Math.min(threadCount,
+        keyProvider.keyAmount() / BucketCalculator.MIN_KEYS_PER_TASK);
+    if (taskCount <= 1) {
+      return new MultiLevelMphf(new BucketCalculator(keyProvider, null, 1).calculate());
+    }
+    ExecutorService service = Executors.newFixedThreadPool(taskCount);
+    try {
+      return new MultiLevelMphf(new BucketCalculator(keyProvider, service, taskCount).calculate());
+    } finally {
+      service.shutdownNow();
+    }
   }
 
   public static MultiLevelMphf generate(File binaryKeyFile) throws IOException {
     return generate(new ByteGramProvider(binaryKeyFile));
   }
 
+  public static MultiLevelMphf generate(File binaryKeyFile, int threadCount) throws IOException {
+    return generate(new ByteGramProvider(binaryKeyFile), threadCount);
+  }
+
   public static int hash(byte[] data, int seed) {
     int d = seed > 0 ? seed : INITIAL_HASH_SEED;
     for (int a : data) {
@@ -103,6 +136,18 @@ public class MultiLevelMphf implements Mphf {
     return d & 0x7fffffff;
   }
 
+  /**
+   * Same as {@link #hash(String, int)}, so keys generated from Strings can be queried with any
+   * CharSequence without creating a String.
+   */
+  public static int hash(CharSequence data, int seed) {
+    int d = seed > 0 ? seed : INITIAL_HASH_SEED;
+    for (int i = 0; i < data.length(); i++) {
+      d = (d ^ data.charAt(i)) * HASH_MULTIPLIER;
+    }
+    return d & 0x7fffffff;
+  }
+
   /**
    * This hash assumes that a trigram or bigram value is embedded into a 64 bit long value.
    * Structure for order=3: [1bit empty][gram-3][gram-2][gram-1] Structure for order=2: [22bit
@@ -174,6 +219,15 @@ public class MultiLevelMphf implements Mphf {
     for (int i = 0; i < levelCount; i++) {
       int keycount = dis.readInt();
       int bucketAmount = dis.readInt();
+      // if possible, seed values and failed indexes are used from memory mapped file.
+      if (dis instanceof MappedDataInputStream) {
+        MappedDataInputStream mapped = (MappedDataInputStream) dis;
+        ByteBuffer hashSeedValues = mapped.map(bucketAmount);
+        int failedIndexesCount = dis.readInt();
+        IntBuffer failedIndexes = mapped.map(failedIndexesCount * 4L).asIntBuffer();
+        indexes[i] = new HashIndexes(keycount, bucketAmount, hashSeedValues, failedIndexes);
+        continue;
+      }
       byte[] hashSeedValues = new byte[bucketAmount];
       dis.readFully(hashSeedValues);
       int failedIndexesCount = dis.readInt();
@@ -217,7 +271,7 @@ public class MultiLevelMphf implements Mphf {
         if (i == 0) {
           return hash(key, seed) % hashLevelData[0].keyAmount;
         } else {
-          return hashLevelData[i - 1].failedIndexes[hash(key, seed) % hashLevelData[i].keyAmount];
+          return hashLevelData[i - 1].failedIndexes.get(hash(key, seed) % hashLevelData[i].keyAmount);
         }
       }
     }
@@ -231,8 +285,8 @@ public class MultiLevelMphf implements Mphf {
         if (i == 0) {
           return hash(k0, k1, k2, seed) % hashLevelData[0].keyAmount;
         } else {
-          return hashLevelData[i - 1].failedIndexes[hash(k0, k1, k2, seed)
-              % hashLevelData[i].keyAmount];
+          return hashLevelData[i - 1].failedIndexes.get(hash(k0, k1, k2, seed)
+              % hashLevelData[i].keyAmount);
         }
       }
     }
@@ -246,8 +300,8 @@ public class MultiLevelMphf implements Mphf {
         if (i == 0) {
           return hash(k0, k1, seed) % hashLevelData[0].keyAmount;
         } else {
-          return hashLevelData[i - 1].failedIndexes[hash(k0, k1, seed)
-              % hashLevelData[i].keyAmount];
+          return hashLevelData[i - 1].failedIndexes.get(hash(k0, k1, seed)
+              % hashLevelData[i].keyAmount);
         }
       }
     }
@@ -277,7 +331,7 @@ public class MultiLevelMphf implements Mphf {
         if (i == 0) {
           return hash(key, seed) % hashLevelData[0].keyAmount;
         } else {
-          return hashLevelData[i - 1].failedIndexes[hash(key, seed) % hashLevelData[i].keyAmount];
+          return hashLevelData[i - 1].failedIndexes.get(hash(key, seed) % hashLevelData[i].keyAmount);
         }
       }
     }
@@ -307,7 +361,28 @@ public class MultiLevelMphf implements Mphf {
         if (i == 0) {
           return hash(key, seed) % hashLevelData[0].keyAmount;
         } else {
-          return hashLevelData[i - 1].failedIndexes[hash(key, seed) % hashLevelData[i].keyAmount];
+          return hashLevelData[i - 1].failedIndexes.get(hash(key, seed) % hashLevelData[i].keyAmount);
+        }
+      }
+    }
+    throw new IllegalStateException("Cannot be here.");
+  }
+
+  /**
+   * @param key the key. Hash values are same with String keys with same characters.
+   * @param initialHash initial hash value calculated with {@link #hash(CharSequence, int)} and
+   * seed -1.
+   * @return minimal perfect hash value for the given input. returning number is between
+   * [0-keycount] keycount excluded.
+   */
+  public int get(CharSequence key, int initialHash) {
+    for (int i = 0; i < hashLevelData.length; i++) {
+      final int seed = hashLevelData[i].getSeed(initialHash);
+      if (seed != 0) {
+        if (i == 0) {
+          return hash(key, seed) % hashLevelData[0].keyAmount;
+        } else {
+          return hashLevelData[i - 1].failedIndexes.get(hash(key, seed) % hashLevelData[i].keyAmount);
         }
       }
     }
@@ -328,8 +403,8 @@ public class MultiLevelMphf implements Mphf {
         if (i == 0) {
           return hash(key, begin, end, seed) % hashLevelData[0].keyAmount;
         } else {
-          return hashLevelData[i - 1].failedIndexes[hash(key, begin, end, seed)
-              % hashLevelData[i].keyAmount];
+          return hashLevelData[i - 1].failedIndexes.get(hash(key, begin, end, seed)
+              % hashLevelData[i].keyAmount);
         }
       }
     }
@@ -344,8 +419,8 @@ public class MultiLevelMphf implements Mphf {
     long result = 12; // array overhead
     for (HashIndexes data : hashLevelData) {
       result += 12; // array overhead for failed buckets
-      result += data.bucketHashSeedValues.length;
-      result += data.failedIndexes.length * 4;
+      result += data.bucketHashSeedValues.capacity();
+      result += data.failedIndexes.capacity() * 4;
     }
     return result;
   }
@@ -389,10 +464,12 @@ public class MultiLevelMphf implements Mphf {
     for (HashIndexes index : hashLevelData) {
       dos.writeInt(index.keyAmount);
       dos.writeInt(index.bucketAmount);
-      dos.write(index.bucketHashSeedValues);
-      dos.writeInt(index.failedIndexes.length);
-      for (int i : index.failedIndexes) {
-        dos.writeInt(i);
+      byte[] seeds = new byte[index.bucketAmount];
+      index.bucketHashSeedValues.duplicate().get(seeds);
+      dos.write(seeds);
+      dos.writeInt(index.failedIndexes.capacity());
+      for (int i = 0; i < index.failedIndexes.capacity(); i++) {
+        dos.writeInt(index.failedIndexes.get(i));
       }
     }
   }
@@ -401,10 +478,17 @@ public class MultiLevelMphf implements Mphf {
 
     final int keyAmount;
     final int bucketAmount;
-    final byte[] bucketHashSeedValues;
-    final int[] failedIndexes;
+    // these are either heap buffers or memory mapped views of a model file.
+    final ByteBuffer bucketHashSeedValues;
+    final IntBuffer failedIndexes;
 
     HashIndexes(int keyAmount, int bucketAmount, byte[] bucketHashSeedValues, int[] failedIndexes) {
+      this(keyAmount, bucketAmount, ByteBuffer.wrap(bucketHashSeedValues),
+          IntBuffer.wrap(failedIndexes));
+    }
+
+    HashIndexes(int keyAmount, int bucketAmount, ByteBuffer bucketHashSeedValues,
+        IntBuffer failedIndexes) {
       this.keyAmount = keyAmount;
       this.bucketAmount = bucketAmount;
       this.bucketHashSeedValues = bucketHashSeedValues;
@@ -412,20 +496,28 @@ public class MultiLevelMphf implements Mphf {
     }
 
     int getSeed(int fingerPrint) {
-      return (bucketHashSeedValues[fingerPrint % bucketAmount]) & 0xff;
+      return (bucketHashSeedValues.get(fingerPrint % bucketAmount)) & 0xff;
     }
   }
 
   private static class BucketCalculator {
 
     private static final int HASH_SEED_LIMIT = 255;
+    // minimum amount of keys hashed by a single task.
+    private static final int MIN_KEYS_PER_TASK = 1 << 16;
     IntHashKeyProvider keyProvider;
     int keyAmount;
+    // null if bucket indexes are calculated in the calling thread.
+    ExecutorService service;
+    int taskCount;
     double averageKeysPerBucket = 3.0;
 
 
-    private BucketCalculator(IntHashKeyProvider keyProvider) {
+    private BucketCalculator(IntHashKeyProvider keyProvider, ExecutorService service,
+        int taskCount) {
       this.keyProvider = keyProvider;
+      this.service = service;
+      this.taskCount = taskCount;
     }
 
     public HashIndexes[] calculate() {
@@ -446,21 +538,62 @@ public class MultiLevelMphf implements Mphf {
     }
 
     private Bucket[] generateInitialBuckets(int bucketAmount) {
+      int[] bucketIndexes = calculateBucketIndexes(bucketAmount);
 
-      // Generating buckets
+      // Generating buckets. Key index arrays are allocated with their final sizes and filled in
+      // key order, same as adding keys one by one.
+      int[] bucketSizes = new int[bucketAmount];
+      for (int bucketIndex : bucketIndexes) {
+        bucketSizes[bucketIndex]++;
+      }
       Bucket[] buckets = new Bucket[bucketAmount];
       for (int i = 0; i < buckets.length; i++) {
         buckets[i] = new Bucket(i);
+        if (bucketSizes[i] > 0) {
+          buckets[i].keyIndexes = new int[bucketSizes[i]];
+        }
       }
-
+      Arrays.fill(bucketSizes, 0);
       for (int i = 0; i < keyAmount; i++) {
-        int[] key = keyProvider.getKey(i);
-        int bucketIndex = hash(key, -1) % bucketAmount;
-        buckets[bucketIndex].add(i);
+        int bucketIndex = bucketIndexes[i];
+        buckets[bucketIndex].keyIndexes[bucketSizes[bucketIndex]++] = i;
       }
       return buckets;
     }
 
+    // calculates bucket index of each key. Key ranges are hashed concurrently.
+    private int[] calculateBucketIndexes(int bucketAmount) {
+      int[] bucketIndexes = new int[keyAmount];
+      if (service == null || taskCount <= 1) {
+        hashRange(bucketIndexes, 0, keyAmount, bucketAmount);
+        return bucketIndexes;
+      }
+      try {
+        List<Future<?>> futures = new ArrayList<>(taskCount);
+        int rangeSize = (keyAmount + taskCount - 1) / taskCount;
+        for (int start = 0; start < keyAmount; start += rangeSize) {
+          final int begin = start;
+          final int end = Math.min(keyAmount, start + rangeSize);
+          futures.add(service.submit(() -> hashRange(bucketIndexes, begin, end, bucketAmount)));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted during bucket calculation.", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Cannot calculate bucket indexes.", e.getCause());
+      }
+      return bucketIndexes;
+    }
+
+    private void hashRange(int[] bucketIndexes, int begin, int end, int bucketAmount) {
+      for (int i = begin; i < end; i++) {
+        bucketIndexes[i] = hash(keyProvider.getKey(i), -1) % bucketAmount;
+      }
+    }
+
     private void calculateIndexes(Bucket[] buckets, int keyAmount, List<HashIndexes> indexes) {
 
       // generate a long bit vector with size of hash target size.
@@ -580,7 +713,7 @@ public class MultiLevelMphf implements Mphf {
         int k = 0;
         for (int i = 0; i < bitVector.size(); i++) {
           if (!bitVector.get(i)) {
-            failedHashValues[k++] = indexes.get(currentLevel - 1).failedIndexes[i];
+            failedHashValues[k++] = indexes.get(currentLevel - 1).failedIndexes.get(i);
           }
         }
       }
@@ -8,6 +8,9 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -142,4 +145,40 @@ public class IOUtil {
         .forEach(File::delete);
   }
 
+  /**
+   * Releases the memory mapping of a direct or memory mapped buffer without waiting for garbage
+   * collection, so the mapped file can be deleted right away. Buffer must not be used after this
+   * call. Returns false if the mapping could not be released on this JVM.
+   */
+  public static boolean unmap(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return false;
+    }
+    try {
+      // Java 9 and later.
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+      return true;
+    } catch (NoSuchMethodException e) {
+      // Java 8.
+      try {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        if (cleaner == null) {
+          return false;
+        }
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+        return true;
+      } catch (ReflectiveOperationException | RuntimeException e2) {
+        return false;
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return false;
+    }
+  }
+
 }
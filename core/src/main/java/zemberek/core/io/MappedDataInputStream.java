@@ -0,0 +1,89 @@
+package zemberek.core.io;
+
+import com.google.common.io.CountingInputStream;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A DataInputStream for files that can also return read-only memory mapped views of the file
+ * contents. Readers of large binary structures can check if their stream is an instance of this
+ * class and use {@link #map(long)} instead of copying data to heap arrays.
+ * <p>
+ * Mapped buffers stay valid after this stream is closed. Operating system shares mapped pages of a
+ * file between processes, so several JVMs using same model file do not need separate copies.
+ */
+public class MappedDataInputStream extends DataInputStream {
+
+  private final CountingInputStream counter;
+  private final FileChannel channel;
+
+  public MappedDataInputStream(File file) throws IOException {
+    this(new FileInputStream(file));
+  }
+
+  private MappedDataInputStream(FileInputStream fis) {
+    this(new CountingInputStream(new BufferedInputStream(fis, 1 << 16)), fis.getChannel());
+  }
+
+  private MappedDataInputStream(CountingInputStream counter, FileChannel channel) {
+    super(counter);
+    this.counter = counter;
+    this.channel = channel;
+  }
+
+  /**
+   * Returns current position of the stream in the file.
+   */
+  public long position() {
+    return counter.getCount();
+  }
+
+  /**
+   * Maps next `size` bytes of the file as a read only buffer and skips them. Buffer is in big
+   * endian order, same as DataOutputStream.
+   *
+   * @param size amount of bytes to map. Must not be larger than Integer.MAX_VALUE.
+   * @return read only buffer positioned at zero.
+   * @throws IOException if mapping fails or there are not enough bytes left in the file.
+   */
+  public ByteBuffer map(long size) throws IOException {
+    if (size < 0 || size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Cannot map " + size + " bytes.");
+    }
+    long position = position();
+    if (position + size > channel.size()) {
+      throw new EOFException(
+          "Cannot map " + size + " bytes from position " + position + ". File is too short.");
+    }
+    ByteBuffer buffer = channel.map(MapMode.READ_ONLY, position, size);
+    long remaining = size;
+    while (remaining > 0) {
+      long skipped = skip(remaining);
+      if (skipped <= 0) {
+        throw new EOFException("Cannot skip mapped bytes.");
+      }
+      remaining -= skipped;
+    }
+    return buffer;
+  }
+
+  /**
+   * Reads next `byteCount` bytes of `dis` as a big endian buffer. If `dis` is a
+   * MappedDataInputStream, bytes are memory mapped, otherwise they are copied to a heap buffer.
+   */
+  public static ByteBuffer readBuffer(DataInputStream dis, long byteCount) throws IOException {
+    if (dis instanceof MappedDataInputStream) {
+      return ((MappedDataInputStream) dis).map(byteCount);
+    }
+    byte[] bytes = new byte[(int) byteCount];
+    dis.readFully(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+}
@@ -0,0 +1,118 @@
+package zemberek.core.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for keeping strings in a byte pool instead of String objects. Every UTF-16 char is
+ * encoded separately with one to three bytes in UTF-8 style, so any Java String, even with
+ * unpaired surrogates, is stored exactly. A string in a pool is identified by its begin and end
+ * byte offsets.
+ */
+public class PackedStrings {
+
+  private PackedStrings() {
+  }
+
+  /**
+   * Returns amount of bytes required for encoding `s`.
+   */
+  public static int encodedLength(CharSequence s) {
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+    }
+    return length;
+  }
+
+  /**
+   * Encodes `s` to the pool starting from `offset` and returns the offset after the last written
+   * byte.
+   */
+  public static int encode(CharSequence s, byte[] pool, int offset) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        pool[offset++] = (byte) c;
+      } else if (c < 0x800) {
+        pool[offset++] = (byte) (0xc0 | (c >> 6));
+        pool[offset++] = (byte) (0x80 | (c & 0x3f));
+      } else {
+        pool[offset++] = (byte) (0xe0 | (c >> 12));
+        pool[offset++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        pool[offset++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return offset;
+  }
+
+  /**
+   * Decodes the string between [begin, end) byte offsets of the pool.
+   */
+  public static String decode(ByteBuffer pool, int begin, int end) {
+    char[] chars = new char[end - begin];
+    int length = 0;
+    int i = begin;
+    while (i < end) {
+      int b = pool.get(i) & 0xff;
+      if (b < 0x80) {
+        chars[length++] = (char) b;
+        i++;
+      } else if (b < 0xe0) {
+        chars[length++] = (char) (((b & 0x1f) << 6) | (pool.get(i + 1) & 0x3f));
+        i += 2;
+      } else {
+        chars[length++] = (char) (((b & 0x0f) << 12)
+            | ((pool.get(i + 1) & 0x3f) << 6)
+            | (pool.get(i + 2) & 0x3f));
+        i += 3;
+      }
+    }
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * Checks if the string between [begin, end) byte offsets of the pool is equal to `s` without
+   * decoding it.
+   */
+  public static boolean matches(ByteBuffer pool, int begin, int end, CharSequence s) {
+    int i = begin;
+    int length = s.length();
+    // every char is encoded with at least one and at most three bytes.
+    if (end - i < length || end - i > length * 3) {
+      return false;
+    }
+    for (int k = 0; k < length; k++) {
+      if (i >= end) {
+        return false;
+      }
+      int b = pool.get(i) & 0xff;
+      char c;
+      if (b < 0x80) {
+        c = (char) b;
+        i++;
+      } else if (b < 0xe0) {
+        c = (char) (((b & 0x1f) << 6) | (pool.get(i + 1) & 0x3f));
+        i += 2;
+      } else {
+        c = (char) (((b & 0x0f) << 12) | ((pool.get(i + 1) & 0x3f) << 6) | (pool.get(i + 2)
+            & 0x3f));
+        i += 3;
+      }
+      if (c != s.charAt(k)) {
+        return false;
+      }
+    }
+    return i == end;
+  }
+
+  /**
+   * Returns a 16 bit fingerprint of a string hash. Tables that find slots of strings with a perfect
+   * hash function keep it to reject most of the strings that are not in the table without
+   * comparing them with the pool. Slot of a key depends on lower bits of the hash, so hash is mixed
+   * first to make the fingerprint independent of it.
+   */
+  public static short fingerprint(int hash) {
+    return (short) ((hash * 0x9E3779B9) >>> 16);
+  }
+}
@@ -141,11 +141,59 @@ public class TextUtil {
    * @return clened input string.
    */
   public static String normalizeQuotesHyphens(String input) {
-    // rdquo, ldquo, laquo, raquo, Prime sybols in unicode.
-    return input
-        .replaceAll("[\u201C\u201D\u00BB\u00AB\u2033\u0093\u0094]|''", "\"")
-        .replaceAll("[\u0091\u0092\u2032´`’‘]", "'")
-        .replaceAll("[\u0096\u0097–]", "-");
+    // Applies replacements in a single pass. A new String is created only if input changes.
+    StringBuilder sb = null;
+    int length = input.length();
+    for (int i = 0; i < length; i++) {
+      char c = input.charAt(i);
+      char r;
+      int consumed = 1;
+      switch (c) {
+        // rdquo, ldquo, laquo, raquo, Prime sybols in unicode.
+        case '\u201C':
+        case '\u201D':
+        case '\u00BB':
+        case '\u00AB':
+        case '\u2033':
+        case '\u0093':
+        case '\u0094':
+          r = '"';
+          break;
+        case '\'':
+          if (i + 1 < length && input.charAt(i + 1) == '\'') {
+            r = '"';
+            consumed = 2;
+          } else {
+            r = c;
+          }
+          break;
+        case '\u0091':
+        case '\u0092':
+        case '\u2032':
+        case '´':
+        case '`':
+        case '’':
+        case '‘':
+          r = '\'';
+          break;
+        case '\u0096':
+        case '\u0097':
+        case '–':
+          r = '-';
+          break;
+        default:
+          r = c;
+      }
+      if (sb == null && (r != c || consumed > 1)) {
+        sb = new StringBuilder(length);
+        sb.append(input, 0, i);
+      }
+      if (sb != null) {
+        sb.append(r);
+      }
+      i += consumed - 1;
+    }
+    return sb == null ? input : sb.toString();
   }
 
   /**
@@ -70,12 +70,18 @@ public class TurkishAlphabet {
   private IntIntMap devoicingMap = new IntIntMap();
   private IntIntMap circumflexMap = new IntIntMap();
 
+  // Lookup table for normalizeForAnalysis. Contains lower case, circumflex and apostrophe
+  // normalized forms of characters. 0 means character cannot be normalized with the table.
+  private static final int ANALYSIS_TABLE_SIZE = 0x2040;
+  private char[] analysisNormalizationTable = new char[ANALYSIS_TABLE_SIZE];
+
   private TurkishAlphabet() {
     List<TurkicLetter> letters = generateLetters();
     for (TurkicLetter letter : letters) {
       letterMap.put(letter.charValue, letter);
     }
     generateVoicingDevoicingLookups();
+    generateAnalysisNormalizationTable();
 
     populateCharMap(turkishToAsciiMap, turkishSpecific, turkishAscii);
     populateCharMap(foreignDiacriticsMap, foreignDiacritics, diacriticsToTurkish);
@@ -128,6 +134,25 @@ public class TurkishAlphabet {
         circumflexNormalized + circumflexNormalized.toUpperCase(TR));
   }
 
+  private void generateAnalysisNormalizationTable() {
+    for (int i = 1; i < ANALYSIS_TABLE_SIZE; i++) {
+      char c = (char) i;
+      // lower case forms of combining dot above and capital sigma depend on context.
+      if (c == '\u0307' || c == '\u03a3') {
+        continue;
+      }
+      String lower = String.valueOf(c).toLowerCase(TR);
+      if (lower.length() != 1) {
+        continue;
+      }
+      char n = normalizeCircumflex(lower.charAt(0));
+      if ("\u0091\u0092\u2032´`’‘".indexOf(n) >= 0) {
+        n = '\'';
+      }
+      analysisNormalizationTable[i] = n;
+    }
+  }
+
   private boolean lookup(FixedBitVector vector, char c) {
     return c < vector.length && vector.get(c);
   }
@@ -306,6 +331,55 @@ public class TurkishAlphabet {
     return sb.toString();
   }
 
+  /**
+   * Normalizes a word before morphological analysis in a single pass. Result is same as applying
+   * Turkish lower casing, circumflex normalization, dot removal and apostrophe normalization
+   * ([\u0091\u0092\u2032´`’‘] to ') in that order. If input only contains dots, dots are kept.
+   * <p>
+   * If input is already normalized, input instance is returned without any allocation.
+   */
+  public String normalizeForAnalysis(String input) {
+    int length = input.length();
+    // find the first character that changes.
+    int i = 0;
+    for (; i < length; i++) {
+      char c = input.charAt(i);
+      if (c == '.' || c >= ANALYSIS_TABLE_SIZE || analysisNormalizationTable[c] != c) {
+        break;
+      }
+    }
+    if (i == length) {
+      return input;
+    }
+    char[] buffer = new char[length];
+    input.getChars(0, i, buffer, 0);
+    int k = i;
+    for (; i < length; i++) {
+      char c = input.charAt(i);
+      if (c == '.') {
+        continue;
+      }
+      char n = c < ANALYSIS_TABLE_SIZE ? analysisNormalizationTable[c] : 0;
+      if (n == 0) {
+        return normalizeForAnalysisSlow(input);
+      }
+      buffer[k++] = n;
+    }
+    if (k == 0) {
+      return input;
+    }
+    return new String(buffer, 0, k);
+  }
+
+  private String normalizeForAnalysisSlow(String input) {
+    String s = normalizeCircumflex(input.toLowerCase(TR));
+    String noDot = s.replace(".", "");
+    if (noDot.length() == 0) {
+      noDot = s;
+    }
+    return TextUtil.normalizeApostrophes(noDot);
+  }
+
   public String normalizeApostrophe(String s) {
     if (!containsApostrophe(s)) {
       return s;
@@ -52,6 +52,36 @@ public class LargeNgramMphfTest {
     }
   }
 
+  @Test
+  @Ignore("Speed Test")
+  public void parallelGenerationSpeed() throws IOException {
+    int order = 2;
+    int gramCount = 100_000_000;
+    File tempDir = Files.createTempDir();
+    File file = new File(tempDir, "grams");
+    try (DataOutputStream dos = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), 1000000))) {
+      dos.writeInt(order);
+      dos.writeInt(gramCount);
+      for (int i = 0; i < gramCount; i++) {
+        dos.writeInt(i / 1000);
+        dos.writeInt(i % 1000);
+      }
+    }
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    File[] results = new File[2];
+    int[] threadCounts = {1, threadCount};
+    for (int i = 0; i < threadCounts.length; i++) {
+      Stopwatch sw = Stopwatch.createStarted();
+      LargeNgramMphf mphf = LargeNgramMphf.generate(file, 22, threadCounts[i]);
+      System.out.println("Thread count: " + threadCounts[i] + " Generation time: "
+          + sw.elapsed(TimeUnit.MILLISECONDS));
+      results[i] = new File(tempDir, "mphf" + threadCounts[i]);
+      mphf.serialize(results[i]);
+    }
+    Assert.assertTrue(Files.equal(results[0], results[1]));
+  }
+
   private File generateBinaryGramFile(int order, int gramCount, int[][] keys) throws IOException {
     File tempDir = Files.createTempDir();
     File file = new File(tempDir, "grams");
@@ -1,6 +1,7 @@
 package zemberek.core.hash;
 
 import com.google.common.base.Stopwatch;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
@@ -41,6 +42,26 @@ public class MultiLevelMphfTest {
     }
   }
 
+  @Test
+  public void sameResultForAnyThreadCount() throws IOException {
+    int keyCount = 300_000;
+    final int[][] arr = new int[keyCount][3];
+    for (int i = 0; i < keyCount; i++) {
+      arr[i] = new int[]{i, i / 7, i % 13};
+    }
+    IntArrayKeyProvider provider = new IntArrayKeyProvider(arr);
+    byte[] expected = serialize(MultiLevelMphf.generate(provider));
+    for (int threadCount : new int[]{2, 4}) {
+      Assert.assertArrayEquals(expected, serialize(MultiLevelMphf.generate(provider, threadCount)));
+    }
+  }
+
+  private byte[] serialize(MultiLevelMphf mphf) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    mphf.serialize(bos);
+    return bos.toByteArray();
+  }
+
   private void generateAndTest(IntHashKeyProvider provider) {
 
     long start = System.currentTimeMillis();
@@ -0,0 +1,35 @@
+package zemberek.core.text;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextUtilTest {
+
+  @Test
+  public void normalizeQuotesHyphensTest() {
+    Assert.assertEquals("\"Ali\" 'nin - \"", TextUtil.normalizeQuotesHyphens("“Ali” ’nin – ''"));
+    Assert.assertEquals("\"'", TextUtil.normalizeQuotesHyphens("'''"));
+    String s = "no change";
+    Assert.assertSame(s, TextUtil.normalizeQuotesHyphens(s));
+  }
+
+  @Test
+  public void normalizeQuotesHyphensSameAsRegex() {
+    String chars = "a '“”»«″\u0093\u0094\u0091\u0092′´`’‘\u0096\u0097–-\"";
+    Random r = new Random(1);
+    for (int i = 0; i < 50_000; i++) {
+      int length = r.nextInt(10);
+      StringBuilder sb = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        sb.append(chars.charAt(r.nextInt(chars.length())));
+      }
+      String input = sb.toString();
+      String expected = input
+          .replaceAll("[“”»«″\u0093\u0094]|''", "\"")
+          .replaceAll("[\u0091\u0092′´`’‘]", "'")
+          .replaceAll("[\u0096\u0097–]", "-");
+      Assert.assertEquals(expected, TextUtil.normalizeQuotesHyphens(input));
+    }
+  }
+}
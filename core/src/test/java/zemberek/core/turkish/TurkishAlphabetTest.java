@@ -1,7 +1,9 @@
 package zemberek.core.turkish;
 
+import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
+import zemberek.core.text.TextUtil;
 
 public class TurkishAlphabetTest {
 
@@ -133,4 +135,52 @@ public class TurkishAlphabetTest {
     }
   }
 
+  private String normalizeForAnalysisOld(String input) {
+    String s = TurkishAlphabet.INSTANCE.normalizeCircumflex(input.toLowerCase(Turkish.LOCALE));
+    String noDot = s.replace(".", "");
+    if (noDot.length() == 0) {
+      noDot = s;
+    }
+    return TextUtil.normalizeApostrophes(noDot);
+  }
+
+  @Test
+  public void normalizeForAnalysisTest() {
+    TurkishAlphabet alphabet = TurkishAlphabet.INSTANCE;
+    String[][] pairs = {
+        {"kitap", "kitap"}, {"KİTAP", "kitap"}, {"IŞIK", "ışık"}, {"Âlim", "alim"},
+        {"T.C.", "tc"}, {"...", "..."}, {"", ""}, {"Ankara’ya", "ankara'ya"},
+        {"I\u0307", "i"}, {"ΣΑΣ", "σας"}
+    };
+    for (String[] pair : pairs) {
+      Assert.assertEquals(pair[1], alphabet.normalizeForAnalysis(pair[0]));
+    }
+    String s = "kitaplar";
+    Assert.assertSame(s, alphabet.normalizeForAnalysis(s));
+  }
+
+  @Test
+  public void normalizeForAnalysisRandomTest() {
+    String chars = "aAbBçÇıIiİ\u0307âÂîÎûÛ.'’‘`´\u2032\u0091\u0092-0ΣΑéÉ\u00df\u0130\u2040";
+    Random r = new Random(0xbeef);
+    for (int i = 0; i < 200_000; i++) {
+      int length = r.nextInt(8);
+      StringBuilder sb = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        sb.append(chars.charAt(r.nextInt(chars.length())));
+      }
+      String input = sb.toString();
+      Assert.assertEquals(input, normalizeForAnalysisOld(input),
+          TurkishAlphabet.INSTANCE.normalizeForAnalysis(input));
+    }
+  }
+
+  @Test
+  public void normalizeForAnalysisAllCharsTest() {
+    for (int c = 0; c < 0x10000; c++) {
+      String input = "A" + (char) c + "b";
+      Assert.assertEquals(Integer.toHexString(c), normalizeForAnalysisOld(input),
+          TurkishAlphabet.INSTANCE.normalizeForAnalysis(input));
+    }
+  }
 }
@@ -68,7 +68,8 @@ public abstract class BaseLanguageModel {
   /**
    * This is a simple cache that may be useful if ngram queries exhibit strong temporal locality.
    * Cache stores key values so it does not produce false positives by itself. However underlying lm
-   * may do.
+   * may do. This class is not thread safe, use ConcurrentLookupCache for sharing a cache between
+   * threads.
    */
   public static class LookupCache {
 
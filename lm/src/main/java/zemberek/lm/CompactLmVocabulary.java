@@ -0,0 +1,444 @@
+package zemberek.lm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import zemberek.core.hash.IntHashKeyProvider;
+import zemberek.core.hash.MultiLevelMphf;
+import zemberek.core.io.MappedDataInputStream;
+import zemberek.core.io.PackedStrings;
+import zemberek.core.logging.Log;
+
+/**
+ * An LmVocabulary that keeps words in a packed byte pool instead of String objects and finds word
+ * indexes with a minimal perfect hash function instead of a HashMap. For large vocabularies it uses
+ * a fraction of the memory of LmVocabulary and {@link #indexOf(CharSequence)} does not allocate any
+ * objects.
+ * <p>
+ * Words are encoded to the pool with {@link PackedStrings}, so every Java String (even with
+ * unpaired surrogates) is stored exactly. MPHF maps a word to a slot. Each slot contains the
+ * word index and a 16 bit fingerprint of the word hash. Fingerprint rejects most of the words that
+ * do not exist in the vocabulary without touching the pool, remaining candidates are compared with
+ * the pool bytes.
+ * <p>
+ * Binary format:
+ * <p/>int32 word count <p/>int32 unknown word index <p/>int32 sentence start index <p/>int32
+ * sentence end index <p/>int32 pool byte count <p/>int32[word count + 1] pool offsets of words
+ * <p/>byte[pool byte count] pool <p/>int32[word count] word index of slots <p/>int16[word count]
+ * fingerprints of slots <p/>MultiLevelMphf
+ * <p>
+ * When loaded with {@link #loadMapped(File)}, pool, offsets and slot data are memory mapped.
+ */
+public class CompactLmVocabulary extends LmVocabulary {
+
+  private final int size;
+  private final IntBuffer offsets;
+  private final ByteBuffer pool;
+  private final IntBuffer slotIndexes;
+  private final ShortBuffer fingerprints;
+  private final MultiLevelMphf mphf;
+
+  private CompactLmVocabulary(
+      int unknownWordIndex,
+      int sentenceStartIndex,
+      int sentenceEndIndex,
+      int size,
+      IntBuffer offsets,
+      ByteBuffer pool,
+      IntBuffer slotIndexes,
+      ShortBuffer fingerprints,
+      MultiLevelMphf mphf) {
+    super(decode(pool, offsets, unknownWordIndex), unknownWordIndex,
+        decode(pool, offsets, sentenceStartIndex), sentenceStartIndex,
+        decode(pool, offsets, sentenceEndIndex), sentenceEndIndex);
+    this.size = size;
+    this.offsets = offsets;
+    this.pool = pool;
+    this.slotIndexes = slotIndexes;
+    this.fingerprints = fingerprints;
+    this.mphf = mphf;
+  }
+
+  /**
+   * Generates a compact vocabulary with same words and indexes of `vocabulary`.
+   */
+  public static CompactLmVocabulary from(LmVocabulary vocabulary) {
+    return from(vocabulary, 1);
+  }
+
+  /**
+   * Generates a compact vocabulary with same words and indexes of `vocabulary`. MPHF is generated
+   * with `threadCount` threads.
+   */
+  public static CompactLmVocabulary from(LmVocabulary vocabulary, int threadCount) {
+    int size = vocabulary.size();
+    int[] offsets = new int[size + 1];
+    long poolSize = 0;
+    for (int i = 0; i < size; i++) {
+      offsets[i] = (int) poolSize;
+      poolSize += PackedStrings.encodedLength(vocabulary.wordAt(i));
+      if (poolSize > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Vocabulary is too large for a compact vocabulary.");
+      }
+    }
+    offsets[size] = (int) poolSize;
+    byte[] pool = new byte[(int) poolSize];
+    for (int i = 0; i < size; i++) {
+      PackedStrings.encode(vocabulary.wordAt(i), pool, offsets[i]);
+    }
+    return build(
+        vocabulary.getUnknownWordIndex(),
+        vocabulary.getSentenceStartIndex(),
+        vocabulary.getSentenceEndIndex(),
+        size,
+        offsets,
+        pool,
+        threadCount);
+  }
+
+  /**
+   * Reads a vocabulary saved in LmVocabulary binary format (see {@link #saveBinary(File)})
+   * directly to compact form, without generating an LmVocabulary first. Duplicate words and
+   * missing special tokens are handled the same way LmVocabulary does, so indexes are the same.
+   * Stream is not closed.
+   */
+  public static CompactLmVocabulary loadFromBinary(DataInputStream dis) throws IOException {
+    int count = dis.readInt();
+    PoolBuilder builder = new PoolBuilder(count + 3);
+    int unknownWordIndex = -1;
+    int sentenceStartIndex = -1;
+    int sentenceEndIndex = -1;
+    for (int i = 0; i < count; i++) {
+      String word = dis.readUTF();
+      int index = builder.add(word);
+      if (index < 0) {
+        Log.warn("Language model vocabulary has duplicate item: " + word);
+        continue;
+      }
+      if (word.equalsIgnoreCase(DEFAULT_UNKNOWN_WORD)) {
+        unknownWordIndex = specialIndex(unknownWordIndex, index, builder, word);
+      } else if (word.equalsIgnoreCase(DEFAULT_SENTENCE_BEGIN_MARKER)) {
+        sentenceStartIndex = specialIndex(sentenceStartIndex, index, builder, word);
+      } else if (word.equalsIgnoreCase(DEFAULT_SENTENCE_END_MARKER)) {
+        sentenceEndIndex = specialIndex(sentenceEndIndex, index, builder, word);
+      }
+    }
+    if (unknownWordIndex == -1) {
+      unknownWordIndex = builder.addSpecial(DEFAULT_UNKNOWN_WORD);
+    }
+    if (sentenceStartIndex == -1) {
+      sentenceStartIndex = builder.addSpecial(DEFAULT_SENTENCE_BEGIN_MARKER);
+    }
+    if (sentenceEndIndex == -1) {
+      sentenceEndIndex = builder.addSpecial(DEFAULT_SENTENCE_END_MARKER);
+    }
+    return build(
+        unknownWordIndex,
+        sentenceStartIndex,
+        sentenceEndIndex,
+        builder.size,
+        Arrays.copyOf(builder.offsets, builder.size + 1),
+        Arrays.copyOf(builder.pool, builder.offsets[builder.size]),
+        1);
+  }
+
+  private static int specialIndex(int current, int index, PoolBuilder builder, String word) {
+    if (current != -1) {
+      Log.warn("Special token was already defined as %s but another matching token exist in the "
+          + "input vocabulary: %s", builder.word(current), word);
+      return current;
+    }
+    return index;
+  }
+
+  private static CompactLmVocabulary build(
+      int unknownWordIndex,
+      int sentenceStartIndex,
+      int sentenceEndIndex,
+      int size,
+      int[] offsets,
+      byte[] pool,
+      int threadCount) {
+    ByteBuffer poolBuffer = ByteBuffer.wrap(pool);
+    MultiLevelMphf mphf = MultiLevelMphf.generate(
+        new PoolKeyProvider(poolBuffer, offsets, size), threadCount);
+    int[] slotIndexes = new int[size];
+    short[] fingerprints = new short[size];
+    for (int i = 0; i < size; i++) {
+      String word = PackedStrings.decode(poolBuffer, offsets[i], offsets[i + 1]);
+      int hash = MultiLevelMphf.hash(word, -1);
+      int slot = mphf.get(word, hash);
+      slotIndexes[slot] = i;
+      fingerprints[slot] = PackedStrings.fingerprint(hash);
+    }
+    return new CompactLmVocabulary(
+        unknownWordIndex,
+        sentenceStartIndex,
+        sentenceEndIndex,
+        size,
+        IntBuffer.wrap(offsets),
+        poolBuffer,
+        IntBuffer.wrap(slotIndexes),
+        ShortBuffer.wrap(fingerprints),
+        mphf);
+  }
+
+  // provides words of a pool as char arrays, same as StringHashKeyProvider.
+  private static class PoolKeyProvider implements IntHashKeyProvider {
+
+    final ByteBuffer pool;
+    final int[] offsets;
+    final int size;
+
+    PoolKeyProvider(ByteBuffer pool, int[] offsets, int size) {
+      this.pool = pool;
+      this.offsets = offsets;
+      this.size = size;
+    }
+
+    @Override
+    public int[] getKey(int index) {
+      String s = PackedStrings.decode(pool, offsets[index], offsets[index + 1]);
+      int[] chars = new int[s.length()];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = s.charAt(i);
+      }
+      return chars;
+    }
+
+    @Override
+    public int keyAmount() {
+      return size;
+    }
+  }
+
+  // appends unique words to a growing pool. Duplicates are found with an open addressing table of
+  // word indexes, so no String objects are kept.
+  private static class PoolBuilder {
+
+    byte[] pool;
+    int[] offsets;
+    int size;
+    int[] table;
+
+    PoolBuilder(int capacity) {
+      pool = new byte[Math.max(16, capacity * 8)];
+      offsets = new int[capacity + 1];
+      int tableSize = 4;
+      while (tableSize < capacity * 2) {
+        tableSize <<= 1;
+      }
+      table = new int[tableSize];
+      Arrays.fill(table, -1);
+    }
+
+    // returns index of the word or -1 if it already exists.
+    int add(String word) {
+      int mask = table.length - 1;
+      int slot = MultiLevelMphf.hash(word, -1) & mask;
+      ByteBuffer buffer = ByteBuffer.wrap(pool);
+      while (table[slot] != -1) {
+        int index = table[slot];
+        if (PackedStrings.matches(buffer, offsets[index], offsets[index + 1], word)) {
+          return -1;
+        }
+        slot = (slot + 1) & mask;
+      }
+      if (size + 1 >= offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      if (size * 2 >= table.length) {
+        rehash();
+        return add(word);
+      }
+      int begin = offsets[size];
+      long end = begin + (long) PackedStrings.encodedLength(word);
+      if (end > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Vocabulary is too large for a compact vocabulary.");
+      }
+      if (end > pool.length) {
+        long capacity = Math.min(Integer.MAX_VALUE, Math.max(end, pool.length * 2L));
+        pool = Arrays.copyOf(pool, (int) capacity);
+      }
+      offsets[size + 1] = PackedStrings.encode(word, pool, begin);
+      table[slot] = size;
+      return size++;
+    }
+
+    // special tokens are added even if a word with different case exists.
+    int addSpecial(String word) {
+      int index = add(word);
+      if (index < 0) {
+        throw new IllegalStateException("Special token " + word + " exists but is not detected.");
+      }
+      return index;
+    }
+
+    private void rehash() {
+      int[] newTable = new int[table.length * 2];
+      Arrays.fill(newTable, -1);
+      int mask = newTable.length - 1;
+      ByteBuffer buffer = ByteBuffer.wrap(pool);
+      for (int index = 0; index < size; index++) {
+        String word = PackedStrings.decode(buffer, offsets[index], offsets[index + 1]);
+        int slot = MultiLevelMphf.hash(word, -1) & mask;
+        while (newTable[slot] != -1) {
+          slot = (slot + 1) & mask;
+        }
+        newTable[slot] = index;
+      }
+      table = newTable;
+    }
+
+    String word(int index) {
+      return PackedStrings.decode(ByteBuffer.wrap(pool), offsets[index], offsets[index + 1]);
+    }
+  }
+
+  /**
+   * Loads a compact vocabulary file to heap.
+   */
+  public static CompactLmVocabulary load(File file) throws IOException {
+    try (DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      return load(dis);
+    }
+  }
+
+  /**
+   * Loads a compact vocabulary file. Large data blocks are memory mapped instead of copied to
+   * heap. Operating system shares the mapped pages between processes using the same file.
+   */
+  public static CompactLmVocabulary loadMapped(File file) throws IOException {
+    try (MappedDataInputStream dis = new MappedDataInputStream(file)) {
+      return load(dis);
+    }
+  }
+
+  /**
+   * Loads a compact vocabulary from a stream. If `dis` is a {@link MappedDataInputStream}, large
+   * data blocks are memory mapped. Stream is not closed.
+   */
+  public static CompactLmVocabulary load(DataInputStream dis) throws IOException {
+    int size = dis.readInt();
+    int unknownWordIndex = dis.readInt();
+    int sentenceStartIndex = dis.readInt();
+    int sentenceEndIndex = dis.readInt();
+    int poolSize = dis.readInt();
+    IntBuffer offsets = MappedDataInputStream.readBuffer(dis, (size + 1) * 4L).asIntBuffer();
+    ByteBuffer pool = MappedDataInputStream.readBuffer(dis, poolSize);
+    IntBuffer slotIndexes = MappedDataInputStream.readBuffer(dis, size * 4L).asIntBuffer();
+    ShortBuffer fingerprints = MappedDataInputStream.readBuffer(dis, size * 2L).asShortBuffer();
+    MultiLevelMphf mphf = MultiLevelMphf.deserialize(dis);
+    return new CompactLmVocabulary(
+        unknownWordIndex,
+        sentenceStartIndex,
+        sentenceEndIndex,
+        size,
+        offsets,
+        pool,
+        slotIndexes,
+        fingerprints,
+        mphf);
+  }
+
+  /**
+   * Saves this vocabulary in compact binary format. Use {@link #saveBinary(File)} for the regular
+   * LmVocabulary format.
+   */
+  public void save(File file) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      save(dos);
+    }
+  }
+
+  public void save(DataOutputStream dos) throws IOException {
+    dos.writeInt(size);
+    dos.writeInt(getUnknownWordIndex());
+    dos.writeInt(getSentenceStartIndex());
+    dos.writeInt(getSentenceEndIndex());
+    dos.writeInt(pool.capacity());
+    for (int i = 0; i <= size; i++) {
+      dos.writeInt(offsets.get(i));
+    }
+    for (int i = 0; i < pool.capacity(); i++) {
+      dos.write(pool.get(i));
+    }
+    for (int i = 0; i < size; i++) {
+      dos.writeInt(slotIndexes.get(i));
+    }
+    for (int i = 0; i < size; i++) {
+      dos.writeShort(fingerprints.get(i));
+    }
+    mphf.serialize(dos);
+  }
+
+  private static String decode(ByteBuffer pool, IntBuffer offsets, int index) {
+    return PackedStrings.decode(pool, offsets.get(index), offsets.get(index + 1));
+  }
+
+  @Override
+  protected int find(CharSequence word) {
+    if (size == 0) {
+      return -1;
+    }
+    int hash = MultiLevelMphf.hash(word, -1);
+    int slot = mphf.get(word, hash);
+    if (fingerprints.get(slot) != PackedStrings.fingerprint(hash)) {
+      return -1;
+    }
+    int index = slotIndexes.get(slot);
+    return PackedStrings.matches(pool, offsets.get(index), offsets.get(index + 1), word) ?
+        index : -1;
+  }
+
+  @Override
+  protected String wordAt(int index) {
+    return decode(pool, offsets, index);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Iterable<String> words() {
+    return () -> new Iterator<String>() {
+      int i = 0;
+
+      @Override
+      public boolean hasNext() {
+        return i < size;
+      }
+
+      @Override
+      public String next() {
+        if (i >= size) {
+          throw new NoSuchElementException();
+        }
+        return wordAt(i++);
+      }
+    };
+  }
+
+  /**
+   * Returns approximate amount of bytes used by words, offsets, slots and MPHF.
+   */
+  public long sizeInBytes() {
+    return pool.capacity() + offsets.capacity() * 4L + slotIndexes.capacity() * 4L
+        + fingerprints.capacity() * 2L + mphf.totalBytesUsed();
+  }
+}
@@ -0,0 +1,116 @@
+package zemberek.lm;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lookup cache for n-gram probabilities that can be shared between threads. Unlike
+ * BaseLanguageModel.LookupCache, a slot is a single long value that contains a 32 bit fingerprint
+ * of the key and the probability. Slots are read and written atomically, so a thread never sees a
+ * probability of a key mixed with the fingerprint of another key.
+ * <p>
+ * Keys are not stored, a different key with the same slot and fingerprint returns a wrong value.
+ * Probability of this is about 2^-31 for a slot collision. Underlying model may also produce false
+ * positives.
+ */
+public class ConcurrentLookupCache {
+
+  public static final int DEFAULT_LOOKUP_CACHE_SIZE = 1 << 17;
+
+  private final NgramLanguageModel model;
+  private final AtomicLongArray slots;
+  private final int modulo;
+
+  // striped counters, so counting does not make threads compete for a single value.
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Generates a cache with 2^17 slots.
+   */
+  public ConcurrentLookupCache(NgramLanguageModel model) {
+    this(model, DEFAULT_LOOKUP_CACHE_SIZE);
+  }
+
+  /**
+   * Generates a cache where slot count is the minimum power of two that is not less than size.
+   */
+  public ConcurrentLookupCache(NgramLanguageModel model, int size) {
+    if (size < 1 || size > 1 << 30) {
+      throw new IllegalArgumentException("Cache size must be in [1..2^30] but it is " + size);
+    }
+    this.model = model;
+    int k = 2;
+    while (k < size) {
+      k <<= 1;
+    }
+    modulo = k - 1;
+    slots = new AtomicLongArray(k);
+  }
+
+  /**
+   * @return probability of the input data. If value is already cached, it returns immediately.
+   * Otherwise it calculates the probability using the model and caches it.
+   */
+  public float get(int... data) {
+    long hash = hash(data);
+    int slot = (int) hash & modulo;
+    // fingerprint always has its highest bit set so that an empty slot never matches.
+    int fingerprint = (int) (hash >>> 32) | 0x80000000;
+    long entry = slots.get(slot);
+    if ((int) (entry >>> 32) == fingerprint) {
+      hits.increment();
+      return Float.intBitsToFloat((int) entry);
+    }
+    misses.increment();
+    float probability = data.length == 3 ?
+        model.getTriGramProbability(data[0], data[1], data[2]) :
+        model.getProbability(data);
+    slots.lazySet(slot,
+        ((long) fingerprint << 32) | (Float.floatToRawIntBits(probability) & 0xffffffffL));
+    return probability;
+  }
+
+  // 64 bit hash of the key. Lower bits are used for slot index, higher bits for fingerprint.
+  private static long hash(int[] data) {
+    long h = 0xcbf29ce484222325L ^ data.length;
+    for (int d : data) {
+      h = (h ^ d) * 0x9e3779b97f4a7c15L;
+      h ^= h >>> 29;
+    }
+    // murmur3 finalizer.
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  public int size() {
+    return slots.length();
+  }
+
+  public long getHit() {
+    return hits.sum();
+  }
+
+  public long getMiss() {
+    return misses.sum();
+  }
+
+  public double hitRate() {
+    long hit = hits.sum();
+    long total = hit + misses.sum();
+    return total == 0 ? 0 : (double) hit / total;
+  }
+
+  /**
+   * Removes all cached values. Hit and miss counts are not changed.
+   */
+  public void clear() {
+    for (int i = 0; i < slots.length(); i++) {
+      slots.set(i, 0);
+    }
+  }
+}
@@ -0,0 +1,344 @@
+package zemberek.lm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import zemberek.lm.compression.SmoothLm;
+
+/**
+ * A language model that linearly interpolates probabilities of several component models.
+ * Probability of an n-gram is log(w1*p1 + w2*p2 + ... + wk*pk) where pi is the probability
+ * calculated by component i and weights sum to one.
+ * <p>
+ * Vocabulary of this model is the union of component vocabularies. Words of the first component
+ * keep their indexes, words that only exist in other components are appended. For each component,
+ * an array that maps shared word indexes to component indexes is generated once, so queries only
+ * need an array lookup per word. Words that do not exist in a component are mapped to its unknown
+ * word.
+ * <p>
+ * {@link #scoreSentence(int[], float[])} maps a sequence once and lets each component score it in
+ * a single pass, so models that share hash calculations between positions (such as SmoothLm) keep
+ * that advantage. Single n-gram queries can be cached in a {@link ConcurrentLookupCache}. This
+ * class is thread safe if component models are thread safe.
+ */
+public class InterpolatedLm implements NgramLanguageModel {
+
+  private final Mixture mixture;
+  private final ConcurrentLookupCache cache;
+
+  private InterpolatedLm(Builder builder) {
+    this.mixture = new Mixture(builder);
+    this.cache = builder.cacheSize > 0 ?
+        new ConcurrentLookupCache(mixture, builder.cacheSize) : null;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int getComponentCount() {
+    return mixture.models.length;
+  }
+
+  public NgramLanguageModel getComponent(int i) {
+    return mixture.models[i];
+  }
+
+  /**
+   * Returns normalized weight of component i.
+   */
+  public double getWeight(int i) {
+    return mixture.weights[i];
+  }
+
+  public double getLogBase() {
+    return mixture.logBase;
+  }
+
+  /**
+   * Returns the index of `sharedId` in the vocabulary of component i, or -1 if the word does not
+   * exist in that vocabulary.
+   */
+  public int toComponentId(int i, int sharedId) {
+    return mixture.idMaps[i][sharedId];
+  }
+
+  /**
+   * Returns the lookup cache, or null if caching is disabled.
+   */
+  public ConcurrentLookupCache getCache() {
+    return cache;
+  }
+
+  @Override
+  public float getUnigramProbability(int id) {
+    return getProbability(id);
+  }
+
+  @Override
+  public boolean ngramExists(int... wordIndexes) {
+    return mixture.ngramExists(wordIndexes);
+  }
+
+  @Override
+  public float getProbability(int... ids) {
+    return cache == null ? mixture.getProbability(ids) : cache.get(ids);
+  }
+
+  @Override
+  public float getTriGramProbability(int id0, int id1, int id2) {
+    return cache == null ?
+        mixture.getTriGramProbability(id0, id1, id2) :
+        cache.get(id0, id1, id2);
+  }
+
+  @Override
+  public float getTriGramProbability(int id0, int id1, int id2, int fingerPrint) {
+    return getTriGramProbability(id0, id1, id2);
+  }
+
+  @Override
+  public float scoreSentence(int[] ids, float[] positionScores) {
+    return mixture.scoreSentence(ids, positionScores);
+  }
+
+  @Override
+  public int getOrder() {
+    return mixture.order;
+  }
+
+  @Override
+  public LmVocabulary getVocabulary() {
+    return mixture.vocabulary;
+  }
+
+  public static class Builder {
+
+    private List<NgramLanguageModel> models = new ArrayList<>();
+    private List<Double> weights = new ArrayList<>();
+    private double logBase = SmoothLm.DEFAULT_LOG_BASE;
+    private int cacheSize = ConcurrentLookupCache.DEFAULT_LOOKUP_CACHE_SIZE;
+
+    /**
+     * Adds a component model. Weights are normalized so that they sum to one.
+     */
+    public Builder add(NgramLanguageModel model, double weight) {
+      if (!(weight > 0)) {
+        throw new IllegalArgumentException("Weight must be positive but it is " + weight);
+      }
+      models.add(model);
+      weights.add(weight);
+      return this;
+    }
+
+    /**
+     * Log base of component model probabilities. All components must use the same base. Default
+     * is 10, same as SmoothLm.
+     */
+    public Builder logBase(double logBase) {
+      this.logBase = logBase;
+      return this;
+    }
+
+    /**
+     * Size of the n-gram probability cache. 0 disables caching. Default is 2^17.
+     */
+    public Builder cacheSize(int cacheSize) {
+      this.cacheSize = cacheSize;
+      return this;
+    }
+
+    public InterpolatedLm build() {
+      if (models.isEmpty()) {
+        throw new IllegalStateException("At least one component model is required.");
+      }
+      for (NgramLanguageModel model : models) {
+        if (model instanceof SmoothLm
+            && Math.abs(((SmoothLm) model).getLogBase() - logBase) > 1e-6) {
+          throw new IllegalArgumentException("Log base of a component is "
+              + ((SmoothLm) model).getLogBase() + " but interpolation log base is " + logBase);
+        }
+      }
+      return new InterpolatedLm(this);
+    }
+  }
+
+  // Calculates interpolated values without caching. Lookup cache uses this as its model.
+  private static class Mixture implements NgramLanguageModel {
+
+    final NgramLanguageModel[] models;
+    final double[] weights;
+    final double logBase;
+    final double lnBase;
+    final int order;
+    final LmVocabulary vocabulary;
+    // idMaps[i][sharedId] = id of the word in component i, or -1 if it does not exist.
+    final int[][] idMaps;
+    final int[] unknownIds;
+
+    Mixture(Builder builder) {
+      models = builder.models.toArray(new NgramLanguageModel[0]);
+      weights = new double[models.length];
+      double sum = 0;
+      for (double weight : builder.weights) {
+        sum += weight;
+      }
+      for (int i = 0; i < weights.length; i++) {
+        weights[i] = builder.weights.get(i) / sum;
+      }
+      logBase = builder.logBase;
+      lnBase = Math.log(logBase);
+      int maxOrder = 0;
+      for (NgramLanguageModel model : models) {
+        maxOrder = Math.max(maxOrder, model.getOrder());
+      }
+      order = maxOrder;
+
+      List<String> words = new ArrayList<>();
+      Set<String> added = new HashSet<>();
+      for (NgramLanguageModel model : models) {
+        for (String word : model.getVocabulary().words()) {
+          if (added.add(word)) {
+            words.add(word);
+          }
+        }
+      }
+      vocabulary = new LmVocabulary(words);
+      idMaps = new int[models.length][vocabulary.size()];
+      unknownIds = new int[models.length];
+      for (int i = 0; i < models.length; i++) {
+        LmVocabulary v = models[i].getVocabulary();
+        unknownIds[i] = v.getUnknownWordIndex();
+        for (int id = 0; id < vocabulary.size(); id++) {
+          String word = vocabulary.getWord(id);
+          idMaps[i][id] = v.contains(word) ? v.indexOf(word) : -1;
+        }
+      }
+    }
+
+    // log(sum(w_i * base^l_i)) calculated relative to the maximum value for precision.
+    private float combine(float[] logProbs) {
+      float max = logProbs[0];
+      for (int i = 1; i < logProbs.length; i++) {
+        max = Math.max(max, logProbs[i]);
+      }
+      // all components give zero probability. Relative values would be NaN.
+      if (max == Float.NEGATIVE_INFINITY) {
+        return max;
+      }
+      double sum = 0;
+      for (int i = 0; i < logProbs.length; i++) {
+        sum += weights[i] * Math.exp((logProbs[i] - max) * lnBase);
+      }
+      return (float) (max + Math.log(sum) / lnBase);
+    }
+
+    // maps shared ids to component ids. Missing words are mapped to the unknown word.
+    private int[] map(int model, int[] ids) {
+      int[] idMap = idMaps[model];
+      int[] mapped = new int[ids.length];
+      for (int j = 0; j < ids.length; j++) {
+        int id = idMap[ids[j]];
+        mapped[j] = id == -1 ? unknownIds[model] : id;
+      }
+      return mapped;
+    }
+
+    // maps shared ids of an n-gram to component ids. Lower order models only see the last words.
+    private int[] mapNgram(int model, int[] ids) {
+      int begin = Math.max(0, ids.length - models[model].getOrder());
+      int[] idMap = idMaps[model];
+      int[] mapped = new int[ids.length - begin];
+      for (int j = 0; j < mapped.length; j++) {
+        int id = idMap[ids[begin + j]];
+        mapped[j] = id == -1 ? unknownIds[model] : id;
+      }
+      return mapped;
+    }
+
+    @Override
+    public float getProbability(int... ids) {
+      if (models.length == 1) {
+        return models[0].getProbability(mapNgram(0, ids));
+      }
+      float[] logProbs = new float[models.length];
+      for (int i = 0; i < models.length; i++) {
+        logProbs[i] = models[i].getProbability(mapNgram(i, ids));
+      }
+      return combine(logProbs);
+    }
+
+    @Override
+    public float getTriGramProbability(int id0, int id1, int id2) {
+      return getProbability(id0, id1, id2);
+    }
+
+    @Override
+    public float getTriGramProbability(int id0, int id1, int id2, int fingerPrint) {
+      return getProbability(id0, id1, id2);
+    }
+
+    @Override
+    public float getUnigramProbability(int id) {
+      return getProbability(id);
+    }
+
+    @Override
+    public boolean ngramExists(int... wordIndexes) {
+      for (int i = 0; i < models.length; i++) {
+        if (wordIndexes.length > models[i].getOrder() || !allExist(i, wordIndexes)) {
+          continue;
+        }
+        if (models[i].ngramExists(map(i, wordIndexes))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean allExist(int model, int[] ids) {
+      for (int id : ids) {
+        if (idMaps[model][id] == -1) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public float scoreSentence(int[] ids, float[] positionScores) {
+      if (positionScores != null && positionScores.length < ids.length) {
+        throw new IllegalArgumentException("Position score array length " + positionScores.length
+            + " is less than sequence length " + ids.length);
+      }
+      float[][] componentScores = new float[models.length][ids.length];
+      for (int i = 0; i < models.length; i++) {
+        models[i].scoreSentence(map(i, ids), componentScores[i]);
+      }
+      float[] logProbs = new float[models.length];
+      float total = 0;
+      for (int j = 0; j < ids.length; j++) {
+        for (int i = 0; i < models.length; i++) {
+          logProbs[i] = componentScores[i][j];
+        }
+        float p = combine(logProbs);
+        if (positionScores != null) {
+          positionScores[j] = p;
+        }
+        total += p;
+      }
+      return total;
+    }
+
+    @Override
+    public int getOrder() {
+      return order;
+    }
+
+    @Override
+    public LmVocabulary getVocabulary() {
+      return vocabulary;
+    }
+  }
+}
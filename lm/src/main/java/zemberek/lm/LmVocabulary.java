@@ -1,6 +1,7 @@
 package zemberek.lm;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
@@ -32,6 +33,7 @@ public class LmVocabulary {
   private String unknownWord;
   private String sentenceStart;
   private String sentenceEnd;
+  // these are not used by subclasses that keep words in their own structures.
   private List<String> vocabulary;
   private Map<String, Integer> vocabularyIndexMap = new HashMap<>();
 
@@ -58,6 +60,23 @@ public class LmVocabulary {
     generateMap(vocabulary);
   }
 
+  /**
+   * Constructor for subclasses that keep words in their own structures. Such classes must override
+   * {@link #size()}, {@link #wordAt(int)}, {@link #find(CharSequence)} and {@link #words()}.
+   */
+  protected LmVocabulary(
+      String unknownWord, int unknownWordIndex,
+      String sentenceStart, int sentenceStartIndex,
+      String sentenceEnd, int sentenceEndIndex) {
+    this.unknownWord = unknownWord;
+    this.unknownWordIndex = unknownWordIndex;
+    this.sentenceStart = sentenceStart;
+    this.sentenceStartIndex = sentenceStartIndex;
+    this.sentenceEnd = sentenceEnd;
+    this.sentenceEndIndex = sentenceEndIndex;
+    this.vocabularyIndexMap = null;
+  }
+
   /**
    * Generates a vocabulary from a binary RandomAccessFile. first integer read from the file pointer
    * defines the vocabulary size. Rest is read in UTF. Constructor does not close the
@@ -148,9 +167,9 @@ public class LmVocabulary {
    * There is no guarantee that new vocabulary indexes will match with v1 or v2.
    */
   public static LmVocabulary intersect(LmVocabulary v1, LmVocabulary v2) {
-    HashSet<String> ls = new HashSet<>(v1.vocabulary);
+    HashSet<String> ls = Sets.newHashSet(v1.words());
     List<String> intersection = new ArrayList<>(Math.min(v1.size(), v2.size()));
-    intersection.addAll(new HashSet<>(v2.vocabulary)
+    intersection.addAll(Sets.newHashSet(v2.words())
         .stream()
         .filter(ls::contains)
         .collect(Collectors.toList()));
@@ -184,8 +203,8 @@ public class LmVocabulary {
    * @param dos output stream to serialize.
    */
   public void saveBinary(DataOutputStream dos) throws IOException {
-    dos.writeInt(vocabulary.size());
-    for (String s : vocabulary) {
+    dos.writeInt(size());
+    for (String s : words()) {
       dos.writeUTF(s);
     }
   }
@@ -263,7 +282,7 @@ public class LmVocabulary {
 
   public boolean containsUnknown(int... gramIds) {
     for (int gramId : gramIds) {
-      if (gramId < 0 || gramId >= vocabulary.size() || gramId == unknownWordIndex) {
+      if (gramId < 0 || gramId >= size() || gramId == unknownWordIndex) {
         return true;
       }
     }
@@ -274,7 +293,7 @@ public class LmVocabulary {
    * returns true if any word in vocabulary starts with `_` or `-`
    */
   public boolean containsSuffix() {
-    for (String s : vocabulary) {
+    for (String s : words()) {
       if (s.startsWith("_") || s.startsWith("-")) {
         return true;
       }
@@ -286,7 +305,7 @@ public class LmVocabulary {
    * returns true if any word in vocabulary ends with `_` or `-`
    */
   public boolean containsPrefix() {
-    for (String s : vocabulary) {
+    for (String s : words()) {
       if (s.endsWith("_") || s.endsWith("-")) {
         return true;
       }
@@ -299,16 +318,40 @@ public class LmVocabulary {
    * Note that Vocabulary may contain <UNK> token as well.
    */
   public String getWord(int index) {
-    if (index < 0 || index >= vocabulary.size()) {
+    if (index < 0 || index >= size()) {
       Log.warn("Out of bounds word index is used:" + index);
       return unknownWord;
     }
+    return wordAt(index);
+  }
+
+  /**
+   * Returns the word with index without bounds checking.
+   */
+  protected String wordAt(int index) {
     return vocabulary.get(index);
   }
 
+  /**
+   * Returns index of the word or -1 if it does not exist in the vocabulary.
+   */
+  protected int find(CharSequence word) {
+    Integer k = vocabularyIndexMap.get(word.toString());
+    return k == null ? -1 : k;
+  }
+
   public int indexOf(String word) {
-    Integer k = vocabularyIndexMap.get(word);
-    return k == null ? unknownWordIndex : k;
+    int k = find(word);
+    return k == -1 ? unknownWordIndex : k;
+  }
+
+  /**
+   * Same as {@link #indexOf(String)} but the word can be any CharSequence, such as a reused
+   * StringBuilder. Implementations backed by compact structures do not allocate any objects.
+   */
+  public int indexOf(CharSequence word) {
+    int k = find(word);
+    return k == -1 ? unknownWordIndex : k;
   }
 
   public int getSentenceStartIndex() {
@@ -348,7 +391,11 @@ public class LmVocabulary {
    * locale.
    */
   public Iterable<Integer> alphabeticallySortedWordsIds() {
-    return new TreeMap<>(vocabularyIndexMap).values();
+    TreeMap<String, Integer> sorted = new TreeMap<>();
+    for (int i = 0; i < size(); i++) {
+      sorted.put(wordAt(i), i);
+    }
+    return sorted.values();
   }
 
   public Iterable<String> words() {
@@ -356,13 +403,13 @@ public class LmVocabulary {
   }
 
   public Iterable<String> wordsSorted() {
-    List<String> sorted = new ArrayList<>(vocabulary);
+    List<String> sorted = Lists.newArrayList(words());
     Collections.sort(sorted);
     return sorted;
   }
 
   public Iterable<String> wordsSorted(Locale locale) {
-    List<String> sorted = new ArrayList<>(vocabulary);
+    List<String> sorted = Lists.newArrayList(words());
     sorted.sort(Collator.getInstance(locale));
     return sorted;
   }
@@ -377,7 +424,7 @@ public class LmVocabulary {
     for (int i = 0; i < indexes.length; i++) {
       int index = indexes[i];
       if (contains(index)) {
-        sb.append(vocabulary.get(index));
+        sb.append(wordAt(index));
       } else {
         Log.warn("Out of bounds word index is used:" + index);
         sb.append(unknownWord);
@@ -407,7 +454,7 @@ public class LmVocabulary {
    * @return true if index is within the Vocabulary boundaries.
    */
   public boolean contains(int index) {
-    return index >= 0 && index < vocabulary.size();
+    return index >= 0 && index < size();
   }
 
   /**
@@ -428,7 +475,7 @@ public class LmVocabulary {
    * @return if vocabulary contains the word. For special tokens, it always return true.
    */
   public boolean contains(String word) {
-    return vocabularyIndexMap.containsKey(word);
+    return find(word) != -1;
   }
 
   /**
@@ -468,11 +515,7 @@ public class LmVocabulary {
     int[] indexes = new int[words.length];
     int i = 0;
     for (String word : words) {
-      if (!vocabularyIndexMap.containsKey(word)) {
-        indexes[i] = unknownWordIndex;
-      } else {
-        indexes[i] = vocabularyIndexMap.get(word);
-      }
+      indexes[i] = indexOf(word);
       i++;
     }
     return indexes;
@@ -487,11 +530,7 @@ public class LmVocabulary {
     int[] indexes = new int[history.length + 1];
     for (int j = 0; j <= history.length; j++) {
       String s = j < history.length ? history[j] : word;
-      if (!vocabularyIndexMap.containsKey(s)) {
-        indexes[j] = unknownWordIndex;
-      } else {
-        indexes[j] = vocabularyIndexMap.get(s);
-      }
+      indexes[j] = indexOf(s);
     }
     return indexes;
   }
@@ -525,7 +564,7 @@ public class LmVocabulary {
     int k = 0;
     for (int index : indexes) {
       if (contains(index)) {
-        words[k++] = vocabulary.get(index);
+        words[k++] = wordAt(index);
       } else {
         Log.warn("Out of bounds word index is used:" + index);
         words[k++] = unknownWord;
@@ -1,5 +1,7 @@
 package zemberek.lm;
 
+import java.util.Arrays;
+
 /**
  * Represents an N-gram language model.
  */
@@ -42,6 +44,76 @@ public interface NgramLanguageModel {
    */
   float getTriGramProbability(int id0, int id1, int id2, int fingerPrint);
 
+  /**
+   * Scores a token id sequence. For every position i, log probability of ids[i] given at most
+   * order-1 previous tokens is calculated. Sentence boundary tokens are not added, callers should
+   * include them in ids if necessary.
+   *
+   * @param ids token ids.
+   * @param positionScores if not null, log probability of each position is written to this array.
+   * Its length must not be less than length of ids.
+   * @return sum of log probabilities.
+   */
+  default float scoreSentence(int[] ids, float[] positionScores) {
+    if (positionScores != null && positionScores.length < ids.length) {
+      throw new IllegalArgumentException("Position score array length " + positionScores.length
+          + " is less than sequence length " + ids.length);
+    }
+    float total = 0;
+    for (int i = 0; i < ids.length; i++) {
+      int begin = Math.max(0, i - getOrder() + 1);
+      float p = getProbability(Arrays.copyOfRange(ids, begin, i + 1));
+      if (positionScores != null) {
+        positionScores[i] = p;
+      }
+      total += p;
+    }
+    return total;
+  }
+
+  /**
+   * Scores a batch of token id sequences.
+   *
+   * @param sentences token id sequences.
+   * @return sum of log probabilities for each sequence.
+   */
+  default float[] scoreSentences(int[][] sentences) {
+    float[] totals = new float[sentences.length];
+    for (int i = 0; i < sentences.length; i++) {
+      totals[i] = scoreSentence(sentences[i], null);
+    }
+    return totals;
+  }
+
+  /**
+   * Scores alternative tokens for the same position. For every candidate, log probabilities of the
+   * candidate and the right context tokens are calculated for the sequence leftContext, candidate,
+   * rightContext. Probabilities of left context tokens do not depend on the candidate, so they are
+   * not included. Sentence boundary tokens are not added.
+   *
+   * @param leftContext token ids before the candidate. Only the last order-1 ids are used.
+   * @param candidates candidate token ids.
+   * @param rightContext token ids after the candidate. Usually at most order-1 ids are given as
+   * probabilities of later tokens do not depend on the candidate.
+   * @return sum of log probabilities for each candidate.
+   */
+  default float[] scoreCandidates(int[] leftContext, int[] candidates, int[] rightContext) {
+    int[] ids = new int[leftContext.length + 1 + rightContext.length];
+    System.arraycopy(leftContext, 0, ids, 0, leftContext.length);
+    System.arraycopy(rightContext, 0, ids, leftContext.length + 1, rightContext.length);
+    float[] scores = new float[candidates.length];
+    for (int c = 0; c < candidates.length; c++) {
+      ids[leftContext.length] = candidates[c];
+      float total = 0;
+      for (int i = leftContext.length; i < ids.length; i++) {
+        int begin = Math.max(0, i - getOrder() + 1);
+        total += getProbability(Arrays.copyOfRange(ids, begin, i + 1));
+      }
+      scores[c] = total;
+    }
+    return scores;
+  }
+
   /**
    * Order of language model
    *
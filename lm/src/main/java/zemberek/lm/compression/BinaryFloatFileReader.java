@@ -9,8 +9,10 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import zemberek.core.collections.Histogram;
 import zemberek.core.logging.Log;
+import zemberek.core.math.DoubleArrays;
 import zemberek.core.quantization.BinningQuantizer;
 import zemberek.core.quantization.KMeansQuantizer;
+import zemberek.core.quantization.LinearQuantizer;
 import zemberek.core.quantization.Quantizer;
 import zemberek.core.quantization.QuantizerType;
 
@@ -89,8 +91,15 @@ public class BinaryFloatFileReader {
           return BinningQuantizer.logCountBinning(lookup, counts, bitCount);
         case KMEANS:
           return KMeansQuantizer.generateFromRawData(lookup, bitCount);
+        case LINEAR:
+          // distinct values are kept as they are if they fit.
+          if (lookup.length <= n) {
+            return BinningQuantizer.linearBinning(lookup, bitCount);
+          }
+          return LinearQuantizer.getByBitRange(
+              DoubleArrays.min(lookup), DoubleArrays.max(lookup), bitCount);
         default:
-          throw new UnsupportedOperationException("Linear cannot be used in this operation");
+          throw new UnsupportedOperationException(type + " cannot be used in this operation");
       }
     }
 
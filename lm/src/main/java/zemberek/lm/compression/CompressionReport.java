@@ -0,0 +1,240 @@
+package zemberek.lm.compression;
+
+import static java.lang.String.format;
+import static java.util.Locale.ENGLISH;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures accuracy and size of a SmoothLm against the uncompressed model it is generated from.
+ * For each order it reports:
+ * <pre>
+ * - Fingerprint, probability and back-off sizes and bytes used by n-gram data and MPHF.
+ * - False positive rate: ratio of random n-grams that do not exist in the source model but are
+ *   reported as existing by SmoothLm. Expected value is 2^-(fingerprint bits).
+ * - Mean and maximum absolute error of quantized log10 probability and back-off values of
+ *   existing n-grams.
+ * </pre>
+ * Only a sample of n-grams is checked so that reports of large models are generated quickly.
+ */
+public class CompressionReport {
+
+  public static final int DEFAULT_SAMPLE_SIZE = 100_000;
+
+  private final OrderStats[] stats;
+  private final long fileSize;
+
+  private CompressionReport(OrderStats[] stats, long fileSize) {
+    this.stats = stats;
+    this.fileSize = fileSize;
+  }
+
+  public static CompressionReport generate(File smoothLmFile, MultiFileUncompressedLm source)
+      throws IOException {
+    return generate(smoothLmFile, source, DEFAULT_SAMPLE_SIZE, 1);
+  }
+
+  /**
+   * Generates a report of `smoothLmFile`. At most `sampleSize` n-grams of each order are used
+   * for error and false positive measurements.
+   */
+  public static CompressionReport generate(File smoothLmFile, MultiFileUncompressedLm source,
+      int sampleSize, long seed) throws IOException {
+    SmoothLm lm = SmoothLm.builder(smoothLmFile).build();
+    if (lm.getOrder() != source.getOrder()) {
+      throw new IllegalArgumentException("Model orders do not match. SmoothLm: "
+          + lm.getOrder() + " source: " + source.getOrder());
+    }
+    Random random = new Random(seed);
+    OrderStats[] stats = new OrderStats[lm.getOrder() + 1];
+    for (int n = 1; n <= lm.getOrder(); n++) {
+      OrderStats s = new OrderStats(n);
+      s.count = lm.getGramCount(n);
+      s.fingerPrintBits = lm.getFingerPrintBits(n);
+      s.probabilityBits = lm.getProbabilityBits(n);
+      s.backoffBits = lm.getBackoffBits(n);
+      s.dataBytes = lm.getGramDataSize(n);
+      s.mphfBytes = (long) (lm.getMphfBitsPerKey(n) * s.count / 8);
+      measureErrors(lm, source, n, sampleSize, s);
+      if (n > 1) {
+        measureFalsePositives(lm, source, n, sampleSize, random, s);
+      }
+      stats[n] = s;
+    }
+    return new CompressionReport(stats, smoothLmFile.length());
+  }
+
+  // compares values of the first `sampleSize` n-grams of the source with SmoothLm values.
+  private static void measureErrors(SmoothLm lm, MultiFileUncompressedLm source, int n,
+      int sampleSize, OrderStats s) throws IOException {
+    boolean hasBackoff = n < source.getOrder();
+    try (DataInputStream grams = stream(source.getGramFile(n));
+        DataInputStream probs = stream(source.getProbFile(n));
+        DataInputStream backoffs = hasBackoff ? stream(source.getBackoffFile(n)) : null) {
+      grams.skipBytes(8);
+      // uni-gram count in info file may include special tokens that do not have values.
+      int valueCount = probs.readInt();
+      if (backoffs != null) {
+        backoffs.skipBytes(4);
+      }
+      int[] key = new int[n];
+      int limit = Math.min(sampleSize, valueCount);
+      for (int i = 0; i < limit; i++) {
+        for (int j = 0; j < n; j++) {
+          key[j] = grams.readInt();
+        }
+        double error = Math.abs(lm.getProbabilityValue(key) - probs.readFloat());
+        s.probabilityErrorSum += error;
+        s.maxProbabilityError = Math.max(s.maxProbabilityError, error);
+        if (backoffs != null) {
+          error = Math.abs(lm.getBackoffValue(key) - backoffs.readFloat());
+          s.backoffErrorSum += error;
+          s.maxBackoffError = Math.max(s.maxBackoffError, error);
+        }
+        s.errorSampleCount++;
+      }
+    }
+  }
+
+  // generates random n-grams and checks the ones that do not exist in the source model.
+  private static void measureFalsePositives(SmoothLm lm, MultiFileUncompressedLm source, int n,
+      int sampleSize, Random random, OrderStats s) throws IOException {
+    int vocabularySize = source.getCount(1);
+    Set<List<Integer>> candidates = new HashSet<>(sampleSize * 2);
+    for (int i = 0; i < sampleSize; i++) {
+      List<Integer> ngram = new ArrayList<>(n);
+      for (int j = 0; j < n; j++) {
+        ngram.add(random.nextInt(vocabularySize));
+      }
+      candidates.add(ngram);
+    }
+    try (DataInputStream grams = stream(source.getGramFile(n))) {
+      grams.skipBytes(8);
+      Integer[] key = new Integer[n];
+      for (int i = 0; i < source.getCount(n); i++) {
+        for (int j = 0; j < n; j++) {
+          key[j] = grams.readInt();
+        }
+        candidates.remove(Arrays.asList(key));
+      }
+    }
+    int[] ids = new int[n];
+    for (List<Integer> candidate : candidates) {
+      for (int j = 0; j < n; j++) {
+        ids[j] = candidate.get(j);
+      }
+      if (lm.ngramExists(ids)) {
+        s.falsePositiveCount++;
+      }
+    }
+    s.nonExistingSampleCount = candidates.size();
+  }
+
+  private static DataInputStream stream(File file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+  }
+
+  public OrderStats getStats(int n) {
+    return stats[n];
+  }
+
+  public long getFileSize() {
+    return fileSize;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(format(ENGLISH, "Model size: %d bytes%n", fileSize));
+    for (int n = 1; n < stats.length; n++) {
+      sb.append(stats[n]).append(format("%n"));
+    }
+    return sb.toString();
+  }
+
+  public static class OrderStats {
+
+    public final int order;
+    int count;
+    int fingerPrintBits;
+    int probabilityBits;
+    int backoffBits;
+    long dataBytes;
+    long mphfBytes;
+    int errorSampleCount;
+    double probabilityErrorSum;
+    double maxProbabilityError;
+    double backoffErrorSum;
+    double maxBackoffError;
+    int nonExistingSampleCount;
+    int falsePositiveCount;
+
+    OrderStats(int order) {
+      this.order = order;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * Bytes used by fingerprint, probability and back-off data and the MPHF of this order.
+     */
+    public long getSizeInBytes() {
+      return dataBytes + mphfBytes;
+    }
+
+    public double getFalsePositiveRate() {
+      return nonExistingSampleCount == 0 ? 0 : (double) falsePositiveCount / nonExistingSampleCount;
+    }
+
+    public double getExpectedFalsePositiveRate() {
+      return fingerPrintBits == 0 ? 0 : Math.pow(2, -fingerPrintBits);
+    }
+
+    public double getMeanProbabilityError() {
+      return errorSampleCount == 0 ? 0 : probabilityErrorSum / errorSampleCount;
+    }
+
+    public double getMaxProbabilityError() {
+      return maxProbabilityError;
+    }
+
+    public double getMeanBackoffError() {
+      return errorSampleCount == 0 ? 0 : backoffErrorSum / errorSampleCount;
+    }
+
+    public double getMaxBackoffError() {
+      return maxBackoffError;
+    }
+
+    @Override
+    public String toString() {
+      String result = format(ENGLISH,
+          "%d Grams: Count= %d  Bits= %d-%d-%d  Size= %d bytes (%.2f bits per n-gram)  "
+              + "Prob. error mean= %.5f max= %.5f",
+          order, count, fingerPrintBits, probabilityBits, backoffBits, getSizeInBytes(),
+          count == 0 ? 0 : getSizeInBytes() * 8d / count,
+          getMeanProbabilityError(), maxProbabilityError);
+      if (backoffBits > 0) {
+        result += format(ENGLISH, "  Back-off error mean= %.5f max= %.5f",
+            getMeanBackoffError(), maxBackoffError);
+      }
+      if (order > 1) {
+        result += format(ENGLISH, "  False positive rate= %.6f (expected %.6f)",
+            getFalsePositiveRate(), getExpectedFalsePositiveRate());
+      }
+      return result;
+    }
+  }
+}
@@ -2,7 +2,19 @@ package zemberek.lm.compression;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import zemberek.core.io.MappedDataInputStream;
 
+/**
+ * Fingerprint, probability rank and back-off rank data of n-grams of an order. Entries are stored
+ * back to back, values of an entry are stored big endian in fingerprint, probability, back-off
+ * order. If all value sizes are multiples of 8 bits, values are read as whole bytes. Otherwise
+ * entries are bit packed, an entry starts right after the last bit of the previous one.
+ * <p>
+ * If sizes are given in bits, fingerprints are the highest bits of the mixed n-gram hash instead of
+ * the lowest bits of the hash. MPHF slots depend on the lowest bits, so they would make
+ * fingerprints of n-grams that share a slot more likely to collide.
+ */
 public class GramDataArray {
 
   private static final int MAX_BUF = 0x3fffffff;
@@ -12,45 +24,118 @@ public class GramDataArray {
   final int fpMask; // to access fingerprint data length in bytes.
   final int probSize; // size of probability data length in bytes
   final int backoffSize; // size of backoff length in bytes
+  final int fpBits; // length of fingerprint in bits
+  final int probBits; // length of probability rank in bits
+  final int backoffBits; // length of back-off rank in bits
+  final boolean bitPacked; // true if any value size is not a multiple of 8 bits.
+  final boolean mixedFingerprints; // true if fingerprints are generated with mixedFingerprint()
   int count; // gram count
   int blockSize; // defines the size of the key data. Such as if 3 bytes FP, 2 bytes Prob , 2 Bytes Backoff blockSize = 7
-  byte[][] data; // holds the actual data. [page count][page length * block size ] bytes
+  int blockBits; // size of the key data in bits.
+  // holds the actual data. [page count][page length * block size ] bytes. Pages are either heap
+  // buffers or memory mapped views of the model file.
+  ByteBuffer[] data;
 
+  /**
+   * Reads gram data with value sizes given in bytes.
+   */
   public GramDataArray(DataInputStream dis) throws IOException {
+    this(dis, false);
+  }
+
+  /**
+   * Reads gram data. If `sizesInBits` is true, value sizes in the header are bit counts and
+   * entries may be bit packed. Otherwise sizes are byte counts.
+   */
+  public GramDataArray(DataInputStream dis, boolean sizesInBits) throws IOException {
     count = dis.readInt();
-    this.fpSize = dis.readInt();
-    this.probSize = dis.readInt();
-    this.backoffSize = dis.readInt();
+    int unit = sizesInBits ? 1 : 8;
+    this.fpBits = dis.readInt() * unit;
+    this.probBits = dis.readInt() * unit;
+    this.backoffBits = dis.readInt() * unit;
+    this.bitPacked = fpBits % 8 != 0 || probBits % 8 != 0 || backoffBits % 8 != 0;
+    this.mixedFingerprints = sizesInBits;
+    this.fpSize = (fpBits + 7) / 8;
+    this.probSize = (probBits + 7) / 8;
+    this.backoffSize = (backoffBits + 7) / 8;
 
-    if (fpSize == 4) {
+    if (fpBits == 32) {
       fpMask = 0xffffffff;
     } else {
-      fpMask = (1 << (fpSize * 8)) - 1;
+      fpMask = (1 << fpBits) - 1;
     }
 
+    blockBits = fpBits + probBits + backoffBits;
     blockSize = fpSize + probSize + backoffSize;
-    int pageLength = getPowerOf2(MAX_BUF / blockSize, MAX_BUF / blockSize);
+    int pageLength;
+    if (bitPacked) {
+      // pages contain a multiple of 8 entries so that they start from byte boundaries.
+      int maxEntries = (int) Math.min(Integer.MAX_VALUE, MAX_BUF * 8L / blockBits);
+      pageLength = Math.max(8, getPowerOf2(maxEntries, maxEntries));
+    } else {
+      pageLength = getPowerOf2(MAX_BUF / blockSize, MAX_BUF / blockSize);
+    }
     pageShift = 32 - Integer.numberOfLeadingZeros(pageLength - 1);
-    indexMask = (1 << pageShift - 1) - 1;
-    long l = 0;
-    int pageCounter = 0;
-    while (l < (long)count * blockSize) {
-      pageCounter++;
-      l += (pageLength * blockSize);
-    }
-    data = new byte[pageCounter][];
-    int total = 0;
+    indexMask = pageLength - 1;
+    long totalBytes = dataSize(count);
+    long pageBytes = dataSize(pageLength);
+    int pageCounter = (int) ((totalBytes + pageBytes - 1) / pageBytes);
+    data = new ByteBuffer[pageCounter];
+    long total = 0;
     for (int i = 0; i < pageCounter; i++) {
+      int pageSize;
       if (i < pageCounter - 1) {
-        data[i] = new byte[pageLength * blockSize];
-        total += pageLength * blockSize;
+        pageSize = (int) pageBytes;
+        total += pageBytes;
       } else {
-        data[i] = new byte[(int)((long)count * blockSize - total)];
+        pageSize = (int) (totalBytes - total);
+      }
+      if (dis instanceof MappedDataInputStream) {
+        data[i] = ((MappedDataInputStream) dis).map(pageSize);
+      } else {
+        byte[] page = new byte[pageSize];
+        dis.readFully(page);
+        data[i] = ByteBuffer.wrap(page);
       }
-      dis.readFully(data[i]);
     }
   }
 
+  /**
+   * Returns the amount of bytes used by `entryCount` entries.
+   */
+  long dataSize(long entryCount) {
+    return bitPacked ? (entryCount * blockBits + 7) / 8 : entryCount * blockSize;
+  }
+
+  /**
+   * Returns the amount of bytes used by entry data.
+   */
+  public long sizeInBytes() {
+    return dataSize(count);
+  }
+
+  // reads `bits` bits of entry `index` starting from bit `offset` of the entry.
+  private int readBits(int index, int offset, int bits) {
+    final ByteBuffer d = data[index >>> pageShift];
+    final long bitIndex = (long) (index & indexMask) * blockBits + offset;
+    int byteIndex = (int) (bitIndex >>> 3);
+    final int end = (int) (bitIndex & 7) + bits;
+    // at most 5 bytes are needed for 32 bits.
+    long value = 0;
+    for (int read = 0; read < end; read += 8) {
+      value = (value << 8) | (d.get(byteIndex++) & 0xff);
+    }
+    value >>>= ((end + 7) & ~7) - end;
+    return (int) (value & ((1L << bits) - 1));
+  }
+
+  /**
+   * Returns highest `bits` bits of the mixed hash value.
+   */
+  static int mixedFingerprint(int hash, int bits) {
+    return (hash * 0x9E3779B9) >>> (32 - bits);
+  }
+
   int getPowerOf2(int k, int limit) {
     if (k <= 2) {
       return 1;
@@ -67,64 +152,74 @@ public class GramDataArray {
   }
 
   public int getFingerPrint(int index) {
+    if (bitPacked) {
+      return readBits(index, 0, fpBits);
+    }
     final int pageIndex = (index & indexMask) * blockSize;
-    byte[] d = data[index >>> pageShift];
+    ByteBuffer d = data[index >>> pageShift];
     switch (fpSize) {
       case 1:
-        return d[pageIndex] & 0xff;
+        return d.get(pageIndex) & 0xff;
       case 2:
-        return ((d[pageIndex] & 0xff) << 8) |
-            (d[pageIndex + 1] & 0xff);
+        return ((d.get(pageIndex) & 0xff) << 8) |
+            (d.get(pageIndex + 1) & 0xff);
       case 3:
-        return ((d[pageIndex] & 0xff) << 16) |
-            ((d[pageIndex + 1] & 0xff) << 8) |
-            (d[pageIndex + 2] & 0xff);
+        return ((d.get(pageIndex) & 0xff) << 16) |
+            ((d.get(pageIndex + 1) & 0xff) << 8) |
+            (d.get(pageIndex + 2) & 0xff);
       case 4:
-        return ((d[pageIndex] & 0xff) << 24) |
-            ((d[pageIndex + 1] & 0xff) << 16) |
-            ((d[pageIndex + 2] & 0xff) << 8) |
-            (d[pageIndex + 3] & 0xff);
+        return ((d.get(pageIndex) & 0xff) << 24) |
+            ((d.get(pageIndex + 1) & 0xff) << 16) |
+            ((d.get(pageIndex + 2) & 0xff) << 8) |
+            (d.get(pageIndex + 3) & 0xff);
     }
     return -1;
   }
 
   public boolean checkFingerPrint(int fpToCheck_, int globalIndex) {
-    final int fpToCheck = fpToCheck_ & fpMask;
+    final int fpToCheck = mixedFingerprints ?
+        mixedFingerprint(fpToCheck_, fpBits) : fpToCheck_ & fpMask;
+    if (bitPacked) {
+      return fpToCheck == readBits(globalIndex, 0, fpBits);
+    }
     final int pageIndex = (globalIndex & indexMask) * blockSize;
-    byte[] d = data[globalIndex >>> pageShift];
+    ByteBuffer d = data[globalIndex >>> pageShift];
     switch (fpSize) {
       case 1:
-        return fpToCheck == (d[pageIndex] & 0xff);
+        return fpToCheck == (d.get(pageIndex) & 0xff);
       case 2:
-        return (fpToCheck >>> 8 == (d[pageIndex] & 0xff)) && ((fpToCheck & 0xff) == (
-            d[pageIndex + 1] & 0xff));
+        return (fpToCheck >>> 8 == (d.get(pageIndex) & 0xff)) && ((fpToCheck & 0xff) == (
+            d.get(pageIndex + 1) & 0xff));
       case 3:
-        return (fpToCheck >>> 16 == (d[pageIndex] & 0xff)) &&
-            ((fpToCheck >>> 8 & 0xff) == (d[pageIndex + 1] & 0xff)) &&
-            ((fpToCheck & 0xff) == (d[pageIndex + 2] & 0xff));
+        return (fpToCheck >>> 16 == (d.get(pageIndex) & 0xff)) &&
+            ((fpToCheck >>> 8 & 0xff) == (d.get(pageIndex + 1) & 0xff)) &&
+            ((fpToCheck & 0xff) == (d.get(pageIndex + 2) & 0xff));
       case 4:
-        return (fpToCheck >>> 24 == (d[pageIndex] & 0xff)) &&
-            ((fpToCheck >>> 16 & 0xff) == (d[pageIndex + 1] & 0xff)) &&
-            ((fpToCheck >>> 8 & 0xff) == (d[pageIndex + 2] & 0xff)) &&
-            ((fpToCheck & 0xff) == (d[pageIndex + 3] & 0xff));
+        return (fpToCheck >>> 24 == (d.get(pageIndex) & 0xff)) &&
+            ((fpToCheck >>> 16 & 0xff) == (d.get(pageIndex + 1) & 0xff)) &&
+            ((fpToCheck >>> 8 & 0xff) == (d.get(pageIndex + 2) & 0xff)) &&
+            ((fpToCheck & 0xff) == (d.get(pageIndex + 3) & 0xff));
       default:
         throw new IllegalStateException("fpSize must be between 1 and 4");
     }
   }
 
   public int getProbabilityRank(int index) {
+    if (bitPacked) {
+      return readBits(index, fpBits, probBits);
+    }
     final int pageId = index >>> pageShift;
     final int pageIndex = (index & indexMask) * blockSize + fpSize;
-    byte[] d = data[pageId];
+    ByteBuffer d = data[pageId];
     switch (probSize) {
       case 1:
-        return d[pageIndex] & 0xff;
+        return d.get(pageIndex) & 0xff;
       case 2:
-        return ((d[pageIndex] & 0xff) << 8) |
-            (d[pageIndex + 1] & 0xff);
+        return ((d.get(pageIndex) & 0xff) << 8) |
+            (d.get(pageIndex + 1) & 0xff);
       case 3:
-        return ((d[pageIndex] & 0xff) << 16) |
-            ((d[pageIndex + 1] & 0xff) << 8) | (d[pageIndex + 2] & 0xff);
+        return ((d.get(pageIndex) & 0xff) << 16) |
+            ((d.get(pageIndex + 1) & 0xff) << 8) | (d.get(pageIndex + 2) & 0xff);
     }
     return -1;
   }
@@ -138,32 +233,42 @@ public class GramDataArray {
    * [fingerprint|probability rank|backoff rank]
    */
   public int getCompact(int index) {
+    if (bitPacked) {
+      throw new UnsupportedOperationException("Bit packed entries cannot be loaded as compact.");
+    }
     final int pageIndex = (index & indexMask) * blockSize;
-    final byte[] d = data[index >>> pageShift];
-    return ((d[pageIndex] & 0xff) << 24) |
-        ((d[pageIndex + 1] & 0xff) << 16) |
-        ((d[pageIndex + 2] & 0xff) << 8) |
-        (d[pageIndex + 3] & 0xff);
+    final ByteBuffer d = data[index >>> pageShift];
+    return ((d.get(pageIndex) & 0xff) << 24) |
+        ((d.get(pageIndex + 1) & 0xff) << 16) |
+        ((d.get(pageIndex + 2) & 0xff) << 8) |
+        (d.get(pageIndex + 3) & 0xff);
   }
 
   public int getBackoffRank(int index) {
+    if (bitPacked) {
+      return readBits(index, fpBits + probBits, backoffBits);
+    }
     final int pageId = index >>> pageShift;
     final int pageIndex = (index & indexMask) * blockSize + fpSize + probSize;
-    byte[] d = data[pageId];
+    ByteBuffer d = data[pageId];
     switch (backoffSize) {
       case 1:
-        return d[pageIndex] & 0xff;
+        return d.get(pageIndex) & 0xff;
       case 2:
-        return ((d[pageIndex] & 0xff) << 8) | (d[pageIndex + 1] & 0xff);
+        return ((d.get(pageIndex) & 0xff) << 8) | (d.get(pageIndex + 1) & 0xff);
       case 3:
-        return ((d[pageIndex] & 0xff) << 16) | ((d[pageIndex + 1] & 0xff) << 8) | (d[pageIndex + 2]
-            & 0xff);
+        return ((d.get(pageIndex) & 0xff) << 16) | ((d.get(pageIndex + 1) & 0xff) << 8) |
+            (d.get(pageIndex + 2) & 0xff);
     }
     return -1;
   }
 
   void load(int index, byte[] buff) {
-    System
-        .arraycopy(data[index >>> pageShift], (index & indexMask) * blockSize, buff, 0, blockSize);
+    if (bitPacked) {
+      throw new UnsupportedOperationException("Bit packed entries cannot be loaded as bytes.");
+    }
+    ByteBuffer d = data[index >>> pageShift].duplicate();
+    d.position((index & indexMask) * blockSize);
+    d.get(buff, 0, blockSize);
   }
 }
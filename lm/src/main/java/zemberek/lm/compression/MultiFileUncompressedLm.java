@@ -14,9 +14,17 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import zemberek.core.SpaceTabTokenizer;
 import zemberek.core.logging.Log;
 import zemberek.core.quantization.DoubleLookup;
@@ -59,14 +67,36 @@ public class MultiFileUncompressedLm {
       File dir,
       String encoding,
       int fractionDigits) throws IOException {
+    return generate(arpaFile, dir, encoding, fractionDigits, 1);
+  }
+
+  /**
+   * Generates a multi file uncompressed model from an Arpa file. N-gram lines are parsed in blocks
+   * using `threadCount` threads and written in their original order, so output files are the same
+   * for any thread count. Only a limited amount of blocks are kept in memory at any time.
+   */
+  public static MultiFileUncompressedLm generate(
+      File arpaFile,
+      File dir,
+      String encoding,
+      int fractionDigits,
+      int threadCount) throws IOException {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("Thread count must be positive but it is " + threadCount);
+    }
     if (dir.exists() && !dir.isDirectory()) {
       throw new IllegalArgumentException(dir + " is not a directory!");
     } else {
       java.nio.file.Files.createDirectories(dir.toPath());
     }
 
-    long elapsedTime = Files.asCharSource(arpaFile, Charset.forName(encoding)).readLines(
-        new ArpaToBinaryConverter(dir, fractionDigits));
+    ArpaToBinaryConverter converter = new ArpaToBinaryConverter(dir, fractionDigits, threadCount);
+    long elapsedTime;
+    try {
+      elapsedTime = Files.asCharSource(arpaFile, Charset.forName(encoding)).readLines(converter);
+    } finally {
+      converter.shutdown();
+    }
     Log.info("Multi file uncompressed binary model is generated in " + (double) elapsedTime / 1000d
         + " seconds");
     if (!new File(dir, INFO_FILE_NAME).exists()) {
@@ -136,19 +166,57 @@ public class MultiFileUncompressedLm {
   }
 
   public void generateRankFiles(int i, int bit, QuantizerType quantizerType) throws IOException {
-    if (bit > 24) {
+    generateRankFiles(i, bit, bit, quantizerType);
+  }
+
+  /**
+   * Generates probability and back-off rank files of order i with different bit sizes. Back-off
+   * rank file is not generated for the highest order.
+   */
+  public void generateRankFiles(int i, int probabilityBits, int backoffBits,
+      QuantizerType quantizerType) throws IOException {
+    if (probabilityBits > 24 || backoffBits > 24) {
       throw new IllegalArgumentException(
-          "Cannot generate rank file larger than 24 bits but it is:" + bit);
+          "Cannot generate rank file larger than 24 bits but it is:"
+              + Math.max(probabilityBits, backoffBits));
     }
     Log.info("Calculating probabilty rank values for :" + i + " Grams");
     File probFile = getProbFile(i);
-    generateRankFile(bit, i, probFile, new File(dir, i + PROB_FILE_SUFFIX + ".rank"),
+    generateRankFile(probabilityBits, i, probFile, new File(dir, i + PROB_FILE_SUFFIX + ".rank"),
         quantizerType);
     if (i < counts.length - 1) {
       File backoffFile = getBackoffFile(i);
       Log.info("Calculating back-off rank values for :" + i + " Grams");
-      generateRankFile(bit, i, backoffFile, new File(dir, i + BACKOFF_FILE_SUFFIX + ".rank"),
-          quantizerType);
+      generateRankFile(backoffBits, i, backoffFile,
+          new File(dir, i + BACKOFF_FILE_SUFFIX + ".rank"), quantizerType);
+    }
+  }
+
+  /**
+   * Generates rank files of all orders. Orders are processed concurrently with `threadCount`
+   * threads.
+   */
+  public void generateRankFiles(int bit, QuantizerType quantizerType, int threadCount)
+      throws IOException {
+    if (threadCount <= 1) {
+      generateRankFiles(bit, quantizerType);
+      return;
+    }
+    ExecutorService service = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 1; i < counts.length; i++) {
+        final int n = i;
+        futures.add(service.submit(() -> {
+          generateRankFiles(n, bit, quantizerType);
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        waitFor(future);
+      }
+    } finally {
+      service.shutdownNow();
     }
   }
 
@@ -216,9 +284,76 @@ public class MultiFileUncompressedLm {
     return new File(dir, VOCAB_FILE_NAME);
   }
 
+  /**
+   * Saves this model as an Arpa file. Values are written as they are stored, in log10.
+   */
+  public void saveArpa(File arpaFile) throws IOException {
+    LmVocabulary vocabulary = LmVocabulary.loadFromBinary(getVocabularyFile());
+    try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(
+        new BufferedOutputStream(new FileOutputStream(arpaFile)), StandardCharsets.UTF_8))) {
+      pw.println("\\data\\");
+      for (int n = 1; n <= order; n++) {
+        pw.println("ngram " + n + "=" + counts[n]);
+      }
+      for (int n = 1; n <= order; n++) {
+        pw.println();
+        pw.println("\\" + n + "-grams:");
+        try (DataInputStream grams = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(getGramFile(n))));
+            DataInputStream probs = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(getProbFile(n))));
+            DataInputStream backoffs = n < order ? new DataInputStream(
+                new BufferedInputStream(new FileInputStream(getBackoffFile(n)))) : null) {
+          // count values in file headers are skipped, unigram files may contain special tokens
+          // that are not counted in their headers.
+          grams.skipBytes(8);
+          probs.readInt();
+          if (backoffs != null) {
+            backoffs.readInt();
+          }
+          int count = counts[n];
+          StringBuilder sb = new StringBuilder();
+          for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            sb.append(probs.readFloat()).append('\t');
+            for (int j = 0; j < n; j++) {
+              if (j > 0) {
+                sb.append(' ');
+              }
+              sb.append(vocabulary.getWord(grams.readInt()));
+            }
+            if (backoffs != null) {
+              sb.append('\t').append(backoffs.readFloat());
+            }
+            pw.println(sb);
+          }
+        }
+      }
+      pw.println();
+      pw.println("\\end\\");
+    }
+  }
+
+  // waits for the task and rethrows its failure as IOException.
+  static <T> T waitFor(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a task.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
   private static class ArpaToBinaryConverter implements LineProcessor<Long> {
 
     public static final int DEFAULT_UNKNOWN_PROBABILTY = -20;
+    // amount of n-gram lines parsed as a single task.
+    static final int LINE_BLOCK_SIZE = 100_000;
     int ngramCounter = 0;
     int _n;
 
@@ -236,11 +371,23 @@ public class MultiFileUncompressedLm {
     LmVocabulary.Builder vocabularyBuilder = new LmVocabulary.Builder();
     // This will be generated after reading unigrams.
     LmVocabulary lmVocabulary;
-    ArpaToBinaryConverter(File dir, int fractionDigitCount)
+
+    // n-gram lines are collected in blocks. Blocks are parsed by the executor if there is one and
+    // written to streams in reading order.
+    List<String> lineBlock = new ArrayList<>(LINE_BLOCK_SIZE);
+    ArrayDeque<Future<ParsedBlock>> pendingBlocks = new ArrayDeque<>();
+    int maxPendingBlocks;
+    ExecutorService executor;
+
+    ArpaToBinaryConverter(File dir, int fractionDigitCount, int threadCount)
         throws FileNotFoundException {
       Log.info("Generating multi file uncompressed language model from Arpa file in directory: %s",
           dir.getAbsolutePath());
       this.dir = dir;
+      if (threadCount > 1) {
+        executor = Executors.newFixedThreadPool(threadCount);
+        maxPendingBlocks = threadCount * 2;
+      }
       if (fractionDigitCount >= 0) {
         fractionMultiplier = Math.pow(10, fractionDigitCount);
       } else {
@@ -374,31 +521,17 @@ public class MultiFileUncompressedLm {
           if (clean.length() == 0 || clean.startsWith("\\")) {
             break;
           }
-          tokens = tokenizer.split(clean);
-          logProbability = Float.parseFloat(tokens[0]);
-
-          for (int i = 0; i < _n; i++) {
-            int id = lmVocabulary.indexOf(tokens[i + 1]);
-            gramOs.writeInt(id);
-          }
-
-          // probabilities
-
-          probOs.writeFloat(reduceFraction(logProbability));
-          if (_n < ngramCounts.size()) {
-            logBackoff = 0;
-            if (tokens.length == _n + 2) {
-              logBackoff = Float.parseFloat(tokens[_n + 1]);
-            }
-            backoOffs.writeFloat(reduceFraction(logBackoff));
-          }
-
-          if (ngramCounter > 0 && ngramCounter % 1000000 == 0) {
-            Log.info(ngramCounter + " grams are written so far.");
-          }
-
+          lineBlock.add(clean);
           ngramCounter++;
-          if (ngramCounter == ngramCounts.get(_n - 1)) {
+          int sectionCount = ngramCounts.get(_n - 1);
+          if (lineBlock.size() == LINE_BLOCK_SIZE || ngramCounter == sectionCount) {
+            submitBlock();
+          }
+          if (ngramCounter == sectionCount) {
+            // blocks do not cross n-gram sections, so all blocks of this order are written before
+            // streams of the next order are created.
+            writePendingBlocks(0);
+            Log.info(ngramCounter + " " + _n + "-grams are written.");
             ngramCounter = 0;
             // if there is no more ngrams, exit
             if (ngramCounts.size() == _n) {
@@ -426,6 +559,67 @@ public class MultiFileUncompressedLm {
       return true;
     }
 
+    private void submitBlock() throws IOException {
+      List<String> lines = lineBlock;
+      lineBlock = new ArrayList<>(LINE_BLOCK_SIZE);
+      int n = _n;
+      boolean hasBackoff = _n < ngramCounts.size();
+      if (executor == null) {
+        writeBlock(parseBlock(lines, n, hasBackoff));
+        return;
+      }
+      pendingBlocks.add(executor.submit(() -> parseBlock(lines, n, hasBackoff)));
+      writePendingBlocks(maxPendingBlocks);
+    }
+
+    // writes completed blocks in submission order until at most `limit` blocks are pending.
+    private void writePendingBlocks(int limit) throws IOException {
+      while (pendingBlocks.size() > limit) {
+        writeBlock(waitFor(pendingBlocks.poll()));
+      }
+    }
+
+    private ParsedBlock parseBlock(List<String> lines, int n, boolean hasBackoff) {
+      ParsedBlock block = new ParsedBlock(lines.size(), n, hasBackoff);
+      int k = 0;
+      for (String line : lines) {
+        String[] tokens = tokenizer.split(line);
+        for (int i = 0; i < n; i++) {
+          block.ids[k * n + i] = lmVocabulary.indexOf(tokens[i + 1]);
+        }
+        block.probabilities[k] = reduceFraction(Float.parseFloat(tokens[0]));
+        if (hasBackoff) {
+          float logBackoff = 0;
+          if (tokens.length == n + 2) {
+            logBackoff = Float.parseFloat(tokens[n + 1]);
+          }
+          block.backoffs[k] = reduceFraction(logBackoff);
+        }
+        k++;
+      }
+      return block;
+    }
+
+    private void writeBlock(ParsedBlock block) throws IOException {
+      for (int id : block.ids) {
+        gramOs.writeInt(id);
+      }
+      for (float probability : block.probabilities) {
+        probOs.writeFloat(probability);
+      }
+      if (block.backoffs != null) {
+        for (float backoff : block.backoffs) {
+          backoOffs.writeFloat(backoff);
+        }
+      }
+    }
+
+    void shutdown() {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+
     // adds undefined specials token with default probability.
     private void handleSpecialToken(String word) throws IOException {
       if (vocabularyBuilder.indexOf(word) == -1
@@ -456,4 +650,19 @@ public class MultiFileUncompressedLm {
       BEGIN, UNIGRAMS, NGRAMS, VOCABULARY
     }
   }
+
+  private static class ParsedBlock {
+
+    int[] ids;
+    float[] probabilities;
+    float[] backoffs;
+
+    ParsedBlock(int count, int order, boolean hasBackoff) {
+      ids = new int[count * order];
+      probabilities = new float[count];
+      if (hasBackoff) {
+        backoffs = new float[count];
+      }
+    }
+  }
 }
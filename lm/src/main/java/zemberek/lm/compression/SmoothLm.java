@@ -15,10 +15,13 @@ import java.util.Arrays;
 import zemberek.core.hash.LargeNgramMphf;
 import zemberek.core.hash.Mphf;
 import zemberek.core.hash.MultiLevelMphf;
+import zemberek.core.io.MappedDataInputStream;
 import zemberek.core.logging.Log;
 import zemberek.core.math.LogMath;
 import zemberek.core.quantization.FloatLookup;
 import zemberek.lm.BaseLanguageModel;
+import zemberek.lm.ConcurrentLookupCache;
+import zemberek.lm.CompactLmVocabulary;
 import zemberek.lm.LmVocabulary;
 import zemberek.lm.NgramLanguageModel;
 
@@ -32,7 +35,8 @@ import zemberek.lm.NgramLanguageModel;
  * This value is determined during the model creation. Regularly 8,16 or 24 bit fingerprints are
  * used and false positive probability for an non existing n-gram is (probability of an n-gram does
  * not exist in LM)*1/(2^fingerprint bit size). SmoothLm also provides quantization for even more
- * compactness. So probability and back-off values can be quantized to 8, 16 or 24 bits.
+ * compactness. So probability and back-off values can be quantized to 8, 16 or 24 bits. Version 2
+ * models use bit packed n-gram data, so fingerprint and rank sizes need not be multiples of 8.
  */
 public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
 
@@ -71,8 +75,9 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
       float unknownBackoffPenalty,
       boolean useStupidBackoff,
       float stupidBackoffAlpha,
-      File ngramKeyFileDir) throws IOException {
-    this(dis); // load the lm data.
+      File ngramKeyFileDir,
+      boolean compactVocabulary) throws IOException {
+    this(dis, compactVocabulary); // load the lm data.
     // Now apply necessary transformations and configurations
     this.unigramWeight = unigramWeight;
     this.unknownBackoffPenalty = unknownBackoffPenalty;
@@ -109,7 +114,7 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     }
   }
 
-  private SmoothLm(DataInputStream dis) throws IOException {
+  private SmoothLm(DataInputStream dis, boolean compactVocabulary) throws IOException {
 
     this.version = dis.readInt();
     int typeInt = dis.readInt();
@@ -143,7 +148,8 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     //load fingerprint, probability and backoff data.
     ngramData = new GramDataArray[order + 1];
     for (int i = 1; i <= order; i++) {
-      ngramData[i] = new GramDataArray(dis);
+      ngramData[i] = new GramDataArray(
+          dis, version >= UncompressedToSmoothLmConverter.BIT_PACKED_VERSION);
     }
 
     // we take the unigram probability data out to get rid of rank look-ups for speed.
@@ -173,7 +179,9 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     }
 
     // load vocabulary
-    vocabulary = LmVocabulary.loadFromDataInputStream(dis);
+    vocabulary = compactVocabulary ?
+        CompactLmVocabulary.loadFromBinary(dis) :
+        LmVocabulary.loadFromDataInputStream(dis);
 
     // in case special tokens that does not exist in the actual unigrams are added (such as <unk>)
     // we adjust unigram data accordingly.
@@ -220,9 +228,9 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
           "%d Grams: Count= %d  Fingerprint Bits= %d  Probabilty Bits= %d  Back-off bits= %d%n",
           i,
           gramDataArray.count,
-          gramDataArray.fpSize * 8,
-          gramDataArray.probSize * 8,
-          gramDataArray.backoffSize * 8));
+          gramDataArray.fpBits,
+          gramDataArray.probBits,
+          gramDataArray.backoffBits));
     }
     sb.append(format(ENGLISH, "Log Base              : %.2f%n", logBase));
     sb.append(format(ENGLISH, "Unigram Weight        : %.2f%n", unigramWeight));
@@ -273,6 +281,13 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     return new LookupCache(this, bits);
   }
 
+  /**
+   * returns a ConcurrentLookupCache with 2^17 slots. Returned cache can be shared between threads.
+   */
+  public ConcurrentLookupCache getConcurrentCache() {
+    return new ConcurrentLookupCache(this);
+  }
+
   /**
    * Gets the count of a particular gram size
    *
@@ -283,6 +298,33 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     return ngramData[n].count;
   }
 
+  public int getFingerPrintBits(int n) {
+    return ngramData[n].fpBits;
+  }
+
+  public int getProbabilityBits(int n) {
+    return ngramData[n].probBits;
+  }
+
+  public int getBackoffBits(int n) {
+    return ngramData[n].backoffBits;
+  }
+
+  /**
+   * Returns the amount of bytes used by fingerprint, probability and back-off data of order n.
+   */
+  public long getGramDataSize(int n) {
+    return ngramData[n].sizeInBytes();
+  }
+
+  /**
+   * Returns the average amount of bits used per key by the MPHF of order n. Returns 0 for
+   * uni-grams.
+   */
+  public double getMphfBitsPerKey(int n) {
+    return n == 1 ? 0 : mphfs[n].averageBitsPerKey();
+  }
+
   /**
    * @return true if ngram exists in the lm. if actual key data is loaded during the construction of
    * the compressed lm, the value returned by this function cannot be wrong. If not, the return
@@ -548,6 +590,131 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     return result;
   }
 
+  /**
+   * Scores a token id sequence. Result of each position is same as calling getProbability with the
+   * n-gram ending at that position. But n-gram hash values are calculated incrementally from the
+   * previous position's hashes and no n-gram arrays are created.
+   *
+   * @param ids token ids.
+   * @param positionScores if not null, log probability of each position is written to this array.
+   * Its length must not be less than length of ids.
+   * @return sum of log probabilities.
+   */
+  @Override
+  public float scoreSentence(int[] ids, float[] positionScores) {
+    return scoreSentence(ids, positionScores, new int[Math.max(order - 1, 1)]);
+  }
+
+  /**
+   * Scores a batch of token id sequences. Hash state is shared between sequences.
+   *
+   * @param sentences token id sequences.
+   * @return sum of log probabilities for each sequence.
+   */
+  @Override
+  public float[] scoreSentences(int[][] sentences) {
+    float[] totals = new float[sentences.length];
+    int[] contextHashes = new int[Math.max(order - 1, 1)];
+    for (int i = 0; i < sentences.length; i++) {
+      totals[i] = scoreSentence(sentences[i], null, contextHashes);
+    }
+    return totals;
+  }
+
+  // contextHashes[k] contains the unmasked hash of ids[i-k-1..i-1] while scoring position i.
+  private float scoreSentence(int[] ids, float[] positionScores, int[] contextHashes) {
+    if (positionScores != null && positionScores.length < ids.length) {
+      throw new IllegalArgumentException("Position score array length " + positionScores.length
+          + " is less than sequence length " + ids.length);
+    }
+    float total = 0;
+    for (int i = 0; i < ids.length; i++) {
+      int id = ids[i];
+      float p = positionProbability(ids, i, Math.min(i + 1, order), contextHashes);
+      if (positionScores != null) {
+        positionScores[i] = p;
+      }
+      total += p;
+      extendContextHashes(contextHashes, id, i);
+    }
+    return total;
+  }
+
+  /**
+   * Scores alternative tokens for the same position. Context hashes of the left context are
+   * calculated once and shared by all candidates.
+   */
+  @Override
+  public float[] scoreCandidates(int[] leftContext, int[] candidates, int[] rightContext) {
+    int position = leftContext.length;
+    int[] ids = new int[position + 1 + rightContext.length];
+    System.arraycopy(leftContext, 0, ids, 0, position);
+    System.arraycopy(rightContext, 0, ids, position + 1, rightContext.length);
+    int[] leftHashes = new int[Math.max(order - 1, 1)];
+    for (int i = 0; i < position; i++) {
+      extendContextHashes(leftHashes, ids[i], i);
+    }
+    int[] contextHashes = new int[leftHashes.length];
+    float[] scores = new float[candidates.length];
+    for (int c = 0; c < candidates.length; c++) {
+      ids[position] = candidates[c];
+      System.arraycopy(leftHashes, 0, contextHashes, 0, leftHashes.length);
+      float total = 0;
+      for (int i = position; i < ids.length; i++) {
+        total += positionProbability(ids, i, Math.min(i + 1, order), contextHashes);
+        extendContextHashes(contextHashes, ids[i], i);
+      }
+      scores[c] = total;
+    }
+    return scores;
+  }
+
+  // extends context hashes with the token at position i for the next position.
+  private void extendContextHashes(int[] contextHashes, int id, int i) {
+    for (int k = Math.min(i + 1, order - 1) - 1; k > 0; k--) {
+      contextHashes[k] = (contextHashes[k - 1] ^ id) * MultiLevelMphf.HASH_MULTIPLIER;
+    }
+    contextHashes[0] = (MultiLevelMphf.INITIAL_HASH_SEED ^ id) * MultiLevelMphf.HASH_MULTIPLIER;
+  }
+
+  // Same calculation as getProbability(int...) for the n-gram ids[i-n+1..i].
+  private float positionProbability(int[] ids, int i, int n, int[] contextHashes) {
+    int id = ids[i];
+    if (n == 1) {
+      return unigramProbs[id];
+    }
+    float result = 0;
+    for (int gram = n; gram > 1; gram--) {
+      int begin = i - gram + 1;
+      int contextHash = contextHashes[gram - 2];
+      int fingerPrint = ((contextHash ^ id) * MultiLevelMphf.HASH_MULTIPLIER) & 0x7fffffff;
+      int nGramIndex = mphfs[gram].get(ids, begin, i + 1, fingerPrint);
+      if (ngramData[gram].checkFingerPrint(fingerPrint, nGramIndex)) {
+        return result + probabilityLookups[gram]
+            .get(ngramData[gram].getProbabilityRank(nGramIndex));
+      }
+      if (useStupidBackoff) {
+        if (gram == 2) {
+          return result + unigramProbs[id] + stupidBackoffLogAlpha;
+        }
+        result += stupidBackoffLogAlpha;
+        continue;
+      }
+      if (gram == 2) {
+        return result + unigramProbs[id] + unigramBackoffs[ids[begin]];
+      }
+      // back off to B(begin..i-1)
+      int backoffHash = contextHash & 0x7fffffff;
+      nGramIndex = mphfs[gram - 1].get(ids, begin, i, backoffHash);
+      if (ngramData[gram - 1].checkFingerPrint(backoffHash, nGramIndex)) {
+        result += backoffLookups[gram - 1].get(ngramData[gram - 1].getBackoffRank(nGramIndex));
+      } else {
+        result += unknownBackoffPenalty;
+      }
+    }
+    return result;
+  }
+
   public float getBigramProbability(int w0, int w1) {
     float prob = getBigramProbabilityValue(w0, w1);
     if (prob == LogMath.LOG_ZERO_FLOAT) {
@@ -753,6 +920,9 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     private boolean _useStupidBackoff = false;
     private float _stupidBackoffAlpha = DEFAULT_STUPID_BACKOFF_ALPHA;
     private DataInputStream _dis;
+    private File _file;
+    private boolean _memoryMap = false;
+    private boolean _compactVocabulary = false;
     private File _ngramIds;
 
     public Builder(InputStream is) {
@@ -760,7 +930,39 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     }
 
     public Builder(File file) throws FileNotFoundException {
-      this._dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (!file.exists()) {
+        throw new FileNotFoundException(file.getAbsolutePath() + " does not exist.");
+      }
+      this._file = file;
+    }
+
+    /**
+     * Loads n-gram data and hash functions as memory mapped views of the model file instead of
+     * copying them to heap. Loading becomes much faster and processes using same model file share
+     * the operating system page cache. Only available for models loaded from files.
+     */
+    public Builder memoryMap() {
+      return memoryMap(true);
+    }
+
+    public Builder memoryMap(boolean memoryMap) {
+      this._memoryMap = memoryMap;
+      return this;
+    }
+
+    /**
+     * Loads the vocabulary as a {@link CompactLmVocabulary}. Words are read from the model directly
+     * to the compact form, so a regular vocabulary is never generated. It uses much less memory
+     * for large vocabularies and word index lookups do not allocate objects, but loading takes
+     * longer because a hash function is generated for the words.
+     */
+    public Builder compactVocabulary() {
+      return compactVocabulary(true);
+    }
+
+    public Builder compactVocabulary(boolean compactVocabulary) {
+      this._compactVocabulary = compactVocabulary;
+      return this;
     }
 
     public Builder logBase(double logBase) {
@@ -799,14 +1001,23 @@ public class SmoothLm extends BaseLanguageModel implements NgramLanguageModel {
     }
 
     public SmoothLm build() throws IOException {
+      DataInputStream dis = _dis;
+      if (_file != null) {
+        dis = _memoryMap ?
+            new MappedDataInputStream(_file) :
+            new DataInputStream(new BufferedInputStream(new FileInputStream(_file)));
+      } else if (_memoryMap) {
+        throw new IllegalStateException("Memory mapping is only available for model files.");
+      }
       return new SmoothLm(
-          _dis,
+          dis,
           _logBase,
           _unigramWeight,
           _unknownBackoffPenalty,
           _useStupidBackoff,
           _stupidBackoffAlpha,
-          _ngramIds);
+          _ngramIds,
+          _compactVocabulary);
     }
   }
 
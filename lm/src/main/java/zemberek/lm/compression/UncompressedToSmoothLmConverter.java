@@ -1,30 +1,67 @@
 package zemberek.lm.compression;
 
 import com.google.common.io.Files;
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.List;
 import zemberek.core.hash.IntHashKeyProvider;
 import zemberek.core.hash.LargeNgramMphf;
 import zemberek.core.hash.Mphf;
 import zemberek.core.hash.MultiLevelMphf;
+import zemberek.core.io.IOUtil;
 import zemberek.core.logging.Log;
 import zemberek.core.quantization.QuantizerType;
 
+/**
+ * Generates a SmoothLm file from a multi file uncompressed language model. Orders are converted
+ * one after another, so only the data of a single order is processed at a time. If thread count is
+ * larger than one, MPHF of an order is generated with that many threads. N-gram data of an order
+ * is written directly to its MPHF position in a memory mapped temporary file, so heap usage does
+ * not grow with n-gram count except the MPHF of the order. Temporary data files are unmapped and
+ * deleted after the model is written. Output is the same for any thread count.
+ * <p>
+ * Fingerprint and rank sizes and the quantizer can be chosen per order with {@link NgramDataBlock}.
+ * If all sizes are multiples of 8 bits, a version 1 model is generated. Otherwise entries are bit
+ * packed and a version 2 model, whose gram data headers contain sizes in bits and whose
+ * fingerprints are generated from mixed hash bits (see {@link GramDataArray}), is generated.
+ */
 public class UncompressedToSmoothLmConverter {
 
   private static final int VERSION = 1;
+  // gram data sizes are in bits and entries are bit packed.
+  static final int BIT_PACKED_VERSION = 2;
+  // maximum size of a memory mapped page of a temporary n-gram data file.
+  private static final int MAX_PAGE_BYTES = 1 << 30;
   File lmFile;
   File tempDir;
+  int threadCount;
 
   int order;
 
   public UncompressedToSmoothLmConverter(File lmFile, File tempDir) {
+    this(lmFile, tempDir, 1);
+  }
+
+  public UncompressedToSmoothLmConverter(File lmFile, File tempDir, int threadCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("Thread count must be positive but it is " + threadCount);
+    }
     this.lmFile = lmFile;
     this.tempDir = tempDir;
+    this.threadCount = threadCount;
   }
 
   public void convertSmall(File binaryUncompressedLmDir, NgramDataBlock block) throws IOException {
@@ -50,40 +87,71 @@ public class UncompressedToSmoothLmConverter {
     Log.info("Generating compressed language model.");
 
     MultiFileUncompressedLm lm = new MultiFileUncompressedLm(binaryUncompressedLmDir);
-
-    lm.generateRankFiles(block.probabilitySize * 8, QuantizerType.BINNING);
-
     order = lm.order;
 
-    DataOutputStream dos = new DataOutputStream(
-        new BufferedOutputStream(new FileOutputStream(lmFile)));
+    for (int n = 1; n <= order; n++) {
+      lm.generateRankFiles(n, block.probabilityBits(n),
+          n < order ? block.backoffBits(n) : 0, block.quantizerType(n));
+    }
 
     // generate Minimal Perfect Hash functions for 2,3...n grams and save them as separate files.
-
     File[] phfFiles = new File[order + 1];
     if (oneBasedMphfFiles != null) {
       phfFiles = oneBasedMphfFiles;
     } else {
-      for (int i = 2; i <= order; i++) {
-        Mphf mphf;
-        if (type == SmoothLm.MphfType.LARGE) {
-          mphf = LargeNgramMphf.generate(lm.getGramFile(i), chunkBits);
-        } else {
-          mphf = MultiLevelMphf.generate(lm.getGramFile(i));
+      for (int n = 2; n <= order; n++) {
+        phfFiles[n] = generateMphf(lm, n, type, chunkBits);
+      }
+    }
+
+    Log.info("Reordering probability data and saving it together with n-gram fingerprints");
+    List<File> gramDataFiles = new ArrayList<>();
+    try {
+      for (int n = 1; n <= order; n++) {
+        gramDataFiles.add(generateGramData(block, lm, n, type, phfFiles[n]));
+      }
+      try (DataOutputStream dos = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(lmFile)))) {
+        writeModel(dos, lm, block, type, phfFiles, gramDataFiles);
+      }
+    } finally {
+      for (File gramDataFile : gramDataFiles) {
+        if (!gramDataFile.delete()) {
+          Log.warn("Could not delete temporary file %s", gramDataFile);
         }
-        Log.info("MPHF is generated for order %d with %d keys. Average bits per key: %.3f",
-            i,
-            mphf.size(),
-            mphf.averageBitsPerKey());
-        File mphfFile = new File(tempDir, lmFile.getName() + i + "gram.mphf");
-        phfFiles[i] = mphfFile;
-        mphf.serialize(mphfFile);
       }
     }
+  }
+
+  private File generateMphf(MultiFileUncompressedLm lm, int n, SmoothLm.MphfType type,
+      int chunkBits) throws IOException {
+    Mphf mphf;
+    if (type == SmoothLm.MphfType.LARGE) {
+      mphf = LargeNgramMphf.generate(lm.getGramFile(n), chunkBits, threadCount);
+    } else {
+      mphf = MultiLevelMphf.generate(lm.getGramFile(n), threadCount);
+    }
+    Log.info("MPHF is generated for order %d with %d keys. Average bits per key: %.3f",
+        n,
+        mphf.size(),
+        mphf.averageBitsPerKey());
+    File mphfFile = new File(tempDir, lmFile.getName() + n + "gram.mphf");
+    mphf.serialize(mphfFile);
+    return mphfFile;
+  }
+
+  private void writeModel(
+      DataOutputStream dos,
+      MultiFileUncompressedLm lm,
+      NgramDataBlock block,
+      SmoothLm.MphfType type,
+      File[] phfFiles,
+      List<File> gramDataFiles) throws IOException {
     // generate header.
     Log.info("Writing header");
     // write version and type info
-    dos.writeInt(VERSION);
+    boolean bitPacked = !block.isByteAligned(order);
+    dos.writeInt(bitPacked ? BIT_PACKED_VERSION : VERSION);
 
     // write Mphf type
     if (type == SmoothLm.MphfType.SMALL) {
@@ -112,66 +180,13 @@ public class UncompressedToSmoothLmConverter {
       }
     }
 
-    Log.info("Reordering probability data and saving it together with n-gram fingerprints");
+    int unit = bitPacked ? 1 : 8;
     for (int i = 1; i <= order; i++) {
-      InMemoryBigByteArray probData = new InMemoryBigByteArray(lm.getProbRankFile(i));
-      InMemoryBigByteArray backoffData = null;
-
-      if (i < order) {
-        backoffData = new InMemoryBigByteArray(lm.getBackoffRankFile(i));
-      }
-
-      ReorderData reorderData;
-      final int gramCount = probData.count;
-      if (i == 1) {
-        int reorderedIndexes[] = new int[gramCount];
-        for (int j = 0; j < gramCount; j++) {
-          reorderedIndexes[j] = j;
-        }
-        reorderData = new ReorderData(reorderedIndexes, new int[0]);
-      } else {
-        if (type == SmoothLm.MphfType.LARGE) {
-          reorderData = reorderIndexes(block, lm, i, LargeNgramMphf.deserialize(phfFiles[i]));
-        } else {
-          reorderData = reorderIndexes(block, lm, i, MultiLevelMphf.deserialize(phfFiles[i]));
-        }
-      }
-      Log.info("Validating reordered index array for order: %d", i);
-
-      validateIndexArray(reorderData.reorderedKeyIndexes);
-
-      int fingerPrintSize = block.fingerPrintSize;
-      if (i == 1) {
-        fingerPrintSize = 0;
-      }
-      int backOffSize = block.backoffSize;
-      if (i == order) {
-        backOffSize = 0;
-      }
-
-      dos.writeInt(gramCount);
-      dos.writeInt(fingerPrintSize);
-      dos.writeInt(block.probabilitySize);
-      dos.writeInt(backOffSize);
-
-      byte[] probBuff = new byte[block.probabilitySize];
-      byte[] fpBuff = new byte[fingerPrintSize];
-      byte[] backoffBuff = new byte[backOffSize];
-
-      for (int k = 0; k < gramCount; k++) {
-        // save fingerprint values for 2,3,.. grams.
-        if (i > 1) {
-          block.fingerprintAsBytes(reorderData.fingerprints[k], fpBuff);
-          dos.write(fpBuff);
-        }
-        probData.get(reorderData.reorderedKeyIndexes[k], probBuff);
-        dos.write(probBuff);
-        // write backoff value if exists.
-        if (backoffData != null) {
-          backoffData.get(reorderData.reorderedKeyIndexes[k], backoffBuff);
-          dos.write(backoffBuff);
-        }
-      }
+      dos.writeInt(lm.getRankSize(lm.getProbRankFile(i)));
+      dos.writeInt(fingerPrintBits(block, i) / unit);
+      dos.writeInt(block.probabilityBits(i) / unit);
+      dos.writeInt(backoffBits(block, i) / unit);
+      Files.copy(gramDataFiles.get(i - 1), dos);
     }
 
     // append size of the Perfect hash and its content.
@@ -186,124 +201,311 @@ public class UncompressedToSmoothLmConverter {
     // save vocabulary
     Log.info("Saving vocabulary.");
     Files.copy(lm.getVocabularyFile(), dos);
+  }
+
+  private int fingerPrintBits(NgramDataBlock block, int n) {
+    return n == 1 ? 0 : block.fingerPrintBits(n);
+  }
+
+  private int backoffBits(NgramDataBlock block, int n) {
+    return n == order ? 0 : block.backoffBits(n);
+  }
+
+  /**
+   * Writes fingerprint, probability rank and back-off rank of all n-grams of an order to a
+   * temporary file. Suppose we have the keys as: [k0, k1, k2, k3, k4, k5] and their mphf values
+   * are: k0=2, k1=5, k2=0, k3=4, k4=1, k5=3. Then data of k0 is written to the third slot, k1 to
+   * the sixth etc. Keys and ranks are read sequentially from the uncompressed model files and
+   * written to their slots in a memory mapped file. Unigrams keep their index order. Values of an
+   * entry are written big endian and entries are written back to back in bits, so if all sizes are
+   * multiples of 8, each value occupies whole bytes.
+   *
+   * @param lm multifile language language model.
+   * @param n current order of language model
+   * @param mphfFile MPH function file of the order. Not used for unigrams.
+   * @return temporary file that contains n-gram data blocks in MPHF order.
+   */
+  private File generateGramData(NgramDataBlock block, MultiFileUncompressedLm lm, int n,
+      SmoothLm.MphfType type, File mphfFile) throws IOException {
+
+    Mphf mphf = null;
+    if (n > 1) {
+      mphf = type == SmoothLm.MphfType.LARGE ?
+          LargeNgramMphf.deserialize(mphfFile) :
+          MultiLevelMphf.deserialize(mphfFile);
+    }
 
-    dos.close();
+    // gram count is taken from rank file as unigram count in info file may include special tokens
+    // added by Arpa conversion.
+    int gramCount = lm.getRankSize(lm.getProbRankFile(n));
+    int fingerPrintBits = fingerPrintBits(block, n);
+    int probabilityBits = block.probabilityBits(n);
+    int backoffBits = backoffBits(block, n);
+    boolean mixedFingerprints = !block.isByteAligned(order);
+    EntryWriter writer = new EntryWriter(fingerPrintBits, probabilityBits, backoffBits, gramCount);
+    File dataFile = new File(tempDir, lmFile.getName() + n + "gram.data");
+
+    try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw");
+        DataInputStream probRanks = rankStream(lm.getProbRankFile(n));
+        DataInputStream backoffRanks = backoffBits > 0 ?
+            rankStream(lm.getBackoffRankFile(n)) : null) {
+
+      raf.setLength(writer.byteCount(gramCount));
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer[] pages = new MappedByteBuffer[
+          (gramCount + writer.pageEntries - 1) / writer.pageEntries];
+      for (int i = 0; i < pages.length; i++) {
+        long start = (long) i * writer.pageEntries;
+        long begin = writer.byteCount(start);
+        long end = writer.byteCount(Math.min(start + writer.pageEntries, gramCount));
+        pages[i] = channel.map(MapMode.READ_WRITE, begin, end - begin);
+      }
+      writer.pages = pages;
+
+      int probRankSize = probRanks.readInt();
+      int backoffRankSize = backoffRanks == null ? 0 : backoffRanks.readInt();
+      int counter = 0;
+      if (n == 1) {
+        for (; counter < gramCount; counter++) {
+          int probRank = readRank(probRanks, probRankSize);
+          int backoffRank = backoffRanks == null ? 0 : readRank(backoffRanks, backoffRankSize);
+          writer.put(counter, 0, probRank, backoffRank);
+        }
+      } else {
+        ChunkingNGramReader reader = new ChunkingNGramReader(lm.getGramFile(n), n, 1000000);
+        for (IntHashKeyProvider provider : reader) {
+          for (int k = 0; k < provider.keyAmount(); k++) {
+            final int[] key = provider.getKey(k);
+            int probRank = readRank(probRanks, probRankSize);
+            int backoffRank = backoffRanks == null ? 0 : readRank(backoffRanks, backoffRankSize);
+            writer.put(mphf.get(key), block.fingerprint(key, n, mixedFingerprints), probRank,
+                backoffRank);
+            counter++;
+          }
+        }
+      }
+      Log.info("Validating reordered n-gram data for order: %d", n);
+      if (counter != gramCount || writer.written.cardinality() != gramCount) {
+        throw new IllegalStateException("Not validated. Expected " + gramCount +
+            " n-grams for order " + n + " but " + writer.written.cardinality()
+            + " slots are written.");
+      }
+    } finally {
+      // release mappings so the file can be deleted right after the model is written.
+      if (writer.pages != null) {
+        for (MappedByteBuffer page : writer.pages) {
+          IOUtil.unmap(page);
+        }
+        writer.pages = null;
+      }
+    }
+    return dataFile;
+  }
 
+  // opens a rank file and skips the count value. Next value is the rank byte size.
+  private DataInputStream rankStream(File rankFile) throws IOException {
+    DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(rankFile), 1 << 16));
+    dis.readInt();
+    return dis;
   }
 
-  private void validateIndexArray(int[] arr) {
-    BitSet set = new BitSet();
-    for (int i : arr) {
-      if (i >= arr.length || i < 0) {
+  private int readRank(DataInputStream dis, int byteCount) throws IOException {
+    int rank = 0;
+    for (int i = 0; i < byteCount; i++) {
+      rank = (rank << 8) | dis.readUnsignedByte();
+    }
+    return rank;
+  }
+
+  // Writes bit packed entries to memory mapped pages. Pages contain a multiple of 8 entries, so
+  // they start from byte boundaries. If all value sizes are multiples of 8, values are written
+  // byte by byte.
+  private static class EntryWriter {
+
+    final int fingerPrintBits;
+    final int probabilityBits;
+    final int backoffBits;
+    final int entryBits;
+    final boolean byteAligned;
+    final int gramCount;
+    final int pageEntries;
+    final BitSet written;
+    MappedByteBuffer[] pages;
+
+    EntryWriter(int fingerPrintBits, int probabilityBits, int backoffBits, int gramCount) {
+      this.fingerPrintBits = fingerPrintBits;
+      this.probabilityBits = probabilityBits;
+      this.backoffBits = backoffBits;
+      this.entryBits = fingerPrintBits + probabilityBits + backoffBits;
+      this.byteAligned =
+          fingerPrintBits % 8 == 0 && probabilityBits % 8 == 0 && backoffBits % 8 == 0;
+      this.gramCount = gramCount;
+      this.pageEntries = (int) Math.max(8, (MAX_PAGE_BYTES * 8L / entryBits) & ~7L);
+      this.written = new BitSet(gramCount);
+    }
+
+    long byteCount(long entryCount) {
+      return (entryCount * entryBits + 7) / 8;
+    }
+
+    void put(int index, int fingerprint, int probabilityRank, int backoffRank) {
+      if (index < 0 || index >= gramCount || written.get(index)) {
         throw new IllegalStateException(
-            "array contains a value=" + i + " larger than the array size=" + arr.length);
+            "Not validated. Index " + index + " is out of range or written twice. Gram count = "
+                + gramCount);
+      }
+      if (probabilityRank >>> probabilityBits != 0 || backoffRank >>> backoffBits != 0) {
+        throw new IllegalStateException("Rank values of index " + index + " do not fit to "
+            + probabilityBits + " and " + backoffBits + " bits.");
+      }
+      written.set(index);
+      MappedByteBuffer page = pages[index / pageEntries];
+      long bitIndex = (long) (index % pageEntries) * entryBits;
+      if (byteAligned) {
+        int byteIndex = (int) (bitIndex >>> 3);
+        byteIndex = writeBytes(page, byteIndex, fingerprint, fingerPrintBits >>> 3);
+        byteIndex = writeBytes(page, byteIndex, probabilityRank, probabilityBits >>> 3);
+        writeBytes(page, byteIndex, backoffRank, backoffBits >>> 3);
+        return;
       }
-      set.set(i);
+      bitIndex = writeBits(page, bitIndex, fingerprint, fingerPrintBits);
+      bitIndex = writeBits(page, bitIndex, probabilityRank, probabilityBits);
+      writeBits(page, bitIndex, backoffRank, backoffBits);
     }
-    for (int i = 0; i < arr.length; i++) {
-      if (!set.get(i)) {
-        throw new IllegalStateException("Not validated.");
+
+    // writes lowest `bytes` bytes of value starting from the highest one. Returns the next byte
+    // index.
+    private int writeBytes(MappedByteBuffer page, int byteIndex, int value, int bytes) {
+      for (int i = bytes - 1; i >= 0; i--) {
+        page.put(byteIndex++, (byte) (value >>> (i * 8)));
       }
+      return byteIndex;
     }
-  }
 
-  /**
-   * This class does the following: suppose we have the keys as: [k0, k1, k2, k3, k4, k5] ->
-   * [0,1,2,3,4,5] their mphf values are however: k0=2, k1=5, k2=0, k3=4, k4=1, k5=3 So what we want
-   * is to have key indexes in their minimal perfect has index order. reordered keys indexes: [k2,
-   * k4, k0, k5, k3, k1] -> [2,4,0,5,3,1]
-   *
-   * @param lm multifile language language model.
-   * @param _order current order of language model
-   * @param mphf MPH function
-   * @return reordered key indexes and those keys fingerprint values.
-   */
-  private ReorderData reorderIndexes(NgramDataBlock block, MultiFileUncompressedLm lm, int _order,
-      Mphf mphf) throws IOException {
-    ChunkingNGramReader reader = new ChunkingNGramReader(lm.getGramFile(_order), _order, 1000000);
-    int[] reorderedIndexes = new int[lm.getCount(_order)];
-    int[] fingerPrints = new int[lm.getCount(_order)];
-    int counter = 0;
-    for (IntHashKeyProvider provider : reader) {
-      for (int k = 0; k < provider.keyAmount(); k++) {
-        final int[] key = provider.getKey(k);
-        final int hashVal = mphf.get(key);
-        reorderedIndexes[hashVal] = counter;
-        fingerPrints[hashVal] = block.fingerprint(key);
-        counter++;
+    // writes lowest `bits` bits of value starting from the highest one. Returns the next bit index.
+    private long writeBits(MappedByteBuffer page, long bitIndex, int value, int bits) {
+      for (int i = bits - 1; i >= 0; i--) {
+        int byteIndex = (int) (bitIndex >>> 3);
+        int mask = 0x80 >>> (int) (bitIndex & 7);
+        int b = page.get(byteIndex);
+        page.put(byteIndex, (byte) (((value >>> i) & 1) != 0 ? b | mask : b & ~mask));
+        bitIndex++;
       }
+      return bitIndex;
     }
-    return new ReorderData(reorderedIndexes, fingerPrints);
   }
 
+  /**
+   * Defines fingerprint, probability rank and back-off rank sizes in bits and the quantizer that
+   * generates ranks. Values given in the constructor apply to all orders, they can be overridden
+   * for an order. Fingerprints can be 1 to 32, ranks can be 2 to 24 bits. Fingerprints are not used
+   * for uni-grams and back-offs are not used for the highest order.
+   */
   public static class NgramDataBlock {
 
-    int fingerPrintSize;
-    int probabilitySize;
-    int backoffSize;
-    int fingerprintMask;
+    private final int fingerPrintBits;
+    private final int probabilityBits;
+    private final int backoffBits;
+    private QuantizerType quantizerType = QuantizerType.BINNING;
+    // one based, overrides of orders.
+    private int[][] orderBits = new int[0][];
+    private QuantizerType[] orderQuantizers = new QuantizerType[0];
 
     public NgramDataBlock(int fingerPrintBits, int probabilityBits, int backoffBits) {
-      if (fingerPrintBits % 8 != 0) {
-        throw new IllegalArgumentException("FingerPrint bit size must be an order of 8");
+      checkBits(fingerPrintBits, probabilityBits, backoffBits);
+      this.fingerPrintBits = fingerPrintBits;
+      this.probabilityBits = probabilityBits;
+      this.backoffBits = backoffBits;
+    }
+
+    private static void checkBits(int fingerPrintBits, int probabilityBits, int backoffBits) {
+      if (fingerPrintBits < 1 || fingerPrintBits > 32) {
+        throw new IllegalArgumentException(
+            "FingerPrint bit size must be between 1 and 32 but it is " + fingerPrintBits);
       }
-      if (probabilityBits % 8 != 0) {
-        throw new IllegalArgumentException("Probability bit size must be an order of 8");
+      if (probabilityBits < 2 || probabilityBits > 24) {
+        throw new IllegalArgumentException(
+            "Probability bit size must be between 2 and 24 but it is " + probabilityBits);
       }
-      if (backoffBits % 8 != 0) {
-        throw new IllegalArgumentException("Backoff bit size must be an order of 8");
+      if (backoffBits < 2 || backoffBits > 24) {
+        throw new IllegalArgumentException(
+            "Backoff bit size must be between 2 and 24 but it is " + backoffBits);
       }
-      this.fingerPrintSize = fingerPrintBits / 8;
-      this.probabilitySize = probabilityBits / 8;
-      this.backoffSize = backoffBits / 8;
-      if (fingerPrintBits == 4) {
-        this.fingerprintMask = 0xffffffff;
-      } else {
-        this.fingerprintMask = (1 << fingerPrintBits) - 1;
+    }
+
+    /**
+     * Sets sizes of order n.
+     */
+    public NgramDataBlock order(int n, int fingerPrintBits, int probabilityBits,
+        int backoffBits) {
+      checkBits(fingerPrintBits, probabilityBits, backoffBits);
+      if (orderBits.length <= n) {
+        orderBits = Arrays.copyOf(orderBits, n + 1);
       }
+      orderBits[n] = new int[]{fingerPrintBits, probabilityBits, backoffBits};
+      return this;
+    }
+
+    /**
+     * Sets the quantizer of all orders. Default is {@link QuantizerType#BINNING}.
+     */
+    public NgramDataBlock quantizer(QuantizerType type) {
+      this.quantizerType = type;
+      return this;
     }
 
-    int fingerprint(int[] key) {
-      return MultiLevelMphf.hash(key, -1) & fingerprintMask;
-    }
-
-    void fingerprintAsBytes(int fingerprint, byte[] res) {
-      int k = 0;
-      switch (fingerPrintSize) {
-        case 1:
-          res[k] = (byte) (fingerprint & 0xff);
-          break;
-        case 2:
-          res[k] = (byte) ((fingerprint >>> 8) & 0xff);
-          res[k + 1] = (byte) (fingerprint & 0xff);
-          break;
-        case 3:
-          res[k] = (byte) ((fingerprint >>> 16) & 0xff);
-          res[k + 1] = (byte) ((fingerprint >>> 8) & 0xff);
-          res[k + 2] = (byte) (fingerprint & 0xff);
-          break;
-        case 4:
-          res[k] = (byte) ((fingerprint >>> 24) & 0xff);
-          res[k + 1] = (byte) ((fingerprint >>> 16) & 0xff);
-          res[k + 2] = (byte) ((fingerprint >>> 8) & 0xff);
-          res[k + 3] = (byte) (fingerprint & 0xff);
-          break;
+    /**
+     * Sets the quantizer of order n.
+     */
+    public NgramDataBlock quantizer(int n, QuantizerType type) {
+      if (orderQuantizers.length <= n) {
+        orderQuantizers = Arrays.copyOf(orderQuantizers, n + 1);
       }
+      orderQuantizers[n] = type;
+      return this;
     }
 
-    void fingerprintAsBytes(int[] key, byte[] res) {
-      fingerprintAsBytes(MultiLevelMphf.hash(key, -1) & fingerprintMask, res);
+    private int bits(int n, int i, int defaultValue) {
+      return n < orderBits.length && orderBits[n] != null ? orderBits[n][i] : defaultValue;
+    }
+
+    int fingerPrintBits(int n) {
+      return bits(n, 0, fingerPrintBits);
+    }
+
+    int probabilityBits(int n) {
+      return bits(n, 1, probabilityBits);
+    }
+
+    int backoffBits(int n) {
+      return bits(n, 2, backoffBits);
     }
-  }
 
-  private class ReorderData {
+    QuantizerType quantizerType(int n) {
+      return n < orderQuantizers.length && orderQuantizers[n] != null ?
+          orderQuantizers[n] : quantizerType;
+    }
 
-    int[] reorderedKeyIndexes;
-    int[] fingerprints;
+    // true if all sizes used by a model of given order are multiples of 8.
+    boolean isByteAligned(int order) {
+      for (int n = 1; n <= order; n++) {
+        if ((n > 1 && fingerPrintBits(n) % 8 != 0)
+            || probabilityBits(n) % 8 != 0
+            || (n < order && backoffBits(n) % 8 != 0)) {
+          return false;
+        }
+      }
+      return true;
+    }
 
-    private ReorderData(int[] reorderedKeyIndexes, int[] fingerprints) {
-      this.reorderedKeyIndexes = reorderedKeyIndexes;
-      this.fingerprints = fingerprints;
+    int fingerprint(int[] key, int n, boolean mixed) {
+      int bits = fingerPrintBits(n);
+      int hash = MultiLevelMphf.hash(key, -1);
+      if (mixed) {
+        return GramDataArray.mixedFingerprint(hash, bits);
+      }
+      return hash & (bits == 32 ? 0xffffffff : (1 << bits) - 1);
     }
   }
 }
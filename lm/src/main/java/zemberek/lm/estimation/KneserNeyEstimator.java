@@ -0,0 +1,374 @@
+package zemberek.lm.estimation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import zemberek.core.logging.Log;
+import zemberek.lm.LmVocabulary;
+import zemberek.lm.compression.MultiFileUncompressedLm;
+import zemberek.lm.estimation.NgramCounter.NgramCounts;
+
+/**
+ * Estimates an interpolated modified Kneser-Ney language model from n-gram counts and writes it as
+ * a MultiFileUncompressedLm. Result can be converted to SmoothLm with
+ * UncompressedToSmoothLmConverter or saved as an Arpa file.
+ * <p>
+ * Highest order counts are used as they are. For lower orders, counts of n-grams that start with
+ * sentence begin marker are used as they are and other n-grams use the amount of distinct words
+ * that precede them (continuation counts). Discounts are calculated per order from count of
+ * counts as in Chen and Goodman's "An Empirical Study of Smoothing Techniques for Language
+ * Modeling".
+ * <p>
+ * Count files are processed as sorted streams. Estimated values of an order are kept in memory
+ * until next order is estimated, because next order needs them for interpolation and provides
+ * their back-off values. Highest order is streamed to output files.
+ * <p>
+ * Limitation: memory usage is not bounded. While order n is estimated, all n-grams of order n-1
+ * and, if n is not the highest order, of order n are kept in {@link NgramTable}s on the heap. So
+ * heap usage grows with the n-gram counts of the two largest consecutive lower orders, roughly
+ * (4 * n + 8) / 0.6 bytes per n-gram. Only the highest order and the counting phase are bounded.
+ * Estimation also runs on a single thread. Bounded memory would require streaming lower order
+ * lookups from suffix sorted count files and that is not implemented.
+ */
+public class KneserNeyEstimator {
+
+  // Arpa convention for sentence begin marker probability.
+  private static final float SENTENCE_BEGIN_LOG_PROBABILITY = -99f;
+  private static final double[] DEFAULT_DISCOUNTS = {0, 0.5, 1.0, 1.5};
+
+  private final NgramCounts counts;
+  private final File workDir;
+  private final int order;
+  private final int sentenceBegin;
+  // one based. discounts[n] = {0, D1, D2, D3+}
+  private final double[][] discounts;
+
+  public KneserNeyEstimator(NgramCounts counts, File workDir) {
+    this.counts = counts;
+    this.workDir = workDir;
+    this.order = counts.getOrder();
+    this.sentenceBegin = counts.vocabulary.getSentenceStartIndex();
+    this.discounts = new double[order + 1][];
+  }
+
+  public double[] getDiscounts(int n) {
+    return discounts[n] == null ? null : discounts[n].clone();
+  }
+
+  /**
+   * Estimates the model and writes it to `outDir` in MultiFileUncompressedLm format.
+   */
+  public MultiFileUncompressedLm estimate(File outDir) throws IOException {
+    Files.createDirectories(outDir.toPath());
+    Files.createDirectories(workDir.toPath());
+    LmVocabulary vocabulary = counts.vocabulary;
+
+    NgramCountFile[] adjusted = new NgramCountFile[order + 1];
+    for (int n = 1; n <= order; n++) {
+      adjusted[n] = n == order ? counts.getCountFile(n) : adjustedCounts(n);
+      discounts[n] = calculateDiscounts(adjusted[n]);
+      Log.info("Discounts for order %d: %s", n, Arrays.toString(discounts[n]));
+    }
+
+    int[] gramCounts = new int[order + 1];
+    NgramTable lower = estimateUnigrams(adjusted[1], vocabulary);
+    gramCounts[1] = lower.size();
+    for (int n = 2; n <= order; n++) {
+      NgramTable current = n < order ? new NgramTable(n, (int) adjusted[n].count) : null;
+      try (NgramDataWriter highest = n == order ? new NgramDataWriter(outDir, n, false,
+          (int) adjusted[n].count) : null) {
+        estimateOrder(adjusted[n], lower, current, highest);
+      }
+      // back-off values of the lower order are now complete.
+      writeTable(outDir, lower, true);
+      gramCounts[n] = (int) adjusted[n].count;
+      lower = current;
+    }
+    if (order == 1) {
+      writeTable(outDir, lower, false);
+    }
+
+    try (DataOutputStream info = new DataOutputStream(new FileOutputStream(
+        new File(outDir, MultiFileUncompressedLm.INFO_FILE_NAME)))) {
+      info.writeInt(order);
+      for (int n = 1; n <= order; n++) {
+        info.writeInt(gramCounts[n]);
+      }
+    }
+    vocabulary.saveBinary(new File(outDir, MultiFileUncompressedLm.VOCAB_FILE_NAME));
+    for (int n = 1; n < order; n++) {
+      if (!adjusted[n].file.delete()) {
+        adjusted[n].file.deleteOnExit();
+      }
+    }
+    return new MultiFileUncompressedLm(outDir);
+  }
+
+  /**
+   * Generates adjusted counts of order n (n < order). N-grams starting with sentence begin marker
+   * keep their counts, others get the amount of distinct left extensions in order n+1.
+   */
+  private NgramCountFile adjustedCounts(int n) throws IOException {
+    Log.info("Calculating continuation counts of order %d", n);
+    SpillingNgramCounts continuation = new SpillingNgramCounts(n, 1, 50_000_000, workDir,
+        n + "continuation");
+    try (NgramCountFile.Reader higher = counts.getCountFile(n + 1).reader()) {
+      while (higher.next()) {
+        // suffix of the higher order n-gram.
+        continuation.add(higher.key, 1, 1);
+      }
+    }
+    NgramCountFile continuationFile = continuation
+        .finish(new File(workDir, n + ".continuation"));
+
+    File adjustedFile = new File(workDir, n + ".adjusted");
+    NgramCountFile raw = counts.getCountFile(n);
+    try (NgramCountFile.Reader rawReader = raw.reader();
+        NgramCountFile.Reader contReader = continuationFile.reader();
+        DataOutputStream dos = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(adjustedFile), 1 << 16))) {
+      NgramCountFile.writeHeader(dos, n, raw.count);
+      boolean hasCont = contReader.next();
+      while (rawReader.next()) {
+        while (hasCont && NgramCountFile.compare(contReader.key, rawReader.key) < 0) {
+          hasCont = contReader.next();
+        }
+        long value = rawReader.value;
+        if (rawReader.key[0] != sentenceBegin && hasCont
+            && NgramCountFile.compare(contReader.key, rawReader.key) == 0) {
+          value = contReader.value;
+        }
+        NgramCountFile.write(dos, rawReader.key, value);
+      }
+    }
+    if (!continuationFile.file.delete()) {
+      continuationFile.file.deleteOnExit();
+    }
+    return NgramCountFile.open(adjustedFile);
+  }
+
+  private double[] calculateDiscounts(NgramCountFile file) throws IOException {
+    long[] t = new long[5];
+    try (NgramCountFile.Reader reader = file.reader()) {
+      while (reader.next()) {
+        if (reader.order == 1 && reader.key[0] == sentenceBegin) {
+          continue;
+        }
+        if (reader.value <= 4) {
+          t[(int) reader.value]++;
+        }
+      }
+    }
+    double y = (double) t[1] / (t[1] + 2 * t[2]);
+    double[] d = new double[4];
+    for (int i = 1; i <= 3; i++) {
+      d[i] = i - (i + 1) * y * t[i + 1] / t[i];
+      // small or unusual corpora may not have enough count of counts.
+      if (Double.isNaN(d[i]) || d[i] <= 0 || d[i] >= i) {
+        Log.warn("Discount %d of order %d cannot be estimated from count of counts %s. "
+            + "Default value %.2f is used.", i, file.order, Arrays.toString(t),
+            DEFAULT_DISCOUNTS[i]);
+        d[i] = DEFAULT_DISCOUNTS[i];
+      }
+    }
+    return d;
+  }
+
+  private double discount(int n, long count) {
+    return discounts[n][count >= 3 ? 3 : (int) count];
+  }
+
+  // unigrams are interpolated with uniform distribution. Sentence begin marker is not predicted.
+  private NgramTable estimateUnigrams(NgramCountFile adjusted, LmVocabulary vocabulary)
+      throws IOException {
+    long[] unigramCounts = new long[vocabulary.size()];
+    try (NgramCountFile.Reader reader = adjusted.reader()) {
+      while (reader.next()) {
+        unigramCounts[reader.key[0]] = reader.value;
+      }
+    }
+    unigramCounts[sentenceBegin] = 0;
+    long total = 0;
+    long[] n = new long[4];
+    for (long c : unigramCounts) {
+      total += c;
+      if (c > 0) {
+        n[c >= 3 ? 3 : (int) c]++;
+      }
+    }
+    double gamma = gamma(1, total, n);
+    double uniform = 1d / (vocabulary.size() - 1);
+    NgramTable table = new NgramTable(1, vocabulary.size());
+    int[] key = new int[1];
+    for (int id = 0; id < vocabulary.size(); id++) {
+      key[0] = id;
+      double p = 0;
+      if (unigramCounts[id] > 0) {
+        p = (unigramCounts[id] - discount(1, unigramCounts[id])) / total;
+      }
+      p += gamma * uniform;
+      table.put(key, 0, pack((float) p, 1f));
+    }
+    return table;
+  }
+
+  private double gamma(int n, long total, long[] counts) {
+    return (discounts[n][1] * counts[1] + discounts[n][2] * counts[2]
+        + discounts[n][3] * counts[3]) / total;
+  }
+
+  private void estimateOrder(NgramCountFile adjusted, NgramTable lower, NgramTable current,
+      NgramDataWriter highest) throws IOException {
+    int n = adjusted.order;
+    Log.info("Estimating order %d", n);
+    int[] context = new int[n - 1];
+    int[] words = new int[16];
+    long[] wordCounts = new long[16];
+    int groupSize = 0;
+    int[] key = new int[n];
+    try (NgramCountFile.Reader reader = adjusted.reader()) {
+      boolean hasNext = reader.next();
+      while (hasNext) {
+        // collect all n-grams with the same context.
+        System.arraycopy(reader.key, 0, context, 0, n - 1);
+        groupSize = 0;
+        do {
+          if (groupSize == words.length) {
+            words = Arrays.copyOf(words, groupSize * 2);
+            wordCounts = Arrays.copyOf(wordCounts, groupSize * 2);
+          }
+          words[groupSize] = reader.key[n - 1];
+          wordCounts[groupSize] = reader.value;
+          groupSize++;
+          hasNext = reader.next();
+        } while (hasNext && sameContext(reader.key, context));
+
+        long total = 0;
+        long[] typeCounts = new long[4];
+        for (int i = 0; i < groupSize; i++) {
+          total += wordCounts[i];
+          typeCounts[wordCounts[i] >= 3 ? 3 : (int) wordCounts[i]]++;
+        }
+        double gamma = gamma(n, total, typeCounts);
+
+        int contextSlot = lower.slotOf(context, 0);
+        if (contextSlot < 0) {
+          throw new IllegalStateException(
+              "Context of a " + n + "-gram does not exist in lower order: "
+                  + Arrays.toString(context));
+        }
+        lower.setValueAt(contextSlot, pack(probability(lower.valueAt(contextSlot)), (float) gamma));
+
+        System.arraycopy(context, 0, key, 0, n - 1);
+        for (int i = 0; i < groupSize; i++) {
+          key[n - 1] = words[i];
+          // lower order probability of (w2..wn)
+          int suffixSlot = lower.slotOf(key, 1);
+          if (suffixSlot < 0) {
+            throw new IllegalStateException(
+                "Suffix of a " + n + "-gram does not exist in lower order: " + Arrays
+                    .toString(key));
+          }
+          double p = (wordCounts[i] - discount(n, wordCounts[i])) / total
+              + gamma * probability(lower.valueAt(suffixSlot));
+          if (highest != null) {
+            highest.write(key, (float) p, 1f);
+          } else {
+            current.put(key, 0, pack((float) p, 1f));
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean sameContext(int[] key, int[] context) {
+    for (int i = 0; i < context.length; i++) {
+      if (key[i] != context[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeTable(File outDir, NgramTable table, boolean hasBackoff) throws IOException {
+    int[] key = new int[table.order];
+    try (NgramDataWriter writer = new NgramDataWriter(outDir, table.order, hasBackoff,
+        table.size())) {
+      for (int slot : table.sortedSlots()) {
+        table.keyAt(slot, key);
+        long value = table.valueAt(slot);
+        writer.write(key, probability(value), backoff(value));
+      }
+    }
+  }
+
+  // probability and back-off values are packed to a long value of NgramTable.
+  private static long pack(float probability, float backoff) {
+    return ((long) Float.floatToIntBits(probability) << 32)
+        | (Float.floatToIntBits(backoff) & 0xffffffffL);
+  }
+
+  private static float probability(long value) {
+    return Float.intBitsToFloat((int) (value >>> 32));
+  }
+
+  private static float backoff(long value) {
+    return Float.intBitsToFloat((int) value);
+  }
+
+  /**
+   * Writes gram, probability and back-off files of an order. Values are converted to log10.
+   */
+  private class NgramDataWriter implements AutoCloseable {
+
+    final DataOutputStream grams;
+    final DataOutputStream probabilities;
+    final DataOutputStream backoffs;
+
+    NgramDataWriter(File dir, int n, boolean hasBackoff, int count) throws IOException {
+      grams = stream(dir, n + MultiFileUncompressedLm.GRAM_IDS_FILE_SUFFIX);
+      grams.writeInt(n);
+      grams.writeInt(count);
+      probabilities = stream(dir, n + MultiFileUncompressedLm.PROB_FILE_SUFFIX);
+      probabilities.writeInt(count);
+      if (hasBackoff) {
+        backoffs = stream(dir, n + MultiFileUncompressedLm.BACKOFF_FILE_SUFFIX);
+        backoffs.writeInt(count);
+      } else {
+        backoffs = null;
+      }
+    }
+
+    private DataOutputStream stream(File dir, String name) throws IOException {
+      return new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(new File(dir, name)), 1 << 16));
+    }
+
+    void write(int[] key, float probability, float backoff) throws IOException {
+      for (int id : key) {
+        grams.writeInt(id);
+      }
+      if (key.length == 1 && key[0] == sentenceBegin) {
+        probabilities.writeFloat(SENTENCE_BEGIN_LOG_PROBABILITY);
+      } else {
+        probabilities.writeFloat((float) Math.log10(probability));
+      }
+      if (backoffs != null) {
+        backoffs.writeFloat((float) Math.log10(backoff));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      grams.close();
+      probabilities.close();
+      if (backoffs != null) {
+        backoffs.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package zemberek.lm.estimation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A binary file of n-grams of an order with long values, sorted by n-gram ids. Format is:
+ * <p/>int32 order <p/>int64 entry count <p/>[int32... ids int64 value]...
+ */
+public class NgramCountFile {
+
+  public final File file;
+  public final int order;
+  public final long count;
+
+  private NgramCountFile(File file, int order, long count) {
+    this.file = file;
+    this.order = order;
+    this.count = count;
+  }
+
+  public static NgramCountFile open(File file) throws IOException {
+    try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+      return new NgramCountFile(file, dis.readInt(), dis.readLong());
+    }
+  }
+
+  static void writeHeader(DataOutputStream dos, int order, long count) throws IOException {
+    dos.writeInt(order);
+    dos.writeLong(count);
+  }
+
+  public Reader reader() throws IOException {
+    return new Reader(file);
+  }
+
+  /**
+   * Merges sorted count files of same order to a single sorted file. Values of equal n-grams are
+   * summed.
+   */
+  public static NgramCountFile merge(List<File> inputs, File output, int order)
+      throws IOException {
+    PriorityQueue<Reader> queue = new PriorityQueue<>(Math.max(1, inputs.size()),
+        (a, b) -> compare(a.key, b.key));
+    List<Reader> readers = new ArrayList<>();
+    long count = 0;
+    try (DataOutputStream dos = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(output), 1 << 16))) {
+      // count is written after merge.
+      writeHeader(dos, order, 0);
+      for (File input : inputs) {
+        Reader reader = new Reader(input);
+        readers.add(reader);
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      }
+      int[] current = new int[order];
+      long value = 0;
+      boolean hasCurrent = false;
+      while (!queue.isEmpty()) {
+        Reader reader = queue.poll();
+        if (hasCurrent && compare(current, reader.key) == 0) {
+          value += reader.value;
+        } else {
+          if (hasCurrent) {
+            write(dos, current, value);
+            count++;
+          }
+          System.arraycopy(reader.key, 0, current, 0, order);
+          value = reader.value;
+          hasCurrent = true;
+        }
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      }
+      if (hasCurrent) {
+        write(dos, current, value);
+        count++;
+      }
+    } finally {
+      for (Reader reader : readers) {
+        reader.close();
+      }
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(output, "rw")) {
+      raf.seek(4);
+      raf.writeLong(count);
+    }
+    return new NgramCountFile(output, order, count);
+  }
+
+  static void write(DataOutputStream dos, int[] key, long value) throws IOException {
+    for (int id : key) {
+      dos.writeInt(id);
+    }
+    dos.writeLong(value);
+  }
+
+  static int compare(int[] a, int[] b) {
+    for (int i = 0; i < a.length; i++) {
+      int c = Integer.compare(a[i], b[i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Sequential reader of a count file. After a successful next() call, key and value fields
+   * contain the current entry. Key array is reused.
+   */
+  public static class Reader implements Closeable {
+
+    final DataInputStream dis;
+    final int order;
+    final long count;
+    long index;
+    public final int[] key;
+    public long value;
+
+    Reader(File file) throws IOException {
+      dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+      order = dis.readInt();
+      count = dis.readLong();
+      key = new int[order];
+    }
+
+    public boolean next() throws IOException {
+      if (index == count) {
+        return false;
+      }
+      for (int i = 0; i < order; i++) {
+        key[i] = dis.readInt();
+      }
+      value = dis.readLong();
+      index++;
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      dis.close();
+    }
+  }
+}
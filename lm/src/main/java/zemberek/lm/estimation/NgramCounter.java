@@ -0,0 +1,262 @@
+package zemberek.lm.estimation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import zemberek.core.SpaceTabTokenizer;
+import zemberek.core.collections.Histogram;
+import zemberek.core.concurrency.BlockingExecutor;
+import zemberek.core.logging.Log;
+import zemberek.core.text.BlockTextLoader;
+import zemberek.core.text.TextChunk;
+import zemberek.lm.LmVocabulary;
+
+/**
+ * Counts n-grams of a corpus for all orders up to a maximum. Each line of the corpus is a sentence
+ * with space separated tokens, sentence begin and end markers are added automatically.
+ * <p>
+ * Counting is done in two passes over the corpus. First pass collects the vocabulary. Word ids are
+ * assigned by descending frequency so results do not depend on thread scheduling. Second pass
+ * counts n-grams of text chunks in local tables and adds them to hash sharded tables of each
+ * order. Shards are spilled to sorted files when they are full and spill files are merged to a
+ * sorted count file per order at the end.
+ */
+public class NgramCounter {
+
+  public static final String VOCABULARY_FILE_NAME = "vocab";
+  public static final String COUNT_FILE_SUFFIX = ".counts";
+
+  private final int order;
+  private final int threadCount;
+  private final long maxEntriesInMemory;
+  private final File workDir;
+
+  private NgramCounter(Builder builder) {
+    this.order = builder.order;
+    this.threadCount = builder.threadCount;
+    this.maxEntriesInMemory = builder.maxEntriesInMemory;
+    this.workDir = builder.workDir;
+  }
+
+  public static Builder builder(int order, File workDir) {
+    return new Builder(order, workDir);
+  }
+
+  public NgramCounts count(BlockTextLoader corpus) throws IOException {
+    Files.createDirectories(workDir.toPath());
+    LmVocabulary vocabulary = collectVocabulary(corpus);
+    Log.info("Vocabulary size: %d", vocabulary.size());
+    vocabulary.saveBinary(new File(workDir, VOCABULARY_FILE_NAME));
+
+    int shardCount = threadCount * 4;
+    SpillingNgramCounts[] counts = new SpillingNgramCounts[order + 1];
+    for (int n = 1; n <= order; n++) {
+      counts[n] = new SpillingNgramCounts(n, shardCount, maxEntriesInMemory / order, workDir,
+          n + "gram");
+    }
+    ExecutorService service = new BlockingExecutor(threadCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (TextChunk chunk : corpus) {
+        futures.add(service.submit(() -> {
+          countChunk(chunk, vocabulary, counts);
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        waitFor(future);
+      }
+    } finally {
+      service.shutdown();
+    }
+
+    NgramCountFile[] files = new NgramCountFile[order + 1];
+    for (int n = 1; n <= order; n++) {
+      Log.info("Merging %d spill files of %d-grams.", counts[n].spillCount(), n);
+      files[n] = counts[n].finish(new File(workDir, n + COUNT_FILE_SUFFIX));
+      Log.info("%d-gram count: %d", n, files[n].count);
+    }
+    return new NgramCounts(vocabulary, files);
+  }
+
+  private LmVocabulary collectVocabulary(BlockTextLoader corpus) throws IOException {
+    Log.info("Collecting vocabulary.");
+    Histogram<String> histogram = new Histogram<>(100_000);
+    ExecutorService service = new BlockingExecutor(threadCount);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      SpaceTabTokenizer tokenizer = new SpaceTabTokenizer();
+      for (TextChunk chunk : corpus) {
+        futures.add(service.submit(() -> {
+          Histogram<String> local = new Histogram<>();
+          for (String line : chunk) {
+            for (String token : tokenizer.split(line)) {
+              if (!isSpecialToken(token)) {
+                local.add(token);
+              }
+            }
+          }
+          synchronized (histogram) {
+            histogram.add(local);
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        waitFor(future);
+      }
+    } finally {
+      service.shutdown();
+    }
+    List<String> words = new ArrayList<>(histogram.getKeySet());
+    // frequent words first, ties are broken alphabetically so ids are deterministic.
+    words.sort((a, b) -> {
+      int c = Integer.compare(histogram.getCount(b), histogram.getCount(a));
+      return c != 0 ? c : a.compareTo(b);
+    });
+    List<String> all = new ArrayList<>(words.size() + 3);
+    Collections.addAll(all,
+        LmVocabulary.DEFAULT_UNKNOWN_WORD,
+        LmVocabulary.DEFAULT_SENTENCE_BEGIN_MARKER,
+        LmVocabulary.DEFAULT_SENTENCE_END_MARKER);
+    all.addAll(words);
+    return new LmVocabulary(all);
+  }
+
+  private static boolean isSpecialToken(String token) {
+    return token.equals(LmVocabulary.DEFAULT_UNKNOWN_WORD)
+        || token.equals(LmVocabulary.DEFAULT_SENTENCE_BEGIN_MARKER)
+        || token.equals(LmVocabulary.DEFAULT_SENTENCE_END_MARKER);
+  }
+
+  private void countChunk(TextChunk chunk, LmVocabulary vocabulary,
+      SpillingNgramCounts[] counts) throws IOException {
+    NgramTable[] local = new NgramTable[order + 1];
+    for (int n = 1; n <= order; n++) {
+      local[n] = new NgramTable(n, 1 << 12);
+    }
+    SpaceTabTokenizer tokenizer = new SpaceTabTokenizer();
+    int[] ids = new int[64];
+    for (String line : chunk) {
+      String[] tokens = tokenizer.split(line);
+      if (tokens.length == 0) {
+        continue;
+      }
+      int length = tokens.length + 2;
+      if (ids.length < length) {
+        ids = new int[length * 2];
+      }
+      ids[0] = vocabulary.getSentenceStartIndex();
+      for (int i = 0; i < tokens.length; i++) {
+        ids[i + 1] = vocabulary.indexOf(tokens[i]);
+      }
+      ids[length - 1] = vocabulary.getSentenceEndIndex();
+      for (int n = 1; n <= order; n++) {
+        for (int i = 0; i + n <= length; i++) {
+          local[n].add(ids, i, 1);
+        }
+      }
+    }
+    for (int n = 1; n <= order; n++) {
+      counts[n].addAll(local[n]);
+    }
+  }
+
+  static <T> T waitFor(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a task.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  public static class Builder {
+
+    private final int order;
+    private final File workDir;
+    private int threadCount = 1;
+    private long maxEntriesInMemory = 50_000_000;
+
+    Builder(int order, File workDir) {
+      if (order < 1) {
+        throw new IllegalArgumentException("Order must be positive but it is " + order);
+      }
+      this.order = order;
+      this.workDir = workDir;
+    }
+
+    public Builder threadCount(int threadCount) {
+      if (threadCount < 1) {
+        throw new IllegalArgumentException(
+            "Thread count must be positive but it is " + threadCount);
+      }
+      this.threadCount = threadCount;
+      return this;
+    }
+
+    /**
+     * Maximum amount of n-grams kept in shared counting tables before they are spilled to disk.
+     * Local tables of text chunks being processed are not included.
+     */
+    public Builder maxEntriesInMemory(long maxEntriesInMemory) {
+      this.maxEntriesInMemory = maxEntriesInMemory;
+      return this;
+    }
+
+    public NgramCounter build() {
+      return new NgramCounter(this);
+    }
+  }
+
+  /**
+   * Vocabulary and sorted count files of all orders.
+   */
+  public static class NgramCounts {
+
+    public final LmVocabulary vocabulary;
+    // one based.
+    final NgramCountFile[] files;
+
+    NgramCounts(LmVocabulary vocabulary, NgramCountFile[] files) {
+      this.vocabulary = vocabulary;
+      this.files = files;
+    }
+
+    /**
+     * Loads counts from the work directory of a previous {@link NgramCounter#count} call.
+     */
+    public static NgramCounts load(File dir) throws IOException {
+      LmVocabulary vocabulary = LmVocabulary.loadFromBinary(new File(dir, VOCABULARY_FILE_NAME));
+      List<NgramCountFile> files = new ArrayList<>();
+      files.add(null);
+      File file;
+      while ((file = new File(dir, files.size() + COUNT_FILE_SUFFIX)).exists()) {
+        files.add(NgramCountFile.open(file));
+      }
+      if (files.size() == 1) {
+        throw new IOException("No count files found in " + dir);
+      }
+      return new NgramCounts(vocabulary, files.toArray(new NgramCountFile[0]));
+    }
+
+    public int getOrder() {
+      return files.length - 1;
+    }
+
+    public NgramCountFile getCountFile(int n) {
+      return files[n];
+    }
+  }
+}
@@ -0,0 +1,553 @@
+package zemberek.lm.estimation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import zemberek.core.logging.Log;
+import zemberek.lm.LmVocabulary;
+import zemberek.lm.compression.MultiFileUncompressedLm;
+import zemberek.lm.estimation.NgramCounter.NgramCounts;
+
+/**
+ * Prunes n-grams of a back-off language model in MultiFileUncompressedLm format and writes a
+ * smaller model in the same format. Two criteria are available:
+ * <pre>
+ * - Relative entropy (Stolcke, "Entropy-based Pruning of Backoff Language Models"). An n-gram is
+ *   removed if the relative perplexity increase caused by replacing it with its back-off estimate
+ *   is below a threshold.
+ * - Count threshold. An n-gram is removed if its count in the training corpus is below the minimum
+ *   count of its order. Counts generated by {@link NgramCounter} are required.
+ * </pre>
+ * An n-gram is removed if any of the enabled criteria removes it. Uni-grams and n-grams that are
+ * contexts of remaining higher order n-grams are never removed. Orders are pruned from the highest
+ * to bi-grams. After pruning, back-off weights of all contexts are recalculated from the pruned
+ * model so that it stays normalized.
+ * <p>
+ * N-grams of the order being pruned are streamed from the model files. Orders below it are kept in
+ * memory, because back-off estimates of n-grams are calculated from them.
+ */
+public class NgramPruner {
+
+  private static final double LN10 = Math.log(10);
+  // prevents log(0) for contexts whose explicit n-grams hold all of the probability mass.
+  private static final double MIN_LEFTOVER_MASS = 1e-10;
+
+  private final MultiFileUncompressedLm lm;
+  private final int order;
+  private final double entropyThreshold;
+  private final NgramCounts counts;
+  private final int[] minCounts;
+
+  private LmVocabulary vocabulary;
+  // one based. Log10 probability and back-off values of orders lower than the highest order.
+  private NgramTable[] tables;
+
+  private NgramPruner(Builder builder) {
+    this.lm = builder.lm;
+    this.order = lm.getOrder();
+    this.entropyThreshold = builder.entropyThreshold;
+    this.counts = builder.counts;
+    this.minCounts = builder.minCounts;
+  }
+
+  public static Builder builder(MultiFileUncompressedLm lm) {
+    return new Builder(lm);
+  }
+
+  /**
+   * Prunes the model and writes the result to `outDir` in MultiFileUncompressedLm format.
+   */
+  public PruneResult prune(File outDir) throws IOException {
+    Files.createDirectories(outDir.toPath());
+    vocabulary = LmVocabulary.loadFromBinary(lm.getVocabularyFile());
+    int[] originalCounts = new int[order + 1];
+    int[] prunedCounts = new int[order + 1];
+    for (int n = 1; n <= order; n++) {
+      originalCounts[n] = lm.getCount(n);
+    }
+    tables = new NgramTable[order];
+    for (int n = 1; n < order; n++) {
+      tables[n] = loadTable(lm, n);
+    }
+
+    double relativeEntropy = 0;
+    // contexts of n-grams kept in the previously pruned (higher) order.
+    NgramTable requiredContexts = null;
+    for (int n = order; n >= 2; n--) {
+      NgramTable nextRequired = n > 2 ? new NgramTable(n - 1, 1 << 10) : null;
+      OrderPruner pruner = new OrderPruner(n, requiredContexts, nextRequired);
+      pruner.collectContextMass();
+      prunedCounts[n] = pruner.prune(outDir);
+      relativeEntropy += pruner.relativeEntropy;
+      Log.info("Order %d: %d of %d n-grams are kept.", n, prunedCounts[n], originalCounts[n]);
+      requiredContexts = nextRequired;
+    }
+    // uni-grams are not pruned.
+    prunedCounts[1] = originalCounts[1];
+    Files.copy(lm.getGramFile(1).toPath(),
+        new File(outDir, 1 + MultiFileUncompressedLm.GRAM_IDS_FILE_SUFFIX).toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    Files.copy(lm.getProbFile(1).toPath(),
+        new File(outDir, 1 + MultiFileUncompressedLm.PROB_FILE_SUFFIX).toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+
+    try (DataOutputStream info = new DataOutputStream(new FileOutputStream(
+        new File(outDir, MultiFileUncompressedLm.INFO_FILE_NAME)))) {
+      info.writeInt(order);
+      for (int n = 1; n <= order; n++) {
+        info.writeInt(prunedCounts[n]);
+      }
+    }
+    Files.copy(lm.getVocabularyFile().toPath(),
+        new File(outDir, MultiFileUncompressedLm.VOCAB_FILE_NAME).toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    MultiFileUncompressedLm pruned = new MultiFileUncompressedLm(outDir);
+    writeBackoffs(pruned);
+    tables = null;
+    return new PruneResult(pruned, originalCounts, prunedCounts, relativeEntropy);
+  }
+
+  private NgramTable loadTable(MultiFileUncompressedLm model, int n) throws IOException {
+    NgramTable table = new NgramTable(n, model.getCount(n));
+    boolean hasBackoffs = model.getBackoffFile(n).exists();
+    try (NgramReader reader = new NgramReader(model, n, hasBackoffs)) {
+      while (reader.next()) {
+        table.put(reader.key, 0, pack(reader.probability, reader.backoff));
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Log10 probability of ids[end-1] after ids[begin, end-1) calculated with back-off from the in
+   * memory orders.
+   */
+  private double logProbability(int[] ids, int begin, int end) {
+    double backoffSum = 0;
+    for (int b = begin; b < end; b++) {
+      int length = end - b;
+      int slot = tables[length].slotOf(ids, b);
+      if (slot >= 0) {
+        return backoffSum + probability(tables[length].valueAt(slot));
+      }
+      if (length > 1) {
+        int contextSlot = tables[length - 1].slotOf(ids, b);
+        if (contextSlot >= 0) {
+          backoffSum += backoff(tables[length - 1].valueAt(contextSlot));
+        }
+      }
+    }
+    throw new IllegalStateException("Word does not exist in uni-grams: " + ids[end - 1]);
+  }
+
+  /**
+   * Log10 probability of the word sequence in ids[0, length). Sentence begin marker at the
+   * beginning is not predicted.
+   */
+  private double sequenceLogProbability(int[] ids, int length) {
+    double result = 0;
+    for (int i = 0; i < length; i++) {
+      if (i == 0 && ids[0] == vocabulary.getSentenceStartIndex()) {
+        continue;
+      }
+      result += logProbability(ids, 0, i + 1);
+    }
+    return result;
+  }
+
+  /**
+   * Calculates back-off weights of the pruned model and writes back-off files. Weight of context h
+   * is (1 - sum of P(w|h) for explicit hw) / (1 - sum of P(w|h') for same words), h' is h without
+   * its first word. Weights are calculated from uni-gram contexts to higher orders, because lower
+   * order probabilities depend on back-off weights of shorter contexts.
+   */
+  private void writeBackoffs(MultiFileUncompressedLm pruned) throws IOException {
+    for (int n = 1; n < order; n++) {
+      tables[n] = loadTable(pruned, n);
+    }
+    for (int n = 1; n < order; n++) {
+      NgramTable contexts = tables[n];
+      double[] explicitMass = new double[contexts.capacity()];
+      double[] lowerMass = new double[contexts.capacity()];
+      try (NgramReader reader = new NgramReader(pruned, n + 1, false)) {
+        while (reader.next()) {
+          int slot = contexts.slotOf(reader.key, 0);
+          explicitMass[slot] += Math.pow(10, reader.probability);
+          lowerMass[slot] += Math.pow(10, logProbability(reader.key, 1, n + 1));
+        }
+      }
+      for (int slot = 0; slot < contexts.capacity(); slot++) {
+        if (contexts.isEmptySlot(slot)) {
+          continue;
+        }
+        double leftover = Math.max(1 - explicitMass[slot], MIN_LEFTOVER_MASS);
+        double lowerLeftover = Math.max(1 - lowerMass[slot], MIN_LEFTOVER_MASS);
+        contexts.setValueAt(slot, pack(probability(contexts.valueAt(slot)),
+            (float) Math.log10(leftover / lowerLeftover)));
+      }
+
+      // header count is copied from probability file, uni-gram files may contain special tokens
+      // that are not counted in their headers.
+      int headerCount;
+      try (DataInputStream dis = new DataInputStream(new FileInputStream(pruned.getProbFile(n)))) {
+        headerCount = dis.readInt();
+      }
+      File backoffFile = new File(pruned.getLmDir(), n + MultiFileUncompressedLm.BACKOFF_FILE_SUFFIX);
+      try (NgramReader reader = new NgramReader(pruned, n, false);
+          DataOutputStream dos = new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(backoffFile), 1 << 16))) {
+        dos.writeInt(headerCount);
+        while (reader.next()) {
+          dos.writeFloat(backoff(contexts.valueAt(contexts.slotOf(reader.key, 0))));
+        }
+      }
+    }
+  }
+
+  // prunes n-grams of a single order.
+  private class OrderPruner {
+
+    final int n;
+    final NgramTable contexts;
+    final NgramTable requiredContexts;
+    final NgramTable nextRequired;
+    final NgramTable frequent;
+
+    // values per context slot.
+    final double[] explicitMass;
+    final double[] lowerMass;
+    final double[] contextLogProbability;
+
+    double relativeEntropy;
+
+    OrderPruner(int n, NgramTable requiredContexts, NgramTable nextRequired) throws IOException {
+      this.n = n;
+      this.contexts = tables[n - 1];
+      this.requiredContexts = requiredContexts;
+      this.nextRequired = nextRequired;
+      this.frequent = frequentNgrams(n);
+      int capacity = contexts.capacity();
+      explicitMass = new double[capacity];
+      lowerMass = new double[capacity];
+      contextLogProbability = new double[capacity];
+      Arrays.fill(contextLogProbability, Double.NaN);
+    }
+
+    // calculates probability mass of explicit n-grams of each context with this and lower order.
+    void collectContextMass() throws IOException {
+      try (NgramReader reader = new NgramReader(lm, n, false)) {
+        while (reader.next()) {
+          int slot = contexts.slotOf(reader.key, 0);
+          if (slot < 0) {
+            continue;
+          }
+          explicitMass[slot] += Math.pow(10, reader.probability);
+          lowerMass[slot] += Math.pow(10, logProbability(reader.key, 1, n));
+          if (Double.isNaN(contextLogProbability[slot])) {
+            contextLogProbability[slot] = sequenceLogProbability(reader.key, n - 1);
+          }
+        }
+      }
+    }
+
+    int prune(File outDir) throws IOException {
+      int kept = 0;
+      try (NgramReader reader = new NgramReader(lm, n, false);
+          NgramWriter writer = new NgramWriter(outDir, n)) {
+        while (reader.next()) {
+          int[] key = reader.key;
+          int slot = contexts.slotOf(key, 0);
+          boolean keep = slot < 0
+              || (requiredContexts != null && requiredContexts.slotOf(key, 0) >= 0);
+          if (!keep) {
+            double delta = relativeEntropy(slot, reader.probability, logProbability(key, 1, n));
+            boolean frequentEnough = frequent == null || frequent.slotOf(key, 0) >= 0;
+            keep = frequentEnough && (entropyThreshold <= 0 || Math.expm1(delta) >= entropyThreshold);
+            if (!keep) {
+              relativeEntropy += delta;
+            }
+          }
+          if (keep) {
+            writer.write(key, reader.probability);
+            if (nextRequired != null) {
+              nextRequired.put(key, 0, 1);
+            }
+            kept++;
+          }
+        }
+      }
+      return kept;
+    }
+
+    /**
+     * Relative entropy between the model and the model without n-gram (h,w), weighted with P(h).
+     * Probabilities of other words that back-off from h change because back-off weight of h is
+     * increased.
+     */
+    private double relativeEntropy(int slot, double logProbability, double lowerLogProbability) {
+      double p = Math.pow(10, logProbability);
+      double lowerP = Math.pow(10, lowerLogProbability);
+      double leftover = Math.max(1 - explicitMass[slot], MIN_LEFTOVER_MASS);
+      double lowerLeftover = Math.max(1 - lowerMass[slot], MIN_LEFTOVER_MASS);
+      double logAlpha = Math.log(leftover / lowerLeftover);
+      double newLogAlpha = Math.log((leftover + p) / (lowerLeftover + lowerP));
+      double contextP = Math.pow(10, contextLogProbability[slot]);
+      return contextP * (
+          p * ((logProbability - lowerLogProbability) * LN10 - newLogAlpha)
+              + leftover * (logAlpha - newLogAlpha));
+    }
+  }
+
+  // n-grams with at least the minimum count of order n, with model word ids.
+  private NgramTable frequentNgrams(int n) throws IOException {
+    if (counts == null || minCounts[n] <= 1) {
+      return null;
+    }
+    if (n > counts.getOrder()) {
+      throw new IllegalStateException("There are no counts for order " + n);
+    }
+    int[] idMap = new int[counts.vocabulary.size()];
+    for (int i = 0; i < idMap.length; i++) {
+      String word = counts.vocabulary.getWord(i);
+      idMap[i] = vocabulary.contains(word) ? vocabulary.indexOf(word) : -1;
+    }
+    NgramTable table = new NgramTable(n, 1 << 10);
+    int[] key = new int[n];
+    try (NgramCountFile.Reader reader = counts.getCountFile(n).reader()) {
+      outer:
+      while (reader.next()) {
+        if (reader.value < minCounts[n]) {
+          continue;
+        }
+        for (int i = 0; i < n; i++) {
+          key[i] = idMap[reader.key[i]];
+          if (key[i] == -1) {
+            continue outer;
+          }
+        }
+        table.put(key, 0, reader.value);
+      }
+    }
+    return table;
+  }
+
+  private static long pack(float probability, float backoff) {
+    return ((long) Float.floatToIntBits(probability) << 32)
+        | (Float.floatToIntBits(backoff) & 0xffffffffL);
+  }
+
+  private static float probability(long value) {
+    return Float.intBitsToFloat((int) (value >>> 32));
+  }
+
+  private static float backoff(long value) {
+    return Float.intBitsToFloat((int) value);
+  }
+
+  // Sequential reader of gram, probability and back-off files of an order.
+  private static class NgramReader implements Closeable {
+
+    final DataInputStream grams;
+    final DataInputStream probabilities;
+    final DataInputStream backoffs;
+    final int count;
+    int index;
+    final int[] key;
+    float probability;
+    float backoff;
+
+    NgramReader(MultiFileUncompressedLm lm, int n, boolean readBackoffs) throws IOException {
+      grams = stream(lm.getGramFile(n));
+      probabilities = stream(lm.getProbFile(n));
+      backoffs = readBackoffs ? stream(lm.getBackoffFile(n)) : null;
+      // count values in file headers are skipped, uni-gram files may contain special tokens
+      // that are not counted in their headers.
+      grams.skipBytes(8);
+      probabilities.readInt();
+      if (backoffs != null) {
+        backoffs.readInt();
+      }
+      count = lm.getCount(n);
+      key = new int[n];
+    }
+
+    private static DataInputStream stream(File file) throws IOException {
+      return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    boolean next() throws IOException {
+      if (index == count) {
+        return false;
+      }
+      for (int i = 0; i < key.length; i++) {
+        key[i] = grams.readInt();
+      }
+      probability = probabilities.readFloat();
+      if (backoffs != null) {
+        backoff = backoffs.readFloat();
+      }
+      index++;
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      grams.close();
+      probabilities.close();
+      if (backoffs != null) {
+        backoffs.close();
+      }
+    }
+  }
+
+  // Writes gram and probability files of an order. Counts are written to the file headers when
+  // writer is closed.
+  private static class NgramWriter implements Closeable {
+
+    final File gramFile;
+    final File probabilityFile;
+    final DataOutputStream grams;
+    final DataOutputStream probabilities;
+    int count;
+
+    NgramWriter(File dir, int n) throws IOException {
+      gramFile = new File(dir, n + MultiFileUncompressedLm.GRAM_IDS_FILE_SUFFIX);
+      probabilityFile = new File(dir, n + MultiFileUncompressedLm.PROB_FILE_SUFFIX);
+      grams = stream(gramFile);
+      grams.writeInt(n);
+      grams.writeInt(0);
+      probabilities = stream(probabilityFile);
+      probabilities.writeInt(0);
+    }
+
+    private static DataOutputStream stream(File file) throws IOException {
+      return new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    void write(int[] key, float probability) throws IOException {
+      for (int id : key) {
+        grams.writeInt(id);
+      }
+      probabilities.writeFloat(probability);
+      count++;
+    }
+
+    private void writeCount(File file, long position) throws IOException {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.seek(position);
+        raf.writeInt(count);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      grams.close();
+      probabilities.close();
+      writeCount(gramFile, 4);
+      writeCount(probabilityFile, 0);
+    }
+  }
+
+  public static class Builder {
+
+    private final MultiFileUncompressedLm lm;
+    private double entropyThreshold = 0;
+    private NgramCounts counts;
+    private int[] minCounts;
+
+    Builder(MultiFileUncompressedLm lm) {
+      this.lm = lm;
+    }
+
+    /**
+     * Removes n-grams if relative perplexity increase caused by their removal is below
+     * `threshold`. Typical values are between 1e-9 and 1e-6. 0 disables entropy pruning.
+     */
+    public Builder entropyThreshold(double threshold) {
+      if (threshold < 0) {
+        throw new IllegalArgumentException("Threshold must not be negative but it is " + threshold);
+      }
+      this.entropyThreshold = threshold;
+      return this;
+    }
+
+    /**
+     * Removes n-grams with counts lower than minimum count of their order. minCounts[0] is for
+     * uni-grams and it is ignored because uni-grams are not pruned. Missing orders use the last
+     * given value.
+     */
+    public Builder minCounts(NgramCounts counts, int... minCounts) {
+      if (minCounts.length == 0) {
+        throw new IllegalArgumentException("At least one minimum count is required.");
+      }
+      this.counts = counts;
+      this.minCounts = new int[lm.getOrder() + 1];
+      for (int n = 1; n <= lm.getOrder(); n++) {
+        this.minCounts[n] = minCounts[Math.min(n, minCounts.length) - 1];
+      }
+      return this;
+    }
+
+    public NgramPruner build() {
+      if (entropyThreshold == 0 && counts == null) {
+        throw new IllegalStateException("No pruning criteria is defined.");
+      }
+      return new NgramPruner(this);
+    }
+  }
+
+  /**
+   * N-gram counts before and after pruning, and the estimated relative entropy between original
+   * and pruned models.
+   */
+  public static class PruneResult {
+
+    public final MultiFileUncompressedLm model;
+    // one based.
+    private final int[] originalCounts;
+    private final int[] prunedCounts;
+    private final double relativeEntropy;
+
+    PruneResult(MultiFileUncompressedLm model, int[] originalCounts, int[] prunedCounts,
+        double relativeEntropy) {
+      this.model = model;
+      this.originalCounts = originalCounts;
+      this.prunedCounts = prunedCounts;
+      this.relativeEntropy = relativeEntropy;
+    }
+
+    public int getOriginalCount(int n) {
+      return originalCounts[n];
+    }
+
+    public int getPrunedCount(int n) {
+      return prunedCounts[n];
+    }
+
+    /**
+     * Sum of relative entropies (in nats) of removed n-grams. This is an estimate because effects
+     * of removing several n-grams of a context are assumed to be independent.
+     */
+    public double getRelativeEntropy() {
+      return relativeEntropy;
+    }
+
+    /**
+     * Estimated relative perplexity increase. 0.05 means perplexity is expected to increase 5%.
+     */
+    public double getEstimatedPerplexityIncrease() {
+      return Math.expm1(relativeEntropy);
+    }
+  }
+}
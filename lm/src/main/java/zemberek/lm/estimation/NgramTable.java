@@ -0,0 +1,281 @@
+package zemberek.lm.estimation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table from n-grams of a fixed order to long values. Keys are kept in a
+ * single int array and values in a long array, so table does not create objects per n-gram. Used
+ * for counting n-grams and for keeping estimated values of an order in memory.
+ * <p>
+ * This class is not thread safe.
+ */
+class NgramTable {
+
+  private static final int EMPTY = -1;
+  private static final double LOAD_FACTOR = 0.6;
+
+  final int order;
+  // key of slot i is in [i*order, (i+1)*order). First id is EMPTY for empty slots.
+  private int[] keys;
+  private long[] values;
+  private int size;
+  private int mask;
+  private int threshold;
+
+  NgramTable(int order, int initialCapacity) {
+    this.order = order;
+    int capacity = 4;
+    while (capacity * LOAD_FACTOR < initialCapacity) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity * order];
+    Arrays.fill(keys, EMPTY);
+    values = new long[capacity];
+    mask = capacity - 1;
+    threshold = (int) (capacity * LOAD_FACTOR);
+    size = 0;
+  }
+
+  static int hash(int[] ids, int begin, int order) {
+    int h = 0x811C9DC5;
+    for (int i = begin; i < begin + order; i++) {
+      h = (h ^ ids[i]) * 16777619;
+    }
+    // FNV leaves lower bits poorly mixed, apply a finalizer.
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h & 0x7fffffff;
+  }
+
+  private int locate(int[] ids, int begin) {
+    int slot = hash(ids, begin, order) & mask;
+    while (true) {
+      int start = slot * order;
+      if (keys[start] == EMPTY) {
+        return slot;
+      }
+      if (equalKeys(start, ids, begin)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private boolean equalKeys(int start, int[] ids, int begin) {
+    for (int i = 0; i < order; i++) {
+      if (keys[start + i] != ids[begin + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds `value` to the value of n-gram in ids[begin, begin + order). If n-gram does not exist, it
+   * is inserted with `value`.
+   */
+  void add(int[] ids, int begin, long value) {
+    int slot = locate(ids, begin);
+    if (keys[slot * order] == EMPTY) {
+      insert(slot, ids, begin, value);
+    } else {
+      values[slot] += value;
+    }
+  }
+
+  /**
+   * Sets the value of n-gram in ids[begin, begin + order).
+   */
+  void put(int[] ids, int begin, long value) {
+    int slot = locate(ids, begin);
+    if (keys[slot * order] == EMPTY) {
+      insert(slot, ids, begin, value);
+    } else {
+      values[slot] = value;
+    }
+  }
+
+  private void insert(int slot, int[] ids, int begin, long value) {
+    System.arraycopy(ids, begin, keys, slot * order, order);
+    values[slot] = value;
+    size++;
+    if (size > threshold) {
+      expand();
+    }
+  }
+
+  /**
+   * Returns slot index of n-gram in ids[begin, begin + order), or -1 if it does not exist.
+   */
+  int slotOf(int[] ids, int begin) {
+    int slot = locate(ids, begin);
+    return keys[slot * order] == EMPTY ? -1 : slot;
+  }
+
+  long valueAt(int slot) {
+    return values[slot];
+  }
+
+  void setValueAt(int slot, long value) {
+    values[slot] = value;
+  }
+
+  /**
+   * Copies the key in `slot` to `target`.
+   */
+  void keyAt(int slot, int[] target) {
+    System.arraycopy(keys, slot * order, target, 0, order);
+  }
+
+  boolean isEmptySlot(int slot) {
+    return keys[slot * order] == EMPTY;
+  }
+
+  int capacity() {
+    return values.length;
+  }
+
+  /**
+   * Adds all values of `other` to this table.
+   */
+  void addAll(NgramTable other) {
+    for (int slot = 0; slot < other.capacity(); slot++) {
+      if (!other.isEmptySlot(slot)) {
+        add(other.keys, slot * order, other.values[slot]);
+      }
+    }
+  }
+
+  private void expand() {
+    int[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(oldValues.length * 2);
+    for (int slot = 0; slot < oldValues.length; slot++) {
+      if (oldKeys[slot * order] != EMPTY) {
+        int newSlot = locate(oldKeys, slot * order);
+        System.arraycopy(oldKeys, slot * order, keys, newSlot * order, order);
+        values[newSlot] = oldValues[slot];
+        size++;
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    if (size > 0) {
+      Arrays.fill(keys, EMPTY);
+      Arrays.fill(values, 0);
+      size = 0;
+    }
+  }
+
+  /**
+   * @return slots of all n-grams, sorted by n-gram ids lexicographically.
+   */
+  int[] sortedSlots() {
+    int[] slots = new int[size];
+    int k = 0;
+    for (int slot = 0; slot < values.length; slot++) {
+      if (keys[slot * order] != EMPTY) {
+        slots[k++] = slot;
+      }
+    }
+    sort(slots, 0, slots.length - 1);
+    return slots;
+  }
+
+  private int compareSlots(int a, int b) {
+    int ia = a * order;
+    int ib = b * order;
+    for (int i = 0; i < order; i++) {
+      int c = Integer.compare(keys[ia + i], keys[ib + i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  // quicksort of slot indexes with insertion sort for small ranges.
+  private void sort(int[] slots, int lo, int hi) {
+    while (hi - lo > 16) {
+      int mid = (lo + hi) >>> 1;
+      // median of three as pivot.
+      if (compareSlots(slots[mid], slots[lo]) < 0) {
+        swap(slots, mid, lo);
+      }
+      if (compareSlots(slots[hi], slots[lo]) < 0) {
+        swap(slots, hi, lo);
+      }
+      if (compareSlots(slots[hi], slots[mid]) < 0) {
+        swap(slots, hi, mid);
+      }
+      int pivot = slots[mid];
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (compareSlots(slots[i], pivot) < 0) {
+          i++;
+        }
+        while (compareSlots(slots[j], pivot) > 0) {
+          j--;
+        }
+        if (i <= j) {
+          swap(slots, i++, j--);
+        }
+      }
+      // recurse into the smaller part to limit stack depth.
+      if (j - lo < hi - i) {
+        sort(slots, lo, j);
+        lo = i;
+      } else {
+        sort(slots, i, hi);
+        hi = j;
+      }
+    }
+    for (int i = lo + 1; i <= hi; i++) {
+      int s = slots[i];
+      int j = i - 1;
+      while (j >= lo && compareSlots(slots[j], s) > 0) {
+        slots[j + 1] = slots[j];
+        j--;
+      }
+      slots[j + 1] = s;
+    }
+  }
+
+  private static void swap(int[] arr, int i, int j) {
+    int t = arr[i];
+    arr[i] = arr[j];
+    arr[j] = t;
+  }
+
+  /**
+   * Writes all n-grams and values sorted by n-gram ids to a count file.
+   */
+  void writeSorted(File file) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      NgramCountFile.writeHeader(dos, order, size);
+      for (int slot : sortedSlots()) {
+        for (int i = 0; i < order; i++) {
+          dos.writeInt(keys[slot * order + i]);
+        }
+        dos.writeLong(values[slot]);
+      }
+    }
+  }
+}
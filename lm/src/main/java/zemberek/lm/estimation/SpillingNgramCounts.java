@@ -0,0 +1,130 @@
+package zemberek.lm.estimation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates n-gram counts of an order in hash sharded tables. Threads add counts to different
+ * shards concurrently. When a shard reaches its entry limit, it is written to a sorted spill file
+ * and cleared, so memory usage is bounded. {@link #finish(File)} merges spill files to a single
+ * sorted count file.
+ */
+class SpillingNgramCounts {
+
+  private final int order;
+  private final NgramTable[] shards;
+  private final int shardLimit;
+  private final File workDir;
+  private final String name;
+  private final List<File> spills = new ArrayList<>();
+
+  SpillingNgramCounts(int order, int shardCount, long maxEntries, File workDir, String name) {
+    this.order = order;
+    this.shardLimit = (int) Math.max(1024, Math.min(1 << 28, maxEntries / shardCount));
+    this.workDir = workDir;
+    this.name = name;
+    shards = new NgramTable[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new NgramTable(order, Math.min(shardLimit, 1 << 12));
+    }
+  }
+
+  private int shardOf(int[] ids, int begin) {
+    // table slots use lower bits of the hash, shards use higher bits of a multiplied hash.
+    int h = NgramTable.hash(ids, begin, order) * 0x9E3779B9;
+    return (h >>> 8) % shards.length;
+  }
+
+  /**
+   * Adds counts of a local table. Entries are grouped by shard, so each shard lock is taken once.
+   */
+  void addAll(NgramTable local) throws IOException {
+    // group slots of local table by shard with a counting sort.
+    int[] slotShards = new int[local.capacity()];
+    int[] shardStarts = new int[shards.length + 1];
+    int[] key = new int[order];
+    for (int slot = 0; slot < local.capacity(); slot++) {
+      if (!local.isEmptySlot(slot)) {
+        local.keyAt(slot, key);
+        slotShards[slot] = shardOf(key, 0);
+        shardStarts[slotShards[slot] + 1]++;
+      }
+    }
+    for (int s = 0; s < shards.length; s++) {
+      shardStarts[s + 1] += shardStarts[s];
+    }
+    int[] grouped = new int[local.size()];
+    int[] positions = shardStarts.clone();
+    for (int slot = 0; slot < local.capacity(); slot++) {
+      if (!local.isEmptySlot(slot)) {
+        grouped[positions[slotShards[slot]]++] = slot;
+      }
+    }
+    for (int s = 0; s < shards.length; s++) {
+      NgramTable shard = shards[s];
+      synchronized (shard) {
+        for (int i = shardStarts[s]; i < shardStarts[s + 1]; i++) {
+          local.keyAt(grouped[i], key);
+          shard.add(key, 0, local.valueAt(grouped[i]));
+          spillIfFull(shard);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds `value` to the count of n-gram in ids[begin, begin + order).
+   */
+  void add(int[] ids, int begin, long value) throws IOException {
+    NgramTable shard = shards[shardOf(ids, begin)];
+    synchronized (shard) {
+      shard.add(ids, begin, value);
+      spillIfFull(shard);
+    }
+  }
+
+  private void spillIfFull(NgramTable shard) throws IOException {
+    if (shard.size() >= shardLimit) {
+      spill(shard);
+    }
+  }
+
+  private void spill(NgramTable shard) throws IOException {
+    File spillFile;
+    synchronized (spills) {
+      spillFile = new File(workDir, name + "." + spills.size() + ".spill");
+      spills.add(spillFile);
+    }
+    shard.writeSorted(spillFile);
+    shard.clear();
+  }
+
+  int spillCount() {
+    synchronized (spills) {
+      return spills.size();
+    }
+  }
+
+  /**
+   * Writes remaining counts and merges all spill files to `output`. Spill files are deleted.
+   */
+  NgramCountFile finish(File output) throws IOException {
+    for (NgramTable shard : shards) {
+      synchronized (shard) {
+        if (shard.size() > 0) {
+          spill(shard);
+        }
+      }
+    }
+    NgramCountFile result = NgramCountFile.merge(spills, output, order);
+    for (File spill : spills) {
+      if (!spill.delete()) {
+        spill.deleteOnExit();
+      }
+    }
+    spills.clear();
+    return result;
+  }
+}
@@ -0,0 +1,137 @@
+package zemberek.lm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import zemberek.core.logging.Log;
+
+public class CompactLmVocabularyTest {
+
+  private static List<String> randomWords(int count, Random random) {
+    String alphabet = "abcçdefgğhıijklmnoöprsştuüvyzâ";
+    List<String> words = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      StringBuilder sb = new StringBuilder();
+      int length = random.nextInt(12) + 1;
+      for (int j = 0; j < length; j++) {
+        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      words.add(sb.toString());
+    }
+    return words;
+  }
+
+  private static void check(LmVocabulary expected, LmVocabulary actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Assert.assertEquals(expected.getUnknownWordIndex(), actual.getUnknownWordIndex());
+    Assert.assertEquals(expected.getSentenceStartIndex(), actual.getSentenceStartIndex());
+    Assert.assertEquals(expected.getSentenceEndIndex(), actual.getSentenceEndIndex());
+    Assert.assertEquals(expected.getUnknownWord(), actual.getUnknownWord());
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < expected.size(); i++) {
+      String word = expected.getWord(i);
+      Assert.assertEquals(word, actual.getWord(i));
+      Assert.assertEquals(i, actual.indexOf(word));
+      sb.setLength(0);
+      sb.append(word);
+      Assert.assertEquals(i, actual.indexOf(sb));
+      Assert.assertTrue(actual.contains(word));
+    }
+  }
+
+  @Test
+  public void sameIndexesWithLmVocabulary() {
+    List<String> words = randomWords(10000, new Random(1));
+    // chars that are encoded with three bytes and an unpaired surrogate.
+    words.add("€uro");
+    words.add("a\ud800b");
+    LmVocabulary vocabulary = new LmVocabulary(words);
+    CompactLmVocabulary compact = CompactLmVocabulary.from(vocabulary);
+    check(vocabulary, compact);
+
+    for (String word : randomWords(10000, new Random(2))) {
+      Assert.assertEquals(vocabulary.indexOf(word), compact.indexOf(word));
+      Assert.assertEquals(vocabulary.contains(word), compact.contains(word));
+    }
+    // prefixes and extensions of existing words.
+    for (String word : words) {
+      Assert.assertEquals(vocabulary.indexOf(word + "a"), compact.indexOf(word + "a"));
+      String prefix = word.substring(0, word.length() - 1);
+      Assert.assertEquals(vocabulary.indexOf(prefix), compact.indexOf(prefix));
+    }
+    Assert.assertEquals(vocabulary.getWordsString(0, 5, -1), compact.getWordsString(0, 5, -1));
+  }
+
+  @Test
+  public void specialTokens() {
+    LmVocabulary vocabulary = new LmVocabulary("<S>", "Hello", "</S>");
+    CompactLmVocabulary compact = CompactLmVocabulary.from(vocabulary);
+    check(vocabulary, compact);
+    Assert.assertTrue(compact.containsAll("<S>", "Hello", "</S>", "<unk>"));
+    Assert.assertEquals(compact.getUnknownWordIndex(), compact.indexOf("World"));
+  }
+
+  @Test
+  public void saveAndLoad() throws IOException {
+    LmVocabulary vocabulary = new LmVocabulary(randomWords(5000, new Random(3)));
+    File file = File.createTempFile("compact", ".vocab");
+    file.deleteOnExit();
+    CompactLmVocabulary.from(vocabulary).save(file);
+    check(vocabulary, CompactLmVocabulary.load(file));
+    check(vocabulary, CompactLmVocabulary.loadMapped(file));
+
+    // regular binary format is still available.
+    File binary = File.createTempFile("compact", ".bin");
+    binary.deleteOnExit();
+    CompactLmVocabulary.loadMapped(file).saveBinary(binary);
+    check(vocabulary, LmVocabulary.loadFromBinary(binary));
+  }
+
+  @Test
+  public void loadFromBinaryStream() throws IOException {
+    List<String> words = randomWords(5000, new Random(4));
+    // duplicates and special tokens with different cases.
+    words.add(0, "<S>");
+    words.add("Hello");
+    words.add("Hello");
+    words.add("</S>");
+    words.add("<s>");
+    LmVocabulary vocabulary = new LmVocabulary(words);
+    File file = File.createTempFile("compact", ".bin");
+    file.deleteOnExit();
+    vocabulary.saveBinary(file);
+    try (DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)))) {
+      CompactLmVocabulary compact = CompactLmVocabulary.loadFromBinary(dis);
+      check(LmVocabulary.loadFromBinary(file), compact);
+      check(vocabulary, compact);
+    }
+  }
+
+  @Test
+  @Ignore("Speed Test")
+  public void lookupSpeed() {
+    List<String> words = randomWords(2_000_000, new Random(1));
+    LmVocabulary vocabulary = new LmVocabulary(words);
+    CompactLmVocabulary compact = CompactLmVocabulary.from(vocabulary);
+    Log.info("Compact vocabulary size in bytes: %d", compact.sizeInBytes());
+    List<String> queries = randomWords(2_000_000, new Random(2));
+    for (LmVocabulary v : new LmVocabulary[]{vocabulary, compact, vocabulary, compact}) {
+      long start = System.currentTimeMillis();
+      long sum = 0;
+      for (String query : queries) {
+        sum += v.indexOf(query);
+      }
+      Log.info("%s: %d ms. (%d)", v.getClass().getSimpleName(),
+          System.currentTimeMillis() - start, sum);
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package zemberek.lm;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Resources;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import zemberek.core.logging.Log;
+import zemberek.lm.BaseLanguageModel.LookupCache;
+import zemberek.lm.backoff.SimpleBackoffNgramModel;
+
+public class ConcurrentLookupCacheTest {
+
+  private SimpleBackoffNgramModel getTinyModel() throws IOException {
+    return SimpleBackoffNgramModel.fromArpa(new File(Resources.getResource("tiny.arpa").getFile()));
+  }
+
+  @Test
+  public void sameProbabilitiesTest() throws IOException {
+    SimpleBackoffNgramModel lm = getTinyModel();
+    ConcurrentLookupCache cache = new ConcurrentLookupCache(lm, 1 << 12);
+    int size = lm.getVocabulary().size();
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < size; i++) {
+        Assert.assertEquals(lm.getProbability(i), cache.get(i), 0);
+        for (int j = 0; j < size; j++) {
+          Assert.assertEquals(lm.getProbability(i, j), cache.get(i, j), 0);
+          for (int k = 0; k < size; k++) {
+            Assert.assertEquals(lm.getProbability(i, j, k), cache.get(i, j, k), 0);
+          }
+        }
+      }
+    }
+    Assert.assertTrue(cache.getHit() > 0);
+    Assert.assertTrue(cache.getMiss() > 0);
+  }
+
+  @Test
+  public void concurrentAccessTest() throws Exception {
+    SimpleBackoffNgramModel lm = getTinyModel();
+    // a small cache, so that threads overwrite slots of each other frequently.
+    ConcurrentLookupCache cache = new ConcurrentLookupCache(lm, 8);
+    int size = lm.getVocabulary().size();
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int seed = t;
+      results.add(service.submit(() -> {
+        Random r = new Random(seed);
+        for (int i = 0; i < 200_000; i++) {
+          int[] ids = {r.nextInt(size), r.nextInt(size), r.nextInt(size)};
+          if (lm.getProbability(ids) != cache.get(ids)) {
+            return false;
+          }
+        }
+        return true;
+      }));
+    }
+    for (Future<Boolean> result : results) {
+      Assert.assertTrue(result.get());
+    }
+    service.shutdown();
+  }
+
+  @Test
+  @Ignore("Speed Test")
+  public void sharedVsPerThreadCacheSpeed() throws Exception {
+    SyntheticModel lm = new SyntheticModel();
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    int queryCount = 2_000_000;
+    int[][][] queries = new int[threadCount][][];
+    for (int t = 0; t < threadCount; t++) {
+      queries[t] = generateQueries(50_000, queryCount, new Random(t));
+    }
+    ExecutorService service = Executors.newFixedThreadPool(threadCount);
+    for (int round = 0; round < 5; round++) {
+      // per thread caches with 1/threadCount of the shared cache size each.
+      List<LookupCache> perThread = new ArrayList<>();
+      Stopwatch sw = Stopwatch.createStarted();
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threadCount; t++) {
+        LookupCache cache = new LookupCache(lm,
+            ConcurrentLookupCache.DEFAULT_LOOKUP_CACHE_SIZE / threadCount);
+        perThread.add(cache);
+        int[][] q = queries[t];
+        futures.add(service.submit(() -> {
+          for (int[] ids : q) {
+            cache.get(ids);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      long hit = 0;
+      for (LookupCache cache : perThread) {
+        hit += cache.getHit();
+      }
+      Log.info("Per thread caches: %d ms. Hit rate = %.3f", sw.elapsed(TimeUnit.MILLISECONDS),
+          (double) hit / (threadCount * (long) queryCount));
+
+      ConcurrentLookupCache shared = new ConcurrentLookupCache(lm);
+      sw.reset().start();
+      futures.clear();
+      for (int t = 0; t < threadCount; t++) {
+        int[][] q = queries[t];
+        futures.add(service.submit(() -> {
+          for (int[] ids : q) {
+            shared.get(ids);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      Log.info("Shared cache: %d ms. Hit rate = %.3f", sw.elapsed(TimeUnit.MILLISECONDS),
+          shared.hitRate());
+    }
+    service.shutdown();
+  }
+
+  // trigram queries drawn from a skewed distribution of 1M distinct trigrams, similar to
+  // candidate scoring where same contexts are queried repeatedly.
+  private int[][] generateQueries(int vocabularySize, int count, Random random) {
+    int[][] queries = new int[count][];
+    for (int i = 0; i < count; i++) {
+      int type = (int) (Math.pow(random.nextDouble(), 4) * 1_000_000);
+      queries[i] = new int[]{
+          type % vocabularySize, (type / 7) % vocabularySize, (type / 13) % vocabularySize};
+    }
+    return queries;
+  }
+
+  // A model with a large vocabulary where probability calculation costs about as much as a
+  // compressed model lookup.
+  private static class SyntheticModel implements NgramLanguageModel {
+
+    private float probability(int... ids) {
+      int h = 0x811c9dc5;
+      for (int k = 0; k < 20; k++) {
+        for (int id : ids) {
+          h = (h ^ id) * 16777619;
+        }
+      }
+      return -(h & 0x3ff) / 100f;
+    }
+
+    @Override
+    public float getUnigramProbability(int id) {
+      return probability(id);
+    }
+
+    @Override
+    public boolean ngramExists(int... wordIndexes) {
+      return true;
+    }
+
+    @Override
+    public float getProbability(int... ids) {
+      return probability(ids);
+    }
+
+    @Override
+    public float getTriGramProbability(int id0, int id1, int id2) {
+      return probability(id0, id1, id2);
+    }
+
+    @Override
+    public float getTriGramProbability(int id0, int id1, int id2, int fingerPrint) {
+      return probability(id0, id1, id2);
+    }
+
+    @Override
+    public int getOrder() {
+      return 3;
+    }
+
+    @Override
+    public LmVocabulary getVocabulary() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package zemberek.lm;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek.lm.compression.MultiFileUncompressedLm;
+import zemberek.lm.compression.SmoothLm;
+import zemberek.lm.compression.UncompressedToSmoothLmConverter;
+
+public class InterpolatedLmTest {
+
+  private static final String SMALL_ARPA = "\\data\\\n"
+      + "ngram 1= 6\n"
+      + "ngram 2= 4\n"
+      + "\n"
+      + "\\1-grams:\n"
+      + "-1.0 <s> -0.3\n"
+      + "-0.8 Ahmet -0.2\n"
+      + "-0.9 muz -0.1\n"
+      + "-1.1 yedi -0.2\n"
+      + "-0.7 </s>\n"
+      + "-2.0 <unk>\n"
+      + "\n"
+      + "\\2-grams:\n"
+      + "-0.2 <s> Ahmet\n"
+      + "-0.4 Ahmet muz\n"
+      + "-0.3 muz yedi\n"
+      + "-0.1 yedi </s>\n"
+      + "\\end\\\n";
+
+  private static SmoothLm smoothLm(File arpa) throws IOException {
+    File tmp = Files.createTempDir();
+    tmp.deleteOnExit();
+    File lmFile = new File(tmp, "lm.slm");
+    new UncompressedToSmoothLmConverter(lmFile, tmp).convertSmall(
+        MultiFileUncompressedLm.generate(arpa, tmp, "utf-8", 4).getLmDir(),
+        new UncompressedToSmoothLmConverter.NgramDataBlock(16, 16, 16));
+    return SmoothLm.builder(lmFile).build();
+  }
+
+  private static SmoothLm tinyLm() throws IOException {
+    return smoothLm(new File(Resources.getResource("tiny.arpa").getFile()));
+  }
+
+  private static SmoothLm smallLm() throws IOException {
+    File arpa = File.createTempFile("small", ".arpa");
+    arpa.deleteOnExit();
+    Files.asCharSink(arpa, StandardCharsets.UTF_8).write(SMALL_ARPA);
+    return smoothLm(arpa);
+  }
+
+  private static float probability(NgramLanguageModel lm, String... words) {
+    return lm.getProbability(lm.getVocabulary().toIndexes(words));
+  }
+
+  @Test
+  public void singleModelGivesSameValues() throws IOException {
+    SmoothLm tiny = tinyLm();
+    InterpolatedLm lm = InterpolatedLm.builder().add(tiny, 2).build();
+    Assert.assertEquals(tiny.getVocabulary().size(), lm.getVocabulary().size());
+    Assert.assertEquals(1d, lm.getWeight(0), 1e-9);
+    String[][] ngrams = {{"Ahmet"}, {"<s>", "Ahmet"}, {"<s>", "Ahmet", "elma"},
+        {"elma", "armut", "kedi"}, {"foo", "elma"}};
+    for (String[] ngram : ngrams) {
+      Assert.assertEquals(probability(tiny, ngram), probability(lm, ngram), 1e-6);
+      // second call comes from cache.
+      Assert.assertEquals(probability(tiny, ngram), probability(lm, ngram), 1e-6);
+    }
+    Assert.assertTrue(lm.getCache().getHit() > 0);
+  }
+
+  @Test
+  public void interpolation() throws IOException {
+    SmoothLm tiny = tinyLm();
+    SmoothLm small = smallLm();
+    InterpolatedLm lm = InterpolatedLm.builder()
+        .add(tiny, 3)
+        .add(small, 1)
+        .cacheSize(0)
+        .build();
+    Assert.assertEquals(3, lm.getOrder());
+    Assert.assertNull(lm.getCache());
+    LmVocabulary vocabulary = lm.getVocabulary();
+    // union of vocabularies, words of the first model keep their indexes.
+    Assert.assertTrue(vocabulary.containsAll("muz", "kedi", "Ahmet"));
+    Assert.assertEquals(tiny.getVocabulary().indexOf("kedi"), vocabulary.indexOf("kedi"));
+    Assert.assertEquals(-1, lm.toComponentId(0, vocabulary.indexOf("muz")));
+
+    String[][] ngrams = {{"Ahmet"}, {"muz"}, {"<s>", "Ahmet"}, {"Ahmet", "muz"},
+        {"<s>", "Ahmet", "elma"}, {"<s>", "Ahmet", "muz"}, {"kedi", "muz", "yedi"}};
+    for (String[] ngram : ngrams) {
+      double p1 = Math.pow(10, probability(tiny, ngram));
+      String[] lastTwo = ngram.length > 2 ?
+          new String[]{ngram[ngram.length - 2], ngram[ngram.length - 1]} : ngram;
+      double p2 = Math.pow(10, probability(small, lastTwo));
+      Assert.assertEquals(Math.log10(0.75 * p1 + 0.25 * p2), probability(lm, ngram), 1e-5);
+    }
+
+    Assert.assertTrue(lm.ngramExists(vocabulary.toIndexes("Ahmet", "muz")));
+    Assert.assertTrue(lm.ngramExists(vocabulary.toIndexes("Ahmet", "elma")));
+    Assert.assertFalse(lm.ngramExists(vocabulary.toIndexes("muz", "elma")));
+  }
+
+  @Test
+  public void scoreSentenceMatchesProbabilities() throws IOException {
+    InterpolatedLm lm = InterpolatedLm.builder()
+        .add(tinyLm(), 1)
+        .add(smallLm(), 1)
+        .build();
+    int[] ids = lm.getVocabulary().toIndexes("<s>", "Ahmet", "muz", "yedi", "</s>");
+    float[] scores = new float[ids.length];
+    float total = lm.scoreSentence(ids, scores);
+    float expectedTotal = 0;
+    for (int i = 0; i < ids.length; i++) {
+      int begin = Math.max(0, i - 2);
+      int[] ngram = new int[i - begin + 1];
+      System.arraycopy(ids, begin, ngram, 0, ngram.length);
+      float p = lm.getProbability(ngram);
+      Assert.assertEquals(p, scores[i], 1e-5);
+      expectedTotal += p;
+    }
+    Assert.assertEquals(expectedTotal, total, 1e-4);
+  }
+
+  @Test
+  public void ngramsAreTruncatedToComponentOrder() throws IOException {
+    SmoothLm small = smallLm();
+    InterpolatedLm lm = InterpolatedLm.builder().add(small, 1).cacheSize(0).build();
+    Assert.assertEquals(2, lm.getOrder());
+    Assert.assertEquals(probability(small, "muz", "yedi"),
+        probability(lm, "Ahmet", "muz", "yedi"), 1e-6);
+
+    lm = InterpolatedLm.builder().add(new ZeroProbabilityModel(), 1).cacheSize(0).build();
+    int unk = lm.getVocabulary().getUnknownWordIndex();
+    Assert.assertEquals(Float.NEGATIVE_INFINITY, lm.getProbability(unk, unk, unk), 0);
+  }
+
+  @Test
+  public void allComponentsGiveZeroProbability() {
+    InterpolatedLm lm = InterpolatedLm.builder()
+        .add(new ZeroProbabilityModel(), 1)
+        .add(new ZeroProbabilityModel(), 2)
+        .build();
+    int unk = lm.getVocabulary().getUnknownWordIndex();
+    Assert.assertEquals(Float.NEGATIVE_INFINITY, lm.getProbability(unk, unk, unk), 0);
+    float[] scores = new float[2];
+    Assert.assertEquals(Float.NEGATIVE_INFINITY, lm.scoreSentence(new int[]{unk, unk}, scores),
+        0);
+    Assert.assertEquals(Float.NEGATIVE_INFINITY, scores[1], 0);
+  }
+
+  // A bigram model that gives zero probability to everything and rejects longer n-grams.
+  private static class ZeroProbabilityModel extends DummyLanguageModel {
+
+    @Override
+    public float getProbability(int... ids) {
+      if (ids.length > getOrder()) {
+        throw new IllegalArgumentException("N-gram is longer than model order " + ids.length);
+      }
+      return Float.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public int getOrder() {
+      return 2;
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void logBaseMismatch() throws IOException {
+    InterpolatedLm.builder().add(tinyLm(), 1).logBase(Math.E).build();
+  }
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -16,6 +17,7 @@ import zemberek.core.SpaceTabTokenizer;
 import zemberek.core.io.LineIterator;
 import zemberek.core.io.SimpleTextReader;
 import zemberek.core.logging.Log;
+import zemberek.core.quantization.QuantizerType;
 import zemberek.lm.BaseLanguageModel;
 import zemberek.lm.FakeLm;
 import zemberek.lm.LmVocabulary;
@@ -103,6 +105,196 @@ public class SmoothLmTest {
     }
   }
 
+  @Test
+  public void parallelConversionTest() throws IOException {
+    File arpa = getTinyArpaFile();
+    byte[][] results = new byte[2][];
+    int[] threadCounts = {1, 3};
+    for (int i = 0; i < threadCounts.length; i++) {
+      File lmDir = Files.createTempDir();
+      lmDir.deleteOnExit();
+      File uncompressed = MultiFileUncompressedLm
+          .generate(arpa, lmDir, "utf-8", 4, threadCounts[i]).getLmDir();
+      File lmFile = new File(lmDir, "tiny.slm");
+      new UncompressedToSmoothLmConverter(lmFile, lmDir, threadCounts[i]).convertLarge(
+          uncompressed, new UncompressedToSmoothLmConverter.NgramDataBlock(24, 8, 8), 4);
+      results[i] = Files.toByteArray(lmFile);
+      // temporary n-gram data files are deleted.
+      File[] dataFiles = lmDir.listFiles((dir, name) -> name.endsWith("gram.data"));
+      Assert.assertEquals(0, dataFiles.length);
+    }
+    // output must not depend on thread count.
+    Assert.assertArrayEquals(results[0], results[1]);
+  }
+
+  @Test
+  public void memoryMappedModelTest() throws IOException {
+    File lmDir = Files.createTempDir();
+    lmDir.deleteOnExit();
+    File uncompressed = MultiFileUncompressedLm.generate(getTinyArpaFile(), lmDir, "utf-8", 4)
+        .getLmDir();
+    File smallLmFile = new File(lmDir, "tiny-small.slm");
+    new UncompressedToSmoothLmConverter(smallLmFile, lmDir).convertSmall(
+        uncompressed, new UncompressedToSmoothLmConverter.NgramDataBlock(16, 16, 16));
+    File largeLmFile = new File(lmDir, "tiny-large.slm");
+    new UncompressedToSmoothLmConverter(largeLmFile, lmDir).convertLarge(
+        uncompressed, new UncompressedToSmoothLmConverter.NgramDataBlock(24, 8, 8), 4);
+
+    for (File lmFile : new File[]{smallLmFile, largeLmFile}) {
+      SmoothLm heap = SmoothLm.builder(lmFile).build();
+      SmoothLm mapped = SmoothLm.builder(lmFile).memoryMap().build();
+      Assert.assertEquals(heap.info(), mapped.info());
+      int size = heap.getVocabulary().size();
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          for (int k = 0; k < size; k++) {
+            int[] ids = {i, j, k};
+            Assert.assertEquals(heap.getProbability(ids), mapped.getProbability(ids), 0);
+            Assert.assertEquals(heap.ngramExists(ids), mapped.ngramExists(ids));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void bitPackedModelTest() throws IOException {
+    File lmDir = Files.createTempDir();
+    lmDir.deleteOnExit();
+    MultiFileUncompressedLm uncompressed = MultiFileUncompressedLm
+        .generate(getTinyArpaFile(), lmDir, "utf-8", 4);
+    File alignedLmFile = new File(lmDir, "tiny-aligned.slm");
+    new UncompressedToSmoothLmConverter(alignedLmFile, lmDir).convertLarge(
+        uncompressed.getLmDir(), new UncompressedToSmoothLmConverter.NgramDataBlock(24, 8, 8), 4);
+    // rank sizes are large enough to keep all distinct values of tiny model.
+    File packedLmFile = new File(lmDir, "tiny-packed.slm");
+    new UncompressedToSmoothLmConverter(packedLmFile, lmDir).convertLarge(
+        uncompressed.getLmDir(),
+        new UncompressedToSmoothLmConverter.NgramDataBlock(20, 6, 5)
+            .order(3, 27, 7, 5)
+            .quantizer(2, QuantizerType.KMEANS)
+            .quantizer(3, QuantizerType.LINEAR),
+        4);
+    Assert.assertTrue(packedLmFile.length() < alignedLmFile.length());
+
+    SmoothLm aligned = SmoothLm.builder(alignedLmFile).build();
+    Assert.assertEquals(1, aligned.getVersion());
+    for (SmoothLm packed : new SmoothLm[]{
+        SmoothLm.builder(packedLmFile).build(),
+        SmoothLm.builder(packedLmFile).memoryMap().build()}) {
+      Assert.assertEquals(2, packed.getVersion());
+      Assert.assertEquals(20, packed.getFingerPrintBits(2));
+      Assert.assertEquals(27, packed.getFingerPrintBits(3));
+      Assert.assertEquals(5, packed.getBackoffBits(2));
+      int size = aligned.getVocabulary().size();
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          for (int k = 0; k < size; k++) {
+            int[] ids = {i, j, k};
+            Assert.assertEquals(aligned.getProbability(ids), packed.getProbability(ids), 1e-6);
+            Assert.assertEquals(aligned.ngramExists(ids), packed.ngramExists(ids));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void compressionReportTest() throws IOException {
+    File lmDir = Files.createTempDir();
+    lmDir.deleteOnExit();
+    MultiFileUncompressedLm uncompressed = MultiFileUncompressedLm
+        .generate(getTinyArpaFile(), lmDir, "utf-8", 4);
+    File lmFile = new File(lmDir, "tiny.slm");
+    new UncompressedToSmoothLmConverter(lmFile, lmDir).convertSmall(
+        uncompressed.getLmDir(),
+        new UncompressedToSmoothLmConverter.NgramDataBlock(16, 8, 8).order(3, 4, 8, 8));
+    CompressionReport report = CompressionReport.generate(lmFile, uncompressed, 20000, 1);
+    Log.info(report);
+    Assert.assertEquals(lmFile.length(), report.getFileSize());
+    for (int n = 1; n <= 3; n++) {
+      CompressionReport.OrderStats stats = report.getStats(n);
+      Assert.assertEquals(uncompressed.getCount(n), stats.getCount());
+      Assert.assertEquals(0, stats.getMeanProbabilityError(), 1e-4);
+      Assert.assertEquals(0, stats.getMeanBackoffError(), 1e-4);
+    }
+    // 4 bit fingerprints accept about 1/16 of the non existing tri-grams.
+    CompressionReport.OrderStats trigrams = report.getStats(3);
+    Assert.assertEquals(1 / 16d, trigrams.getExpectedFalsePositiveRate(), 1e-9);
+    Assert.assertEquals(1 / 16d, trigrams.getFalsePositiveRate(), 0.03);
+    Assert.assertTrue(report.getStats(2).getFalsePositiveRate() < 0.01);
+  }
+
+  @Test
+  public void scoreSentenceTest() throws IOException {
+    File lmFile = getTinyLmFile();
+    for (SmoothLm lm : new SmoothLm[]{
+        SmoothLm.builder(lmFile).build(),
+        SmoothLm.builder(lmFile).useStupidBackoff().build()}) {
+      int size = lm.getVocabulary().size();
+      Random random = new Random(1);
+      int[][] sentences = new int[200][];
+      for (int s = 0; s < sentences.length; s++) {
+        int[] ids = new int[random.nextInt(10)];
+        for (int i = 0; i < ids.length; i++) {
+          ids[i] = random.nextInt(size);
+        }
+        sentences[s] = ids;
+        float[] scores = new float[ids.length];
+        float total = lm.scoreSentence(ids, scores);
+        float expectedTotal = 0;
+        for (int i = 0; i < ids.length; i++) {
+          int[] gram = Arrays.copyOfRange(ids, Math.max(0, i - lm.getOrder() + 1), i + 1);
+          float expected = lm.getProbability(gram);
+          Assert.assertEquals(expected, scores[i], 0.0001);
+          expectedTotal += expected;
+        }
+        Assert.assertEquals(expectedTotal, total, 0.0001);
+      }
+      float[] totals = lm.scoreSentences(sentences);
+      for (int s = 0; s < sentences.length; s++) {
+        Assert.assertEquals(lm.scoreSentence(sentences[s], null), totals[s], 0);
+      }
+    }
+  }
+
+  @Test
+  public void scoreCandidatesTest() throws IOException {
+    File lmFile = getTinyLmFile();
+    for (SmoothLm lm : new SmoothLm[]{
+        SmoothLm.builder(lmFile).build(),
+        SmoothLm.builder(lmFile).useStupidBackoff().build()}) {
+      int size = lm.getVocabulary().size();
+      Random random = new Random(1);
+      for (int s = 0; s < 200; s++) {
+        int[] left = randomIds(random, random.nextInt(4), size);
+        int[] right = randomIds(random, random.nextInt(3), size);
+        int[] candidates = randomIds(random, 1 + random.nextInt(5), size);
+        float[] scores = lm.scoreCandidates(left, candidates, right);
+        for (int c = 0; c < candidates.length; c++) {
+          int[] ids = new int[left.length + 1 + right.length];
+          System.arraycopy(left, 0, ids, 0, left.length);
+          ids[left.length] = candidates[c];
+          System.arraycopy(right, 0, ids, left.length + 1, right.length);
+          float expected = 0;
+          for (int i = left.length; i < ids.length; i++) {
+            expected += lm.getProbability(
+                Arrays.copyOfRange(ids, Math.max(0, i - lm.getOrder() + 1), i + 1));
+          }
+          Assert.assertEquals(expected, scores[c], 0.0001);
+        }
+      }
+    }
+  }
+
+  private static int[] randomIds(Random random, int count, int size) {
+    int[] ids = new int[count];
+    for (int i = 0; i < count; i++) {
+      ids[i] = random.nextInt(size);
+    }
+    return ids;
+  }
+
   @Test
   public void testVocabulary() throws IOException {
     SmoothLm lm = getTinyLm();
@@ -116,6 +308,21 @@ public class SmoothLmTest {
     Assert.assertEquals("elma", vocab.getWord(i2));
   }
 
+  @Test
+  public void compactVocabularyTest() throws IOException {
+    File lmFile = getTinyLmFile();
+    SmoothLm lm = SmoothLm.builder(lmFile).build();
+    SmoothLm compact = SmoothLm.builder(lmFile).compactVocabulary().build();
+    LmVocabulary vocabulary = lm.getVocabulary();
+    Assert.assertEquals(vocabulary.size(), compact.getVocabulary().size());
+    for (int i = 0; i < vocabulary.size(); i++) {
+      String word = vocabulary.getWord(i);
+      Assert.assertEquals(i, compact.getVocabulary().indexOf(word));
+    }
+    int[] ids = vocabulary.toIndexes("Ahmet", "dondurma", "yedi");
+    Assert.assertEquals(lm.getProbability(ids), compact.getProbability(ids), 0.0001);
+  }
+
   @Test
   public void testProbabilities() throws IOException {
     SmoothLm lm = getTinyLm();
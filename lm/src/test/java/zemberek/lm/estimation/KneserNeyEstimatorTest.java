@@ -0,0 +1,81 @@
+package zemberek.lm.estimation;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek.core.text.BlockTextLoader;
+import zemberek.lm.LmVocabulary;
+import zemberek.lm.backoff.SimpleBackoffNgramModel;
+import zemberek.lm.compression.MultiFileUncompressedLm;
+import zemberek.lm.compression.SmoothLm;
+import zemberek.lm.compression.UncompressedToSmoothLmConverter;
+import zemberek.lm.estimation.NgramCounter.NgramCounts;
+
+public class KneserNeyEstimatorTest {
+
+  static double sumOfProbabilities(SimpleBackoffNgramModel model, int... context) {
+    LmVocabulary vocabulary = model.getVocabulary();
+    int[] ids = new int[context.length + 1];
+    System.arraycopy(context, 0, ids, 0, context.length);
+    double sum = 0;
+    for (int i = 0; i < vocabulary.size(); i++) {
+      if (i == vocabulary.getSentenceStartIndex()) {
+        continue;
+      }
+      ids[context.length] = i;
+      sum += Math.exp(model.getProbability(ids));
+    }
+    return sum;
+  }
+
+  @Test
+  public void probabilitiesSumToOne() throws IOException {
+    List<String> sentences = NgramCounterTest.randomSentences(2000, 50, new Random(3));
+    File corpus = NgramCounterTest.corpusFile(sentences);
+    File workDir = Files.createTempDir();
+    workDir.deleteOnExit();
+    NgramCounts counts = NgramCounter.builder(3, new File(workDir, "counts"))
+        .threadCount(2)
+        .build()
+        .count(BlockTextLoader.fromPath(corpus.toPath(), 500));
+    KneserNeyEstimator estimator = new KneserNeyEstimator(counts, new File(workDir, "est"));
+    MultiFileUncompressedLm lm = estimator.estimate(new File(workDir, "model"));
+    for (int n = 1; n <= 3; n++) {
+      double[] discounts = estimator.getDiscounts(n);
+      // discounts[0] is not used.
+      for (int i = 1; i < discounts.length; i++) {
+        Assert.assertTrue(discounts[i] > 0 && discounts[i] < 3);
+      }
+    }
+
+    File arpa = new File(workDir, "lm.arpa");
+    lm.saveArpa(arpa);
+    SimpleBackoffNgramModel model = SimpleBackoffNgramModel.fromArpa(arpa);
+    LmVocabulary vocabulary = model.getVocabulary();
+
+    Assert.assertEquals(1d, sumOfProbabilities(model), 1e-3);
+    String[] words = sentences.get(0).split(" ");
+    int s = vocabulary.getSentenceStartIndex();
+    int w0 = vocabulary.indexOf(words[0]);
+    Assert.assertEquals(1d, sumOfProbabilities(model, s), 1e-3);
+    Assert.assertEquals(1d, sumOfProbabilities(model, w0), 1e-3);
+    Assert.assertEquals(1d, sumOfProbabilities(model, s, w0), 1e-3);
+    // unseen context.
+    Assert.assertEquals(1d, sumOfProbabilities(model, w0, s), 1e-3);
+
+    File slmFile = new File(workDir, "lm.slm");
+    new UncompressedToSmoothLmConverter(slmFile, workDir)
+        .convertSmall(lm.getLmDir(), new UncompressedToSmoothLmConverter.NgramDataBlock(24, 8, 8));
+    SmoothLm smoothLm = SmoothLm.builder(slmFile).build();
+    Assert.assertEquals(3, smoothLm.getOrder());
+    Assert.assertEquals(
+        model.getProbability(s, w0) / Math.log(10),
+        smoothLm.getProbability(
+            smoothLm.getVocabulary().toIndexes(LmVocabulary.DEFAULT_SENTENCE_BEGIN_MARKER, words[0])),
+        1e-2);
+  }
+}
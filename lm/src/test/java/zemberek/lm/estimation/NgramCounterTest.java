@@ -0,0 +1,130 @@
+package zemberek.lm.estimation;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek.core.text.BlockTextLoader;
+import zemberek.lm.LmVocabulary;
+import zemberek.lm.estimation.NgramCounter.NgramCounts;
+
+public class NgramCounterTest {
+
+  static List<String> randomSentences(int count, int vocabularySize, Random random) {
+    List<String> sentences = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int length = random.nextInt(12) + 1;
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < length; j++) {
+        if (j > 0) {
+          sb.append(' ');
+        }
+        // skewed word distribution.
+        sb.append("w").append((int) (Math.pow(random.nextDouble(), 3) * vocabularySize));
+      }
+      sentences.add(sb.toString());
+    }
+    return sentences;
+  }
+
+  static File corpusFile(List<String> sentences) throws IOException {
+    File corpus = File.createTempFile("corpus", ".txt");
+    corpus.deleteOnExit();
+    Files.asCharSink(corpus, StandardCharsets.UTF_8).writeLines(sentences);
+    return corpus;
+  }
+
+  @Test
+  public void countsMatchSimpleCounting() throws IOException {
+    List<String> sentences = randomSentences(3000, 200, new Random(1));
+    File corpus = corpusFile(sentences);
+    int order = 4;
+    File workDir = Files.createTempDir();
+    workDir.deleteOnExit();
+    // small memory limit and block size, so that there are many spills and chunks.
+    NgramCounts counts = NgramCounter.builder(order, workDir)
+        .threadCount(3)
+        .maxEntriesInMemory(20_000)
+        .build()
+        .count(BlockTextLoader.fromPath(corpus.toPath(), 200));
+    LmVocabulary vocabulary = counts.vocabulary;
+
+    for (int n = 1; n <= order; n++) {
+      Map<List<Integer>, Long> expected = new HashMap<>();
+      for (String sentence : sentences) {
+        String[] words = ("<s> " + sentence + " </s>").split(" ");
+        for (int i = 0; i + n <= words.length; i++) {
+          List<Integer> key = new ArrayList<>();
+          for (int j = i; j < i + n; j++) {
+            key.add(vocabulary.indexOf(words[j]));
+          }
+          expected.merge(key, 1L, Long::sum);
+        }
+      }
+      NgramCountFile file = counts.getCountFile(n);
+      Assert.assertEquals(expected.size(), file.count);
+      int[] previous = null;
+      try (NgramCountFile.Reader reader = file.reader()) {
+        while (reader.next()) {
+          List<Integer> key = new ArrayList<>();
+          for (int id : reader.key) {
+            key.add(id);
+          }
+          Assert.assertEquals(expected.get(key).longValue(), reader.value);
+          if (previous != null) {
+            Assert.assertTrue(NgramCountFile.compare(previous, reader.key) < 0);
+          }
+          previous = reader.key.clone();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void sameResultForAnyThreadCount() throws IOException {
+    File corpus = corpusFile(randomSentences(2000, 100, new Random(2)));
+    byte[][] results = new byte[2][];
+    int[] threadCounts = {1, 4};
+    for (int i = 0; i < threadCounts.length; i++) {
+      File workDir = Files.createTempDir();
+      workDir.deleteOnExit();
+      NgramCounts counts = NgramCounter.builder(3, workDir)
+          .threadCount(threadCounts[i])
+          .maxEntriesInMemory(i == 0 ? 1_000_000 : 10_000)
+          .build()
+          .count(BlockTextLoader.fromPath(corpus.toPath(), 100));
+      results[i] = Files.toByteArray(counts.getCountFile(3).file);
+    }
+    Assert.assertArrayEquals(results[0], results[1]);
+  }
+
+  @Test
+  public void specialTokensAreCaseSensitive() throws IOException {
+    File corpus = corpusFile(Arrays.asList("a <S> b", "<UNK> a"));
+    File workDir = Files.createTempDir();
+    workDir.deleteOnExit();
+    NgramCounts counts = NgramCounter.builder(2, workDir)
+        .build()
+        .count(BlockTextLoader.fromPath(corpus.toPath(), 100));
+    LmVocabulary vocabulary = counts.vocabulary;
+    Assert.assertTrue(vocabulary.contains("<S>"));
+    Assert.assertTrue(vocabulary.contains("<UNK>"));
+    Map<Integer, Long> unigrams = new HashMap<>();
+    try (NgramCountFile.Reader reader = counts.getCountFile(1).reader()) {
+      while (reader.next()) {
+        unigrams.put(reader.key[0], reader.value);
+      }
+    }
+    Assert.assertEquals(1L, unigrams.get(vocabulary.indexOf("<S>")).longValue());
+    Assert.assertEquals(1L, unigrams.get(vocabulary.indexOf("<UNK>")).longValue());
+    Assert.assertEquals(2L, unigrams.get(vocabulary.indexOf("a")).longValue());
+  }
+}
@@ -0,0 +1,153 @@
+package zemberek.lm.estimation;
+
+import com.google.common.io.Files;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import zemberek.core.text.BlockTextLoader;
+import zemberek.lm.LmVocabulary;
+import zemberek.lm.backoff.SimpleBackoffNgramModel;
+import zemberek.lm.compression.MultiFileUncompressedLm;
+import zemberek.lm.estimation.NgramCounter.NgramCounts;
+import zemberek.lm.estimation.NgramPruner.PruneResult;
+
+public class NgramPrunerTest {
+
+  private static File workDir;
+  private static List<String> sentences;
+  private static NgramCounts counts;
+  private static MultiFileUncompressedLm lm;
+
+  @BeforeClass
+  public static void estimate() throws IOException {
+    sentences = NgramCounterTest.randomSentences(3000, 80, new Random(5));
+    File corpus = NgramCounterTest.corpusFile(sentences);
+    workDir = Files.createTempDir();
+    workDir.deleteOnExit();
+    counts = NgramCounter.builder(3, new File(workDir, "counts"))
+        .build()
+        .count(BlockTextLoader.fromPath(corpus.toPath(), 1000));
+    lm = new KneserNeyEstimator(counts, new File(workDir, "est"))
+        .estimate(new File(workDir, "model"));
+  }
+
+  private static Set<List<Integer>> ngrams(MultiFileUncompressedLm lm, int n) throws IOException {
+    Set<List<Integer>> result = new HashSet<>();
+    try (DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(lm.getGramFile(n))))) {
+      dis.skipBytes(8);
+      for (int i = 0; i < lm.getCount(n); i++) {
+        List<Integer> ngram = new ArrayList<>(n);
+        for (int j = 0; j < n; j++) {
+          ngram.add(dis.readInt());
+        }
+        result.add(ngram);
+      }
+    }
+    return result;
+  }
+
+  private static SimpleBackoffNgramModel toModel(MultiFileUncompressedLm lm, String name)
+      throws IOException {
+    File arpa = new File(workDir, name + ".arpa");
+    lm.saveArpa(arpa);
+    return SimpleBackoffNgramModel.fromArpa(arpa);
+  }
+
+  // every n-gram context must exist in the pruned model.
+  private static void checkContexts(MultiFileUncompressedLm pruned) throws IOException {
+    for (int n = 3; n >= 2; n--) {
+      Set<List<Integer>> lower = ngrams(pruned, n - 1);
+      for (List<Integer> ngram : ngrams(pruned, n)) {
+        Assert.assertTrue(lower.contains(ngram.subList(0, n - 1)));
+      }
+    }
+  }
+
+  @Test
+  public void zeroThresholdKeepsEverything() throws IOException {
+    PruneResult result = NgramPruner.builder(lm)
+        .minCounts(counts, 1)
+        .build()
+        .prune(new File(workDir, "pruned-none"));
+    for (int n = 1; n <= 3; n++) {
+      Assert.assertEquals(lm.getCount(n), result.getPrunedCount(n));
+      Assert.assertEquals(ngrams(lm, n), ngrams(result.model, n));
+    }
+    Assert.assertEquals(0, result.getRelativeEntropy(), 1e-12);
+  }
+
+  @Test
+  public void entropyPruning() throws IOException {
+    PruneResult small = NgramPruner.builder(lm)
+        .entropyThreshold(1e-6)
+        .build()
+        .prune(new File(workDir, "pruned-small"));
+    PruneResult large = NgramPruner.builder(lm)
+        .entropyThreshold(1e-4)
+        .build()
+        .prune(new File(workDir, "pruned-large"));
+    Assert.assertEquals(lm.getCount(1), large.getPrunedCount(1));
+    for (int n = 2; n <= 3; n++) {
+      Assert.assertTrue(small.getPrunedCount(n) <= lm.getCount(n));
+      Assert.assertTrue(large.getPrunedCount(n) < small.getPrunedCount(n));
+    }
+    Assert.assertTrue(large.getEstimatedPerplexityIncrease()
+        > small.getEstimatedPerplexityIncrease());
+    checkContexts(large.model);
+
+    // back-off weights are updated, so pruned model is still normalized.
+    SimpleBackoffNgramModel model = toModel(large.model, "large");
+    LmVocabulary vocabulary = model.getVocabulary();
+    String[] words = sentences.get(0).split(" ");
+    int s = vocabulary.getSentenceStartIndex();
+    int w0 = vocabulary.indexOf(words[0]);
+    Assert.assertEquals(1d, KneserNeyEstimatorTest.sumOfProbabilities(model), 1e-3);
+    Assert.assertEquals(1d, KneserNeyEstimatorTest.sumOfProbabilities(model, s), 1e-3);
+    Assert.assertEquals(1d, KneserNeyEstimatorTest.sumOfProbabilities(model, w0), 1e-3);
+    Assert.assertEquals(1d, KneserNeyEstimatorTest.sumOfProbabilities(model, s, w0), 1e-3);
+  }
+
+  @Test
+  public void countPruning() throws IOException {
+    PruneResult result = NgramPruner.builder(lm)
+        .minCounts(counts, 1, 2, 3)
+        .build()
+        .prune(new File(workDir, "pruned-count"));
+    Assert.assertEquals(lm.getCount(1), result.getPrunedCount(1));
+    checkContexts(result.model);
+
+    LmVocabulary countVocabulary = counts.vocabulary;
+    LmVocabulary vocabulary = LmVocabulary.loadFromBinary(lm.getVocabularyFile());
+    Set<List<Integer>> trigrams = ngrams(result.model, 3);
+    Set<List<Integer>> bigrams = ngrams(result.model, 2);
+    int removed = 0;
+    try (NgramCountFile.Reader reader = counts.getCountFile(3).reader()) {
+      while (reader.next()) {
+        List<Integer> ngram = new ArrayList<>();
+        for (int id : reader.key) {
+          ngram.add(vocabulary.indexOf(countVocabulary.getWord(id)));
+        }
+        // tri-grams are never contexts, so only frequent ones are kept.
+        Assert.assertEquals(reader.value >= 3, trigrams.contains(ngram));
+        if (reader.value < 3) {
+          removed++;
+        }
+      }
+    }
+    Assert.assertTrue(removed > 0);
+    Assert.assertTrue(bigrams.size() < lm.getCount(2));
+    Assert.assertEquals(1d,
+        KneserNeyEstimatorTest.sumOfProbabilities(toModel(result.model, "count")), 1e-3);
+  }
+}
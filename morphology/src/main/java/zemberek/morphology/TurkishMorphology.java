@@ -4,6 +4,7 @@ import com.google.common.base.Stopwatch;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -25,6 +26,7 @@ import zemberek.morphology.generator.WordGenerator;
 import zemberek.morphology.lexicon.RootLexicon;
 import zemberek.morphology.morphotactics.InformalTurkishMorphotactics;
 import zemberek.morphology.morphotactics.TurkishMorphotactics;
+import zemberek.tokenization.SingleTokenClassifier;
 import zemberek.tokenization.TurkishTokenizer;
 import zemberek.tokenization.Token;
 
@@ -116,7 +118,27 @@ public class TurkishMorphology {
   }
 
   public WordAnalysis analyze(Token token) {
-    return cache.getAnalysis(token, this::analyzeWithoutCache);
+    return useCache ?
+        cache.getAnalysis(token, this::analyzeWithoutCache) :
+        analyzeWithoutCache(token);
+  }
+
+  /**
+   * Analyzes tokens generated by a tokenizer. Token texts are not tokenized again.
+   *
+   * @param tokens token iterator. Such as the one from TurkishTokenizer#getTokenIterator
+   * @return WordAnalysis list for all tokens.
+   */
+  public List<WordAnalysis> analyzeTokens(Iterator<Token> tokens) {
+    List<WordAnalysis> result = new ArrayList<>();
+    while (tokens.hasNext()) {
+      result.add(analyze(tokens.next()));
+    }
+    return result;
+  }
+
+  public List<WordAnalysis> analyzeTokens(List<Token> tokens) {
+    return analyzeTokens(tokens.iterator());
   }
 
   private WordAnalysis analyzeWithCache(String word) {
@@ -145,6 +167,15 @@ public class TurkishMorphology {
    */
   private WordAnalysis analyzeWithoutCache(String word) {
 
+    // Type of most inputs can be decided without running the lexer.
+    Token.Type type = SingleTokenClassifier.classify(word);
+    if (type != null) {
+      if (tokenizer.isTypeIgnored(type)) {
+        return new WordAnalysis(word, word, new ArrayList<>(0));
+      }
+      return analyzeWithoutCache(new Token(word, type, 0, word.length() - 1));
+    }
+
     List<Token> tokens = tokenizer.tokenize(word);
     if (tokens.size() != 1) {
       return new WordAnalysis(word, word, new ArrayList<>(0));
@@ -154,19 +185,22 @@ public class TurkishMorphology {
 
   public static String normalizeForAnalysis(String word) {
     // TODO: This may cause problems for some foreign words with letter I.
-    String s = word.toLowerCase(Turkish.LOCALE);
-    s = TurkishAlphabet.INSTANCE.normalizeCircumflex(s);
-    String noDot = s.replace(".", "");
-    if (noDot.length() == 0) {
-      noDot = s;
-    }
-    return TextUtil.normalizeApostrophes(noDot);
+    return TurkishAlphabet.INSTANCE.normalizeForAnalysis(word);
   }
 
   private WordAnalysis analyzeWithoutCache(Token token) {
 
     String word = token.getText();
-    String s = normalizeForAnalysis(word);
+    Token.Type type = token.getType();
+
+    // white space tokens cannot have analyses.
+    if (type == Token.Type.SpaceTab || type == Token.Type.NewLine) {
+      return new WordAnalysis(word, word, new ArrayList<>(0));
+    }
+    // Word tokens only contain letters, no need to remove dots or normalize apostrophes.
+    String s = type == Token.Type.Word ?
+        TurkishAlphabet.INSTANCE.normalizeCircumflex(word.toLowerCase(Turkish.LOCALE)) :
+        normalizeForAnalysis(word);
 
     if (s.length() == 0) {
       return WordAnalysis.EMPTY_INPUT_RESULT;
@@ -224,11 +258,7 @@ public class TurkishMorphology {
 
   public List<WordAnalysis> analyzeSentence(String sentence) {
     String normalized = TextUtil.normalizeQuotesHyphens(sentence);
-    List<WordAnalysis> result = new ArrayList<>();
-    for (Token token : tokenizer.tokenize(normalized)) {
-      result.add(analyze(token));
-    }
-    return result;
+    return analyzeTokens(tokenizer.getTokenIterator(normalized));
   }
 
   public SentenceAnalysis disambiguate(String sentence, List<WordAnalysis> sentenceAnalysis) {
@@ -0,0 +1,181 @@
+package zemberek.morphology.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import zemberek.core.turkish.PhoneticAttribute;
+import zemberek.morphology.morphotactics.MorphemeTransition;
+import zemberek.morphology.morphotactics.StemTransition;
+import zemberek.morphology.morphotactics.SuffixTransition;
+
+/**
+ * An analyzer for word lists where consecutive words share long prefixes, such as sorted
+ * vocabularies. Search paths generated for the previous input are kept as a tree. For a new input,
+ * paths that only consumed letters of the common prefix of two inputs are reused as they are and
+ * only transitions that reach beyond the common prefix are checked again.
+ * <p>
+ * Results are identical (including their order) to RuleBasedAnalyzer#analyze. Instances of this
+ * class keep state between calls, therefore they are not thread safe.
+ */
+public class PrefixSharingAnalyzer {
+
+  private RuleBasedAnalyzer analyzer;
+  private StemTransitions stemTransitions;
+  private boolean asciiTolerant;
+
+  // previous input, its stem candidates and root nodes of its search tree.
+  private String previous = "";
+  private List<StemTransition> previousCandidates = Collections.emptyList();
+  private Map<StemTransition, Node> roots = new IdentityHashMap<>();
+
+  public PrefixSharingAnalyzer(RuleBasedAnalyzer analyzer) {
+    if (analyzer.isDebugMode()) {
+      throw new IllegalArgumentException(
+          "Prefix sharing analysis is not available for analyzers in debug mode.");
+    }
+    this.analyzer = analyzer;
+    this.stemTransitions = analyzer.getStemTransitions();
+    this.asciiTolerant = analyzer.isAsciiTolerant();
+  }
+
+  /**
+   * Analyzes the input. For best performance, inputs should be given in sorted order.
+   */
+  public List<SingleAnalysis> analyze(String input) {
+    int common = commonPrefixLength(previous, input);
+
+    // stem candidates are ordered by length. Stems not longer than the common prefix are
+    // prefixes of both inputs, so only longer stems are looked up.
+    List<StemTransition> candidates = new ArrayList<>(previousCandidates.size() + 2);
+    for (StemTransition candidate : previousCandidates) {
+      if (candidate.surface.length() > common) {
+        break;
+      }
+      candidates.add(candidate);
+    }
+    candidates.addAll(stemTransitions.getPrefixMatches(input, common + 1, asciiTolerant));
+
+    // generate initial search nodes. Nodes of stems shorter than the common prefix are reused.
+    Map<StemTransition, Node> newRoots = new IdentityHashMap<>(candidates.size() * 2);
+    List<Node> current = new ArrayList<>(candidates.size());
+    for (StemTransition candidate : candidates) {
+      int length = candidate.surface.length();
+      Node node = length < common ? roots.get(candidate) : null;
+      if (node == null) {
+        node = new Node(SearchPath.initialPath(candidate, input.substring(length)), length);
+      }
+      newRoots.put(candidate, node);
+      current.add(node);
+    }
+    this.roots = newRoots;
+    this.previousCandidates = candidates;
+    this.previous = input;
+
+    // search graph level by level, same as RuleBasedAnalyzer.
+    List<SingleAnalysis> result = new ArrayList<>(3);
+    while (current.size() > 0) {
+      List<Node> next = new ArrayList<>();
+      for (Node node : current) {
+        if (node.consumed == input.length()) {
+          SearchPath path = node.path;
+          if (path.isTerminal() &&
+              !path.containsPhoneticAttribute(PhoneticAttribute.CannotTerminate)) {
+            result.add(SingleAnalysis.fromSearchPath(path));
+            continue;
+          }
+        }
+        expand(node, input, common);
+        next.addAll(node.children);
+      }
+      current = next;
+    }
+    return result;
+  }
+
+  /**
+   * Forgets the search tree of the previous input.
+   */
+  public void reset() {
+    previous = "";
+    previousCandidates = Collections.emptyList();
+    roots = new IdentityHashMap<>();
+  }
+
+  // Generates child nodes of a node. If node was created for a previous input and consumed only
+  // common prefix letters, its children that also stay in common prefix are reused.
+  private void expand(Node node, String input, int common) {
+
+    List<Node> cached = node.consumed < common ? node.children : null;
+    List<Node> children = new ArrayList<>(2);
+    // reused paths carry the tail of an older input. Correct tail is applied lazily.
+    SearchPath path = cached == null ? node.path : null;
+    int cursor = 0;
+
+    for (MorphemeTransition transition : node.path.currentState.getOutgoing()) {
+
+      SuffixTransition suffixTransition = (SuffixTransition) transition;
+
+      // cached children are in the order of outgoing transitions.
+      Node cachedChild = null;
+      if (cached != null && cursor < cached.size()
+          && cached.get(cursor).lastTransition() == suffixTransition) {
+        cachedChild = cached.get(cursor++);
+        if (cachedChild.consumed < common) {
+          children.add(cachedChild);
+          continue;
+        }
+      }
+
+      if (node.consumed == input.length() && suffixTransition.hasSurfaceForm()) {
+        continue;
+      }
+
+      String surface = SurfaceTransition.generateSurface(
+          suffixTransition,
+          node.path.phoneticAttributes);
+      int consumed = node.consumed + surface.length();
+
+      // this transition did not match previous input and stays in common prefix.
+      if (cached != null && consumed < common) {
+        continue;
+      }
+
+      if (path == null) {
+        path = node.path.withTail(input.substring(node.consumed));
+      }
+      SearchPath p = analyzer.advance(path, suffixTransition, surface);
+      if (p != null) {
+        children.add(new Node(p, consumed));
+      }
+    }
+    node.children = children;
+  }
+
+  private static int commonPrefixLength(String a, String b) {
+    int length = Math.min(a.length(), b.length());
+    int i = 0;
+    while (i < length && a.charAt(i) == b.charAt(i)) {
+      i++;
+    }
+    return i;
+  }
+
+  private static class Node {
+
+    final SearchPath path;
+    // amount of input letters consumed by the path.
+    final int consumed;
+    List<Node> children;
+
+    Node(SearchPath path, int consumed) {
+      this.path = path;
+      this.consumed = consumed;
+    }
+
+    MorphemeTransition lastTransition() {
+      return path.getLastTransition().lexicalTransition;
+    }
+  }
+}
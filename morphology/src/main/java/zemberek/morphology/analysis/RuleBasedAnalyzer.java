@@ -87,6 +87,14 @@ public class RuleBasedAnalyzer {
     return lexicon;
   }
 
+  boolean isAsciiTolerant() {
+    return asciiTolerant;
+  }
+
+  boolean isDebugMode() {
+    return debugMode;
+  }
+
   public AnalysisDebugData getDebugData() {
     return debugData;
   }
@@ -204,78 +212,86 @@ public class RuleBasedAnalyzer {
           suffixTransition,
           path.phoneticAttributes);
 
-      // no need to go further if generated surface form is not a prefix of the paths's tail.
-      boolean tailStartsWith =
-          asciiTolerant ?
-              TurkishAlphabet.INSTANCE.startsWithIgnoreDiacritics(path.tail, surface) :
-              path.tail.startsWith(surface);
-      if (!tailStartsWith) {
-        if (debugMode) {
-          debugData.rejectedTransitions.put(
-              path,
-              new RejectedTransition(suffixTransition, "Surface Mismatch:" + surface));
-        }
-        continue;
+      SearchPath p = advance(path, suffixTransition, surface);
+      if (p != null) {
+        newPaths.add(p);
       }
+    }
+    return newPaths;
+  }
 
-      // if transition condition fails, add it to debug data.
-      if (debugMode && suffixTransition.getCondition() != null) {
-        Condition condition = suffixTransition.getCondition();
-        Condition failed;
-        if (condition instanceof CombinedCondition) {
-          failed = ((CombinedCondition) condition).getFailingCondition(path);
-        } else {
-          failed = condition.accept(path) ? null : condition;
-        }
-        if (failed != null) {
-          debugData.rejectedTransitions.put(
-              path,
-              new RejectedTransition(suffixTransition, "Condition → " + failed.toString()));
-        }
-      }
+  // Generates a new path from `path` by passing `suffixTransition` with given surface form.
+  // Returns null if surface does not match the tail or transition conditions fail.
+  SearchPath advance(SearchPath path, SuffixTransition suffixTransition, String surface) {
 
-      // check conditions.
-      if (!suffixTransition.canPass(path)) {
-        continue;
+    // no need to go further if generated surface form is not a prefix of the paths's tail.
+    boolean tailStartsWith =
+        asciiTolerant ?
+            TurkishAlphabet.INSTANCE.startsWithIgnoreDiacritics(path.tail, surface) :
+            path.tail.startsWith(surface);
+    if (!tailStartsWith) {
+      if (debugMode) {
+        debugData.rejectedTransitions.put(
+            path,
+            new RejectedTransition(suffixTransition, "Surface Mismatch:" + surface));
       }
+      return null;
+    }
 
-      // epsilon (empty) transition. Add and continue. Use existing attributes.
-      if (!suffixTransition.hasSurfaceForm()) {
-        newPaths.add(path.getCopy(
-            new SurfaceTransition("", suffixTransition),
-            path.phoneticAttributes));
-        continue;
+    // if transition condition fails, add it to debug data.
+    if (debugMode && suffixTransition.getCondition() != null) {
+      Condition condition = suffixTransition.getCondition();
+      Condition failed;
+      if (condition instanceof CombinedCondition) {
+        failed = ((CombinedCondition) condition).getFailingCondition(path);
+      } else {
+        failed = condition.accept(path) ? null : condition;
       }
-
-      SurfaceTransition surfaceTransition = new SurfaceTransition(surface, suffixTransition);
-
-      //if tail is equal to surface, no need to calculate phonetic attributes.
-      boolean tailEqualsSurface = asciiTolerant ?
-          TurkishAlphabet.INSTANCE.equalsIgnoreDiacritics(path.tail, surface)
-          : path.tail.equals(surface);
-      AttributeSet<PhoneticAttribute> attributes = tailEqualsSurface ?
-          path.phoneticAttributes.copy() :
-          AttributesHelper.getMorphemicAttributes(surface, path.phoneticAttributes);
-
-      // This is required for suffixes like `cik` and `ciğ`
-      // an extra attribute is added if "cik" or "ciğ" is generated and matches the tail.
-      // if "cik" is generated, ExpectsConsonant attribute is added, so only a consonant starting
-      // suffix can follow. Likewise, if "ciğ" is produced, a vowel starting suffix is allowed.
-      attributes.remove(PhoneticAttribute.CannotTerminate);
-      SuffixTemplateToken lastToken = suffixTransition.getLastTemplateToken();
-      if (lastToken.type == TemplateTokenType.LAST_VOICED) {
-        attributes.add(PhoneticAttribute.ExpectsConsonant);
-      } else if (lastToken.type == TemplateTokenType.LAST_NOT_VOICED) {
-        attributes.add(PhoneticAttribute.ExpectsVowel);
-        attributes.add(PhoneticAttribute.CannotTerminate);
+      if (failed != null) {
+        debugData.rejectedTransitions.put(
+            path,
+            new RejectedTransition(suffixTransition, "Condition → " + failed.toString()));
       }
+    }
 
-      SearchPath p = path.getCopy(
-          surfaceTransition,
-          attributes);
-      newPaths.add(p);
+    // check conditions.
+    if (!suffixTransition.canPass(path)) {
+      return null;
     }
-    return newPaths;
+
+    // epsilon (empty) transition. Add and continue. Use existing attributes.
+    if (!suffixTransition.hasSurfaceForm()) {
+      return path.getCopy(
+          new SurfaceTransition("", suffixTransition),
+          path.phoneticAttributes);
+    }
+
+    SurfaceTransition surfaceTransition = new SurfaceTransition(surface, suffixTransition);
+
+    //if tail is equal to surface, no need to calculate phonetic attributes.
+    boolean tailEqualsSurface = asciiTolerant ?
+        TurkishAlphabet.INSTANCE.equalsIgnoreDiacritics(path.tail, surface)
+        : path.tail.equals(surface);
+    AttributeSet<PhoneticAttribute> attributes = tailEqualsSurface ?
+        path.phoneticAttributes.copy() :
+        AttributesHelper.getMorphemicAttributes(surface, path.phoneticAttributes);
+
+    // This is required for suffixes like `cik` and `ciğ`
+    // an extra attribute is added if "cik" or "ciğ" is generated and matches the tail.
+    // if "cik" is generated, ExpectsConsonant attribute is added, so only a consonant starting
+    // suffix can follow. Likewise, if "ciğ" is produced, a vowel starting suffix is allowed.
+    attributes.remove(PhoneticAttribute.CannotTerminate);
+    SuffixTemplateToken lastToken = suffixTransition.getLastTemplateToken();
+    if (lastToken.type == TemplateTokenType.LAST_VOICED) {
+      attributes.add(PhoneticAttribute.ExpectsConsonant);
+    } else if (lastToken.type == TemplateTokenType.LAST_NOT_VOICED) {
+      attributes.add(PhoneticAttribute.ExpectsVowel);
+      attributes.add(PhoneticAttribute.CannotTerminate);
+    }
+
+    return path.getCopy(
+        surfaceTransition,
+        attributes);
   }
 
   // for preventing excessive branching during search, we remove paths that has more than
@@ -90,6 +90,19 @@ public class SearchPath {
     return path;
   }
 
+  // Returns a copy of this path with a different tail. Transition history is shared.
+  SearchPath withTail(String tail) {
+    SearchPath path = new SearchPath(
+        tail,
+        currentState,
+        transitions,
+        phoneticAttributes,
+        terminal);
+    path.containsSuffixWithSurface = containsSuffixWithSurface;
+    path.containsDerivation = containsDerivation;
+    return path;
+  }
+
   public String toString() {
     StemTransition st = getStemTransition();
     String morphemeStr =
@@ -14,6 +14,12 @@ public interface StemTransitions {
 
   List<StemTransition> getPrefixMatches(String stem, boolean asciiTolerant);
 
+  /**
+   * Returns stem transitions whose surface forms are prefixes of the input and at least
+   * `minLength` characters long. Results are ordered by surface length.
+   */
+  List<StemTransition> getPrefixMatches(String stem, int minLength, boolean asciiTolerant);
+
   List<StemTransition> getTransitions(DictionaryItem item);
 
   void addDictionaryItem(DictionaryItem item);
@@ -145,13 +145,20 @@ public class StemTransitionsMapBased extends StemTransitionsBase implements Stem
   }
 
   public List<StemTransition> getPrefixMatches(String input, boolean asciiTolerant) {
+    return getPrefixMatches(input, 1, asciiTolerant);
+  }
+
+  public List<StemTransition> getPrefixMatches(
+      String input,
+      int minLength,
+      boolean asciiTolerant) {
     if (asciiKeys == null && asciiTolerant) {
       generateAsciiTolerantMap();
     }
     lock.readLock().lock();
     try {
       List<StemTransition> matches = Lists.newArrayListWithCapacity(3);
-      for (int i = 1; i <= input.length(); i++) {
+      for (int i = Math.max(minLength, 1); i <= input.length(); i++) {
         String stem = input.substring(0, i);
         if (asciiTolerant) {
           matches.addAll(getTransitionsAsciiTolerant(stem));
@@ -51,6 +51,19 @@ public class StemTransitionsTrieBased extends StemTransitionsBase implements Ste
     }
   }
 
+  public List<StemTransition> getPrefixMatches(
+      String stem,
+      int minLength,
+      boolean asciiTolerant) {
+    List<StemTransition> matches = getPrefixMatches(stem, asciiTolerant);
+    if (minLength <= 1) {
+      return matches;
+    }
+    return matches.stream()
+        .filter(s -> s.surface.length() >= minLength)
+        .collect(Collectors.toList());
+  }
+
   public List<StemTransition> getTransitions(DictionaryItem item) {
     if (differentStemItems.containsKey(item)) {
       return differentStemItems.get(item);
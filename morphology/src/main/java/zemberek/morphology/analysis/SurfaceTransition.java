@@ -8,6 +8,7 @@ import static zemberek.core.turkish.PhoneticAttribute.LastVowelRounded;
 import static zemberek.core.turkish.PhoneticAttribute.LastVowelUnrounded;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import zemberek.core.turkish.PhoneticAttribute;
 import zemberek.core.turkish.TurkishAlphabet;
@@ -62,18 +63,40 @@ public class SurfaceTransition {
 
   static TurkishAlphabet alphabet = TurkishAlphabet.INSTANCE;
 
+  // Only these attributes of the predecessor affect the surface form of a suffix template.
+  public static final int SURFACE_ATTRIBUTE_MASK = AttributeSet.of(
+      LastLetterVowel,
+      LastVowelFrontal,
+      LastVowelBack,
+      LastVowelRounded,
+      LastVowelUnrounded,
+      LastLetterVoiceless).getBits();
+
   public static String generateSurface(
       SuffixTransition transition,
       AttributeSet<PhoneticAttribute> phoneticAttributes) {
 
-    String cached = transition.getFromSurfaceCache(phoneticAttributes);
-    if (cached != null) {
-      return cached;
+    String surface = transition.getSurface(phoneticAttributes);
+    if (surface != null) {
+      return surface;
     }
+    // surface cannot be generated for this attribute combination, this throws an exception.
+    return generateSurface(transition.getTokenList(), phoneticAttributes);
+  }
+
+  /**
+   * Generates the surface form of template tokens for given predecessor attributes. Result only
+   * depends on the attributes in SURFACE_ATTRIBUTE_MASK.
+   *
+   * @throws IllegalArgumentException if a vowel cannot be generated with given attributes.
+   */
+  public static String generateSurface(
+      List<SuffixTemplateToken> tokens,
+      AttributeSet<PhoneticAttribute> phoneticAttributes) {
 
     StringBuilder sb = new StringBuilder();
     int index = 0;
-    for (SuffixTemplateToken token : transition.getTokenList()) {
+    for (SuffixTemplateToken token : tokens) {
       AttributeSet<PhoneticAttribute> attrs =
           AttributesHelper.getMorphemicAttributes(sb, phoneticAttributes);
       switch (token.type) {
@@ -135,9 +158,7 @@ public class SurfaceTransition {
       }
       index++;
     }
-    String s = sb.toString();
-    transition.addToSurfaceCache(phoneticAttributes, s);
-    return s;
+    return sb.toString();
   }
 
   public enum TemplateTokenType {
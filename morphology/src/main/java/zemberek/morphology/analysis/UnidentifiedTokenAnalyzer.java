@@ -5,7 +5,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import zemberek.core.turkish.PrimaryPos;
@@ -327,8 +326,7 @@ public class UnidentifiedTokenAnalyzer {
     List<SingleAnalysis> results = Lists.newArrayListWithCapacity(1);
 
     for (Numerals numerals : Numerals.values()) {
-      Matcher m = numerals.pattern.matcher(se.stem);
-      if (m.find()) {
+      if (numerals.matches(se.stem)) {
         String toParse;
         if (se.ending.length() > 0 && lemma.equals("dört") &&
             ALPHABET.isVowel(se.ending.charAt(0))) {
@@ -377,6 +375,145 @@ public class UnidentifiedTokenAnalyzer {
       this.pattern = Pattern.compile(patternStr);
       this.secondaryPos = secondaryPos;
     }
+
+    /**
+     * Checks if input matches this numeral type. This is equivalent to `pattern.matcher(input)
+     * .find()` for inputs without line terminators, but does not use regular expressions.
+     */
+    public boolean matches(String input) {
+      int n = input.length();
+      switch (this) {
+        case CARDINAL: {
+          int i = signEnd(input, 0);
+          int j = digitsEnd(input, i);
+          return j > i && j == n;
+        }
+        case ORDINAL: {
+          int i = signEnd(input, 0);
+          int j = digitsEnd(input, i);
+          return j > i && j == n - 1 && input.charAt(j) == '.';
+        }
+        case RANGE:
+          return twoIntegers(input, '-', '-');
+        case RATIO:
+          return twoIntegers(input, '/', '/');
+        case REAL:
+          return twoIntegers(input, ',', '.');
+        case DISTRIB: {
+          int j = digitsEnd(input, 0);
+          return j > 0 && j < n && noDigits(input, j);
+        }
+        case PERCENTAGE_BEFORE: {
+          int p = input.lastIndexOf('%');
+          if (p < 0 || (p > 0 && input.charAt(p - 1) != '+' && input.charAt(p - 1) != '-')) {
+            return false;
+          }
+          int j = digitsEnd(input, p + 1);
+          if (j == p + 1) {
+            return false;
+          }
+          if (j == n) {
+            return true;
+          }
+          char c = input.charAt(j);
+          int k = digitsEnd(input, j + 1);
+          return (c == '.' || c == ',') && k > j + 1 && k == n;
+        }
+        case TIME: {
+          // ([012][0-9]|[1-9])([.]|[:])([0-5][0-9])
+          int i = n - 3;
+          if (i < 1 || i > 2) {
+            return false;
+          }
+          char separator = input.charAt(i);
+          char m = input.charAt(i + 1);
+          return (separator == '.' || separator == ':')
+              && m >= '0' && m <= '5' && isDigit(input.charAt(i + 2))
+              && dayOrHourField(input, 0, i, '2');
+        }
+        case DATE: {
+          // ([0-3][0-9]|[1-9])([.]|[/])([01][0-9]|[1-9])([.]|[/])(\d{4})
+          int yearStart = n - 4;
+          if (yearStart < 4 || digitsEnd(input, yearStart) != n) {
+            return false;
+          }
+          int s2 = yearStart - 1;
+          if (!isDateSeparator(input.charAt(s2))) {
+            return false;
+          }
+          for (int s1 = 1; s1 <= 2; s1++) {
+            if (s2 - s1 - 1 >= 1 && s2 - s1 - 1 <= 2
+                && isDateSeparator(input.charAt(s1))
+                && dayOrHourField(input, 0, s1, '3')
+                && dayOrHourField(input, s1 + 1, s2, '1')) {
+              return true;
+            }
+          }
+          return false;
+        }
+        default:
+          return pattern.matcher(input).find();
+      }
+    }
+
+    private static boolean isDigit(char c) {
+      return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDateSeparator(char c) {
+      return c == '.' || c == '/';
+    }
+
+    private static int signEnd(String input, int i) {
+      if (i < input.length() && (input.charAt(i) == '+' || input.charAt(i) == '-')) {
+        return i + 1;
+      }
+      return i;
+    }
+
+    private static int digitsEnd(String input, int i) {
+      while (i < input.length() && isDigit(input.charAt(i))) {
+        i++;
+      }
+      return i;
+    }
+
+    private static boolean noDigits(String input, int i) {
+      for (; i < input.length(); i++) {
+        if (isDigit(input.charAt(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // [+-]? [0-9]+ separator [0-9]+
+    private static boolean twoIntegers(String input, char separator1, char separator2) {
+      int i = signEnd(input, 0);
+      int j = digitsEnd(input, i);
+      if (j == i || j == input.length()) {
+        return false;
+      }
+      char c = input.charAt(j);
+      if (c != separator1 && c != separator2) {
+        return false;
+      }
+      int k = digitsEnd(input, j + 1);
+      return k > j + 1 && k == input.length();
+    }
+
+    // ([0-max][0-9]|[1-9]) between start and end.
+    private static boolean dayOrHourField(String input, int start, int end, char max) {
+      if (end - start == 1) {
+        char c = input.charAt(start);
+        return c >= '1' && c <= '9';
+      }
+      if (end - start == 2) {
+        char c = input.charAt(start);
+        return c >= '0' && c <= max && isDigit(input.charAt(start + 1));
+      }
+      return false;
+    }
   }
 
 }
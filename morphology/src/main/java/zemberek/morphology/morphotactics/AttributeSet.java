@@ -29,6 +29,10 @@ public class AttributeSet<E extends Enum<E>> {
     return res;
   }
 
+  public static <E extends Enum<E>> AttributeSet<E> fromBits(int bits) {
+    return new AttributeSet<>(bits);
+  }
+
   public static <E extends Enum<E>> AttributeSet<E> emptySet() {
     return new AttributeSet<>();
   }
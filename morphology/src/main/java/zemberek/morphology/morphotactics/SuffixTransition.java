@@ -1,13 +1,18 @@
 package zemberek.morphology.morphotactics;
 
+import static zemberek.morphology.analysis.SurfaceTransition.SURFACE_ATTRIBUTE_MASK;
+
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import zemberek.core.logging.Log;
 import zemberek.core.turkish.PhoneticAttribute;
 import zemberek.core.turkish.TurkishAlphabet;
+import zemberek.morphology.analysis.SurfaceTransition;
 import zemberek.morphology.analysis.SurfaceTransition.SuffixTemplateToken;
 import zemberek.morphology.analysis.SurfaceTransition.SuffixTemplateTokenizer;
 import zemberek.morphology.analysis.SearchPath;
@@ -20,15 +25,16 @@ public class SuffixTransition extends MorphemeTransition {
 
   private List<SuffixTemplateToken> tokenList;
 
-  private AttributeToSurfaceCache surfaceCache;
-
-  public void addToSurfaceCache(
-      AttributeSet<PhoneticAttribute> attributes, String value) {
-    surfaceCache.addSurface(attributes.getBits(), value);
-  }
+  // surface forms for all phonetic attribute combinations that affect surface generation.
+  // Indexed by attribute bits masked with SurfaceTransition.SURFACE_ATTRIBUTE_MASK.
+  private String[] surfaceTable;
 
-  public String getFromSurfaceCache(AttributeSet<PhoneticAttribute> attributes) {
-    return surfaceCache.getSurface(attributes.getBits());
+  /**
+   * Returns the surface form of this transition for given predecessor attributes. Returns null
+   * if surface cannot be generated for the attributes.
+   */
+  public String getSurface(AttributeSet<PhoneticAttribute> attributes) {
+    return surfaceTable[attributes.getBits() & SURFACE_ATTRIBUTE_MASK];
   }
 
   private SuffixTransition(Builder builder) {
@@ -42,7 +48,25 @@ public class SuffixTransition extends MorphemeTransition {
     this.tokenList = Lists
         .newArrayList(new SuffixTemplateTokenizer(this.surfaceTemplate));
     this.conditionCount = countConditions();
-    this.surfaceCache = new AttributeToSurfaceCache();
+    this.surfaceTable = generateSurfaceTable(tokenList);
+  }
+
+  private static String[] generateSurfaceTable(List<SuffixTemplateToken> tokens) {
+    String[] table = new String[SURFACE_ATTRIBUTE_MASK + 1];
+    // share equal surfaces.
+    Map<String, String> surfaces = new HashMap<>();
+    for (int bits = 0; bits <= SURFACE_ATTRIBUTE_MASK; bits++) {
+      if ((bits & ~SURFACE_ATTRIBUTE_MASK) != 0) {
+        continue;
+      }
+      try {
+        String surface = SurfaceTransition.generateSurface(tokens, AttributeSet.fromBits(bits));
+        table[bits] = surfaces.computeIfAbsent(surface, s -> s);
+      } catch (IllegalArgumentException e) {
+        // there is no surface for this combination.
+      }
+    }
+    return table;
   }
 
   private int countConditions() {
@@ -66,7 +90,7 @@ public class SuffixTransition extends MorphemeTransition {
     st.to = to;
     st.condition = condition;
     st.tokenList = new ArrayList<>(tokenList);
-    st.surfaceCache = this.surfaceCache;
+    st.surfaceTable = this.surfaceTable;
     return st;
   }
 
@@ -1,15 +1,19 @@
 package zemberek.morphology;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 import zemberek.core.logging.Log;
+import zemberek.core.text.TextUtil;
 import zemberek.core.turkish.SecondaryPos;
 import zemberek.morphology.analysis.RuleBasedAnalyzer;
 import zemberek.morphology.analysis.SingleAnalysis;
 import zemberek.morphology.analysis.WordAnalysis;
 import zemberek.morphology.lexicon.RootLexicon;
 import zemberek.morphology.lexicon.tr.TurkishDictionaryLoader;
+import zemberek.tokenization.Token;
+import zemberek.tokenization.TurkishTokenizer;
 
 public class TurkishMorphologyFunctionalTests {
 
@@ -328,6 +332,23 @@ public class TurkishMorphologyFunctionalTests {
     Assert.assertTrue(containsAllDictionaryLemma(result, "insan"));
   }
 
+  @Test
+  public void analyzeTokensTest() {
+    TurkishMorphology morphology = getMorphology("elma", "Ankara", "kitap");
+    String sentence = "Ankara'da 3 elma ve kitaplar, 12.30'da “kitapçı”.";
+    List<WordAnalysis> expected = new ArrayList<>();
+    for (Token token : TurkishTokenizer.DEFAULT
+        .tokenize(TextUtil.normalizeQuotesHyphens(sentence))) {
+      expected.add(morphology.analyze(token.getText()));
+    }
+    Assert.assertEquals(expected, morphology.analyzeSentence(sentence));
+
+    // tokens with white spaces.
+    List<WordAnalysis> all = morphology.analyzeTokens(TurkishTokenizer.ALL.tokenize("elma ve"));
+    Assert.assertEquals(3, all.size());
+    Assert.assertEquals(0, all.get(1).analysisCount());
+  }
+
   private boolean containsAllDictionaryLemma(List<SingleAnalysis> analyses, String... item) {
 
     for (String i : item) {
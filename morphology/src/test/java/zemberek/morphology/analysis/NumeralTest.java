@@ -1,6 +1,9 @@
 package zemberek.morphology.analysis;
 
+import java.util.Random;
+import org.junit.Assert;
 import org.junit.Test;
+import zemberek.morphology.analysis.UnidentifiedTokenAnalyzer.Numerals;
 
 public class NumeralTest extends AnalyzerTestBase {
 
@@ -11,4 +14,25 @@ public class NumeralTest extends AnalyzerTestBase {
     t.expectAny("bire", matchesTailLex("Num + Zero + Noun + A3sg + Dat"));
     t.expectAny("birmiş", matchesTailLex("Num + Zero + Verb + Narr + A3sg"));
   }
+
+  @Test
+  public void numeralsMatchSameAsPatterns() {
+    String[] charSets = {"0123456789.,:/%+-a", "0129./:"};
+    Random r = new Random(0xbeef);
+    for (int i = 0; i < 300_000; i++) {
+      String chars = charSets[i % 2];
+      int length = r.nextInt(11) + 1;
+      StringBuilder sb = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        sb.append(chars.charAt(r.nextInt(chars.length())));
+      }
+      String s = sb.toString();
+      for (Numerals numerals : Numerals.values()) {
+        Assert.assertEquals(
+            numerals.name() + " " + s,
+            numerals.pattern.matcher(s).find(),
+            numerals.matches(s));
+      }
+    }
+  }
 }
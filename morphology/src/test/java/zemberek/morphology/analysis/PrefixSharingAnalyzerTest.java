@@ -0,0 +1,93 @@
+package zemberek.morphology.analysis;
+
+import com.google.common.base.Stopwatch;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import zemberek.core.logging.Log;
+import zemberek.core.turkish.Turkish;
+import zemberek.morphology.TurkishMorphology;
+
+public class PrefixSharingAnalyzerTest {
+
+  @Test
+  public void sameResultsWithRuleBasedAnalyzer() {
+    RuleBasedAnalyzer analyzer = RuleBasedAnalyzer
+        .instance(AnalyzerTestBase.getMorphotactics("elma", "el", "elmas", "kitap", "kitapçı"));
+    PrefixSharingAnalyzer prefixSharing = new PrefixSharingAnalyzer(analyzer);
+    String[] words = {"el", "ele", "elim", "elimde", "elimize", "elma", "elmada", "elmalar",
+        "elmalarda", "elmas", "elmasa", "kitab", "kitaba", "kitap", "kitapçı", "kitapçıya",
+        "kitaplar", "x", "el"};
+    for (String word : words) {
+      Assert.assertEquals(
+          word,
+          toStrings(analyzer.analyze(word)),
+          toStrings(prefixSharing.analyze(word)));
+    }
+  }
+
+  @Test
+  public void sameResultsForVocabulary() throws IOException {
+    TurkishMorphology morphology = TurkishMorphology.createWithDefaults();
+    List<String> words = getVocabulary();
+    RuleBasedAnalyzer analyzer = morphology.getAnalyzer();
+    PrefixSharingAnalyzer prefixSharing = new PrefixSharingAnalyzer(analyzer);
+    for (String word : words) {
+      Assert.assertEquals(
+          word,
+          toStrings(analyzer.analyze(word)),
+          toStrings(prefixSharing.analyze(word)));
+    }
+  }
+
+  @Test
+  @Ignore("Speed Test")
+  public void speedTest() throws IOException {
+    TurkishMorphology morphology = TurkishMorphology.createWithDefaults();
+    List<String> words = getVocabulary();
+    RuleBasedAnalyzer analyzer = morphology.getAnalyzer();
+    PrefixSharingAnalyzer prefixSharing = new PrefixSharingAnalyzer(analyzer);
+    for (int i = 0; i < 5; i++) {
+      Stopwatch sw = Stopwatch.createStarted();
+      long total = 0;
+      for (String word : words) {
+        total += analyzer.analyze(word).size();
+      }
+      Log.info("Rule based : %d ms. Analysis count = %d",
+          sw.elapsed(TimeUnit.MILLISECONDS), total);
+      sw.reset().start();
+      total = 0;
+      for (String word : words) {
+        total += prefixSharing.analyze(word).size();
+      }
+      Log.info("Prefix sharing : %d ms. Analysis count = %d",
+          sw.elapsed(TimeUnit.MILLISECONDS), total);
+    }
+  }
+
+  private List<String> getVocabulary() throws IOException {
+    List<String> words = Files
+        .readAllLines(Paths.get("src/test/resources/top-20K-words.txt"), StandardCharsets.UTF_8)
+        .stream()
+        .map(s -> s.trim().toLowerCase(Turkish.LOCALE))
+        .filter(s -> s.length() > 0)
+        .distinct()
+        .collect(Collectors.toList());
+    words = new ArrayList<>(words);
+    Collections.sort(words);
+    return words;
+  }
+
+  private List<String> toStrings(List<SingleAnalysis> analyses) {
+    return analyses.stream().map(SingleAnalysis::formatLong).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,55 @@
+package zemberek.morphology.analysis;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek.core.turkish.PhoneticAttribute;
+import zemberek.morphology.morphotactics.AttributeSet;
+import zemberek.morphology.morphotactics.MorphemeState;
+import zemberek.morphology.morphotactics.SuffixTransition;
+import zemberek.morphology.morphotactics.TurkishMorphotactics;
+
+public class SurfaceTransitionTest {
+
+  @Test
+  public void precomputedSurfacesTest() {
+    String[] templates = {"", "lAr", "+yA", ">dIr", "+sI", "+nIn", "cIk", "~k", "!ğ", "Iyor",
+        "+yAcAk", ">cA", "+Im", "mAk", "+yDI", "sIz"};
+    MorphemeState from = MorphemeState.nonTerminal("from", TurkishMorphotactics.noun);
+    MorphemeState to = MorphemeState.terminal("to", TurkishMorphotactics.noun);
+    Random random = new Random(0xbeef);
+    for (String template : templates) {
+      SuffixTransition transition = new SuffixTransition.Builder()
+          .from(from)
+          .to(to)
+          .surfaceTemplate(template)
+          .build();
+      for (int i = 0; i < 10_000; i++) {
+        int bits = random.nextInt(1 << PhoneticAttribute.values().length);
+        AttributeSet<PhoneticAttribute> attributes = AttributeSet.fromBits(bits);
+        String expected;
+        try {
+          expected = SurfaceTransition.generateSurface(transition.getTokenList(), attributes);
+        } catch (IllegalArgumentException e) {
+          expected = null;
+        }
+        Assert.assertEquals(template + " " + bits, expected, transition.getSurface(attributes));
+      }
+    }
+  }
+
+  @Test
+  public void surfaceTest() {
+    MorphemeState from = MorphemeState.nonTerminal("from", TurkishMorphotactics.noun);
+    MorphemeState to = MorphemeState.terminal("to", TurkishMorphotactics.noun);
+    SuffixTransition transition = new SuffixTransition.Builder()
+        .from(from)
+        .to(to)
+        .surfaceTemplate(">dIr")
+        .build();
+    Assert.assertEquals("tır", SurfaceTransition.generateSurface(transition,
+        AttributesHelper.getMorphemicAttributes("kitap")));
+    Assert.assertEquals("dür", SurfaceTransition.generateSurface(transition,
+        AttributesHelper.getMorphemicAttributes("göz")));
+  }
+}
@@ -0,0 +1,34 @@
+package zemberek.normalization;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes primitive arrays as big endian blocks, for binary files of packed graphs and
+ * indexes.
+ */
+final class ArrayIO {
+
+  private ArrayIO() {
+  }
+
+  static void writeInts(DataOutputStream dos, int[] values) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(values.length * 4);
+    bytes.asIntBuffer().put(values);
+    dos.write(bytes.array());
+  }
+
+  static byte[] readBytes(DataInputStream dis, int count) throws IOException {
+    byte[] bytes = new byte[count];
+    dis.readFully(bytes);
+    return bytes;
+  }
+
+  static int[] readInts(DataInputStream dis, int count) throws IOException {
+    int[] values = new int[count];
+    ByteBuffer.wrap(readBytes(dis, count * 4)).asIntBuffer().get(values);
+    return values;
+  }
+}
@@ -0,0 +1,190 @@
+package zemberek.normalization;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.base.Preconditions;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded cache from raw tokens to their normalization candidates that can be shared between
+ * threads. Only candidates that do not depend on neighbour words are kept. Spell checker
+ * suggestions are stored before context ranking, so the character graph search runs once per
+ * token and only the cheap language model ranking is repeated for every occurrence.
+ * <p>
+ * Entries depend on the lookup files, morphology and spell checker used for generating them. A
+ * saved cache should only be loaded for a normalizer with the same resources.
+ */
+public class CandidateCache {
+
+  public static final int DEFAULT_MAX_SIZE = 50_000;
+
+  private static final int MAGIC = 0x6e636331;
+
+  private final Cache<String, Entry> cache;
+
+  public CandidateCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public CandidateCache(int maxSize) {
+    Preconditions.checkArgument(maxSize > 0,
+        "Cache size must be positive. But it is %d", maxSize);
+    cache = Caffeine.newBuilder()
+        .recordStats()
+        .maximumSize(maxSize)
+        .build();
+  }
+
+  /**
+   * Candidates of a token that do not depend on its neighbours.
+   */
+  public static class Entry {
+
+    final List<String> candidates;
+    // unranked spell checker suggestions. Null if token does not require spell checking.
+    final List<String> spellSuggestions;
+    // true if token has a formal analysis. Such tokens are always a candidate of themselves.
+    final boolean correct;
+
+    Entry(List<String> candidates, List<String> spellSuggestions, boolean correct) {
+      this.candidates = Collections.unmodifiableList(candidates);
+      this.spellSuggestions = spellSuggestions == null ?
+          null : Collections.unmodifiableList(spellSuggestions);
+      this.correct = correct;
+    }
+
+    public List<String> getCandidates() {
+      return candidates;
+    }
+
+    public boolean requiresSpellCheck() {
+      return spellSuggestions != null;
+    }
+
+    public List<String> getSpellSuggestions() {
+      return spellSuggestions == null ? Collections.emptyList() : spellSuggestions;
+    }
+
+    public boolean isCorrect() {
+      return correct;
+    }
+  }
+
+  public Entry get(String token) {
+    return cache.getIfPresent(token);
+  }
+
+  public Entry get(String token, Function<String, Entry> entryProvider) {
+    return cache.get(token, entryProvider);
+  }
+
+  public void put(String token, Entry entry) {
+    cache.put(token, entry);
+  }
+
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  public void invalidate() {
+    cache.invalidateAll();
+  }
+
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  public double getHitRate() {
+    return cache.stats().hitRate();
+  }
+
+  /**
+   * Saves current entries. Statistics are not saved.
+   */
+  public void save(Path path) throws IOException {
+    Map<String, Entry> entries = cache.asMap();
+    try (DataOutputStream dos = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+      dos.writeInt(MAGIC);
+      List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+      dos.writeInt(snapshot.size());
+      for (Map.Entry<String, Entry> e : snapshot) {
+        Entry entry = e.getValue();
+        dos.writeUTF(e.getKey());
+        dos.writeBoolean(entry.correct);
+        writeList(dos, entry.candidates);
+        dos.writeBoolean(entry.spellSuggestions != null);
+        if (entry.spellSuggestions != null) {
+          writeList(dos, entry.spellSuggestions);
+        }
+      }
+    }
+  }
+
+  /**
+   * Loads entries saved with {@link #save(Path)} to a cache with given maximum size. If there are
+   * more entries than maximum size, some of them are evicted.
+   */
+  public static CandidateCache load(Path path, int maxSize) throws IOException {
+    CandidateCache result = new CandidateCache(maxSize);
+    try (DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+      int magic = dis.readInt();
+      if (magic != MAGIC) {
+        throw new IllegalArgumentException("File " + path + " is not a candidate cache file.");
+      }
+      int size = dis.readInt();
+      for (int i = 0; i < size; i++) {
+        String token = dis.readUTF();
+        boolean correct = dis.readBoolean();
+        List<String> candidates = readList(dis);
+        List<String> spellSuggestions = dis.readBoolean() ? readList(dis) : null;
+        result.put(token, new Entry(candidates, spellSuggestions, correct));
+      }
+    }
+    return result;
+  }
+
+  public static CandidateCache load(Path path) throws IOException {
+    return load(path, DEFAULT_MAX_SIZE);
+  }
+
+  private static void writeList(DataOutputStream dos, List<String> list) throws IOException {
+    dos.writeInt(list.size());
+    for (String s : list) {
+      dos.writeUTF(s);
+    }
+  }
+
+  private static List<String> readList(DataInputStream dis) throws IOException {
+    int size = dis.readInt();
+    List<String> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(dis.readUTF());
+    }
+    return list;
+  }
+
+  @Override
+  public String toString() {
+    CacheStats stats = cache.stats();
+    return String.format("Candidate cache size: %d Hit rate: %.3f (hits: %d, misses: %d)",
+        cache.estimatedSize(), stats.hitRate(), stats.hitCount(), stats.missCount());
+  }
+}
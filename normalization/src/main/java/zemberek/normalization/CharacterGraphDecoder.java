@@ -1,21 +1,18 @@
 package zemberek.normalization;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
 import zemberek.core.ScoredItem;
 import zemberek.core.collections.FloatValueMap;
 import zemberek.core.collections.IntMap;
 import zemberek.core.turkish.TurkishAlphabet;
 
-public class CharacterGraphDecoder {
+public class CharacterGraphDecoder implements SpellSuggestionEngine {
 
   public static final Map<Character, String> TURKISH_FQ_NEAR_KEY_MAP = new HashMap<>();
   public static final Map<Character, String> TURKISH_Q_NEAR_KEY_MAP = new HashMap<>();
@@ -105,6 +102,10 @@ public class CharacterGraphDecoder {
   public final boolean checkNearKeySubstitution;
   public Map<Character, String> nearKeyMap = new HashMap<>();
   private CharacterGraph graph = new CharacterGraph();
+  // searches are done on a packed copy of the graph. It is generated when first needed.
+  private volatile PackedCharacterGraph packedGraph;
+  // search storage is reused by consecutive searches of the same thread.
+  private final ThreadLocal<SearchPool> searchPools = ThreadLocal.withInitial(SearchPool::new);
 
   public CharacterGraphDecoder(float maxPenalty) {
     this.maxPenalty = maxPenalty;
@@ -116,39 +117,79 @@ public class CharacterGraphDecoder {
     this.checkNearKeySubstitution = false;
   }
 
+  /**
+   * Generates a decoder for the graph. Graph is packed when the first search is made, so it should
+   * not be modified after that.
+   */
   public CharacterGraphDecoder(CharacterGraph graph) {
     this.graph = graph;
     this.maxPenalty = 1;
     this.checkNearKeySubstitution = false;
   }
 
+  /**
+   * Generates a decoder for an already packed graph. Words cannot be added to such decoders.
+   */
+  CharacterGraphDecoder(PackedCharacterGraph packedGraph) {
+    this.graph = null;
+    this.packedGraph = packedGraph;
+    this.maxPenalty = 1;
+    this.checkNearKeySubstitution = false;
+  }
+
   public CharacterGraphDecoder(float maxPenalty, Map<Character, String> nearKeyMap) {
     this.maxPenalty = maxPenalty;
     this.nearKeyMap = Collections.unmodifiableMap(nearKeyMap);
     this.checkNearKeySubstitution = true;
   }
 
+  /**
+   * Returns the mutable graph of this decoder, or null if decoder is generated with a packed
+   * graph.
+   */
   public CharacterGraph getGraph() {
     return graph;
   }
 
+  PackedCharacterGraph getPackedGraph() {
+    PackedCharacterGraph packed = packedGraph;
+    if (packed == null) {
+      synchronized (this) {
+        packed = packedGraph;
+        if (packed == null) {
+          packed = PackedCharacterGraph.from(graph);
+          packedGraph = packed;
+        }
+      }
+    }
+    return packed;
+  }
+
   private String process(String str) {
     return str.toLowerCase(tr).replace("['.]", "");
   }
 
-  public void addWord(String word) {
+  private synchronized void add(String word) {
+    if (graph == null) {
+      throw new IllegalStateException("Words cannot be added to a packed graph.");
+    }
     graph.addWord(process(word), Node.TYPE_WORD);
+    packedGraph = null;
+  }
+
+  public void addWord(String word) {
+    add(word);
   }
 
   public void addWords(String... words) {
     for (String word : words) {
-      graph.addWord(process(word), Node.TYPE_WORD);
+      add(word);
     }
   }
 
   public void addWords(List<String> vocabulary) {
     for (String s : vocabulary) {
-      graph.addWord(process(s), Node.TYPE_WORD);
+      add(s);
     }
   }
 
@@ -156,47 +197,57 @@ public class CharacterGraphDecoder {
    * Returns suggestions sorted by penalty.
    */
   public List<ScoredItem<String>> getSuggestionsWithScores(String input) {
-    Decoder decoder = new Decoder();
-    return getMatches(input, decoder);
+    return getSuggestionsWithScores(input, null, Integer.MAX_VALUE);
   }
 
-  private List<ScoredItem<String>> getMatches(String input, Decoder decoder) {
-    FloatValueMap<String> results = decoder.decode(input);
-
-    List<ScoredItem<String>> res = new ArrayList<>(results.size());
-    for (String result : results) {
-      res.add(new ScoredItem<>(result, results.get(result)));
-    }
-    res.sort((a, b) -> Float.compare(a.score, b.score));
-    return res;
+  @Override
+  public List<ScoredItem<String>> getSuggestionsWithScores(String input, CharMatcher matcher) {
+    return getSuggestionsWithScores(input, matcher, Integer.MAX_VALUE);
   }
 
-  public List<ScoredItem<String>> getSuggestionsWithScores(String input, CharMatcher matcher) {
+  /**
+   * Returns at most `maxCount` suggestions with lowest penalties, sorted by penalty. Search stops
+   * as soon as `maxCount` suggestions are found, so this is faster than getting all suggestions
+   * when only the best few are needed. Suggestions with equal penalties are returned in the order
+   * they are found.
+   */
+  public List<ScoredItem<String>> getSuggestionsWithScores(
+      String input, CharMatcher matcher, int maxCount) {
     Decoder decoder = new Decoder(matcher);
-    return getMatches(input, decoder);
+    decoder.decode(input, maxCount);
+    List<ScoredItem<String>> res = new ArrayList<>(decoder.found.size());
+    for (String result : decoder.found) {
+      res.add(new ScoredItem<>(result, decoder.finished.get(result)));
+    }
+    return res;
   }
 
   public FloatValueMap<String> decode(String input) {
-    return new Decoder().decode(input);
+    return new Decoder().decode(input, Integer.MAX_VALUE);
   }
 
   public List<String> getSuggestions(String input) {
-    return new Decoder().decode(input).getKeyList();
+    return decode(input).getKeyList();
   }
 
+  @Override
   public List<String> getSuggestions(String input, CharMatcher matcher) {
-    return new Decoder(matcher).decode(input).getKeyList();
+    return new Decoder(matcher).decode(input, Integer.MAX_VALUE).getKeyList();
   }
 
-  public List<String> getSuggestionsSorted(String input) {
-    List<ScoredItem<String>> s = getSuggestionsWithScores(input);
-    List<String> result = new ArrayList<>(s.size());
-    result.addAll(s.stream().map(s1 -> s1.item).collect(Collectors.toList()));
-    return result;
+  /**
+   * Returns at most `maxCount` suggestions with lowest penalties, sorted by penalty.
+   */
+  public List<String> getSuggestions(String input, CharMatcher matcher, int maxCount) {
+    Decoder decoder = new Decoder(matcher);
+    decoder.decode(input, maxCount);
+    return decoder.found;
   }
 
-  enum Operation {
-    NO_ERROR, INSERTION, DELETION, SUBSTITUTION, TRANSPOSITION, N_A
+  public List<String> getSuggestionsSorted(String input) {
+    Decoder decoder = new Decoder();
+    decoder.decode(input, Integer.MAX_VALUE);
+    return decoder.found;
   }
 
   public interface CharMatcher {
@@ -204,139 +255,220 @@ public class CharacterGraphDecoder {
     char[] matches(char c);
   }
 
-  static class Hypothesis implements Comparable<Hypothesis> {
-
-    Operation operation;
-    int charIndex;
-    Node node;
-    float penalty;
-    String word;
-    String ending;
-    Hypothesis previous;
-
-    Hypothesis(Hypothesis previous, Node node, float penalty, Operation operation, String word,
-        String ending) {
-      this.previous = previous;
-      this.node = node;
-      this.penalty = penalty;
-      this.charIndex = -1;
-      this.operation = operation;
-      this.word = word;
-      this.ending = ending;
-    }
-
-    Hypothesis(Hypothesis previous, Node node, float penalty, int charIndex, Operation operation,
-        String word, String ending) {
-      this.previous = previous;
-      this.node = node;
-      this.penalty = penalty;
-      this.charIndex = charIndex;
-      this.operation = operation;
-      this.word = word;
-      this.ending = ending;
-    }
-
-    String backTrack() {
-      StringBuilder sb = new StringBuilder();
-      Hypothesis p = previous;
-      while (p.node.chr != 0) {
-        if (p.node != p.previous.node) {
-          sb.append(p.node.chr);
-        }
-        p = p.previous;
+  /**
+   * Reusable storage of a search. Hypotheses are kept in parallel arrays and referred with their
+   * index. A hypothesis is a graph node, accumulated word rank of the current graph segment, index
+   * of the last consumed input character, word ids of the last stem and ending terminal nodes
+   * passed (-1 if there is none) and the penalty. Finishing hypotheses carry a complete
+   * suggestion, they are added to the queue so that suggestions are found in penalty order.
+   * <p>
+   * Lowest penalty of every hypothesis state (everything but the penalty) is kept in an open
+   * addressing table. Table slots carry the search generation they belong to, so it is not
+   * cleared between searches.
+   */
+  static final class SearchPool {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int INITIAL_TABLE_SIZE = 1 << 10;
+    private static final int KEY_SIZE = 5;
+
+    int[] nodes = new int[INITIAL_CAPACITY];
+    int[] ranks = new int[INITIAL_CAPACITY];
+    int[] indexes = new int[INITIAL_CAPACITY];
+    int[] words = new int[INITIAL_CAPACITY];
+    int[] endings = new int[INITIAL_CAPACITY];
+    float[] penalties = new float[INITIAL_CAPACITY];
+    boolean[] finishing = new boolean[INITIAL_CAPACITY];
+    int size;
+
+    // binary min heap of hypothesis indexes, ordered by penalty, then finishing hypotheses first
+    // and then insertion order.
+    int[] heap = new int[INITIAL_CAPACITY];
+    int heapSize;
+
+    int[] tableKeys = new int[INITIAL_TABLE_SIZE * KEY_SIZE];
+    float[] tablePenalties = new float[INITIAL_TABLE_SIZE];
+    int[] tableGenerations = new int[INITIAL_TABLE_SIZE];
+    int tableCount;
+    int generation;
+
+    // single character arrays used instead of a matcher.
+    final char[] single = new char[1];
+    final char[] singleTransposed = new char[1];
+
+    void reset() {
+      size = 0;
+      heapSize = 0;
+      tableCount = 0;
+      generation++;
+      if (generation == Integer.MAX_VALUE) {
+        Arrays.fill(tableGenerations, 0);
+        generation = 1;
       }
-      return sb.reverse().toString();
-    }
-
-    String getContent() {
-      String w = word == null ? "" : word;
-      String e = ending == null ? "" : ending;
-      return w + e;
     }
 
-    void setWord(Node node) {
-      if (node.word == null) {
+    /**
+     * Adds a hypothesis and puts it to the queue. Unless it is a finishing hypothesis, it is only
+     * added if same state was not reached before with a lower or equal penalty.
+     */
+    void offer(int node, int rank, int index, int word, int ending, float penalty,
+        boolean finish) {
+      if (!finish && !improve(node, rank, index, word, ending, penalty)) {
         return;
       }
-      if (node.getType() == Node.TYPE_WORD) {
-        this.word = node.word;
-      } else if (node.getType() == Node.TYPE_ENDING) {
-        this.ending = node.word;
+      if (size == nodes.length) {
+        int newCapacity = size * 2;
+        nodes = Arrays.copyOf(nodes, newCapacity);
+        ranks = Arrays.copyOf(ranks, newCapacity);
+        indexes = Arrays.copyOf(indexes, newCapacity);
+        words = Arrays.copyOf(words, newCapacity);
+        endings = Arrays.copyOf(endings, newCapacity);
+        penalties = Arrays.copyOf(penalties, newCapacity);
+        finishing = Arrays.copyOf(finishing, newCapacity);
+        heap = Arrays.copyOf(heap, newCapacity);
       }
+      int h = size++;
+      nodes[h] = node;
+      ranks[h] = rank;
+      indexes[h] = index;
+      words[h] = word;
+      endings[h] = ending;
+      penalties[h] = penalty;
+      finishing[h] = finish;
+      push(h);
     }
 
-    Hypothesis getNew(Node node, float penaltyToAdd, Operation operation) {
-      return new Hypothesis(this, node, this.penalty + penaltyToAdd, charIndex, operation,
-          this.word, this.ending);
+    /**
+     * Returns true if a lower penalty is found for a non finishing hypothesis that is polled from
+     * the queue. Such hypotheses do not need to be expanded.
+     */
+    boolean isStale(int h) {
+      int slot = find(nodes[h], ranks[h], indexes[h], words[h], endings[h]);
+      return tablePenalties[slot] < penalties[h];
     }
 
-    Hypothesis getNewMoveForward(Node node, float penaltyToAdd, Operation operation) {
-      return new Hypothesis(this, node, this.penalty + penaltyToAdd, charIndex + 1, operation,
-          this.word, this.ending);
+    boolean isEmpty() {
+      return heapSize == 0;
     }
 
-    Hypothesis getNew(Node node, float penaltyToAdd, int index, Operation operation) {
-      return new Hypothesis(this, node, this.penalty + penaltyToAdd, index, operation, this.word,
-          this.ending);
+    // finishing hypotheses come before the others with the same penalty, so that suggestions
+    // are reported as soon as possible.
+    private boolean less(int a, int b) {
+      float pa = penalties[a];
+      float pb = penalties[b];
+      if (pa != pb) {
+        return pa < pb;
+      }
+      if (finishing[a] != finishing[b]) {
+        return finishing[a];
+      }
+      return a < b;
     }
 
-    Hypothesis getNew(float penaltyToAdd, Operation operation) {
-      return new Hypothesis(this, this.node, this.penalty + penaltyToAdd, charIndex, operation,
-          this.word, this.ending);
+    private void push(int h) {
+      int i = heapSize++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!less(h, heap[parent])) {
+          break;
+        }
+        heap[i] = heap[parent];
+        i = parent;
+      }
+      heap[i] = h;
     }
 
-    @Override
-    public int compareTo(Hypothesis o) {
-      return Float.compare(penalty, o.penalty);
+    int poll() {
+      int result = heap[0];
+      int last = heap[--heapSize];
+      int i = 0;
+      int half = heapSize >>> 1;
+      while (i < half) {
+        int child = 2 * i + 1;
+        int right = child + 1;
+        if (right < heapSize && less(heap[right], heap[child])) {
+          child = right;
+        }
+        if (!less(heap[child], last)) {
+          break;
+        }
+        heap[i] = heap[child];
+        i = child;
+      }
+      if (heapSize > 0) {
+        heap[i] = last;
+      }
+      return result;
     }
 
-    @Override
-    public String toString() {
-      return "Hypothesis{" +
-          "previous=" + backTrack() + " " + previous.operation +
-          ", node=" + node +
-          ", penalty=" + penalty +
-          ", index=" + charIndex +
-          ", OP=" + operation.name() +
-          '}';
+    private static int hash(int node, int rank, int index, int word, int ending) {
+      int h = node * 0x9e3779b1;
+      h = (h ^ rank) * 0x85ebca6b;
+      h = (h ^ index) * 0xc2b2ae35;
+      h = (h ^ word) * 0x9e3779b1;
+      h = (h ^ ending) * 0x85ebca6b;
+      return h ^ (h >>> 16);
     }
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
+    // returns the slot of the state. It is either the current slot or an empty one.
+    private int find(int node, int rank, int index, int word, int ending) {
+      int mask = tablePenalties.length - 1;
+      int slot = hash(node, rank, index, word, ending) & mask;
+      while (tableGenerations[slot] == generation) {
+        int k = slot * KEY_SIZE;
+        if (tableKeys[k] == node && tableKeys[k + 1] == rank && tableKeys[k + 2] == index
+            && tableKeys[k + 3] == word && tableKeys[k + 4] == ending) {
+          return slot;
+        }
+        slot = (slot + 1) & mask;
       }
+      return slot;
+    }
 
-      Hypothesis that = (Hypothesis) o;
-
-      if (charIndex != that.charIndex) {
-        return false;
-      }
-      // TODO: this should not be here.
-      if (Float.compare(that.penalty, penalty) != 0) {
-        return false;
-      }
-      if (!node.equals(that.node)) {
-        return false;
+    private boolean improve(int node, int rank, int index, int word, int ending, float penalty) {
+      int slot = find(node, rank, index, word, ending);
+      if (tableGenerations[slot] == generation) {
+        if (tablePenalties[slot] <= penalty) {
+          return false;
+        }
+        tablePenalties[slot] = penalty;
+        return true;
       }
-      if (!Objects.equals(word, that.word)) {
-        return false;
+      if ((tableCount + 1) * 2 > tablePenalties.length) {
+        expandTable();
+        slot = find(node, rank, index, word, ending);
       }
-      return Objects.equals(ending, that.ending);
+      int k = slot * KEY_SIZE;
+      tableKeys[k] = node;
+      tableKeys[k + 1] = rank;
+      tableKeys[k + 2] = index;
+      tableKeys[k + 3] = word;
+      tableKeys[k + 4] = ending;
+      tablePenalties[slot] = penalty;
+      tableGenerations[slot] = generation;
+      tableCount++;
+      return true;
     }
 
-    @Override
-    public int hashCode() {
-      int result = charIndex;
-      result = 31 * result + node.hashCode();
-      // TODO: this should not be here.
-      result = 31 * result + (penalty != +0.0f ? Float.floatToIntBits(penalty) : 0);
-      result = 31 * result + (word != null ? word.hashCode() : 0);
-      result = 31 * result + (ending != null ? ending.hashCode() : 0);
-      return result;
+    private void expandTable() {
+      int[] oldKeys = tableKeys;
+      float[] oldPenalties = tablePenalties;
+      int[] oldGenerations = tableGenerations;
+      int newSize = oldPenalties.length * 2;
+      tableKeys = new int[newSize * KEY_SIZE];
+      tablePenalties = new float[newSize];
+      tableGenerations = new int[newSize];
+      for (int i = 0; i < oldPenalties.length; i++) {
+        if (oldGenerations[i] != generation) {
+          continue;
+        }
+        int k = i * KEY_SIZE;
+        int slot = find(oldKeys[k], oldKeys[k + 1], oldKeys[k + 2], oldKeys[k + 3],
+            oldKeys[k + 4]);
+        System.arraycopy(oldKeys, k, tableKeys, slot * KEY_SIZE, KEY_SIZE);
+        tablePenalties[slot] = oldPenalties[i];
+        tableGenerations[slot] = generation;
+      }
     }
   }
 
@@ -383,10 +515,20 @@ public class CharacterGraphDecoder {
     }
   }
 
+  /**
+   * Best first search over the packed graph. Hypotheses are expanded in penalty order and a
+   * hypothesis is not expanded if its state was reached before with a lower or equal penalty.
+   * Because of that, suggestions are found in penalty order and search can stop after the first
+   * `maxCount` suggestions.
+   */
   private class Decoder {
 
     FloatValueMap<String> finished = new FloatValueMap<>(8);
+    // suggestions in the order they are found.
+    List<String> found = new ArrayList<>();
     CharMatcher matcher;
+    PackedCharacterGraph graph;
+    SearchPool pool;
 
     Decoder() {
       this(null);
@@ -394,212 +536,248 @@ public class CharacterGraphDecoder {
 
     Decoder(CharMatcher matcher) {
       this.matcher = matcher;
+      this.graph = getPackedGraph();
+      this.pool = searchPools.get();
     }
 
-    FloatValueMap<String> decode(String input) {
-      Hypothesis hyp = new Hypothesis(null, graph.getRoot(), 0, Operation.N_A, null, null);
-
-      Set<Hypothesis> next = expand(hyp, input);
-      while (true) {
-        HashSet<Hypothesis> newHyps = new HashSet<>();
-        for (Hypothesis hypothesis : next) {
-          Set<Hypothesis> expand = expand(hypothesis, input);
-          newHyps.addAll(expand);
-        }
-        if (newHyps.size() == 0) {
-          break;
+    FloatValueMap<String> decode(String input, int maxCount) {
+      if (maxCount <= 0) {
+        return finished;
+      }
+      pool.reset();
+      pool.offer(graph.getRoot(), 0, -1, -1, -1, 0, false);
+      while (!pool.isEmpty()) {
+        int h = pool.poll();
+        if (pool.finishing[h]) {
+          String word = getContent(pool.words[h], pool.endings[h]);
+          if (!finished.contains(word)) {
+            finished.set(word, pool.penalties[h]);
+            found.add(word);
+            if (found.size() >= maxCount) {
+              break;
+            }
+          }
+        } else if (!pool.isStale(h)) {
+          if (pool.penalties[h] >= maxPenalty) {
+            walk(pool.nodes[h], pool.ranks[h], pool.indexes[h], pool.words[h], pool.endings[h],
+                pool.penalties[h], input);
+          } else {
+            expand(h, input);
+          }
         }
-        next = newHyps;
       }
       return finished;
     }
 
-    private Set<Hypothesis> expand(Hypothesis hypothesis, String input) {
+    private String getContent(int word, int ending) {
+      String w = word == -1 ? "" : graph.getWord(word);
+      String e = ending == -1 ? "" : graph.getWord(ending);
+      return w + e;
+    }
+
+    // Children of a node are reached with its own transitions and transitions of its epsilon
+    // connections. Loops over sources use k = epsilonStart - 1 for the node itself.
 
-      Set<Hypothesis> newHypotheses = new HashSet<>();
+    private int source(int node, int k) {
+      return k < graph.epsilonStart[node] ? node : graph.epsilonTargets[k];
+    }
+
+    private int sourceRank(int node, int rank, int k) {
+      return k < graph.epsilonStart[node] ? rank : graph.epsilonBase(k);
+    }
+
+    private char[] matches(char c, char[] single) {
+      if (matcher == null) {
+        single[0] = c;
+        return single;
+      }
+      return matcher.matches(c);
+    }
+
+    /**
+     * Moves to a child node. If child is a terminal node, it becomes the last stem or ending of
+     * the hypothesis. Moved hypothesis is added to the queue if `add` is true and a finishing
+     * hypothesis is added if `finish` is true and child is a terminal node.
+     */
+    private void move(int node, int rank, int index, float penalty, int word, int ending,
+        boolean add, boolean finish) {
+      boolean terminal = graph.isTerminal(node);
+      if (terminal) {
+        int type = graph.getType(node);
+        if (type == Node.TYPE_WORD) {
+          word = rank;
+        } else if (type == Node.TYPE_ENDING) {
+          ending = rank;
+        }
+      }
+      if (add) {
+        pool.offer(node, rank, index, word, ending, penalty, false);
+      }
+      if (finish && terminal) {
+        pool.offer(node, rank, index, word, ending, penalty, true);
+      }
+    }
+
+    /**
+     * Hypotheses that reached the maximum penalty can only move with exact matches. Such paths
+     * are followed directly instead of adding every step to the queue.
+     */
+    private void walk(int node, int rank, int charIndex, int word, int ending, float penalty,
+        String input) {
+      int nextIndex = charIndex + 1;
+      if (nextIndex >= input.length()) {
+        if (graph.isTerminal(node)) {
+          pool.offer(node, rank, charIndex, word, ending, penalty, true);
+        }
+        return;
+      }
+      int epsilonBegin = graph.epsilonStart[node];
+      int epsilonEnd = graph.epsilonStart[node + 1];
+      char nextChar = input.charAt(nextIndex);
+      // single character array is overwritten by the inner calls, but it has only one item that
+      // is read before them.
+      char[] cc = matches(nextChar, pool.single);
+      for (char c : cc) {
+        for (int k = epsilonBegin - 1; k < epsilonEnd; k++) {
+          int t = graph.transition(source(node, k), c);
+          if (t < 0) {
+            continue;
+          }
+          int nextNode = graph.targets[t];
+          int nextRank = sourceRank(node, rank, k) + graph.rankOffset(t);
+          int nextWord = word;
+          int nextEnding = ending;
+          if (graph.isTerminal(nextNode)) {
+            int type = graph.getType(nextNode);
+            if (type == Node.TYPE_WORD) {
+              nextWord = nextRank;
+            } else if (type == Node.TYPE_ENDING) {
+              nextEnding = nextRank;
+            }
+          }
+          walk(nextNode, nextRank, nextIndex, nextWord, nextEnding, penalty, input);
+        }
+      }
+    }
+
+    private void expand(int h, String input) {
+      // pool arrays may grow during expansion, so values are read first.
+      int node = pool.nodes[h];
+      int hypRank = pool.ranks[h];
+      int charIndex = pool.indexes[h];
+      int word = pool.words[h];
+      int ending = pool.endings[h];
+      float hypPenalty = pool.penalties[h];
 
       // get next character for this hypothesis.
-      int nextIndex = hypothesis.charIndex + 1;
+      int nextIndex = charIndex + 1;
       char nextChar = nextIndex < input.length() ? input.charAt(nextIndex) : 0;
+      int epsilonBegin = graph.epsilonStart[node];
+      int epsilonEnd = graph.epsilonStart[node + 1];
 
       // no-error. Hypothesis moves forward to the exact matching child nodes.
       if (nextIndex < input.length()) {
 
         // there can be more than one matching character, depending on the matcher.
-        char[] cc = matcher == null ? null : matcher.matches(nextChar);
+        char[] cc = matches(nextChar, pool.single);
+        boolean last = nextIndex >= input.length() - 1;
         // because there can be empty connections,
         // there can be more than 1 matching child nodes per character.
-        if (hypothesis.node.hasEpsilonConnection()) {
-          List<Node> childList = cc == null ?
-              hypothesis.node.getChildList(nextChar) :
-              hypothesis.node.getChildList(cc);
-          for (Node child : childList) {
-            Hypothesis h = hypothesis.getNewMoveForward(child, 0, Operation.NO_ERROR);
-            h.setWord(child);
-            newHypotheses.add(h);
-            if (nextIndex >= input.length() - 1) {
-              if (h.node.word != null) {
-                addHypothesis(h);
-              }
-            }
-          }
-        } else {
-          if (cc == null) {
-            Node child = hypothesis.node.getImmediateChild(nextChar);
-            if (child != null) {
-              Hypothesis h = hypothesis.getNewMoveForward(child, 0, Operation.NO_ERROR);
-              h.setWord(child);
-              newHypotheses.add(h);
-              if (nextIndex >= input.length() - 1) {
-                if (h.node.word != null) {
-                  addHypothesis(h);
-                }
-              }
-            }
-          } else {
-            for (char c : cc) {
-              Node child = hypothesis.node.getImmediateChild(c);
-              if (child == null) {
-                continue;
-              }
-              Hypothesis h = hypothesis.getNewMoveForward(child, 0, Operation.NO_ERROR);
-              h.setWord(child);
-              newHypotheses.add(h);
-              if (nextIndex >= input.length() - 1) {
-                if (h.node.word != null) {
-                  addHypothesis(h);
-                }
-              }
+        for (char c : cc) {
+          for (int k = epsilonBegin - 1; k < epsilonEnd; k++) {
+            int t = graph.transition(source(node, k), c);
+            if (t < 0) {
+              continue;
             }
+            move(graph.targets[t], sourceRank(node, hypRank, k) + graph.rankOffset(t),
+                nextIndex, hypPenalty, word, ending, true, last);
           }
         }
-      } else if (hypothesis.node.word != null) {
-        addHypothesis(hypothesis);
+      } else if (graph.isTerminal(node)) {
+        pool.offer(node, hypRank, charIndex, word, ending, hypPenalty, true);
       }
 
       // we don't need to explore further if we reached to max penalty
-      if (hypothesis.penalty >= maxPenalty) {
-        return newHypotheses;
+      if (hypPenalty >= maxPenalty) {
+        return;
       }
 
-      // For reducing List creation. IF there is no epsilon connection, retrieve the
-      // internal data structure iterator.
-      Iterable<Node> allChildNodes = hypothesis.node.hasEpsilonConnection() ?
-          hypothesis.node.getAllChildNodes() : hypothesis.node.getImmediateChildNodeIterable();
-
       if (nextIndex < input.length()) {
+        boolean last = nextIndex == input.length() - 1;
         // substitution
-        for (Node child : allChildNodes) {
-          float penalty = 0;
-          if (checkNearKeySubstitution) {
-            if (child.chr != nextChar) {
-              String nearCharactersString = nearKeyMap.get(child.chr);
-              if (nearCharactersString != null && nearCharactersString.indexOf(nextChar) >= 0) {
-                penalty = NEAR_KEY_SUBSTITUTION_PENALTY;
-              } else {
-                penalty = SUBSTITUTION_PENALTY;
+        for (int k = epsilonBegin - 1; k < epsilonEnd; k++) {
+          int source = source(node, k);
+          int rank = sourceRank(node, hypRank, k);
+          for (int t = graph.transitionStart[source]; t < graph.transitionStart[source + 1]; t++) {
+            char chr = graph.labels[t];
+            float penalty = 0;
+            if (checkNearKeySubstitution) {
+              if (chr != nextChar) {
+                String nearCharactersString = nearKeyMap.get(chr);
+                if (nearCharactersString != null && nearCharactersString.indexOf(nextChar) >= 0) {
+                  penalty = NEAR_KEY_SUBSTITUTION_PENALTY;
+                } else {
+                  penalty = SUBSTITUTION_PENALTY;
+                }
               }
+            } else {
+              penalty = SUBSTITUTION_PENALTY;
             }
-          } else {
-            penalty = SUBSTITUTION_PENALTY;
-          }
 
-          if (penalty > 0 && hypothesis.penalty + penalty <= maxPenalty) {
-            Hypothesis h = hypothesis.getNewMoveForward(
-                child,
-                penalty,
-                Operation.SUBSTITUTION);
-            h.setWord(child);
-            if (nextIndex == input.length() - 1) {
-              if (h.node.word != null) {
-                addHypothesis(h);
-              }
-            } else {
-              newHypotheses.add(h);
+            if (penalty > 0 && hypPenalty + penalty <= maxPenalty) {
+              move(graph.targets[t], rank + graph.rankOffset(t), nextIndex,
+                  hypPenalty + penalty, word, ending, !last, last);
             }
           }
         }
       }
 
-      if (hypothesis.penalty + DELETION_PENALTY > maxPenalty) {
-        return newHypotheses;
+      if (hypPenalty + DELETION_PENALTY > maxPenalty) {
+        return;
       }
 
       // deletion
-      newHypotheses
-          .add(hypothesis.getNewMoveForward(hypothesis.node, DELETION_PENALTY, Operation.DELETION));
+      pool.offer(node, hypRank, nextIndex, word, ending, hypPenalty + DELETION_PENALTY, false);
 
       // insertion
-      for (Node child : allChildNodes) {
-        Hypothesis h = hypothesis.getNew(child, INSERTION_PENALTY, Operation.INSERTION);
-        h.setWord(child);
-        newHypotheses.add(h);
+      for (int k = epsilonBegin - 1; k < epsilonEnd; k++) {
+        int source = source(node, k);
+        int rank = sourceRank(node, hypRank, k);
+        for (int t = graph.transitionStart[source]; t < graph.transitionStart[source + 1]; t++) {
+          move(graph.targets[t], rank + graph.rankOffset(t), charIndex,
+              hypPenalty + INSERTION_PENALTY, word, ending, true, false);
+        }
       }
 
       // transposition
-      // TODO: make length check parametric. Also eliminate gross code duplication
+      // TODO: make length check parametric.
       if (input.length() > 2 && nextIndex < input.length() - 1) {
-        char transpose = input.charAt(nextIndex + 1);
-        if (matcher != null) {
-          char[] tt = matcher.matches(transpose);
-          char[] cc = matcher.matches(nextChar);
-          for (char t : tt) {
-            List<Node> nextNodes = hypothesis.node.getChildList(t);
-            for (Node nextNode : nextNodes) {
-              for (char c : cc) {
-                if (hypothesis.node.hasChild(t) && nextNode.hasChild(c)) {
-                  for (Node n : nextNode.getChildList(c)) {
-                    Hypothesis h = hypothesis.getNew(
-                        n,
-                        TRANSPOSITION_PENALTY,
-                        nextIndex + 1,
-                        Operation.TRANSPOSITION);
-                    h.setWord(n);
-                    if (nextIndex == input.length() - 1) {
-                      if (h.node.word != null) {
-                        addHypothesis(h);
-                      }
-                    } else {
-                      newHypotheses.add(h);
-                    }
-                  }
-                }
-              }
+        char[] tt = matches(input.charAt(nextIndex + 1), pool.singleTransposed);
+        char[] cc = matches(nextChar, pool.single);
+        for (char t : tt) {
+          for (int k = epsilonBegin - 1; k < epsilonEnd; k++) {
+            int tr = graph.transition(source(node, k), t);
+            if (tr < 0) {
+              continue;
             }
-          }
-        } else {
-          List<Node> nextNodes = hypothesis.node.getChildList(transpose);
-          for (Node nextNode : nextNodes) {
-            if (hypothesis.node.hasChild(transpose) && nextNode.hasChild(nextChar)) {
-              for (Node n : nextNode.getChildList(nextChar)) {
-                Hypothesis h = hypothesis.getNew(
-                    n,
-                    TRANSPOSITION_PENALTY,
-                    nextIndex + 1,
-                    Operation.TRANSPOSITION);
-                h.setWord(n);
-                if (nextIndex == input.length() - 1) {
-                  if (h.node.word != null) {
-                    addHypothesis(h);
-                  }
-                } else {
-                  newHypotheses.add(h);
+            int nextNode = graph.targets[tr];
+            int nextRank = sourceRank(node, hypRank, k) + graph.rankOffset(tr);
+            int nextEpsilonBegin = graph.epsilonStart[nextNode];
+            int nextEpsilonEnd = graph.epsilonStart[nextNode + 1];
+            for (char c : cc) {
+              for (int m = nextEpsilonBegin - 1; m < nextEpsilonEnd; m++) {
+                int tc = graph.transition(source(nextNode, m), c);
+                if (tc < 0) {
+                  continue;
                 }
+                move(graph.targets[tc], sourceRank(nextNode, nextRank, m) + graph.rankOffset(tc),
+                    nextIndex + 1, hypPenalty + TRANSPOSITION_PENALTY, word, ending, true,
+                    false);
               }
             }
           }
         }
       }
-      return newHypotheses;
-    }
-
-    private void addHypothesis(Hypothesis hypothesis) {
-      String hypWord = hypothesis.getContent();
-      if (!finished.contains(hypWord)) {
-        finished.set(hypWord, hypothesis.penalty);
-      } else if (finished.get(hypWord) > hypothesis.penalty) {
-        finished.set(hypWord, hypothesis.penalty);
-      }
     }
   }
 }
@@ -0,0 +1,373 @@
+package zemberek.normalization;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import zemberek.core.hash.MultiLevelMphf;
+import zemberek.core.hash.StringHashKeyProvider;
+import zemberek.core.io.MappedDataInputStream;
+import zemberek.core.io.PackedStrings;
+
+/**
+ * An immutable map from strings to string lists for normalization lookups. Keys and values are
+ * kept in byte pools instead of String objects, equal values are stored once. A key is found with
+ * a minimal perfect hash function and a 16 bit fingerprint, then compared with the pool bytes, so
+ * {@link #indexOf(CharSequence)} and {@link #containsKey(CharSequence)} do not allocate objects.
+ * Values are decoded to Strings only when they are requested.
+ * <p>
+ * Binary format:
+ * <p/>int32 magic <p/>int32 key count <p/>int32 key value pair count <p/>int32 distinct value
+ * count <p/>int32 key pool byte count <p/>int32 value pool byte count <p/>int32[key count + 1]
+ * pool offsets of keys <p/>byte[key pool byte count] key pool <p/>int16[key count] fingerprints of
+ * keys <p/>int32[key count + 1] first pair index of keys <p/>int32[pair count] value ids of pairs
+ * <p/>int32[distinct value count + 1] pool offsets of values <p/>byte[value pool byte count] value
+ * pool <p/>MultiLevelMphf (only if key count is not zero)
+ * <p>
+ * Keys are stored in the order of their hash slots. When loaded with {@link #loadMapped(File)},
+ * all arrays and pools are memory mapped.
+ */
+public class CompactLookupTable {
+
+  /**
+   * Suffix of compiled lookup files. Normalizer uses compiled version of a text lookup file if it
+   * exists in the same directory and it is not older than the text file.
+   */
+  public static final String COMPILED_FILE_SUFFIX = ".compact";
+
+  private static final int MAGIC = 0x636c7431;
+
+  private final int size;
+  private final IntBuffer keyOffsets;
+  private final ByteBuffer keyPool;
+  private final ShortBuffer fingerprints;
+  private final IntBuffer pairStarts;
+  private final IntBuffer valueIds;
+  private final IntBuffer valueOffsets;
+  private final ByteBuffer valuePool;
+  private final MultiLevelMphf mphf;
+
+  private CompactLookupTable(
+      int size,
+      IntBuffer keyOffsets,
+      ByteBuffer keyPool,
+      ShortBuffer fingerprints,
+      IntBuffer pairStarts,
+      IntBuffer valueIds,
+      IntBuffer valueOffsets,
+      ByteBuffer valuePool,
+      MultiLevelMphf mphf) {
+    this.size = size;
+    this.keyOffsets = keyOffsets;
+    this.keyPool = keyPool;
+    this.fingerprints = fingerprints;
+    this.pairStarts = pairStarts;
+    this.valueIds = valueIds;
+    this.valueOffsets = valueOffsets;
+    this.valuePool = valuePool;
+    this.mphf = mphf;
+  }
+
+  /**
+   * Generates a table with keys and values of the multimap. Order of values of a key is kept.
+   */
+  public static CompactLookupTable from(ListMultimap<String, String> map) {
+    List<String> keys = new ArrayList<>(map.keySet());
+    int size = keys.size();
+    MultiLevelMphf mphf = size == 0 ? null :
+        MultiLevelMphf.generate(new StringHashKeyProvider(keys));
+
+    // place keys to their slots.
+    String[] slotKeys = new String[size];
+    short[] fingerprints = new short[size];
+    for (String key : keys) {
+      int hash = MultiLevelMphf.hash(key, -1);
+      int slot = mphf.get(key, hash);
+      slotKeys[slot] = key;
+      fingerprints[slot] = PackedStrings.fingerprint(hash);
+    }
+
+    int[] keyOffsets = new int[size + 1];
+    int[] pairStarts = new int[size + 1];
+    int[] valueIds = new int[map.size()];
+    Map<String, Integer> valueIdMap = new HashMap<>();
+    List<String> values = new ArrayList<>();
+    long keyPoolSize = 0;
+    int pairIndex = 0;
+    for (int i = 0; i < size; i++) {
+      keyOffsets[i] = (int) keyPoolSize;
+      keyPoolSize += PackedStrings.encodedLength(slotKeys[i]);
+      pairStarts[i] = pairIndex;
+      for (String value : map.get(slotKeys[i])) {
+        Integer id = valueIdMap.get(value);
+        if (id == null) {
+          id = values.size();
+          valueIdMap.put(value, id);
+          values.add(value);
+        }
+        valueIds[pairIndex++] = id;
+      }
+    }
+    keyOffsets[size] = (int) keyPoolSize;
+    pairStarts[size] = pairIndex;
+
+    int[] valueOffsets = new int[values.size() + 1];
+    long valuePoolSize = 0;
+    for (int i = 0; i < values.size(); i++) {
+      valueOffsets[i] = (int) valuePoolSize;
+      valuePoolSize += PackedStrings.encodedLength(values.get(i));
+    }
+    valueOffsets[values.size()] = (int) valuePoolSize;
+    if (keyPoolSize > Integer.MAX_VALUE || valuePoolSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Lookup data is too large for a compact lookup table.");
+    }
+
+    byte[] keyPool = new byte[(int) keyPoolSize];
+    for (int i = 0; i < size; i++) {
+      PackedStrings.encode(slotKeys[i], keyPool, keyOffsets[i]);
+    }
+    byte[] valuePool = new byte[(int) valuePoolSize];
+    for (int i = 0; i < values.size(); i++) {
+      PackedStrings.encode(values.get(i), valuePool, valueOffsets[i]);
+    }
+
+    return new CompactLookupTable(
+        size,
+        IntBuffer.wrap(keyOffsets),
+        ByteBuffer.wrap(keyPool),
+        ShortBuffer.wrap(fingerprints),
+        IntBuffer.wrap(pairStarts),
+        IntBuffer.wrap(valueIds),
+        IntBuffer.wrap(valueOffsets),
+        ByteBuffer.wrap(valuePool),
+        mphf);
+  }
+
+  /**
+   * Generates a table from lines with format "key=val1,val2". Values are trimmed.
+   */
+  public static CompactLookupTable fromMultiValueLines(List<String> lines) {
+    ArrayListMultimap<String, String> result = ArrayListMultimap.create();
+    for (String line : lines) {
+      int index = line.indexOf("=");
+      if (index < 0) {
+        throw new IllegalStateException("Line needs to have `=` symbol. But it is:" +
+            line);
+      }
+      String key = line.substring(0, index).trim();
+      String value = line.substring(index + 1).trim();
+      if (value.indexOf(',') >= 0) {
+        for (String token : Splitter.on(",").trimResults().split(value)) {
+          result.put(key, token);
+        }
+      } else {
+        result.put(key, value);
+      }
+    }
+    return from(result);
+  }
+
+  /**
+   * Generates a table from lines with format "key=value". If a key is repeated, last value is
+   * used.
+   */
+  public static CompactLookupTable fromSingleValueLines(List<String> lines) {
+    Map<String, String> map = new HashMap<>();
+    for (String line : lines) {
+      String[] tokens = line.split("=");
+      map.put(tokens[0].trim(), tokens[1].trim());
+    }
+    ArrayListMultimap<String, String> result = ArrayListMultimap.create();
+    map.forEach(result::put);
+    return from(result);
+  }
+
+  /**
+   * Loads a compiled table file to heap.
+   */
+  public static CompactLookupTable load(File file) throws IOException {
+    try (DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      return load(dis);
+    }
+  }
+
+  /**
+   * Loads a compiled table file. Large data blocks are memory mapped instead of copied to heap.
+   */
+  public static CompactLookupTable loadMapped(File file) throws IOException {
+    try (MappedDataInputStream dis = new MappedDataInputStream(file)) {
+      return load(dis);
+    }
+  }
+
+  /**
+   * Loads a table from a stream. If `dis` is a {@link MappedDataInputStream}, large data blocks
+   * are memory mapped. Stream is not closed.
+   */
+  public static CompactLookupTable load(DataInputStream dis) throws IOException {
+    int magic = dis.readInt();
+    if (magic != MAGIC) {
+      throw new IllegalArgumentException("Stream does not contain a compact lookup table.");
+    }
+    int size = dis.readInt();
+    int pairCount = dis.readInt();
+    int valueCount = dis.readInt();
+    int keyPoolSize = dis.readInt();
+    int valuePoolSize = dis.readInt();
+    IntBuffer keyOffsets = MappedDataInputStream.readBuffer(dis, (size + 1) * 4L).asIntBuffer();
+    ByteBuffer keyPool = MappedDataInputStream.readBuffer(dis, keyPoolSize);
+    ShortBuffer fingerprints = MappedDataInputStream.readBuffer(dis, size * 2L).asShortBuffer();
+    IntBuffer pairStarts = MappedDataInputStream.readBuffer(dis, (size + 1) * 4L).asIntBuffer();
+    IntBuffer valueIds = MappedDataInputStream.readBuffer(dis, pairCount * 4L).asIntBuffer();
+    IntBuffer valueOffsets =
+        MappedDataInputStream.readBuffer(dis, (valueCount + 1) * 4L).asIntBuffer();
+    ByteBuffer valuePool = MappedDataInputStream.readBuffer(dis, valuePoolSize);
+    MultiLevelMphf mphf = size == 0 ? null : MultiLevelMphf.deserialize(dis);
+    return new CompactLookupTable(
+        size,
+        keyOffsets,
+        keyPool,
+        fingerprints,
+        pairStarts,
+        valueIds,
+        valueOffsets,
+        valuePool,
+        mphf);
+  }
+
+  public void save(File file) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      save(dos);
+    }
+  }
+
+  public void save(DataOutputStream dos) throws IOException {
+    dos.writeInt(MAGIC);
+    dos.writeInt(size);
+    dos.writeInt(valueIds.capacity());
+    dos.writeInt(valueOffsets.capacity() - 1);
+    dos.writeInt(keyPool.capacity());
+    dos.writeInt(valuePool.capacity());
+    for (int i = 0; i <= size; i++) {
+      dos.writeInt(keyOffsets.get(i));
+    }
+    for (int i = 0; i < keyPool.capacity(); i++) {
+      dos.write(keyPool.get(i));
+    }
+    for (int i = 0; i < size; i++) {
+      dos.writeShort(fingerprints.get(i));
+    }
+    for (int i = 0; i <= size; i++) {
+      dos.writeInt(pairStarts.get(i));
+    }
+    for (int i = 0; i < valueIds.capacity(); i++) {
+      dos.writeInt(valueIds.get(i));
+    }
+    for (int i = 0; i < valueOffsets.capacity(); i++) {
+      dos.writeInt(valueOffsets.get(i));
+    }
+    for (int i = 0; i < valuePool.capacity(); i++) {
+      dos.write(valuePool.get(i));
+    }
+    if (mphf != null) {
+      mphf.serialize(dos);
+    }
+  }
+
+  /**
+   * Returns the index of the key, or -1 if it does not exist. Index can be used with
+   * {@link #valueCount(int)} and {@link #value(int, int)}.
+   */
+  public int indexOf(CharSequence key) {
+    if (size == 0) {
+      return -1;
+    }
+    int hash = MultiLevelMphf.hash(key, -1);
+    int slot = mphf.get(key, hash);
+    if (fingerprints.get(slot) != PackedStrings.fingerprint(hash)) {
+      return -1;
+    }
+    return PackedStrings.matches(keyPool, keyOffsets.get(slot), keyOffsets.get(slot + 1), key) ?
+        slot : -1;
+  }
+
+  public boolean containsKey(CharSequence key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * Returns amount of values of key with index.
+   */
+  public int valueCount(int index) {
+    return pairStarts.get(index + 1) - pairStarts.get(index);
+  }
+
+  /**
+   * Returns i-th value of key with index.
+   */
+  public String value(int index, int i) {
+    int id = valueIds.get(pairStarts.get(index) + i);
+    return PackedStrings.decode(valuePool, valueOffsets.get(id), valueOffsets.get(id + 1));
+  }
+
+  /**
+   * Returns values of the key, or an empty list if key does not exist.
+   */
+  public List<String> get(CharSequence key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return Collections.emptyList();
+    }
+    int count = valueCount(index);
+    List<String> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(value(index, i));
+    }
+    return result;
+  }
+
+  /**
+   * Returns first value of the key, or null if key does not exist.
+   */
+  public String getFirst(CharSequence key) {
+    int index = indexOf(key);
+    return index < 0 || valueCount(index) == 0 ? null : value(index, 0);
+  }
+
+  public String key(int index) {
+    return PackedStrings.decode(keyPool, keyOffsets.get(index), keyOffsets.get(index + 1));
+  }
+
+  /**
+   * Returns amount of keys.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns approximate amount of bytes used by pools, arrays and MPHF.
+   */
+  public long sizeInBytes() {
+    return keyPool.capacity() + valuePool.capacity() + keyOffsets.capacity() * 4L
+        + fingerprints.capacity() * 2L + pairStarts.capacity() * 4L + valueIds.capacity() * 4L
+        + valueOffsets.capacity() * 4L + (mphf == null ? 0 : mphf.totalBytesUsed());
+  }
+}
@@ -0,0 +1,384 @@
+package zemberek.normalization;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import zemberek.core.collections.IntVector;
+import zemberek.core.io.PackedStrings;
+
+/**
+ * An immutable and minimized version of a {@link CharacterGraph}. Nodes with same type, same
+ * outgoing transitions and same epsilon connections are merged (DAWG style), and the graph is
+ * kept in flat arrays instead of Node objects:
+ * <pre>
+ * transitionStart[node] .. transitionStart[node + 1] : transitions of a node, sorted by label.
+ * labels[t], targets[t] : character and target node of transition t.
+ * epsilonStart[node] .. epsilonStart[node + 1] : epsilon connections of a node.
+ * </pre>
+ * Because merged nodes are shared by many words, words are not kept in nodes. Instead, words that
+ * can be reached from a node are numbered in label order and every transition keeps the amount of
+ * words that come before the words reached through it ({@link #rankOffset(int)}). Summing these
+ * offsets along a path from a root gives the id of the word that ends at a terminal node. Roots of
+ * epsilon connections start a new numbering from their base value ({@link #epsilonBase(int)}).
+ * Words are kept in a byte pool.
+ * <p>
+ * Graph must not contain cycles. Generated graph is thread safe.
+ */
+class PackedCharacterGraph {
+
+  private static final int TERMINAL_FLAG = 0x80;
+
+  final int root;
+  // node type with TERMINAL_FLAG if a word ends at the node.
+  final byte[] types;
+  final int[] transitionStart;
+  final char[] labels;
+  final int[] targets;
+  final int[] rankOffsets;
+  final int[] epsilonStart;
+  final int[] epsilonTargets;
+  final int[] epsilonBases;
+  final int[] wordOffsets;
+  final ByteBuffer wordPool;
+
+  PackedCharacterGraph(
+      int root,
+      byte[] types,
+      int[] transitionStart,
+      char[] labels,
+      int[] targets,
+      int[] rankOffsets,
+      int[] epsilonStart,
+      int[] epsilonTargets,
+      int[] epsilonBases,
+      int[] wordOffsets,
+      ByteBuffer wordPool) {
+    this.root = root;
+    this.types = types;
+    this.transitionStart = transitionStart;
+    this.labels = labels;
+    this.targets = targets;
+    this.rankOffsets = rankOffsets;
+    this.epsilonStart = epsilonStart;
+    this.epsilonTargets = epsilonTargets;
+    this.epsilonBases = epsilonBases;
+    this.wordOffsets = wordOffsets;
+    this.wordPool = wordPool;
+  }
+
+  /**
+   * Generates a packed and minimized copy of the graph. Words added to the graph later are not
+   * reflected to the result.
+   */
+  static PackedCharacterGraph from(CharacterGraph graph) {
+    return new Packer().pack(graph.getRoot());
+  }
+
+  /**
+   * Writes the graph. Format:
+   * <p/>int32 root <p/>int32 node count <p/>int32 transition count <p/>int32 epsilon count
+   * <p/>int32 word count <p/>int32 word pool byte count <p/>byte[node count] types
+   * <p/>int32[node count + 1] transition starts <p/>char[transition count] labels
+   * <p/>int32[transition count] targets <p/>int32[transition count] rank offsets
+   * <p/>int32[node count + 1] epsilon starts <p/>int32[epsilon count] epsilon targets
+   * <p/>int32[epsilon count] epsilon bases <p/>int32[word count + 1] word offsets
+   * <p/>byte[word pool byte count] word pool
+   */
+  void save(DataOutputStream dos) throws IOException {
+    dos.writeInt(root);
+    dos.writeInt(types.length);
+    dos.writeInt(labels.length);
+    dos.writeInt(epsilonTargets.length);
+    dos.writeInt(getWordCount());
+    dos.writeInt(wordPool.capacity());
+    dos.write(types);
+    ArrayIO.writeInts(dos, transitionStart);
+    ByteBuffer labelBytes = ByteBuffer.allocate(labels.length * 2);
+    labelBytes.asCharBuffer().put(labels);
+    dos.write(labelBytes.array());
+    ArrayIO.writeInts(dos, targets);
+    ArrayIO.writeInts(dos, rankOffsets);
+    ArrayIO.writeInts(dos, epsilonStart);
+    ArrayIO.writeInts(dos, epsilonTargets);
+    ArrayIO.writeInts(dos, epsilonBases);
+    ArrayIO.writeInts(dos, wordOffsets);
+    for (int i = 0; i < wordPool.capacity(); i++) {
+      dos.write(wordPool.get(i));
+    }
+  }
+
+  static PackedCharacterGraph load(DataInputStream dis) throws IOException {
+    int root = dis.readInt();
+    int nodeCount = dis.readInt();
+    int transitionCount = dis.readInt();
+    int epsilonCount = dis.readInt();
+    int wordCount = dis.readInt();
+    int poolSize = dis.readInt();
+    if (nodeCount < 0 || transitionCount < 0 || epsilonCount < 0 || wordCount < 0
+        || poolSize < 0) {
+      throw new IllegalArgumentException("Corrupt graph data.");
+    }
+    byte[] types = new byte[nodeCount];
+    dis.readFully(types);
+    int[] transitionStart = ArrayIO.readInts(dis, nodeCount + 1);
+    char[] labels = new char[transitionCount];
+    ByteBuffer.wrap(ArrayIO.readBytes(dis, transitionCount * 2)).asCharBuffer().get(labels);
+    int[] targets = ArrayIO.readInts(dis, transitionCount);
+    int[] rankOffsets = ArrayIO.readInts(dis, transitionCount);
+    int[] epsilonStart = ArrayIO.readInts(dis, nodeCount + 1);
+    int[] epsilonTargets = ArrayIO.readInts(dis, epsilonCount);
+    int[] epsilonBases = ArrayIO.readInts(dis, epsilonCount);
+    int[] wordOffsets = ArrayIO.readInts(dis, wordCount + 1);
+    ByteBuffer wordPool = ByteBuffer.wrap(ArrayIO.readBytes(dis, poolSize));
+    return new PackedCharacterGraph(root, types, transitionStart, labels, targets, rankOffsets,
+        epsilonStart, epsilonTargets, epsilonBases, wordOffsets, wordPool);
+  }
+
+  int getRoot() {
+    return root;
+  }
+
+  int getNodeCount() {
+    return types.length;
+  }
+
+  int getTransitionCount() {
+    return labels.length;
+  }
+
+  int getWordCount() {
+    return wordOffsets.length - 1;
+  }
+
+  boolean isTerminal(int node) {
+    return (types[node] & TERMINAL_FLAG) != 0;
+  }
+
+  int getType(int node) {
+    return types[node] & (TERMINAL_FLAG - 1);
+  }
+
+  /**
+   * Returns the transition of the node with label c, or -1 if there is no such transition.
+   * Epsilon connections are not checked.
+   */
+  int transition(int node, char c) {
+    int low = transitionStart[node];
+    int high = transitionStart[node + 1] - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      char label = labels[mid];
+      if (label < c) {
+        low = mid + 1;
+      } else if (label > c) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Amount of words that are numbered before the words reached through transition t, relative to
+   * the source node of the transition.
+   */
+  int rankOffset(int t) {
+    return rankOffsets[t];
+  }
+
+  /**
+   * First word id of the words reached through epsilon connection e.
+   */
+  int epsilonBase(int e) {
+    return epsilonBases[e];
+  }
+
+  String getWord(int id) {
+    return PackedStrings.decode(wordPool, wordOffsets[id], wordOffsets[id + 1]);
+  }
+
+  /**
+   * Returns approximate amount of bytes used by the arrays.
+   */
+  long sizeInBytes() {
+    return types.length + transitionStart.length * 4L + labels.length * 2L
+        + targets.length * 4L + rankOffsets.length * 4L + epsilonStart.length * 4L
+        + epsilonTargets.length * 8L + wordOffsets.length * 4L + wordPool.capacity();
+  }
+
+  private static class Packer {
+
+    Map<Node, Integer> packed = new HashMap<>();
+    Map<Signature, Integer> signatures = new HashMap<>();
+    Set<Node> epsilonRoots = new LinkedHashSet<>();
+
+    IntVector types = new IntVector();
+    IntVector wordCounts = new IntVector();
+    IntVector transitionStart = new IntVector();
+    IntVector labels = new IntVector();
+    IntVector targets = new IntVector();
+    IntVector rankOffsets = new IntVector();
+    IntVector epsilonStart = new IntVector();
+    IntVector epsilonTargets = new IntVector();
+
+    PackedCharacterGraph pack(Node rootNode) {
+      int root = pack(rootNode, new ArrayList<>());
+      int nodeCount = types.size();
+      transitionStart.add(labels.size());
+      epsilonStart.add(epsilonTargets.size());
+
+      // number words of the root and every epsilon root.
+      List<String> words = new ArrayList<>();
+      collectWords(rootNode, words);
+      Map<Integer, Integer> bases = new HashMap<>();
+      for (Node epsilonRoot : epsilonRoots) {
+        int id = packed.get(epsilonRoot);
+        if (!bases.containsKey(id)) {
+          bases.put(id, words.size());
+          collectWords(epsilonRoot, words);
+        }
+      }
+      int[] epsilonBases = new int[epsilonTargets.size()];
+      for (int i = 0; i < epsilonBases.length; i++) {
+        epsilonBases[i] = bases.get(epsilonTargets.get(i));
+      }
+
+      int[] wordOffsets = new int[words.size() + 1];
+      long poolSize = 0;
+      for (int i = 0; i < words.size(); i++) {
+        wordOffsets[i] = (int) poolSize;
+        poolSize += PackedStrings.encodedLength(words.get(i));
+      }
+      if (poolSize > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Graph has too many words for packing.");
+      }
+      wordOffsets[words.size()] = (int) poolSize;
+      byte[] pool = new byte[(int) poolSize];
+      for (int i = 0; i < words.size(); i++) {
+        PackedStrings.encode(words.get(i), pool, wordOffsets[i]);
+      }
+
+      byte[] typeArray = new byte[nodeCount];
+      for (int i = 0; i < nodeCount; i++) {
+        typeArray[i] = (byte) types.get(i);
+      }
+      char[] labelArray = new char[labels.size()];
+      for (int i = 0; i < labelArray.length; i++) {
+        labelArray[i] = (char) labels.get(i);
+      }
+      return new PackedCharacterGraph(
+          root,
+          typeArray,
+          transitionStart.copyOf(),
+          labelArray,
+          targets.copyOf(),
+          rankOffsets.copyOf(),
+          epsilonStart.copyOf(),
+          epsilonTargets.copyOf(),
+          epsilonBases,
+          wordOffsets,
+          ByteBuffer.wrap(pool));
+    }
+
+    // children are packed before their parent, so node ids are in post order.
+    private int pack(Node node, List<Node> path) {
+      Integer id = packed.get(node);
+      if (id != null) {
+        return id;
+      }
+      if (path.contains(node)) {
+        throw new IllegalStateException("Graph contains a cycle at node " + node);
+      }
+      path.add(node);
+
+      List<Node> children = sortedChildren(node);
+      Node[] epsilonNodes = node.getEpsilonNodes();
+      int epsilonCount = epsilonNodes == null ? 0 : epsilonNodes.length;
+      boolean terminal = node.word != null;
+      int[] key = new int[2 + children.size() * 2 + epsilonCount];
+      key[0] = node.getType() | (terminal ? TERMINAL_FLAG : 0);
+      key[1] = children.size();
+      for (int i = 0; i < children.size(); i++) {
+        Node child = children.get(i);
+        key[2 + i * 2] = child.chr;
+        key[3 + i * 2] = pack(child, path);
+      }
+      for (int i = 0; i < epsilonCount; i++) {
+        epsilonRoots.add(epsilonNodes[i]);
+        key[2 + children.size() * 2 + i] = pack(epsilonNodes[i], path);
+      }
+      path.remove(path.size() - 1);
+
+      Signature signature = new Signature(key);
+      id = signatures.get(signature);
+      if (id == null) {
+        id = types.size();
+        types.add(key[0]);
+        transitionStart.add(labels.size());
+        int rank = terminal ? 1 : 0;
+        for (int i = 0; i < children.size(); i++) {
+          int target = key[3 + i * 2];
+          labels.add(key[2 + i * 2]);
+          targets.add(target);
+          rankOffsets.add(rank);
+          rank += wordCounts.get(target);
+        }
+        wordCounts.add(rank);
+        epsilonStart.add(epsilonTargets.size());
+        for (int i = 0; i < epsilonCount; i++) {
+          epsilonTargets.add(key[2 + children.size() * 2 + i]);
+        }
+        signatures.put(signature, id);
+      }
+      packed.put(node, id);
+      return id;
+    }
+
+    private static List<Node> sortedChildren(Node node) {
+      List<Node> children = node.getImmediateChildNodes();
+      children.sort(Comparator.comparingInt(n -> n.chr));
+      return children;
+    }
+
+    // adds words of the graph starting from node, in the same order with rank offsets.
+    private static void collectWords(Node node, List<String> words) {
+      if (node.word != null) {
+        words.add(node.word);
+      }
+      for (Node child : sortedChildren(node)) {
+        collectWords(child, words);
+      }
+    }
+  }
+
+  private static class Signature {
+
+    final int[] key;
+    final int hash;
+
+    Signature(int[] key) {
+      this.key = key;
+      this.hash = Arrays.hashCode(key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Signature && Arrays.equals(key, ((Signature) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package zemberek.normalization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Helpers for applying a function to many inputs with an optional executor. Calling thread waits
+ * for the submitted tasks, so these should not be called from threads of a bounded executor that
+ * is also used for the tasks.
+ */
+class ParallelTasks {
+
+  private ParallelTasks() {
+  }
+
+  /**
+   * Applies function to all inputs, concurrently if there is an executor. Results are in input
+   * order. Runtime exceptions of the tasks are thrown as they are.
+   */
+  static <T, R> List<R> map(ExecutorService executor, List<T> inputs, Function<T, R> function) {
+    if (executor == null || inputs.size() < 2) {
+      return inputs.stream().map(function).collect(Collectors.toList());
+    }
+    List<Future<R>> futures = new ArrayList<>(inputs.size());
+    for (T input : inputs) {
+      futures.add(executor.submit(() -> function.apply(input)));
+    }
+    List<R> results = new ArrayList<>(inputs.size());
+    try {
+      for (Future<R> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * Same as {@link #map(ExecutorService, List, Function)} but returns results in a map keyed with
+   * the inputs.
+   */
+  static <T, R> Map<T, R> toMap(ExecutorService executor, List<T> inputs,
+      Function<T, R> function) {
+    List<R> results = map(executor, inputs, function);
+    Map<T, R> map = new HashMap<>(inputs.size() * 2);
+    for (int i = 0; i < inputs.size(); i++) {
+      map.put(inputs.get(i), results.get(i));
+    }
+    return map;
+  }
+}
@@ -0,0 +1,20 @@
+package zemberek.normalization;
+
+import java.util.List;
+import zemberek.core.ScoredItem;
+import zemberek.normalization.CharacterGraphDecoder.CharMatcher;
+
+/**
+ * Generates spelling suggestions for a single word. Suggestions are words of the engine's
+ * vocabulary within a maximum edit penalty of the input. Characters matched with the matcher are
+ * not penalized. A null matcher means exact matching.
+ */
+public interface SpellSuggestionEngine {
+
+  List<String> getSuggestions(String input, CharMatcher matcher);
+
+  /**
+   * Returns suggestions sorted by penalty.
+   */
+  List<ScoredItem<String>> getSuggestionsWithScores(String input, CharMatcher matcher);
+}
@@ -1,9 +1,18 @@
 package zemberek.normalization;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Set;
 import zemberek.core.collections.Histogram;
+import zemberek.core.logging.Log;
 import zemberek.core.text.TextIO;
 import zemberek.core.turkish.PrimaryPos;
 import zemberek.core.turkish.StemAndEnding;
@@ -18,33 +27,193 @@ import zemberek.morphology.morphotactics.StemTransition;
  * This is a data structure that can be used for spell checking purposes. This is a graph consist of
  * two trie data structures. One for stems, other for endings. Stem leaf nodes are connected to the
  * ending graph root.
+ * <p>
+ * Packed version of the graph can be saved with {@link #save(Path)} and loaded with {@link
+ * #load(Path, TurkishMorphology)} instead of building it from the morphology. Saved file contains a
+ * key calculated from stems of the lexicon and endings, so a file generated for another lexicon is
+ * not used.
+ * <p>
+ * Binary format:
+ * <p/>int32 magic <p/>int32 format version <p/>int64 lexicon key <p/>PackedCharacterGraph
  */
 public class StemEndingGraph {
 
+  private static final int MAGIC = 0x73656731;
+  private static final int VERSION = 1;
+  private static final String ENDINGS_RESOURCE = "endings";
+
+  // null if graph is loaded from a file.
   CharacterGraph stemGraph;
-  private CharacterGraph endingGraph;
+  private volatile PackedCharacterGraph packedGraph;
 
   private TurkishMorphology morphology;
+  private final long lexiconKey;
 
   public StemEndingGraph(TurkishMorphology morphology) throws IOException {
-    this.morphology = morphology;
-    List<String> endings = TextIO.loadLinesFromResource("endings");
-    this.endingGraph = generateEndingGraph(endings);
-    this.stemGraph = generateStemGraph();
-    Set<Node> stemWordNodes = stemGraph.getAllNodes(n -> n.word != null);
-    for (Node node : stemWordNodes) {
-      node.connectEpsilon(endingGraph.getRoot());
-    }
+    this(morphology, TextIO.loadLinesFromResource(ENDINGS_RESOURCE));
   }
 
   StemEndingGraph(TurkishMorphology morphology, List<String> endings) {
     this.morphology = morphology;
-    this.endingGraph = generateEndingGraph(endings);
+    CharacterGraph endingGraph = generateEndingGraph(endings);
     this.stemGraph = generateStemGraph();
     Set<Node> leafNodes = stemGraph.getAllNodes(n -> n.word != null);
     for (Node leafNode : leafNodes) {
       leafNode.connectEpsilon(endingGraph.getRoot());
     }
+    this.lexiconKey = lexiconKey(morphology, endings);
+  }
+
+  private StemEndingGraph(TurkishMorphology morphology, PackedCharacterGraph packedGraph,
+      long lexiconKey) {
+    this.morphology = morphology;
+    this.packedGraph = packedGraph;
+    this.lexiconKey = lexiconKey;
+  }
+
+  /**
+   * Returns packed version of the graph. It is generated when first requested.
+   */
+  PackedCharacterGraph getPackedGraph() {
+    PackedCharacterGraph packed = packedGraph;
+    if (packed == null) {
+      synchronized (this) {
+        packed = packedGraph;
+        if (packed == null) {
+          packed = PackedCharacterGraph.from(stemGraph);
+          packedGraph = packed;
+        }
+      }
+    }
+    return packed;
+  }
+
+  public long getLexiconKey() {
+    return lexiconKey;
+  }
+
+  /**
+   * Calculates a key from stems of the morphology and endings. Graphs generated from same stems
+   * and endings have same keys. Order of stems and endings does not change the key.
+   */
+  static long lexiconKey(TurkishMorphology morphology, List<String> endings) {
+    long stemKey = 0;
+    long stemCount = 0;
+    for (StemTransition transition : morphology.getMorphotactics().getStemTransitions()
+        .getTransitions()) {
+      if (includeStem(transition)) {
+        stemKey += mix(hash(transition.surface));
+        stemCount++;
+      }
+    }
+    long endingKey = 0;
+    for (String ending : endings) {
+      endingKey += mix(hash(ending));
+    }
+    return mix(stemKey ^ mix(stemCount)) ^ mix(endingKey + endings.size());
+  }
+
+  private static long hash(String s) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      h = (h ^ s.charAt(i)) * 0x100000001b3L;
+    }
+    return h;
+  }
+
+  private static long mix(long h) {
+    h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+    h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+
+  /**
+   * Saves packed graph with the lexicon key. Graph is first written to a temporary file in the same
+   * directory and then moved to path, so readers never see a partially written file.
+   */
+  public void save(Path path) throws IOException {
+    Path dir = path.toAbsolutePath().getParent();
+    Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream dos = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeLong(lexiconKey);
+        getPackedGraph().save(dos);
+      }
+      Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Loads a graph saved with {@link #save(Path)}. Throws IllegalArgumentException if the file is
+   * not generated for the lexicon of the morphology and default endings.
+   */
+  public static StemEndingGraph load(Path path, TurkishMorphology morphology)
+      throws IOException {
+    long expected = lexiconKey(morphology, TextIO.loadLinesFromResource(ENDINGS_RESOURCE));
+    StemEndingGraph graph = loadIfValid(path, morphology, expected);
+    if (graph == null) {
+      throw new IllegalArgumentException(
+          "Graph file " + path + " is not generated for this lexicon.");
+    }
+    return graph;
+  }
+
+  /**
+   * Loads the graph from path if it exists and is generated for the lexicon of the morphology.
+   * Otherwise builds the graph and tries to save it to path. Files of another format version,
+   * truncated or corrupt files are also rebuilt. Failing to save is only logged, so a read-only
+   * location can also be used.
+   */
+  public static StemEndingGraph loadOrBuild(Path path, TurkishMorphology morphology)
+      throws IOException {
+    List<String> endings = TextIO.loadLinesFromResource(ENDINGS_RESOURCE);
+    if (Files.exists(path)) {
+      try {
+        StemEndingGraph graph = loadIfValid(path, morphology, lexiconKey(morphology, endings));
+        if (graph != null) {
+          return graph;
+        }
+        Log.info("Graph file %s is generated for another lexicon, graph will be rebuilt.", path);
+      } catch (IOException | IllegalArgumentException | NegativeArraySizeException
+          | IndexOutOfBoundsException | BufferUnderflowException e) {
+        Log.warn("Graph file %s cannot be loaded, graph will be rebuilt. Reason: %s", path,
+            e.toString());
+      }
+    }
+    StemEndingGraph graph = new StemEndingGraph(morphology, endings);
+    try {
+      graph.save(path);
+    } catch (IOException e) {
+      Log.warn("Could not save graph to %s : %s", path, e.getMessage());
+    }
+    return graph;
+  }
+
+  // returns null if lexicon key of the file does not match.
+  private static StemEndingGraph loadIfValid(Path path, TurkishMorphology morphology,
+      long expectedKey) throws IOException {
+    try (DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+      int magic = dis.readInt();
+      if (magic != MAGIC) {
+        throw new IllegalArgumentException(path + " is not a stem ending graph file.");
+      }
+      int version = dis.readInt();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("Unsupported graph file version " + version);
+      }
+      long key = dis.readLong();
+      if (key != expectedKey) {
+        return null;
+      }
+      return new StemEndingGraph(morphology, PackedCharacterGraph.load(dis), key);
+    }
   }
 
   List<String> getEndingsFromVocabulary(List<String> words) {
@@ -76,12 +245,15 @@ public class StemEndingGraph {
     CharacterGraph stemGraph = new CharacterGraph();
     StemTransitions stemTransitions = morphology.getMorphotactics().getStemTransitions();
     for (StemTransition transition : stemTransitions.getTransitions()) {
-      if (transition.surface.length() == 0 ||
-          transition.item.primaryPos == PrimaryPos.Punctuation) {
-        continue;
+      if (includeStem(transition)) {
+        stemGraph.addWord(transition.surface, Node.TYPE_WORD);
       }
-      stemGraph.addWord(transition.surface, Node.TYPE_WORD);
     }
     return stemGraph;
   }
+
+  private static boolean includeStem(StemTransition transition) {
+    return transition.surface.length() > 0 &&
+        transition.item.primaryPos != PrimaryPos.Punctuation;
+  }
 }
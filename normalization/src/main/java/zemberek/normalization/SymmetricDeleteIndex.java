@@ -0,0 +1,480 @@
+package zemberek.normalization;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import zemberek.core.ScoredItem;
+import zemberek.core.collections.Histogram;
+import zemberek.core.collections.UIntSet;
+import zemberek.core.io.PackedStrings;
+import zemberek.core.turkish.Turkish;
+import zemberek.core.turkish.TurkishAlphabet;
+import zemberek.normalization.CharacterGraphDecoder.CharMatcher;
+
+/**
+ * A spell suggestion engine that uses a precomputed symmetric delete index. For every word,
+ * strings generated by deleting up to `maxDistance` characters from its first `prefixLength`
+ * characters are indexed. Two words within `maxDistance` edits always share such a string, so
+ * candidates of an input are found with a few lookups of its own deletions. Candidates are then
+ * checked with the edit operations of {@link CharacterGraphDecoder}, each edit has a penalty of 1.
+ * Near key substitution is not supported.
+ * <p>
+ * Only 39 bit hashes of the deletions are stored. Hash collisions only cause extra candidates that
+ * are eliminated with the distance check. Hashes are calculated after converting Turkish letters
+ * and letters with circumflex to ascii, so matchers that only relate such letters, like {@link
+ * CharacterGraphDecoder#DIACRITICS_IGNORING_MATCHER}, work as expected.
+ * <p>
+ * Unlike a stem ending graph, index only contains the given words. It is intended for frequency
+ * lists and for short words where graph search is relatively slow.
+ */
+public class SymmetricDeleteIndex implements SpellSuggestionEngine {
+
+  public static final int DEFAULT_MAX_DISTANCE = 1;
+  public static final int DEFAULT_PREFIX_LENGTH = 7;
+
+  private static final int MAGIC = 0x73646931;
+  // an index entry is a 39 bit hash and a 24 bit word id packed to a non negative long.
+  private static final int WORD_ID_BITS = 24;
+  static final int MAX_WORD_COUNT = 1 << WORD_ID_BITS;
+  private static final long WORD_ID_MASK = MAX_WORD_COUNT - 1;
+
+  private static final TurkishAlphabet alphabet = TurkishAlphabet.INSTANCE;
+
+  private final int maxDistance;
+  private final int prefixLength;
+  // word i is between wordOffsets[i] and wordOffsets[i + 1] bytes of the pool.
+  private final ByteBuffer wordPool;
+  private final int[] wordOffsets;
+  private final int[] frequencies;
+  // sorted unique deletion hashes. Words of keys[i] are postings[keyOffsets[i]..keyOffsets[i+1]).
+  private final long[] keys;
+  private final int[] keyOffsets;
+  private final int[] postings;
+
+  private SymmetricDeleteIndex(int maxDistance, int prefixLength, ByteBuffer wordPool,
+      int[] wordOffsets, int[] frequencies, long[] keys, int[] keyOffsets, int[] postings) {
+    this.maxDistance = maxDistance;
+    this.prefixLength = prefixLength;
+    this.wordPool = wordPool;
+    this.wordOffsets = wordOffsets;
+    this.frequencies = frequencies;
+    this.keys = keys;
+    this.keyOffsets = keyOffsets;
+    this.postings = postings;
+  }
+
+  public static SymmetricDeleteIndex fromWords(Collection<String> words) {
+    return fromWords(words, DEFAULT_MAX_DISTANCE, DEFAULT_PREFIX_LENGTH);
+  }
+
+  /**
+   * Generates an index from words. All words have the same frequency, so suggestions with the
+   * same distance are sorted alphabetically.
+   */
+  public static SymmetricDeleteIndex fromWords(
+      Collection<String> words, int maxDistance, int prefixLength) {
+    Map<String, Integer> counts = new LinkedHashMap<>(words.size());
+    for (String word : words) {
+      counts.put(process(word), 0);
+    }
+    return build(counts, maxDistance, prefixLength);
+  }
+
+  public static SymmetricDeleteIndex fromHistogram(Histogram<String> histogram) {
+    return fromHistogram(histogram, DEFAULT_MAX_DISTANCE, DEFAULT_PREFIX_LENGTH);
+  }
+
+  /**
+   * Generates an index from word counts. Suggestions with the same distance are sorted by
+   * count.
+   */
+  public static SymmetricDeleteIndex fromHistogram(
+      Histogram<String> histogram, int maxDistance, int prefixLength) {
+    Map<String, Integer> counts = new LinkedHashMap<>(histogram.size());
+    for (String word : histogram) {
+      counts.merge(process(word), histogram.getCount(word), Integer::sum);
+    }
+    return build(counts, maxDistance, prefixLength);
+  }
+
+  private static String process(String word) {
+    return word.toLowerCase(Turkish.LOCALE);
+  }
+
+  private static SymmetricDeleteIndex build(
+      Map<String, Integer> counts, int maxDistance, int prefixLength) {
+    Preconditions.checkArgument(maxDistance > 0,
+        "Maximum distance must be positive. But it is %d", maxDistance);
+    Preconditions.checkArgument(prefixLength > maxDistance,
+        "Prefix length must be larger than maximum distance. But it is %d", prefixLength);
+    counts.remove("");
+    if (counts.size() >= MAX_WORD_COUNT) {
+      throw new IllegalArgumentException(
+          "Too many words. Index can contain at most " + (MAX_WORD_COUNT - 1) + " words.");
+    }
+    List<String> words = new ArrayList<>(counts.keySet());
+    int[] frequencies = new int[words.size()];
+    int[] wordOffsets = new int[words.size() + 1];
+    int poolSize = 0;
+    for (String word : words) {
+      poolSize += PackedStrings.encodedLength(word);
+    }
+    byte[] pool = new byte[poolSize];
+    int offset = 0;
+    for (int i = 0; i < words.size(); i++) {
+      frequencies[i] = counts.get(words.get(i));
+      wordOffsets[i] = offset;
+      offset = PackedStrings.encode(words.get(i), pool, offset);
+    }
+    wordOffsets[words.size()] = offset;
+
+    long[] entries = new long[words.size() * (prefixLength + 1)];
+    int entryCount = 0;
+    for (int i = 0; i < words.size(); i++) {
+      Set<String> deletions = deletions(key(words.get(i), prefixLength), maxDistance);
+      if (entryCount + deletions.size() > entries.length) {
+        entries = Arrays.copyOf(entries, Math.max(entries.length * 2,
+            entryCount + deletions.size()));
+      }
+      for (String deletion : deletions) {
+        entries[entryCount++] = (hash(deletion) << WORD_ID_BITS) | i;
+      }
+    }
+    Arrays.sort(entries, 0, entryCount);
+
+    long[] keys = new long[entryCount];
+    int[] keyOffsets = new int[entryCount + 1];
+    int[] postings = new int[entryCount];
+    int keyCount = 0;
+    int postingCount = 0;
+    for (int i = 0; i < entryCount; i++) {
+      if (i > 0 && entries[i] == entries[i - 1]) {
+        continue;
+      }
+      long key = entries[i] >>> WORD_ID_BITS;
+      if (keyCount == 0 || keys[keyCount - 1] != key) {
+        keys[keyCount] = key;
+        keyOffsets[keyCount] = postingCount;
+        keyCount++;
+      }
+      postings[postingCount++] = (int) (entries[i] & WORD_ID_MASK);
+    }
+    keyOffsets[keyCount] = postingCount;
+    return new SymmetricDeleteIndex(
+        maxDistance,
+        prefixLength,
+        ByteBuffer.wrap(pool),
+        wordOffsets,
+        frequencies,
+        Arrays.copyOf(keys, keyCount),
+        Arrays.copyOf(keyOffsets, keyCount + 1),
+        Arrays.copyOf(postings, postingCount));
+  }
+
+  // converts a word to the string its deletions are generated from.
+  private static String key(String word, int prefixLength) {
+    String prefix = word.length() > prefixLength ? word.substring(0, prefixLength) : word;
+    return alphabet.toAscii(alphabet.normalizeCircumflex(prefix));
+  }
+
+  // returns the string and all strings generated by deleting up to `distance` characters.
+  private static Set<String> deletions(String s, int distance) {
+    Set<String> result = new HashSet<>();
+    result.add(s);
+    List<String> current = new ArrayList<>(1);
+    current.add(s);
+    for (int d = 0; d < distance; d++) {
+      List<String> next = new ArrayList<>();
+      for (String str : current) {
+        for (int i = 0; i < str.length(); i++) {
+          String deletion = str.substring(0, i) + str.substring(i + 1);
+          if (result.add(deletion)) {
+            next.add(deletion);
+          }
+        }
+      }
+      current = next;
+    }
+    return result;
+  }
+
+  private static long hash(String s) {
+    return hash(s.toCharArray(), s.length());
+  }
+
+  // 39 bit hash of the first `length` characters.
+  private static long hash(char[] s, int length) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < length; i++) {
+      h ^= s[i];
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h >>> (WORD_ID_BITS + 1);
+  }
+
+  public int getMaxDistance() {
+    return maxDistance;
+  }
+
+  public int getPrefixLength() {
+    return prefixLength;
+  }
+
+  public int getWordCount() {
+    return frequencies.length;
+  }
+
+  public int getKeyCount() {
+    return keys.length;
+  }
+
+  /**
+   * Returns approximate memory usage of the index data in bytes.
+   */
+  public long sizeInBytes() {
+    return wordPool.capacity()
+        + (wordOffsets.length + frequencies.length + keyOffsets.length + postings.length) * 4L
+        + keys.length * 8L;
+  }
+
+  String getWord(int id) {
+    return PackedStrings.decode(wordPool, wordOffsets[id], wordOffsets[id + 1]);
+  }
+
+  @Override
+  public List<String> getSuggestions(String input, CharMatcher matcher) {
+    return getSuggestionsWithScores(input, matcher).stream()
+        .map(s -> s.item)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Returns suggestions sorted by penalty, suggestions with same penalty are sorted by frequency.
+   */
+  @Override
+  public List<ScoredItem<String>> getSuggestionsWithScores(String input, CharMatcher matcher) {
+    Query query = new Query(input, matcher);
+    char[] key = key(input, prefixLength).toCharArray();
+    query.lookup(key, key.length, 0, maxDistance);
+    query.candidates.sort(Candidate.ORDER);
+    List<ScoredItem<String>> result = new ArrayList<>(query.candidates.size());
+    for (Candidate candidate : query.candidates) {
+      result.add(new ScoredItem<>(candidate.word, candidate.distance));
+    }
+    return result;
+  }
+
+  private class Query {
+
+    final String input;
+    // alternatives of input characters. Null for exact matching.
+    final char[][] alternatives;
+    final UIntSet checked = new UIntSet();
+    final List<Candidate> candidates = new ArrayList<>();
+    // deletion buffers for each level.
+    final char[][] buffers;
+    // distance calculation rows. Checked words are not longer than input + max distance.
+    int[] previous2;
+    int[] previous;
+    int[] current;
+
+    Query(String input, CharMatcher matcher) {
+      this.input = input;
+      if (matcher != null) {
+        alternatives = new char[input.length()][];
+        for (int i = 0; i < input.length(); i++) {
+          alternatives[i] = matcher.matches(input.charAt(i));
+        }
+      } else {
+        alternatives = null;
+      }
+      buffers = new char[maxDistance][Math.min(input.length(), prefixLength)];
+      int rowSize = input.length() + maxDistance + 1;
+      previous2 = new int[rowSize];
+      previous = new int[rowSize];
+      current = new int[rowSize];
+    }
+
+    /**
+     * Checks words of the first `length` characters of `s` and of strings generated by deleting
+     * up to `remaining` characters from it. Characters are deleted in increasing index order, so
+     * every combination is generated once.
+     */
+    void lookup(char[] s, int length, int start, int remaining) {
+      check(hash(s, length));
+      if (remaining == 0) {
+        return;
+      }
+      char[] buffer = buffers[maxDistance - remaining];
+      for (int i = start; i < length; i++) {
+        System.arraycopy(s, 0, buffer, 0, i);
+        System.arraycopy(s, i + 1, buffer, i, length - i - 1);
+        lookup(buffer, length - 1, i, remaining - 1);
+      }
+    }
+
+    private void check(long hash) {
+      int k = Arrays.binarySearch(keys, hash);
+      if (k < 0) {
+        return;
+      }
+      for (int p = keyOffsets[k]; p < keyOffsets[k + 1]; p++) {
+        int id = postings[p];
+        if (!checked.add(id)) {
+          continue;
+        }
+        String word = getWord(id);
+        if (Math.abs(word.length() - input.length()) > maxDistance) {
+          continue;
+        }
+        int distance = distance(word);
+        if (distance <= maxDistance) {
+          candidates.add(new Candidate(word, distance, frequencies[id]));
+        }
+      }
+    }
+
+    /**
+     * Restricted Damerau-Levenshtein distance between input and a word. Characters match if word
+     * character is one of the alternatives of the input character. Like the graph decoder,
+     * transpositions are only checked for inputs longer than two characters. Returns a value
+     * larger than maximum distance if words are not close enough.
+     */
+    private int distance(String word) {
+      int n = input.length();
+      int m = word.length();
+      boolean transpose = n > 2;
+      for (int j = 0; j <= m; j++) {
+        previous[j] = j;
+      }
+      for (int i = 1; i <= n; i++) {
+        current[0] = i;
+        int rowMin = i;
+        for (int j = 1; j <= m; j++) {
+          char c = word.charAt(j - 1);
+          int cost = matches(i - 1, c) ? 0 : 1;
+          int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1),
+              previous[j - 1] + cost);
+          if (transpose && i > 1 && j > 1
+              && matches(i - 1, word.charAt(j - 2))
+              && matches(i - 2, c)) {
+            value = Math.min(value, previous2[j - 2] + 1);
+          }
+          current[j] = value;
+          rowMin = Math.min(rowMin, value);
+        }
+        if (rowMin > maxDistance) {
+          return maxDistance + 1;
+        }
+        int[] tmp = previous2;
+        previous2 = previous;
+        previous = current;
+        current = tmp;
+      }
+      return previous[m];
+    }
+
+    private boolean matches(int i, char c) {
+      if (alternatives == null) {
+        return input.charAt(i) == c;
+      }
+      for (char a : alternatives[i]) {
+        if (a == c) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class Candidate {
+
+    static final Comparator<Candidate> ORDER = Comparator
+        .comparingInt((Candidate c) -> c.distance)
+        .thenComparing((a, b) -> Integer.compare(b.frequency, a.frequency))
+        .thenComparing(c -> c.word);
+
+    final String word;
+    final int distance;
+    final int frequency;
+
+    Candidate(String word, int distance, int frequency) {
+      this.word = word;
+      this.distance = distance;
+      this.frequency = frequency;
+    }
+  }
+
+  /**
+   * Saves the index. File format:
+   * <p/>int32 magic <p/>int32 max distance <p/>int32 prefix length <p/>int32 word count
+   * <p/>int32 word pool byte count <p/>int32 key count <p/>int32 posting count
+   * <p/>int32[word count + 1] word offsets <p/>int32[word count] frequencies
+   * <p/>byte[word pool byte count] word pool <p/>int64[key count] keys
+   * <p/>int32[key count + 1] key offsets <p/>int32[posting count] postings
+   */
+  public void save(Path path) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(maxDistance);
+      dos.writeInt(prefixLength);
+      dos.writeInt(frequencies.length);
+      dos.writeInt(wordPool.capacity());
+      dos.writeInt(keys.length);
+      dos.writeInt(postings.length);
+      ArrayIO.writeInts(dos, wordOffsets);
+      ArrayIO.writeInts(dos, frequencies);
+      dos.write(wordPool.array());
+      ByteBuffer keyBytes = ByteBuffer.allocate(keys.length * 8);
+      keyBytes.asLongBuffer().put(keys);
+      dos.write(keyBytes.array());
+      ArrayIO.writeInts(dos, keyOffsets);
+      ArrayIO.writeInts(dos, postings);
+    }
+  }
+
+  public static SymmetricDeleteIndex load(Path path) throws IOException {
+    try (DataInputStream dis = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+      int magic = dis.readInt();
+      if (magic != MAGIC) {
+        throw new IllegalArgumentException("File " + path + " is not a symmetric delete index.");
+      }
+      int maxDistance = dis.readInt();
+      int prefixLength = dis.readInt();
+      int wordCount = dis.readInt();
+      int poolSize = dis.readInt();
+      int keyCount = dis.readInt();
+      int postingCount = dis.readInt();
+      int[] wordOffsets = ArrayIO.readInts(dis, wordCount + 1);
+      int[] frequencies = ArrayIO.readInts(dis, wordCount);
+      ByteBuffer wordPool = ByteBuffer.wrap(ArrayIO.readBytes(dis, poolSize));
+      long[] keys = new long[keyCount];
+      ByteBuffer.wrap(ArrayIO.readBytes(dis, keyCount * 8)).asLongBuffer().get(keys);
+      int[] keyOffsets = ArrayIO.readInts(dis, keyCount + 1);
+      int[] postings = ArrayIO.readInts(dis, postingCount);
+      return new SymmetricDeleteIndex(maxDistance, prefixLength, wordPool, wordOffsets,
+          frequencies, keys, keyOffsets, postings);
+    }
+  }
+}
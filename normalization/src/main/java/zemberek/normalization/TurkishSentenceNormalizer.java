@@ -1,8 +1,5 @@
 package zemberek.normalization;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Splitter;
-import com.google.common.collect.ArrayListMultimap;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -14,6 +11,8 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import zemberek.core.dynamic.ActiveList;
 import zemberek.core.dynamic.Scorable;
@@ -22,6 +21,7 @@ import zemberek.core.text.TextIO;
 import zemberek.core.turkish.SecondaryPos;
 import zemberek.core.turkish.Turkish;
 import zemberek.core.turkish.TurkishAlphabet;
+import zemberek.lm.NgramLanguageModel;
 import zemberek.lm.compression.SmoothLm;
 import zemberek.morphology.TurkishMorphology;
 import zemberek.morphology.analysis.InformalAnalysisConverter;
@@ -49,48 +49,73 @@ import zemberek.tokenization.Token.Type;
 public class TurkishSentenceNormalizer {
 
   TurkishMorphology morphology;
-  private SmoothLm lm;
+  private NgramLanguageModel lm;
   private TurkishSpellChecker spellChecker;
 
-  private ArrayListMultimap<String, String> lookupFromGraph;
-  private ArrayListMultimap<String, String> lookupFromAscii;
-  private ArrayListMultimap<String, String> lookupManual;
+  private CompactLookupTable lookupFromGraph;
+  private CompactLookupTable lookupFromAscii;
+  private CompactLookupTable lookupManual;
   private TurkishMorphology informalAsciiTolerantMorphology;
   private InformalAnalysisConverter analysisConverter;
 
-  private Map<String, String> commonSplits = new HashMap<>();
-  private Map<String, String> replacements = new HashMap<>();
+  private CompactLookupTable commonSplits;
+  private CompactLookupTable replacements;
   private HashSet<String> commonConnectedSuffixes = new HashSet<>();
   private HashSet<String> noSplitWords = new HashSet<>();
   boolean alwaysApplyDeasciifier = false;
+  private ExecutorService candidateExecutor;
+  private CandidateCache candidateCache;
 
   public TurkishSentenceNormalizer(
       TurkishMorphology morphology,
       Path dataRoot,
       Path languageModelPath) throws IOException {
+    this(morphology, dataRoot, loadLanguageModel(languageModelPath));
+  }
+
+  /**
+   * Generates a normalizer with a language model. Model should use natural logarithm. An
+   * {@link zemberek.lm.InterpolatedLm} can be used for a mixture of several models. Stem ending
+   * graph of the spell checker is built in memory, no file is written.
+   */
+  public TurkishSentenceNormalizer(
+      TurkishMorphology morphology,
+      Path dataRoot,
+      NgramLanguageModel languageModel) throws IOException {
+    this(morphology, dataRoot, languageModel, null);
+  }
+
+  /**
+   * Generates a normalizer with a language model. If stemEndingGraphPath is not null, stem ending
+   * graph of the spell checker is loaded from it. If it does not exist or it is generated for
+   * another lexicon, graph is built and saved there. If it is null, graph is built in memory.
+   */
+  public TurkishSentenceNormalizer(
+      TurkishMorphology morphology,
+      Path dataRoot,
+      NgramLanguageModel languageModel,
+      Path stemEndingGraphPath) throws IOException {
 
     this.morphology = morphology;
     this.analysisConverter = new InformalAnalysisConverter(morphology.getWordGenerator());
-    SmoothLm languageModel = SmoothLm.builder(languageModelPath).logBase(Math.E).build();
-    Log.info("Language model = %s", languageModel.info());
     this.lm = languageModel;
 
     // TODO: spell checker should be an external parameter.
-    StemEndingGraph graph = new StemEndingGraph(morphology);
-    CharacterGraphDecoder decoder = new CharacterGraphDecoder(graph.stemGraph);
+    StemEndingGraph graph = stemEndingGraphPath == null ?
+        new StemEndingGraph(morphology) :
+        StemEndingGraph.loadOrBuild(stemEndingGraphPath, morphology);
+    CharacterGraphDecoder decoder =
+        new CharacterGraphDecoder(graph.getPackedGraph());
     this.spellChecker = new TurkishSpellChecker(
         morphology,
         decoder,
         CharacterGraphDecoder.DIACRITICS_IGNORING_MATCHER);
 
-    this.lookupFromGraph = loadMultiMap(dataRoot.resolve("lookup-from-graph"));
-    this.lookupFromAscii = loadMultiMap(dataRoot.resolve("ascii-map"));
+    this.lookupFromGraph = loadLookup(dataRoot.resolve("lookup-from-graph"), true);
+    this.lookupFromAscii = loadLookup(dataRoot.resolve("ascii-map"), true);
     List<String> manualLookup =
         TextIO.loadLinesFromResource("normalization/candidates-manual");
-    this.lookupManual = loadMultiMap(manualLookup);
-
-    // remove words that exists in lookupManual from lookupFromGraph
-    lookupManual.keySet().forEach(s -> lookupFromGraph.removeAll(s));
+    this.lookupManual = CompactLookupTable.fromMultiValueLines(manualLookup);
 
     this.informalAsciiTolerantMorphology = TurkishMorphology.builder()
         .setLexicon(morphology.getLexicon())
@@ -98,11 +123,7 @@ public class TurkishSentenceNormalizer {
         .ignoreDiacriticsInAnalysis()
         .build();
 
-    List<String> splitLines = Files.readAllLines(dataRoot.resolve("split"), Charsets.UTF_8);
-    for (String splitLine : splitLines) {
-      String[] tokens = splitLine.split("=");
-      commonSplits.put(tokens[0].trim(), tokens[1].trim());
-    }
+    this.commonSplits = loadLookup(dataRoot.resolve("split"), false);
 
     this.commonConnectedSuffixes.addAll(TextIO.loadLinesFromResource(
         "normalization/question-suffixes"));
@@ -113,120 +134,194 @@ public class TurkishSentenceNormalizer {
 
     List<String> replaceLines = TextIO.loadLinesFromResource(
         "normalization/multi-word-replacements");
-    for (String replaceLine : replaceLines) {
-      String[] tokens = replaceLine.split("=");
-      replacements.put(tokens[0].trim(), tokens[1].trim());
-    }
+    this.replacements = CompactLookupTable.fromSingleValueLines(replaceLines);
+  }
+
+  private static SmoothLm loadLanguageModel(Path languageModelPath) throws IOException {
+    SmoothLm languageModel = SmoothLm.builder(languageModelPath).logBase(Math.E).build();
+    Log.info("Language model = %s", languageModel.info());
+    return languageModel;
   }
 
   public void setAlwaysApplyDeasciifier(boolean alwaysApplyDeasciifier) {
     this.alwaysApplyDeasciifier = alwaysApplyDeasciifier;
   }
 
-  // load data with line format: "key=val1,val2"
-  private ArrayListMultimap<String, String> loadMultiMap(Path path) throws IOException {
+  /**
+   * Loads a lookup file. If a compiled version of the file exists and it is not older than the text
+   * file, it is memory mapped. Otherwise text file is loaded, empty lines are ignored. Text lines
+   * have "key=val1,val2" format if multiValue is true, "key=value" otherwise. Compiled files can be
+   * generated with CompileNormalizationLookups application.
+   */
+  static CompactLookupTable loadLookup(Path path, boolean multiValue) throws IOException {
+    Path compiled = path.resolveSibling(
+        path.getFileName() + CompactLookupTable.COMPILED_FILE_SUFFIX);
+    if (Files.exists(compiled)) {
+      if (!Files.exists(path) || Files.getLastModifiedTime(compiled)
+          .compareTo(Files.getLastModifiedTime(path)) >= 0) {
+        return CompactLookupTable.loadMapped(compiled.toFile());
+      }
+      Log.warn("%s is older than %s, text file is used. Compile lookups again.", compiled, path);
+    }
     List<String> lines = TextIO.loadLines(path);
-    return loadMultiMap(lines);
+    return multiValue ?
+        CompactLookupTable.fromMultiValueLines(lines) :
+        CompactLookupTable.fromSingleValueLines(lines);
+  }
+
+  public String normalize(String sentence) {
+    return normalize(Collections.singletonList(sentence)).get(0);
   }
 
-  private ArrayListMultimap<String, String> loadMultiMap(List<String> lines) {
-    ArrayListMultimap<String, String> result = ArrayListMultimap.create();
-    for (String line : lines) {
-      int index = line.indexOf("=");
-      if (index < 0) {
-        throw new IllegalStateException("Line needs to have `=` symbol. But it is:" +
-            line);
+  /**
+   * Normalizes a batch of sentences. Candidates of a word are generated once for the whole batch.
+   * If a candidate cache is set, they are also kept there for later calls. Only language model
+   * ranking of spell checker suggestions is repeated for every occurrence of a word. If a candidate
+   * executor is set, pre-processing, candidate generation and decoding are run on that executor
+   * concurrently. Results are same with normalizing sentences one by one.
+   */
+  public List<String> normalize(List<String> sentences) {
+    List<List<String>> tokenLists = ParallelTasks.map(candidateExecutor, sentences, sentence ->
+        sentence.trim().length() == 0 ? null : tokenTexts(preProcess(sentence)));
+
+    Set<String> words = new LinkedHashSet<>();
+    for (List<String> tokens : tokenLists) {
+      if (tokens != null) {
+        words.addAll(tokens);
       }
-      String key = line.substring(0, index).trim();
-      String value = line.substring(index + 1).trim();
-      if (value.indexOf(',') >= 0) {
-        for (String token : Splitter.on(",").trimResults().split(value)) {
-          result.put(key, token);
-        }
+    }
+    Map<String, CandidateCache.Entry> entries = new HashMap<>(words.size() * 2);
+    List<String> missing = new ArrayList<>();
+    CandidateCache cache = this.candidateCache;
+    for (String word : words) {
+      CandidateCache.Entry entry = cache == null ? null : cache.get(word);
+      if (entry == null) {
+        missing.add(word);
       } else {
-        result.put(key, value);
+        entries.put(word, entry);
       }
     }
-    return result;
-  }
-
-  public String normalize(String sentence) {
-
-    if(sentence.trim().length() == 0) {
-      return sentence;
+    Map<String, CandidateCache.Entry> generated = ParallelTasks.toMap(candidateExecutor, missing,
+        this::generateCandidates);
+    entries.putAll(generated);
+    if (cache != null) {
+      generated.forEach(cache::put);
     }
 
-    String processed = preProcess(sentence);
+    List<Integer> indexes = new ArrayList<>(sentences.size());
+    for (int i = 0; i < sentences.size(); i++) {
+      indexes.add(i);
+    }
+    return ParallelTasks.map(candidateExecutor, indexes, i -> {
+      List<String> tokens = tokenLists.get(i);
+      if (tokens == null) {
+        return sentences.get(i);
+      }
+      List<Candidates> candidatesList = new ArrayList<>(tokens.size() + 1);
+      for (int j = 0; j < tokens.size(); j++) {
+        String current = tokens.get(j);
+        CandidateCache.Entry entry = entries.get(current);
+        LinkedHashSet<String> candidates = new LinkedHashSet<>(entry.getCandidates());
+        if (entry.requiresSpellCheck()) {
+          // get top 3 suggestions ranked with neighbour words.
+          List<String> ranked = spellChecker.rankWithContext(
+              entry.getSpellSuggestions(),
+              j < 2 ? null : tokens.get(j - 2),
+              j == 0 ? null : tokens.get(j - 1),
+              j == tokens.size() - 1 ? null : tokens.get(j + 1),
+              lm);
+          candidates.addAll(ranked.size() > 3 ? ranked.subList(0, 3) : ranked);
+        }
+        // if still there is no match, add the word itself.
+        if (candidates.isEmpty() || entry.isCorrect()) {
+          candidates.add(current);
+        }
+        candidatesList.add(new Candidates(
+            current,
+            candidates.stream().map(Candidate::new).collect(Collectors.toList())));
+      }
+      // Apply Viterbi decoding and return result.
+      return String.join(" ", decode(candidatesList));
+    });
+  }
 
+  private static List<String> tokenTexts(String processed) {
     List<Token> tokens = TurkishTokenizer.DEFAULT.tokenize(processed);
+    List<String> texts = new ArrayList<>(tokens.size());
+    for (Token token : tokens) {
+      texts.add(token.getText());
+    }
+    return texts;
+  }
 
-    List<Candidates> candidatesList = new ArrayList<>();
-
-    for (int i = 0; i < tokens.size(); i++) {
-
-      Token currentToken = tokens.get(i);
-      String current = currentToken.getText();
-      String next = i == tokens.size() - 1 ? null : tokens.get(i + 1).getText();
-      String previous = i == 0 ? null : tokens.get(i - 1).getText();
+  private CandidateCache.Entry generateCandidates(String current) {
 
-      LinkedHashSet<String> candidates = new LinkedHashSet<>(2);
+    LinkedHashSet<String> candidates = new LinkedHashSet<>(2);
 
-      // add matches from manual lookup
-      candidates.addAll(lookupManual.get(current));
+    // add matches from manual lookup
+    candidates.addAll(lookupManual.get(current));
 
-      // add matches from random walk
+    // add matches from random walk. Words with a manual lookup entry are skipped.
+    if (!lookupManual.containsKey(current)) {
       candidates.addAll(lookupFromGraph.get(current));
+    }
 
-      // add matches from ascii equivalents.
-      // TODO: this may decrease accuracy. Also, this can be eliminated with ascii tolerant analyzer.
-      candidates.addAll(lookupFromAscii.get(current));
+    // add matches from ascii equivalents.
+    // TODO: this may decrease accuracy. Also, this can be eliminated with ascii tolerant analyzer.
+    candidates.addAll(lookupFromAscii.get(current));
 
-      // add matches from informal analysis to formal surface conversion.
+    // add matches from informal analysis to formal surface conversion.
 
-      WordAnalysis analyses = informalAsciiTolerantMorphology.analyze(current);
+    WordAnalysis analyses = informalAsciiTolerantMorphology.analyze(current);
 
-      for (SingleAnalysis analysis : analyses) {
-        if (analysis.containsInformalMorpheme()) {
-          WordGenerator.Result result = analysisConverter.convert(current, analysis);
-          if (result != null) {
-            candidates.add(result.surface);
-          }
-        } else {
-          List<WordGenerator.Result> results = morphology.getWordGenerator().generate(
-              analysis.getDictionaryItem(),
-              analysis.getMorphemes());
-          for (Result result : results) {
-            candidates.add(result.surface);
-          }
+    for (SingleAnalysis analysis : analyses) {
+      if (analysis.containsInformalMorpheme()) {
+        WordGenerator.Result result = analysisConverter.convert(current, analysis);
+        if (result != null) {
+          candidates.add(result.surface);
         }
-      }
-
-      // if there is no formal analysis and length is larger than 5,
-      // get top 3 1 distance matches.
-      if ((analyses.analysisCount() == 0) && current.length() > 3) {
-
-        List<String> spellCandidates = spellChecker
-            .suggestForWord(current, previous, next, lm);
-        if (spellCandidates.size() > 3) {
-          spellCandidates = new ArrayList<>(spellCandidates.subList(0, 3));
+      } else {
+        List<WordGenerator.Result> results = morphology.getWordGenerator().generate(
+            analysis.getDictionaryItem(),
+            analysis.getMorphemes());
+        for (Result result : results) {
+          candidates.add(result.surface);
         }
-        candidates.addAll(spellCandidates);
       }
+    }
 
-      // if still there is no match, add the word itself.
-      if (candidates.isEmpty() || morphology.analyze(current).isCorrect()) {
-        candidates.add(current);
-      }
+    // if there is no formal analysis and length is larger than 5,
+    // spell checker suggestions are added. They are ranked later using neighbour words.
+    List<String> spellSuggestions = analyses.analysisCount() == 0 && current.length() > 3 ?
+        spellChecker.getUnrankedSuggestions(current) : null;
+
+    return new CandidateCache.Entry(
+        new ArrayList<>(candidates),
+        spellSuggestions,
+        morphology.analyze(current).isCorrect());
+  }
 
-      Candidates result = new Candidates(
-          currentToken.getText(),
-          candidates.stream().map(Candidate::new).collect(Collectors.toList()));
+  /**
+   * Sets the cache for candidates of tokens. A cache can be shared between normalizers that use
+   * the same resources. If it is null, which is the default, candidates are generated for every
+   * batch.
+   */
+  public void setCandidateCache(CandidateCache candidateCache) {
+    this.candidateCache = candidateCache;
+  }
 
-      candidatesList.add(result);
-    }
-    // Apply Viterbi decoding and return result.
-    return String.join(" ", decode(candidatesList));
+  public CandidateCache getCandidateCache() {
+    return candidateCache;
+  }
 
+  /**
+   * Sets the executor used for generating candidates of different words concurrently. If it is
+   * null, which is the default, all work is done in the calling thread. Calling threads wait for
+   * the tasks they submit, so normalize methods should not be called from threads of a bounded
+   * executor that is also used here.
+   */
+  public void setCandidateExecutor(ExecutorService candidateExecutor) {
+    this.candidateExecutor = candidateExecutor;
   }
 
   private boolean hasAnalysis(WordAnalysis w) {
@@ -424,7 +519,7 @@ public class TurkishSentenceNormalizer {
     tokens = TurkishTokenizer.DEFAULT.tokenize(s);
     s = splitNecessaryWords(tokens, false);
     if (alwaysApplyDeasciifier || probablyRequiresDeasciifier(s)) {
-      s = Deasciifier.deasciify(s);
+      s = Deasciifier.compiled().deasciify(s);
     }
     tokens = TurkishTokenizer.DEFAULT.tokenize(s);
     s = combineNecessaryWords(tokens);
@@ -487,7 +582,7 @@ public class TurkishSentenceNormalizer {
       return input;
     }
     if (useLookup && commonSplits.containsKey(input)) {
-      return commonSplits.get(input);
+      return commonSplits.getFirst(input);
     }
     if (!hasRegularAnalysis(input)) {
       for (int i = 1; i < input.length() - 1; i++) {
@@ -612,7 +707,8 @@ public class TurkishSentenceNormalizer {
     List<String> result = new ArrayList<>();
     for (Token token : tokens) {
       String text = token.getText();
-      result.add(replacements.getOrDefault(text, text));
+      String replacement = replacements.getFirst(text);
+      result.add(replacement == null ? text : replacement);
     }
     return String.join(" ", result);
   }
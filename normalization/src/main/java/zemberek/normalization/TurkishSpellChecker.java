@@ -1,12 +1,18 @@
 package zemberek.normalization;
 
+import com.google.common.base.Preconditions;
 import com.google.common.io.Resources;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import zemberek.core.ScoredItem;
@@ -32,6 +38,8 @@ public class TurkishSpellChecker {
   TurkishMorphology morphology;
   WordAnalysisSurfaceFormatter formatter = new WordAnalysisSurfaceFormatter();
   CharacterGraphDecoder decoder;
+  // generates suggestions. It is the decoder unless another engine is set.
+  SpellSuggestionEngine suggestionEngine;
   NgramLanguageModel unigramModel;
 
   // Null means exact matcher will be used.
@@ -40,14 +48,30 @@ public class TurkishSpellChecker {
   // can be used for filtering analysis results.
   Predicate<SingleAnalysis> analysisPredicate;
 
+  // if not null, document checks analyze and generate suggestions with this executor.
+  private ExecutorService executor;
+
   public NgramLanguageModel getUnigramLanguageModel() {
     return unigramModel;
   }
 
   public TurkishSpellChecker(TurkishMorphology morphology) throws IOException {
+    this(morphology, new StemEndingGraph(morphology));
+  }
+
+  /**
+   * Generates a spell checker with a stem ending graph saved to graphPath. If the file does not
+   * exist or it is generated for another lexicon, graph is built and saved to graphPath.
+   */
+  public TurkishSpellChecker(TurkishMorphology morphology, Path graphPath) throws IOException {
+    this(morphology, StemEndingGraph.loadOrBuild(graphPath, morphology));
+  }
+
+  public TurkishSpellChecker(TurkishMorphology morphology, StemEndingGraph graph)
+      throws IOException {
     this.morphology = morphology;
-    StemEndingGraph graph = new StemEndingGraph(morphology);
-    this.decoder = new CharacterGraphDecoder(graph.stemGraph);
+    this.decoder = new CharacterGraphDecoder(graph.getPackedGraph());
+    this.suggestionEngine = decoder;
     try (InputStream is = Resources.getResource("lm-unigram.slm").openStream()) {
       unigramModel = SmoothLm.builder(is).build();
     }
@@ -56,6 +80,7 @@ public class TurkishSpellChecker {
   public TurkishSpellChecker(TurkishMorphology morphology, CharacterGraph graph) {
     this.morphology = morphology;
     this.decoder = new CharacterGraphDecoder(graph);
+    this.suggestionEngine = decoder;
   }
 
   public TurkishSpellChecker(
@@ -64,9 +89,22 @@ public class TurkishSpellChecker {
       CharMatcher matcher) {
     this.morphology = morphology;
     this.decoder = decoder;
+    this.suggestionEngine = decoder;
     this.charMatcher = matcher;
   }
 
+  /**
+   * Sets the engine used for generating suggestions, such as a {@link SymmetricDeleteIndex}.
+   * Suggestions of the engine are still filtered and formatted with morphological analysis.
+   */
+  public void setSuggestionEngine(SpellSuggestionEngine suggestionEngine) {
+    this.suggestionEngine = Preconditions.checkNotNull(suggestionEngine);
+  }
+
+  public SpellSuggestionEngine getSuggestionEngine() {
+    return suggestionEngine;
+  }
+
   // TODO: this is a temporary hack.
   public void setAnalysisPredicate(Predicate<SingleAnalysis> analysisPredicate) {
     this.analysisPredicate = analysisPredicate;
@@ -115,6 +153,142 @@ public class TurkishSpellChecker {
     return false;
   }
 
+  /**
+   * Sets the executor used by {@link #checkDocument(String, NgramLanguageModel)} for checking
+   * different words concurrently. If it is null, which is the default, all work is done in the
+   * calling thread. Calling threads wait for the tasks they submit, so documents should not be
+   * checked from threads of a bounded executor that is also used here.
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * A misspelled token of a document with its ranked suggestions.
+   */
+  public static class Misspelling {
+
+    final Token token;
+    final List<String> suggestions;
+
+    Misspelling(Token token, List<String> suggestions) {
+      this.token = token;
+      this.suggestions = Collections.unmodifiableList(suggestions);
+    }
+
+    public Token getToken() {
+      return token;
+    }
+
+    public String getText() {
+      return token.getText();
+    }
+
+    /**
+     * Index of the first character of the token in the document.
+     */
+    public int getStart() {
+      return token.getStart();
+    }
+
+    /**
+     * Index of the last character of the token in the document.
+     */
+    public int getEnd() {
+      return token.getEnd();
+    }
+
+    /**
+     * Suggestions, best first. Empty if no suggestion is found.
+     */
+    public List<String> getSuggestions() {
+      return suggestions;
+    }
+
+    @Override
+    public String toString() {
+      return token.getText() + "[" + token.getStart() + "-" + token.getEnd() + "] -> "
+          + suggestions;
+    }
+  }
+
+  /**
+   * Checks all words of a document. Suggestions are ranked with unigram probabilities if unigram
+   * model is available.
+   */
+  public List<Misspelling> checkDocument(String document) {
+    return checkDocument(document, null);
+  }
+
+  /**
+   * Checks all words of a document and returns misspelled ones in document order. Document is
+   * tokenized once and every distinct word is checked once. Suggestions are only generated for
+   * misspelled words. Only tokens of Word and WordWithSymbol types are checked.
+   * <p>
+   * If language model order is at least 2, suggestions of every occurrence are ranked with two
+   * left and one right neighbour tokens. Punctuations are regarded as sentence boundaries.
+   * Otherwise suggestions of a word are ranked once with unigram probabilities of the given model,
+   * or of the spell checker's unigram model if lm is null.
+   */
+  public List<Misspelling> checkDocument(String document, NgramLanguageModel lm) {
+    List<Token> tokens = tokenizer.tokenize(document);
+    LinkedHashSet<String> words = new LinkedHashSet<>();
+    for (Token token : tokens) {
+      if (isCheckable(token)) {
+        words.add(token.getText());
+      }
+    }
+    // null value means word is correct.
+    Map<String, List<String>> unRanked = ParallelTasks.toMap(executor, new ArrayList<>(words),
+        word -> check(word) ? null : getUnrankedSuggestions(word));
+
+    boolean contextRanking = lm != null && lm.getOrder() > 1;
+    NgramLanguageModel unigram = lm == null ? unigramModel : lm;
+    Map<String, List<String>> unigramRanked = new HashMap<>();
+    List<Misspelling> result = new ArrayList<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      if (!isCheckable(token)) {
+        continue;
+      }
+      List<String> suggestions = unRanked.get(token.getText());
+      if (suggestions == null) {
+        continue;
+      }
+      if (suggestions.isEmpty()) {
+        result.add(new Misspelling(token, suggestions));
+      } else if (contextRanking) {
+        String left = contextWord(tokens, i - 1);
+        String leftLeft = left == null ? null : contextWord(tokens, i - 2);
+        String right = contextWord(tokens, i + 1);
+        result.add(new Misspelling(token,
+            rankWithContext(suggestions, leftLeft, left, right, lm)));
+      } else {
+        List<String> ranked = unigram == null ? suggestions :
+            unigramRanked.computeIfAbsent(token.getText(),
+                w -> rankWithUnigramProbability(suggestions, unigram));
+        result.add(new Misspelling(token, ranked));
+      }
+    }
+    return result;
+  }
+
+  private static boolean isCheckable(Token token) {
+    return token.getType() == Token.Type.Word || token.getType() == Token.Type.WordWithSymbol;
+  }
+
+  // returns the token text at index, or null if it is a sentence boundary.
+  private static String contextWord(List<Token> tokens, int index) {
+    if (index < 0 || index >= tokens.size()) {
+      return null;
+    }
+    Token token = tokens.get(index);
+    if (token.getType() == Token.Type.Punctuation) {
+      return null;
+    }
+    return token.getText();
+  }
+
   private String getApostrophe(String input) {
     if (input.indexOf('’') > 0) {
       return "’";
@@ -129,9 +303,14 @@ public class TurkishSpellChecker {
     return rankWithUnigramProbability(unRanked, lm);
   }
 
-  private List<String> getUnrankedSuggestions(String word) {
+  /**
+   * Returns suggestions of the word without ranking. Results only depend on the word, so they can
+   * be cached and ranked later with
+   * {@link #rankWithContext(List, String, String, NgramLanguageModel)}
+   */
+  public List<String> getUnrankedSuggestions(String word) {
     String normalized = TurkishAlphabet.INSTANCE.normalize(word.replaceAll("['’]", ""));
-    List<String> strings = decoder.getSuggestions(normalized, charMatcher);
+    List<String> strings = suggestionEngine.getSuggestions(normalized, charMatcher);
 
     WordAnalysisSurfaceFormatter.CaseType caseType = formatter.guessCase(word);
     if (caseType == WordAnalysisSurfaceFormatter.CaseType.MIXED_CASE ||
@@ -160,44 +339,103 @@ public class TurkishSpellChecker {
       String leftContext,
       String rightContext,
       NgramLanguageModel lm) {
-    List<String> unRanked = getUnrankedSuggestions(word);
+    return rankWithContext(getUnrankedSuggestions(word), leftContext, rightContext, lm);
+  }
+
+  /**
+   * Returns suggestions ranked with two left and one right neighbour words. Null context means
+   * sentence boundary. Second left word is only used by models with order larger than 2.
+   */
+  public List<String> suggestForWord(
+      String word,
+      String leftLeftContext,
+      String leftContext,
+      String rightContext,
+      NgramLanguageModel lm) {
+    return rankWithContext(
+        getUnrankedSuggestions(word), leftLeftContext, leftContext, rightContext, lm);
+  }
+
+  /**
+   * Ranks suggestions of a word using its left and right neighbours. Null context means sentence
+   * boundary.
+   */
+  public List<String> rankWithContext(
+      List<String> unRanked,
+      String leftContext,
+      String rightContext,
+      NgramLanguageModel lm) {
+    if (!canRankWithContext(lm)) {
+      return lm == null ? unRanked : rankWithUnigramProbability(unRanked, lm);
+    }
+    LmVocabulary vocabulary = lm.getVocabulary();
+    int[] left = {leftContext == null ?
+        vocabulary.getSentenceStartIndex() : vocabulary.indexOf(normalizeForLm(leftContext))};
+    return rankWithContext(unRanked, left, rightContext, lm);
+  }
+
+  /**
+   * Ranks suggestions of a word using two left and one right neighbour words. Null context means
+   * sentence boundary, so if left context is null, left left context is ignored. Second left word
+   * is only used by models with order larger than 2.
+   */
+  public List<String> rankWithContext(
+      List<String> unRanked,
+      String leftLeftContext,
+      String leftContext,
+      String rightContext,
+      NgramLanguageModel lm) {
+    if (!canRankWithContext(lm)) {
+      return lm == null ? unRanked : rankWithUnigramProbability(unRanked, lm);
+    }
+    LmVocabulary vocabulary = lm.getVocabulary();
+    int[] left;
+    if (leftContext == null) {
+      left = new int[]{vocabulary.getSentenceStartIndex()};
+    } else {
+      left = new int[]{
+          leftLeftContext == null ?
+              vocabulary.getSentenceStartIndex() :
+              vocabulary.indexOf(normalizeForLm(leftLeftContext)),
+          vocabulary.indexOf(normalizeForLm(leftContext))};
+    }
+    return rankWithContext(unRanked, left, rightContext, lm);
+  }
+
+  private boolean canRankWithContext(NgramLanguageModel lm) {
     if (lm == null) {
       Log.warn("No language model provided. Returning unraked results.");
-      return unRanked;
+      return false;
     }
     if (lm.getOrder() < 2) {
       Log.warn("Language model order is 1. For context ranking it should be at least 2. " +
           "Unigram ranking will be applied.");
-      return suggestForWord(word, lm);
+      return false;
     }
+    return true;
+  }
+
+  // Context ids are resolved once and all suggestions are scored with a single call. Score of a
+  // suggestion is the log probability of itself and the right context word.
+  private List<String> rankWithContext(
+      List<String> unRanked,
+      int[] left,
+      String rightContext,
+      NgramLanguageModel lm) {
     LmVocabulary vocabulary = lm.getVocabulary();
+    int[] right = {rightContext == null ?
+        vocabulary.getSentenceEndIndex() : vocabulary.indexOf(normalizeForLm(rightContext))};
+    int[] candidates = new int[unRanked.size()];
+    for (int i = 0; i < candidates.length; i++) {
+      candidates[i] = vocabulary.indexOf(normalizeForLm(unRanked.get(i)));
+    }
+    float[] scores = lm.scoreCandidates(left, candidates, right);
     List<ScoredItem<String>> results = new ArrayList<>(unRanked.size());
-    for (String str : unRanked) {
-      if (leftContext == null) {
-        leftContext = vocabulary.getSentenceStart();
-      } else {
-        leftContext = normalizeForLm(leftContext);
-      }
-      if (rightContext == null) {
-        rightContext = vocabulary.getSentenceEnd();
-      } else {
-        rightContext = normalizeForLm(rightContext);
-      }
-      String w = normalizeForLm(str);
-      int wordIndex = vocabulary.indexOf(w);
-      int leftIndex = vocabulary.indexOf(leftContext);
-      int rightIndex = vocabulary.indexOf(rightContext);
-      float score;
-      if (lm.getOrder() == 2) {
-        score = lm.getProbability(leftIndex, wordIndex) + lm.getProbability(wordIndex, rightIndex);
-      } else {
-        score = lm.getProbability(leftIndex, wordIndex, rightIndex);
-      }
-      results.add(new ScoredItem<>(str, score));
+    for (int i = 0; i < candidates.length; i++) {
+      results.add(new ScoredItem<>(unRanked.get(i), scores[i]));
     }
     results.sort(ScoredItem.STRING_COMP_DESCENDING);
     return results.stream().map(s -> s.item).collect(Collectors.toList());
-
   }
 
   private String normalizeForLm(String s) {
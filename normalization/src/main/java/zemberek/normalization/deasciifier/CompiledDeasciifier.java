@@ -0,0 +1,339 @@
+package zemberek.normalization.deasciifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A faster replacement for the pattern matching of {@link Deasciifier}. Pattern table of every
+ * letter is compiled to an Aho-Corasick automaton with int rank payloads. Context of a letter is
+ * built into a reused char buffer and all patterns matching it are found with a single pass over
+ * it, instead of creating every context substring and looking it up from a HashMap. Output is
+ * identical to the {@link Deasciifier}.
+ * <p>
+ * Instances are immutable and thread safe. Instance for the current pattern table is obtained with
+ * {@link Deasciifier#compiled()}.
+ * <pre>
+ * String deasciified = Deasciifier.compiled().deasciify(&quot;Hadi bir masal uyduralim.&quot;);
+ * </pre>
+ */
+public final class CompiledDeasciifier {
+
+  private final PatternAutomaton[] automatons;
+  private final char[] asciifyTable;
+  private final char[] downcaseAsciifyTable;
+  private final char[] upcaseAccentsTable;
+  private final char[] toggleAccentTable;
+
+  CompiledDeasciifier(
+      Map<Character, ? extends Map<String, Integer>> patternTable,
+      Map<Character, Character> asciifyTable,
+      Map<Character, Character> downcaseAsciifyTable,
+      Map<Character, Character> upcaseAccentsTable,
+      Map<Character, Character> toggleAccentTable) {
+    int max = 0;
+    for (Character c : patternTable.keySet()) {
+      max = Math.max(max, c);
+    }
+    this.automatons = new PatternAutomaton[patternTable.isEmpty() ? 0 : max + 1];
+    for (Map.Entry<Character, ? extends Map<String, Integer>> entry : patternTable.entrySet()) {
+      automatons[entry.getKey()] = PatternAutomaton.compile(entry.getValue());
+    }
+    this.asciifyTable = toArray(asciifyTable);
+    this.downcaseAsciifyTable = toArray(downcaseAsciifyTable);
+    this.upcaseAccentsTable = toArray(upcaseAccentsTable);
+    this.toggleAccentTable = toArray(toggleAccentTable);
+  }
+
+  // character tables are kept as arrays indexed by the key char. 0 means there is no mapping.
+  private static char[] toArray(Map<Character, Character> map) {
+    int max = -1;
+    for (Character c : map.keySet()) {
+      max = Math.max(max, c);
+    }
+    char[] result = new char[max + 1];
+    for (Map.Entry<Character, Character> entry : map.entrySet()) {
+      result[entry.getKey()] = entry.getValue();
+    }
+    return result;
+  }
+
+  private static char lookup(char[] table, char c) {
+    return c < table.length ? table[c] : 0;
+  }
+
+  /**
+   * Convert a string with ASCII-only letters into one with Turkish letters.
+   *
+   * @return Deasciified text.
+   */
+  public String deasciify(String asciiString, int turkishContextSize) {
+    char[] buffer = asciiString.toCharArray();
+    deasciify(buffer, buffer.length, turkishContextSize);
+    return new String(buffer);
+  }
+
+  /**
+   * Convert a string with ASCII-only letters into one with Turkish letters.
+   *
+   * @return Deasciified text.
+   */
+  public String deasciify(String asciiString) {
+    return deasciify(asciiString, 10);
+  }
+
+  /**
+   * Convert a char buffer with ASCII-only letters into one with Turkish letters (in-place).
+   *
+   * @return true if any modification has been made.
+   */
+  public boolean deasciify(char[] buffer, int length) {
+    return deasciify(buffer, length, 10);
+  }
+
+  /**
+   * Convert a char buffer with ASCII-only letters into one with Turkish letters (in-place).
+   *
+   * @return true if any modification has been made.
+   */
+  public boolean deasciify(char[] buffer, int length, int turkishContextSize) {
+    char[] context = new char[1 + 2 * turkishContextSize];
+    boolean altered = false;
+    for (int i = 0; i < length; i++) {
+      char c = buffer[i];
+      if (needCorrection(buffer, c, i, turkishContextSize, context)) {
+        char toggled = lookup(toggleAccentTable, c);
+        buffer[i] = toggled == 0 ? c : toggled;
+        altered = true;
+      }
+    }
+    return altered;
+  }
+
+  private boolean needCorrection(char[] buffer, char c, int point, int contextSize,
+      char[] context) {
+    char a = lookup(asciifyTable, c);
+    char tr = a == 0 ? c : a;
+    char key = Character.toLowerCase(tr);
+    PatternAutomaton automaton = key < automatons.length ? automatons[key] : null;
+    boolean m = false;
+    if (automaton != null) {
+      int contextLength = fillContext(buffer, contextSize, point, context);
+      m = automaton.matches(context, contextLength, contextSize);
+    }
+    if (tr == 'I') {
+      return c == tr ? !m : m;
+    }
+    return c == tr ? m : !m;
+  }
+
+  /**
+   * Fills the context of the letter at `point` to `context` as {@link Deasciifier} does and returns
+   * the context length. Letter itself is represented with `X` at index `size`.
+   */
+  private int fillContext(char[] buffer, int size, int point, char[] context) {
+    Arrays.fill(context, ' ');
+    context[size] = 'X';
+
+    int i = size + 1;
+    int index = point + 1;
+    while (i < context.length && index < buffer.length) {
+      char x = lookup(downcaseAsciifyTable, buffer[index]);
+      i++;
+      index++;
+      if (x == 0) {
+        break;
+      }
+      context[i - 1] = x;
+    }
+    int length = i;
+
+    index = point - 1;
+    i = size - 1;
+    boolean space = false;
+    while (i >= 0 && index >= 0) {
+      char x = lookup(upcaseAccentsTable, buffer[index]);
+      if (x != 0) {
+        context[i] = x;
+        i--;
+        space = false;
+      } else if (!space) {
+        i--;
+        space = true;
+      }
+      index--;
+    }
+    return length;
+  }
+
+  /**
+   * Aho-Corasick automaton of a single pattern table. States are numbered in breadth first order
+   * so children of a state are consecutive and sorted by their labels. Children of state `s` are
+   * [firstChild[s], firstChild[s + 1]).
+   */
+  static final class PatternAutomaton {
+
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] fail;
+    // first state with a pattern in the suffix chain of a state, itself included. -1 if none.
+    private final int[] output;
+    // next state with a pattern in the suffix chain, itself excluded. -1 if none.
+    private final int[] nextOutput;
+    private final int[] depths;
+    private final int[] ranks;
+    private final int defaultRank;
+
+    private PatternAutomaton(char[] labels, int[] firstChild, int[] fail, int[] output,
+        int[] nextOutput, int[] depths, int[] ranks, int defaultRank) {
+      this.labels = labels;
+      this.firstChild = firstChild;
+      this.fail = fail;
+      this.output = output;
+      this.nextOutput = nextOutput;
+      this.depths = depths;
+      this.ranks = ranks;
+      this.defaultRank = defaultRank;
+    }
+
+    static PatternAutomaton compile(Map<String, Integer> patterns) {
+      TrieNode root = new TrieNode();
+      for (Map.Entry<String, Integer> entry : patterns.entrySet()) {
+        TrieNode node = root;
+        for (char c : entry.getKey().toCharArray()) {
+          node = node.children.computeIfAbsent(c, k -> new TrieNode());
+        }
+        node.hasRank = true;
+        node.rank = entry.getValue();
+      }
+
+      // number states in breadth first order.
+      List<TrieNode> nodes = new ArrayList<>();
+      ArrayDeque<TrieNode> queue = new ArrayDeque<>();
+      queue.add(root);
+      while (!queue.isEmpty()) {
+        TrieNode node = queue.poll();
+        node.id = nodes.size();
+        nodes.add(node);
+        for (TrieNode child : node.children.values()) {
+          child.parent = node;
+          child.depth = node.depth + 1;
+          queue.add(child);
+        }
+      }
+
+      int n = nodes.size();
+      char[] labels = new char[n];
+      int[] firstChild = new int[n + 1];
+      int[] depths = new int[n];
+      int[] ranks = new int[n];
+      int next = 1;
+      for (TrieNode node : nodes) {
+        firstChild[node.id] = next;
+        for (Map.Entry<Character, TrieNode> entry : node.children.entrySet()) {
+          labels[entry.getValue().id] = entry.getKey();
+        }
+        next += node.children.size();
+        depths[node.id] = node.depth;
+        ranks[node.id] = node.rank;
+      }
+      firstChild[n] = n;
+
+      int[] fail = new int[n];
+      int[] output = new int[n];
+      int[] nextOutput = new int[n];
+      output[0] = root.hasRank ? 0 : -1;
+      nextOutput[0] = -1;
+      PatternAutomaton automaton = new PatternAutomaton(labels, firstChild, fail, output,
+          nextOutput, depths, ranks, patterns.size() * 2);
+      // breadth first order guarantees fail states of shorter depths are ready.
+      for (int s = 1; s < n; s++) {
+        int parent = nodes.get(s).parent.id;
+        int f = parent == 0 ? 0 : automaton.next(fail[parent], labels[s]);
+        fail[s] = f;
+        nextOutput[s] = output[f];
+        output[s] = nodes.get(s).hasRank ? s : nextOutput[s];
+      }
+      return automaton;
+    }
+
+    private int child(int state, char c) {
+      int lo = firstChild[state];
+      int hi = firstChild[state + 1] - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        char label = labels[mid];
+        if (label < c) {
+          lo = mid + 1;
+        } else if (label > c) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    private int next(int state, char c) {
+      while (true) {
+        int child = child(state, c);
+        if (child >= 0) {
+          return child;
+        }
+        if (state == 0) {
+          return 0;
+        }
+        state = fail[state];
+      }
+    }
+
+    /**
+     * Equivalent of Deasciifier.turkishMatchPattern. Among all patterns that match a part of
+     * the context containing index `size`, rank with the smallest absolute value is selected. Ties
+     * are resolved as in the original implementation, by the smallest start then end index.
+     */
+    boolean matches(char[] context, int length, int size) {
+      int rank = defaultRank;
+      boolean found = false;
+      int bestStart = 0;
+      int bestEnd = 0;
+      int state = 0;
+      for (int i = 0; i < length; i++) {
+        state = next(state, context[i]);
+        int end = i + 1;
+        if (end <= size) {
+          continue;
+        }
+        for (int o = output[state]; o >= 0; o = nextOutput[o]) {
+          int start = end - depths[o];
+          if (start > size) {
+            continue;
+          }
+          int r = ranks[o];
+          int abs = Math.abs(r);
+          if (abs < Math.abs(rank) || (found && abs == Math.abs(rank)
+              && (start < bestStart || (start == bestStart && end < bestEnd)))) {
+            rank = r;
+            found = true;
+            bestStart = start;
+            bestEnd = end;
+          }
+        }
+      }
+      return rank > 0;
+    }
+  }
+
+  private static final class TrieNode {
+
+    TreeMap<Character, TrieNode> children = new TreeMap<>();
+    TrieNode parent;
+    boolean hasRank;
+    int rank;
+    int depth;
+    int id;
+  }
+}
@@ -30,6 +30,8 @@ public final class Deasciifier {
 
   private static HashMap<Character, HashMap<String, Integer>> turkishPatternTable = getPatternTableFromResource();
 
+  private static CompiledDeasciifier compiled;
+
   private static HashMap<Character, Character> turkishAsciifyTable = new HashMap<>();
   private static HashMap<Character, Character> turkishDowncaseAsciifyTable = new HashMap<>();
   private static HashMap<Character, Character> turkishUpcaseAccentsTable = new HashMap<>();
@@ -121,6 +123,23 @@ public final class Deasciifier {
     // prevent instances
   }
 
+  /**
+   * Returns a {@link CompiledDeasciifier} for the current pattern table. It gives the same output
+   * with this class but is faster. Instance is created once and re-created after the pattern table
+   * is changed with {@link #loadPatternTable(String)}.
+   */
+  public static synchronized CompiledDeasciifier compiled() {
+    if (compiled == null) {
+      compiled = new CompiledDeasciifier(
+          turkishPatternTable,
+          turkishAsciifyTable,
+          turkishDowncaseAsciifyTable,
+          turkishUpcaseAccentsTable,
+          turkishToggleAccentTable);
+    }
+    return compiled;
+  }
+
   private static char turkishToggleAccent(final char c) {
     return turkishToggleAccentTable.containsKey(c) ? turkishToggleAccentTable.get(c) : c;
   }
@@ -278,6 +297,7 @@ public final class Deasciifier {
     try {
       f = new FileInputStream(filename);
       turkishPatternTable = getPatternTable(f);
+      compiled = null;
     }
     finally {
       if (f != null) {
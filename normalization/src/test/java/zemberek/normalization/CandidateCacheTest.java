@@ -0,0 +1,49 @@
+package zemberek.normalization;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CandidateCacheTest {
+
+  @Test
+  public void hitsAndMisses() {
+    CandidateCache cache = new CandidateCache(10);
+    Assert.assertNull(cache.get("slm"));
+    cache.put("slm", new CandidateCache.Entry(
+        Arrays.asList("selam", "sülüm"), null, false));
+    CandidateCache.Entry entry = cache.get("slm");
+    Assert.assertEquals(Arrays.asList("selam", "sülüm"), entry.getCandidates());
+    Assert.assertFalse(entry.requiresSpellCheck());
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+    Assert.assertEquals(0.5, cache.getHitRate(), 1e-9);
+  }
+
+  @Test
+  public void saveAndLoad() throws IOException {
+    CandidateCache cache = new CandidateCache();
+    cache.put("slm", new CandidateCache.Entry(
+        Arrays.asList("selam"), null, false));
+    cache.put("kitapçı", new CandidateCache.Entry(
+        Collections.emptyList(), null, true));
+    cache.put("nbr", new CandidateCache.Entry(
+        Arrays.asList("naber", "ne haber"), Arrays.asList("nar", "nur"), false));
+    Path path = Files.createTempFile("candidates", ".bin");
+    path.toFile().deleteOnExit();
+    cache.save(path);
+
+    CandidateCache loaded = CandidateCache.load(path);
+    Assert.assertEquals(3, loaded.size());
+    Assert.assertEquals(Collections.singletonList("selam"), loaded.get("slm").getCandidates());
+    Assert.assertTrue(loaded.get("kitapçı").isCorrect());
+    CandidateCache.Entry entry = loaded.get("nbr");
+    Assert.assertEquals(Arrays.asList("naber", "ne haber"), entry.getCandidates());
+    Assert.assertTrue(entry.requiresSpellCheck());
+    Assert.assertEquals(Arrays.asList("nar", "nur"), entry.getSpellSuggestions());
+  }
+}
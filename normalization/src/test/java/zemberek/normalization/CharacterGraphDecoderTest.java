@@ -297,4 +297,32 @@ public class CharacterGraphDecoderTest {
     List<ScoredItem<String>> res = spellChecker.getSuggestionsWithScores("türkiyede");
     assertContainsAll(res, "türkiyede");
   }
+
+  @Test
+  public void bestSuggestionsTest() {
+    CharacterGraphDecoder spellChecker = new CharacterGraphDecoder(1);
+    spellChecker.addWords("elma", "elmas", "elmaslar", "alma", "elmalar", "kalem");
+    List<ScoredItem<String>> all = spellChecker.getSuggestionsWithScores("elma");
+    for (int k = 1; k <= all.size() + 1; k++) {
+      List<ScoredItem<String>> best = spellChecker.getSuggestionsWithScores("elma", null, k);
+      Assert.assertEquals(Math.min(k, all.size()), best.size());
+      for (int i = 0; i < best.size(); i++) {
+        Assert.assertEquals(all.get(i).score, best.get(i).score, 0.0001);
+      }
+    }
+    Assert.assertEquals(Lists.newArrayList("elma"),
+        spellChecker.getSuggestions("elma", null, 1));
+    Assert.assertEquals(0, spellChecker.getSuggestions("elma", null, 0).size());
+  }
+
+  @Test
+  public void repeatedSearchTest() {
+    CharacterGraphDecoder spellChecker = new CharacterGraphDecoder(1);
+    spellChecker.addWords("elma", "armut", "ayva");
+    // search storage is reused, results should not depend on previous searches.
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(Lists.newArrayList("armut"), spellChecker.getSuggestions("armtu"));
+      Assert.assertEquals(Lists.newArrayList("elma"), spellChecker.getSuggestions("elmaa"));
+    }
+  }
 }
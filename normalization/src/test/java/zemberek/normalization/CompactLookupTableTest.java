@@ -0,0 +1,121 @@
+package zemberek.normalization;
+
+import com.google.common.collect.ArrayListMultimap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactLookupTableTest {
+
+  private static ArrayListMultimap<String, String> randomMap(int keyCount, Random random) {
+    String alphabet = "abcçdefgğhıijklmnoöprsştuüvyz";
+    ArrayListMultimap<String, String> map = ArrayListMultimap.create();
+    while (map.keySet().size() < keyCount) {
+      StringBuilder sb = new StringBuilder();
+      int length = random.nextInt(10) + 1;
+      for (int j = 0; j < length; j++) {
+        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      String key = sb.toString();
+      if (map.containsKey(key)) {
+        continue;
+      }
+      int valueCount = random.nextInt(4) + 1;
+      for (int j = 0; j < valueCount; j++) {
+        // small value set, so values are shared between keys.
+        map.put(key, "değer" + random.nextInt(50));
+      }
+    }
+    return map;
+  }
+
+  private static void check(ArrayListMultimap<String, String> expected,
+      CompactLookupTable table) {
+    Assert.assertEquals(expected.keySet().size(), table.size());
+    for (String key : expected.keySet()) {
+      Assert.assertTrue(table.containsKey(key));
+      Assert.assertEquals(expected.get(key), table.get(key));
+      Assert.assertEquals(key, table.key(table.indexOf(key)));
+      Assert.assertEquals(expected.get(key).get(0), table.getFirst(key));
+      Assert.assertFalse(table.containsKey(key + "x"));
+      Assert.assertEquals(Collections.emptyList(), table.get(key + "x"));
+    }
+  }
+
+  @Test
+  public void sameValuesWithMultimap() {
+    ArrayListMultimap<String, String> map = randomMap(5000, new Random(1));
+    check(map, CompactLookupTable.from(map));
+  }
+
+  @Test
+  public void textLines() {
+    List<String> lines = Arrays.asList("slm = selam", "nbr=naber, ne haber", "tmm=tamam");
+    CompactLookupTable table = CompactLookupTable.fromMultiValueLines(lines);
+    Assert.assertEquals(Arrays.asList("naber", "ne haber"), table.get("nbr"));
+    Assert.assertEquals("selam", table.getFirst("slm"));
+
+    table = CompactLookupTable.fromSingleValueLines(
+        Arrays.asList("gelecekmisin=gelecek misin", "öyleki=öyle ki"));
+    Assert.assertEquals("öyle ki", table.getFirst("öyleki"));
+    Assert.assertNull(table.getFirst("öyle"));
+  }
+
+  @Test
+  public void loadLookupFile() throws IOException {
+    Path dir = Files.createTempDirectory("lookup");
+    dir.toFile().deleteOnExit();
+    Path path = dir.resolve("ascii-map");
+    path.toFile().deleteOnExit();
+    // blank lines are ignored.
+    Files.write(path, Arrays.asList("", "slm=selam", "  ", "nbr=naber,ne haber", ""),
+        StandardCharsets.UTF_8);
+    CompactLookupTable table = TurkishSentenceNormalizer.loadLookup(path, true);
+    Assert.assertEquals(2, table.size());
+    Assert.assertEquals(Arrays.asList("naber", "ne haber"), table.get("nbr"));
+
+    Path compiled = dir.resolve("ascii-map" + CompactLookupTable.COMPILED_FILE_SUFFIX);
+    compiled.toFile().deleteOnExit();
+    CompactLookupTable.fromMultiValueLines(Collections.singletonList("tmm=tamam"))
+        .save(compiled.toFile());
+    FileTime time = Files.getLastModifiedTime(path);
+    Files.setLastModifiedTime(compiled, FileTime.fromMillis(time.toMillis() + 1000));
+    Assert.assertEquals("tamam",
+        TurkishSentenceNormalizer.loadLookup(path, true).getFirst("tmm"));
+    // text file is edited after compilation, stale compiled file is not used.
+    Files.setLastModifiedTime(compiled, FileTime.fromMillis(time.toMillis() - 1000));
+    table = TurkishSentenceNormalizer.loadLookup(path, true);
+    Assert.assertFalse(table.containsKey("tmm"));
+    Assert.assertEquals("selam", table.getFirst("slm"));
+  }
+
+  @Test
+  public void emptyTable() throws IOException {
+    CompactLookupTable table = CompactLookupTable.from(ArrayListMultimap.create());
+    Assert.assertEquals(0, table.size());
+    Assert.assertFalse(table.containsKey("a"));
+    File file = File.createTempFile("lookup", ".compact");
+    file.deleteOnExit();
+    table.save(file);
+    Assert.assertEquals(0, CompactLookupTable.loadMapped(file).size());
+  }
+
+  @Test
+  public void saveAndLoad() throws IOException {
+    ArrayListMultimap<String, String> map = randomMap(3000, new Random(2));
+    File file = File.createTempFile("lookup", ".compact");
+    file.deleteOnExit();
+    CompactLookupTable.from(map).save(file);
+    check(map, CompactLookupTable.load(file));
+    check(map, CompactLookupTable.loadMapped(file));
+  }
+}
@@ -0,0 +1,68 @@
+package zemberek.normalization;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+
+public class PackedCharacterGraphTest {
+
+  // collects all words reachable from node using rank offsets.
+  private static void collect(PackedCharacterGraph graph, int node, int rank, Set<String> words) {
+    if (graph.isTerminal(node)) {
+      words.add(graph.getWord(rank));
+    }
+    for (int t = graph.transitionStart[node]; t < graph.transitionStart[node + 1]; t++) {
+      collect(graph, graph.targets[t], rank + graph.rankOffset(t), words);
+    }
+  }
+
+  @Test
+  public void sharedSuffixesAreMerged() {
+    CharacterGraph graph = new CharacterGraph();
+    List<String> words = Lists.newArrayList(
+        "elmalar", "armutlar", "kediler", "elma", "armut", "kedi", "ler");
+    for (String word : words) {
+      graph.addWord(word, Node.TYPE_WORD);
+    }
+    PackedCharacterGraph packed = PackedCharacterGraph.from(graph);
+    Assert.assertTrue(packed.getNodeCount() < graph.getAllNodes().size());
+    Assert.assertEquals(words.size(), packed.getWordCount());
+
+    Set<String> found = new HashSet<>();
+    collect(packed, packed.getRoot(), 0, found);
+    Assert.assertEquals(new HashSet<>(words), found);
+  }
+
+  @Test
+  public void stemEndingWords() {
+    TurkishMorphology morphology = TurkishMorphology.builder()
+        .setLexicon("bakmak", "gelmek", "elma").build();
+    List<String> endings = Lists.newArrayList("acak", "ecek", "lar", "ler");
+    StemEndingGraph graph = new StemEndingGraph(morphology, endings);
+    PackedCharacterGraph packed = PackedCharacterGraph.from(graph.stemGraph);
+
+    List<String> suggestions = new ArrayList<>();
+    CharacterGraphDecoder decoder = new CharacterGraphDecoder(packed);
+    suggestions.addAll(decoder.getSuggestions("bakcak"));
+    suggestions.addAll(decoder.getSuggestions("elmlar"));
+    Assert.assertTrue(suggestions.contains("bakacak"));
+    Assert.assertTrue(suggestions.contains("elmalar"));
+    // mutable and packed graphs give same results.
+    CharacterGraphDecoder mutable = new CharacterGraphDecoder(graph.stemGraph);
+    Assert.assertEquals(
+        new HashSet<>(mutable.getSuggestions("gelcek")),
+        new HashSet<>(decoder.getSuggestions("gelcek")));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void packedDecoderIsImmutable() {
+    CharacterGraph graph = new CharacterGraph();
+    graph.addWord("elma", Node.TYPE_WORD);
+    new CharacterGraphDecoder(PackedCharacterGraph.from(graph)).addWord("armut");
+  }
+}
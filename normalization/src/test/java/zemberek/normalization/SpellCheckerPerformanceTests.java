@@ -6,13 +6,18 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import org.junit.Ignore;
 import org.junit.Test;
 import zemberek.core.collections.Histogram;
 import zemberek.core.logging.Log;
+import zemberek.core.text.TextIO;
 import zemberek.morphology.TurkishMorphology;
+import zemberek.normalization.CharacterGraphDecoder.CharMatcher;
 import zemberek.tokenization.TurkishSentenceExtractor;
 import zemberek.tokenization.TurkishTokenizer;
 import zemberek.tokenization.Token;
@@ -60,5 +65,51 @@ public class SpellCheckerPerformanceTests {
 */
   }
 
+  @Test
+  @Ignore("Speed Test")
+  public void suggestionEngineSpeedComparison() throws Exception {
+    List<String> words = TextIO.loadLinesFromResource("10000_frequent_turkish_word");
+    // every word has a single random edit.
+    Random random = new Random(1);
+    String letters = "abcçdefgğhıijklmnoöprsştuüvyz";
+    List<String> inputs = new ArrayList<>(words.size());
+    for (String word : words) {
+      int i = random.nextInt(word.length());
+      char c = letters.charAt(random.nextInt(letters.length()));
+      inputs.add(random.nextBoolean() ?
+          word.substring(0, i) + c + word.substring(i + 1) :
+          word.substring(0, i) + c + word.substring(i));
+    }
+    CharMatcher matcher = CharacterGraphDecoder.DIACRITICS_IGNORING_MATCHER;
+
+    Stopwatch sw = Stopwatch.createStarted();
+    CharacterGraphDecoder decoder = new CharacterGraphDecoder();
+    decoder.addWords(words);
+    decoder.getSuggestions("elma");
+    Log.info("Word graph decoder generated in %d ms.", sw.elapsed(TimeUnit.MILLISECONDS));
+    sw = Stopwatch.createStarted();
+    SymmetricDeleteIndex index = SymmetricDeleteIndex.fromWords(words);
+    Log.info("Symmetric delete index generated in %d ms. Keys = %d, Size = %d KB",
+        sw.elapsed(TimeUnit.MILLISECONDS), index.getKeyCount(), index.sizeInBytes() / 1024);
+    StemEndingGraph graph = new StemEndingGraph(TurkishMorphology.createWithDefaults());
+    CharacterGraphDecoder stemEndingDecoder =
+        new CharacterGraphDecoder(graph.getPackedGraph());
+
+    for (int i = 0; i < 5; i++) {
+      measure("Word graph decoder", inputs, s -> decoder.getSuggestions(s, matcher));
+      measure("Symmetric delete index", inputs, s -> index.getSuggestions(s, matcher));
+      measure("Stem ending graph decoder", inputs,
+          s -> stemEndingDecoder.getSuggestions(s, matcher));
+    }
+  }
 
+  private void measure(String name, List<String> inputs, Function<String, List<String>> engine) {
+    Stopwatch sw = Stopwatch.createStarted();
+    long total = 0;
+    for (String input : inputs) {
+      total += engine.apply(input).size();
+    }
+    Log.info("%s: %d inputs, %d suggestions in %d ms.", name, inputs.size(), total,
+        sw.elapsed(TimeUnit.MILLISECONDS));
+  }
 }
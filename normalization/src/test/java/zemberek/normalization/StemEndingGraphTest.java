@@ -0,0 +1,92 @@
+package zemberek.normalization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek.morphology.TurkishMorphology;
+
+public class StemEndingGraphTest {
+
+  @Test
+  public void saveAndLoad() throws IOException {
+    TurkishMorphology morphology = TurkishMorphology.builder()
+        .setLexicon("bakmak", "gelmek", "elma", "Türkiye").build();
+    StemEndingGraph graph = new StemEndingGraph(morphology);
+    Path path = Files.createTempFile("stem-ending", ".bin");
+    path.toFile().deleteOnExit();
+    graph.save(path);
+
+    StemEndingGraph loaded = StemEndingGraph.load(path, morphology);
+    Assert.assertNull(loaded.stemGraph);
+    Assert.assertEquals(graph.getLexiconKey(), loaded.getLexiconKey());
+    CharacterGraphDecoder expected = new CharacterGraphDecoder(graph.getPackedGraph());
+    CharacterGraphDecoder actual = new CharacterGraphDecoder(loaded.getPackedGraph());
+    for (String input : new String[]{"bakcak", "elmlar", "türkiyde", "gelecek"}) {
+      Assert.assertEquals(
+          new HashSet<>(expected.getSuggestions(input)),
+          new HashSet<>(actual.getSuggestions(input)));
+    }
+    Assert.assertTrue(actual.getSuggestions("bakcak").contains("bakacak"));
+  }
+
+  @Test
+  public void lexiconKey() throws IOException {
+    TurkishMorphology m1 = TurkishMorphology.builder().setLexicon("elma", "armut").build();
+    TurkishMorphology m2 = TurkishMorphology.builder().setLexicon("armut", "elma").build();
+    TurkishMorphology m3 = TurkishMorphology.builder().setLexicon("elma", "ayva").build();
+    StemEndingGraph graph = new StemEndingGraph(m1);
+    Assert.assertEquals(graph.getLexiconKey(), new StemEndingGraph(m2).getLexiconKey());
+    Assert.assertNotEquals(graph.getLexiconKey(), new StemEndingGraph(m3).getLexiconKey());
+
+    Path path = Files.createTempFile("stem-ending", ".bin");
+    path.toFile().deleteOnExit();
+    graph.save(path);
+    try {
+      StemEndingGraph.load(path, m3);
+      Assert.fail("Graph of another lexicon should not be loaded.");
+    } catch (IllegalArgumentException e) {
+      // expected.
+    }
+    // rebuilt and saved for the new lexicon.
+    StemEndingGraph rebuilt = StemEndingGraph.loadOrBuild(path, m3);
+    Assert.assertNotNull(rebuilt.stemGraph);
+    Assert.assertNull(StemEndingGraph.loadOrBuild(path, m3).stemGraph);
+  }
+
+  @Test
+  public void corruptFileIsRebuilt() throws IOException {
+    TurkishMorphology morphology = TurkishMorphology.builder()
+        .setLexicon("elma", "armut").build();
+    Path path = Files.createTempFile("stem-ending", ".bin");
+    path.toFile().deleteOnExit();
+    new StemEndingGraph(morphology).save(path);
+    byte[] bytes = Files.readAllBytes(path);
+
+    // truncated file.
+    Files.write(path, Arrays.copyOf(bytes, bytes.length / 2));
+    Assert.assertNotNull(StemEndingGraph.loadOrBuild(path, morphology).stemGraph);
+    Assert.assertNull(StemEndingGraph.loadOrBuild(path, morphology).stemGraph);
+
+    // bad magic.
+    Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    Assert.assertNotNull(StemEndingGraph.loadOrBuild(path, morphology).stemGraph);
+    Assert.assertNull(StemEndingGraph.loadOrBuild(path, morphology).stemGraph);
+
+    // empty file.
+    Files.write(path, new byte[0]);
+    Assert.assertNotNull(StemEndingGraph.loadOrBuild(path, morphology).stemGraph);
+    Assert.assertNull(StemEndingGraph.loadOrBuild(path, morphology).stemGraph);
+
+    // corrupt word count after a valid header causes a negative array size.
+    byte[] corrupt = bytes.clone();
+    ByteBuffer.wrap(corrupt).putInt(32, Integer.MAX_VALUE);
+    Files.write(path, corrupt);
+    Assert.assertNotNull(StemEndingGraph.loadOrBuild(path, morphology).stemGraph);
+    Assert.assertNull(StemEndingGraph.loadOrBuild(path, morphology).stemGraph);
+  }
+}
@@ -0,0 +1,135 @@
+package zemberek.normalization;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek.core.ScoredItem;
+import zemberek.core.collections.Histogram;
+import zemberek.core.text.TextIO;
+
+public class SymmetricDeleteIndexTest {
+
+  @Test
+  public void simpleSuggestionTest() {
+    SymmetricDeleteIndex index = SymmetricDeleteIndex.fromWords(
+        Lists.newArrayList("elma", "armut", "ayva", "elmas"));
+    Assert.assertEquals(Lists.newArrayList("elma"), index.getSuggestions("emla", null));
+    Assert.assertEquals(Lists.newArrayList("armut"), index.getSuggestions("armt", null));
+    Assert.assertEquals(Lists.newArrayList("ayva"), index.getSuggestions("aybva", null));
+    Assert.assertEquals(Lists.newArrayList("elma", "elmas"), index.getSuggestions("elma", null));
+    Assert.assertEquals(0, index.getSuggestions("kiraz", null).size());
+  }
+
+  @Test
+  public void scoreAndFrequencyOrderTest() {
+    Histogram<String> histogram = new Histogram<>();
+    histogram.add("kalem", 3);
+    histogram.add("kelem", 10);
+    histogram.add("kale", 5);
+    SymmetricDeleteIndex index = SymmetricDeleteIndex.fromHistogram(histogram);
+    List<ScoredItem<String>> res = index.getSuggestionsWithScores("kalem", null);
+    Assert.assertEquals(3, res.size());
+    Assert.assertEquals("kalem", res.get(0).item);
+    Assert.assertEquals(0, res.get(0).score, 0.0001);
+    Assert.assertEquals("kelem", res.get(1).item);
+    Assert.assertEquals(1, res.get(1).score, 0.0001);
+    Assert.assertEquals("kale", res.get(2).item);
+  }
+
+  @Test
+  public void matcherTest() {
+    SymmetricDeleteIndex index = SymmetricDeleteIndex.fromWords(
+        Lists.newArrayList("çocuk", "şişe", "ığdır"));
+    CharacterGraphDecoder.CharMatcher matcher = CharacterGraphDecoder.DIACRITICS_IGNORING_MATCHER;
+    List<ScoredItem<String>> res = index.getSuggestionsWithScores("cocuk", null);
+    Assert.assertEquals(1, res.size());
+    Assert.assertEquals(1, res.get(0).score, 0.0001);
+    res = index.getSuggestionsWithScores("cocuk", matcher);
+    Assert.assertEquals(1, res.size());
+    Assert.assertEquals("çocuk", res.get(0).item);
+    Assert.assertEquals(0, res.get(0).score, 0.0001);
+    Assert.assertEquals(Lists.newArrayList("şişe"), index.getSuggestions("sise", matcher));
+    Assert.assertEquals(Lists.newArrayList("ığdır"), index.getSuggestions("ıgdr", matcher));
+  }
+
+  @Test
+  public void longWordTest() {
+    // edits after the indexed prefix should also be found.
+    SymmetricDeleteIndex index = SymmetricDeleteIndex.fromWords(
+        Lists.newArrayList("kitaplaştırmak", "kitaplar"));
+    Assert.assertEquals(Lists.newArrayList("kitaplaştırmak"),
+        index.getSuggestions("kitaplaştırmka", null));
+    Assert.assertEquals(Lists.newArrayList("kitaplaştırmak"),
+        index.getSuggestions("kiatplaştırmak", null));
+    Assert.assertEquals(Lists.newArrayList("kitaplar"),
+        index.getSuggestions("kitaplarr", null));
+  }
+
+  @Test
+  public void decoderParityTest() throws IOException {
+    List<String> words = TextIO.loadLinesFromResource("10000_frequent_turkish_word");
+    SymmetricDeleteIndex index = SymmetricDeleteIndex.fromWords(words);
+    CharacterGraphDecoder decoder = new CharacterGraphDecoder(1);
+    decoder.addWords(words);
+
+    Random random = new Random(1);
+    List<String> inputs = new ArrayList<>();
+    for (String word : words.subList(0, 1000)) {
+      inputs.add(word);
+      inputs.add(edit(word, random));
+    }
+    for (String input : inputs) {
+      Assert.assertEquals(input,
+          new HashSet<>(decoder.getSuggestions(input, null)),
+          new HashSet<>(index.getSuggestions(input, null)));
+      Assert.assertEquals(input,
+          new HashSet<>(decoder.getSuggestions(
+              input, CharacterGraphDecoder.DIACRITICS_IGNORING_MATCHER)),
+          new HashSet<>(index.getSuggestions(
+              input, CharacterGraphDecoder.DIACRITICS_IGNORING_MATCHER)));
+    }
+  }
+
+  private static String edit(String word, Random random) {
+    String letters = "abcçdefgğhıijklmnoöprsştuüvyz";
+    int i = random.nextInt(word.length());
+    char c = letters.charAt(random.nextInt(letters.length()));
+    switch (random.nextInt(4)) {
+      case 0:
+        return word.substring(0, i) + c + word.substring(i + 1);
+      case 1:
+        return word.substring(0, i) + c + word.substring(i);
+      case 2:
+        return word.length() > 1 ? word.substring(0, i) + word.substring(i + 1) : word;
+      default:
+        return i < word.length() - 1 ?
+            word.substring(0, i) + word.charAt(i + 1) + word.charAt(i) + word.substring(i + 2)
+            : word;
+    }
+  }
+
+  @Test
+  public void saveLoadTest() throws IOException {
+    Histogram<String> histogram = new Histogram<>();
+    histogram.add("elma", 2);
+    histogram.add("elmas", 1);
+    histogram.add("şeker", 4);
+    SymmetricDeleteIndex index = SymmetricDeleteIndex.fromHistogram(histogram);
+    Path tmp = Files.createTempFile("sym", ".bin");
+    tmp.toFile().deleteOnExit();
+    index.save(tmp);
+    SymmetricDeleteIndex loaded = SymmetricDeleteIndex.load(tmp);
+    Assert.assertEquals(index.getWordCount(), loaded.getWordCount());
+    Assert.assertEquals(index.getKeyCount(), loaded.getKeyCount());
+    Assert.assertEquals(index.getSuggestions("elma", null), loaded.getSuggestions("elma", null));
+    Assert.assertEquals(Lists.newArrayList("şeker"),
+        loaded.getSuggestions("seker", CharacterGraphDecoder.DIACRITICS_IGNORING_MATCHER));
+  }
+}
@@ -0,0 +1,160 @@
+package zemberek.normalization;
+
+import com.google.common.base.Charsets;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import zemberek.lm.NgramLanguageModel;
+import zemberek.lm.backoff.SimpleBackoffNgramModel;
+import zemberek.morphology.TurkishMorphology;
+
+public class TurkishSentenceNormalizerTest {
+
+  static final List<String> SENTENCES = Arrays.asList(
+      "slm nasılsın",
+      "",
+      "bugun hava cok guzel",
+      "   ",
+      "yarn gelcem slm",
+      "hava çok güzl",
+      "slm slm yarn");
+
+  static TurkishMorphology morphology;
+  static Path dataRoot;
+  static NgramLanguageModel lm;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    morphology = TurkishMorphology.builder()
+        .setLexicon("selam", "nasıl", "bugün", "hava", "çok", "güzel [P:Adj]", "yarın",
+            "gelmek")
+        .disableCache()
+        .build();
+    dataRoot = Files.createTempDirectory("normalizer");
+    dataRoot.toFile().deleteOnExit();
+    // blank lines are ignored.
+    write("lookup-from-graph", "slm=selam", "", "yarn=yarın", "gelcem=geleceğim", "");
+    write("ascii-map", "bugun=bugün", "cok=çok", "guzel=güzel");
+    write("split");
+    Path arpa = write("test.arpa",
+        "\\data\\",
+        "ngram 1=10",
+        "ngram 2=4",
+        "",
+        "\\1-grams:",
+        "-1.0 <s> -0.5",
+        "-1.0 </s>",
+        "-1.5 selam -0.3",
+        "-1.5 nasılsın -0.3",
+        "-1.5 bugün -0.3",
+        "-1.5 hava -0.3",
+        "-1.5 çok -0.3",
+        "-1.5 güzel -0.3",
+        "-1.5 yarın -0.3",
+        "-2.0 <unk>",
+        "",
+        "\\2-grams:",
+        "-0.2 <s> selam",
+        "-0.2 selam nasılsın",
+        "-0.2 hava çok",
+        "-0.2 çok güzel",
+        "",
+        "\\end\\");
+    lm = SimpleBackoffNgramModel.fromArpa(arpa.toFile());
+  }
+
+  private static Path write(String name, String... lines) throws IOException {
+    Path path = dataRoot.resolve(name);
+    Files.write(path, Arrays.asList(lines), Charsets.UTF_8);
+    path.toFile().deleteOnExit();
+    return path;
+  }
+
+  static TurkishSentenceNormalizer normalizer() throws IOException {
+    return new TurkishSentenceNormalizer(morphology, dataRoot, lm);
+  }
+
+  static List<String> oneByOne(TurkishSentenceNormalizer normalizer) {
+    List<String> result = new ArrayList<>();
+    for (String sentence : SENTENCES) {
+      result.add(normalizer.normalize(sentence));
+    }
+    return result;
+  }
+
+  @Test
+  public void batchAndSingleResultsAreSame() throws IOException {
+    List<String> expected = oneByOne(normalizer());
+    Assert.assertEquals("", expected.get(1));
+    Assert.assertEquals("   ", expected.get(3));
+    Assert.assertEquals("selam nasılsın", expected.get(0));
+    Assert.assertEquals("bugün hava çok güzel", expected.get(2));
+
+    Assert.assertEquals(expected, normalizer().normalize(SENTENCES));
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      TurkishSentenceNormalizer normalizer = normalizer();
+      normalizer.setCandidateExecutor(executor);
+      Assert.assertEquals(expected, normalizer.normalize(SENTENCES));
+      Assert.assertEquals(expected, oneByOne(normalizer));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void cacheDoesNotChangeResults() throws IOException {
+    TurkishSentenceNormalizer normalizer = normalizer();
+    Assert.assertNull(normalizer.getCandidateCache());
+    List<String> expected = normalizer.normalize(SENTENCES);
+
+    CandidateCache cache = new CandidateCache(100);
+    normalizer.setCandidateCache(cache);
+    // cold cache.
+    Assert.assertEquals(expected, normalizer.normalize(SENTENCES));
+    Assert.assertEquals(0, cache.getHitCount());
+    Assert.assertTrue(cache.size() > 0);
+    // warm cache.
+    Assert.assertEquals(expected, normalizer.normalize(SENTENCES));
+    Assert.assertEquals(expected, oneByOne(normalizer));
+    Assert.assertTrue(cache.getHitCount() > 0);
+
+    Path path = Files.createTempFile("candidates", ".bin");
+    path.toFile().deleteOnExit();
+    cache.save(path);
+    CandidateCache loaded = CandidateCache.load(path);
+    Assert.assertEquals(cache.size(), loaded.size());
+    TurkishSentenceNormalizer other = normalizer();
+    other.setCandidateCache(loaded);
+    Assert.assertEquals(expected, other.normalize(SENTENCES));
+    Assert.assertEquals(0, loaded.getMissCount());
+  }
+
+  @Test
+  public void stemEndingGraphFileIsOptIn() throws IOException {
+    List<String> expected = normalizer().normalize(SENTENCES);
+    try (Stream<Path> files = Files.list(dataRoot)) {
+      Assert.assertFalse(files.anyMatch(p -> p.toString().endsWith(".bin")));
+    }
+    Path graphPath = Files.createTempFile("stem-ending", ".bin");
+    graphPath.toFile().deleteOnExit();
+    Files.delete(graphPath);
+    TurkishSentenceNormalizer normalizer =
+        new TurkishSentenceNormalizer(morphology, dataRoot, lm, graphPath);
+    Assert.assertTrue(Files.exists(graphPath));
+    Assert.assertEquals(expected, normalizer.normalize(SENTENCES));
+    // second one loads the saved graph.
+    normalizer = new TurkishSentenceNormalizer(morphology, dataRoot, lm, graphPath);
+    Assert.assertEquals(expected, normalizer.normalize(SENTENCES));
+  }
+}
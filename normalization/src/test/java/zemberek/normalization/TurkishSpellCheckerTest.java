@@ -11,6 +11,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
 import org.junit.FixMethodOrder;
@@ -22,6 +24,7 @@ import zemberek.core.text.TextIO;
 import zemberek.lm.NgramLanguageModel;
 import zemberek.lm.compression.SmoothLm;
 import zemberek.morphology.TurkishMorphology;
+import zemberek.normalization.TurkishSpellChecker.Misspelling;
 
 @FixMethodOrder(MethodSorters.JVM)
 public class TurkishSpellCheckerTest {
@@ -76,6 +79,46 @@ public class TurkishSpellCheckerTest {
     }
   }
 
+  @Test
+  public void checkDocumentTest() throws Exception {
+    TurkishMorphology morphology = TurkishMorphology.builder()
+        .disableCache()
+        .setLexicon("elma", "armut", "güzel [P:Adj]", "Ankara")
+        .build();
+    StemEndingGraph graph = new StemEndingGraph(morphology, Lists.newArrayList("lar", "da"));
+    TurkishSpellChecker spellChecker = new TurkishSpellChecker(morphology, graph.stemGraph);
+
+    String document = "Elmlar güzel. Ankara'da armutlar ve elmlar, xyzq.";
+    List<Misspelling> result = spellChecker.checkDocument(document);
+    Assert.assertEquals(4, result.size());
+
+    Misspelling first = result.get(0);
+    Assert.assertEquals("Elmlar", first.getText());
+    Assert.assertEquals(0, first.getStart());
+    Assert.assertEquals(5, first.getEnd());
+    Assert.assertEquals(Lists.newArrayList("Elmalar"), first.getSuggestions());
+
+    Misspelling ve = result.get(1);
+    Assert.assertEquals("ve", ve.getText());
+    Assert.assertEquals(document.indexOf(" ve ") + 1, ve.getStart());
+
+    Misspelling second = result.get(2);
+    Assert.assertEquals("elmlar", second.getText());
+    Assert.assertEquals(document.lastIndexOf("elmlar"), second.getStart());
+    Assert.assertEquals(Lists.newArrayList("elmalar"), second.getSuggestions());
+
+    Assert.assertEquals("xyzq", result.get(3).getText());
+    Assert.assertTrue(result.get(3).getSuggestions().isEmpty());
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      spellChecker.setExecutor(executor);
+      Assert.assertEquals(result.toString(), spellChecker.checkDocument(document).toString());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   //TODO: check for ordinals.
   @Test
   public void formatNumbersTest() throws IOException {
@@ -164,9 +207,9 @@ public class TurkishSpellCheckerTest {
   }
 
   private void run(TurkishSpellChecker spellChecker, NgramLanguageModel lm) throws Exception {
-    Log.info("Node count = %d", spellChecker.decoder.getGraph().getAllNodes().size());
-    Log.info("Node count with single connection= %d",
-        spellChecker.decoder.getGraph().getAllNodes(a -> a.getAllChildNodes().size() == 1).size());
+    PackedCharacterGraph graph = spellChecker.decoder.getPackedGraph();
+    Log.info("Node count = %d, transition count = %d, size = %d bytes",
+        graph.getNodeCount(), graph.getTransitionCount(), graph.sizeInBytes());
 
     List<String> words = TextIO.loadLinesFromResource("10000_frequent_turkish_word");
     int c = 0;
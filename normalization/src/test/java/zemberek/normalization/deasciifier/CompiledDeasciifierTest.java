@@ -0,0 +1,120 @@
+package zemberek.normalization.deasciifier;
+
+import com.google.common.base.Stopwatch;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import zemberek.core.logging.Log;
+import zemberek.core.text.TextIO;
+import zemberek.core.turkish.TurkishAlphabet;
+
+public class CompiledDeasciifierTest {
+
+  @Test
+  public void sentenceTest() {
+    CompiledDeasciifier deasciifier = Deasciifier.compiled();
+    for (int i = 0; i < TestDeasciifier.asciiStrings.length; i++) {
+      String input = TestDeasciifier.asciiStrings[i];
+      Assert.assertEquals(Deasciifier.deasciify(input), deasciifier.deasciify(input));
+    }
+    Assert.assertEquals("Böğürtüler öpücükler.",
+        deasciifier.deasciify("Bogurtuler opucukler."));
+  }
+
+  @Test
+  public void corpusParityTest() throws IOException {
+    CompiledDeasciifier deasciifier = Deasciifier.compiled();
+    for (String line : loadInputs()) {
+      for (int contextSize = 0; contextSize <= 12; contextSize++) {
+        Assert.assertEquals(line,
+            Deasciifier.deasciify(line, contextSize),
+            deasciifier.deasciify(line, contextSize));
+      }
+    }
+  }
+
+  @Test
+  public void randomParityTest() {
+    CompiledDeasciifier deasciifier = Deasciifier.compiled();
+    String chars = "abcçdefgğhıijklmnoöprsştuüvyzqwxABCÇDEFGĞHIİJKLMNOÖPRSŞTUÜVYZQWX"
+        + "âî0123456789 .,'-!\n\t";
+    Random random = new Random(1);
+    for (int i = 0; i < 2000; i++) {
+      char[] buffer = new char[random.nextInt(40)];
+      for (int j = 0; j < buffer.length; j++) {
+        buffer[j] = chars.charAt(random.nextInt(chars.length()));
+      }
+      // only a prefix of the buffer is converted but context may exceed it.
+      int length = buffer.length == 0 ? 0 : random.nextInt(buffer.length + 1);
+      char[] expected = buffer.clone();
+      char[] actual = buffer.clone();
+      Assert.assertEquals(
+          Deasciifier.deasciify(expected, length),
+          deasciifier.deasciify(actual, length));
+      Assert.assertEquals(new String(expected), new String(actual));
+    }
+  }
+
+  @Test
+  public void automatonTest() {
+    Map<String, Integer> patterns = new HashMap<>();
+    patterns.put("aX", 3);
+    patterns.put("Xb", -2);
+    patterns.put("aXb", 5);
+    patterns.put("bb", -1);
+    CompiledDeasciifier.PatternAutomaton automaton =
+        CompiledDeasciifier.PatternAutomaton.compile(patterns);
+    // "Xb" has the smallest rank among patterns containing X.
+    Assert.assertFalse(automaton.matches("aXbb".toCharArray(), 4, 1));
+    Assert.assertTrue(automaton.matches("aXc".toCharArray(), 3, 1));
+    // "bb" does not contain X so default rank (size * 2) is used.
+    Assert.assertTrue(automaton.matches("cXcbb".toCharArray(), 5, 1));
+  }
+
+  private static List<String> loadInputs() throws IOException {
+    List<String> lines = TextIO.loadLinesFromResource("spell-checker-test.txt");
+    List<String> inputs = new ArrayList<>();
+    for (String line : lines) {
+      inputs.add(line);
+      inputs.add(TurkishAlphabet.INSTANCE.toAscii(line));
+    }
+    return inputs;
+  }
+
+  @Test
+  @Ignore("Speed Test")
+  public void speedComparison() throws IOException {
+    List<String> inputs = loadInputs();
+    CompiledDeasciifier deasciifier = Deasciifier.compiled();
+    long charCount = 0;
+    for (String input : inputs) {
+      charCount += input.length();
+    }
+    int iterations = 20;
+    for (int k = 0; k < 3; k++) {
+      Stopwatch sw = Stopwatch.createStarted();
+      for (int i = 0; i < iterations; i++) {
+        for (String input : inputs) {
+          Deasciifier.deasciify(input);
+        }
+      }
+      long original = sw.elapsed(TimeUnit.MILLISECONDS);
+      sw = Stopwatch.createStarted();
+      for (int i = 0; i < iterations; i++) {
+        for (String input : inputs) {
+          deasciifier.deasciify(input);
+        }
+      }
+      long compiled = sw.elapsed(TimeUnit.MILLISECONDS);
+      Log.info("%d chars. Deasciifier = %d ms, CompiledDeasciifier = %d ms",
+          charCount * iterations, original, compiled);
+    }
+  }
+}
@@ -0,0 +1,377 @@
+package zemberek.tokenization;
+
+import com.google.common.collect.Sets;
+import java.util.Set;
+import zemberek.tokenization.Token.Type;
+
+/**
+ * A single pass, character class based classifier for inputs that are expected to be a single
+ * token, such as words given to morphological analysis. It mirrors the rules of TurkishLexer for
+ * common token types (words, numbers, dates, times, punctuation, emoticons, urls, e-mails, hash
+ * tags and mentions) so that lexer does not need to run for them.
+ * <p>
+ * If classifier is not certain that the lexer would generate exactly one token of a type for the
+ * whole input, it returns null. In that case tokenizer should be used.
+ */
+public class SingleTokenClassifier {
+
+  private static final String PUNCTUATION_CHARS = ">‘…=.,!?%$&*+@:;®™©℠\\-/()[]{}^'’\"”“»«";
+
+  private static final Set<String> MULTI_CHAR_PUNCTUATION = Sets.newHashSet("...", "(!)", "(?)");
+
+  private static final Set<String> EMOTICONS = Sets.newHashSet(
+      ":)", ":-)", ":-]", ":D", ":-D", "8-)", ";)", ";\u2011)", ":(", ":-(", ":'(", ":')",
+      ":P", ":p", ":|", "=|", "=)", "=(",
+      ":\u2011/", ":/", ":^)", "¯\\_(ツ)_/¯", "O_o", "o_O", "O_O", "\\o/", "<3");
+
+  private static final String TURKISH_LETTERS = "çğıöşüâîûÇĞİÖŞÜÂÎÛ";
+  private static final String URL_FRAGMENT_SYMBOLS = "-_/?&+;=[].";
+
+  /**
+   * Returns the token type of the input if TurkishLexer would produce a single token for it and
+   * the type is one of the types this classifier can decide. Otherwise returns null.
+   */
+  public static Type classify(String input) {
+    int length = input.length();
+    if (length == 0) {
+      return null;
+    }
+    char first = input.charAt(0);
+
+    if (length == 1 && PUNCTUATION_CHARS.indexOf(first) >= 0) {
+      return Type.Punctuation;
+    }
+    if (MULTI_CHAR_PUNCTUATION.contains(input)) {
+      return Type.Punctuation;
+    }
+    if (EMOTICONS.contains(input)) {
+      return Type.Emoticon;
+    }
+
+    // input may end with an apostrophe and letters, like `Ankara'ya` or `3'te`
+    int body = suffixStart(input);
+    if (body == 0) {
+      return null;
+    }
+
+    if (isDigit(first) || first == '+' || first == '-') {
+      return classifyNumeral(input, body);
+    }
+    if (first == '%') {
+      return numberBodyEnd(input, 1, body) == body ? Type.PercentNumeral : null;
+    }
+    if (first == '#' || first == '@') {
+      if (body > 1 && allAlphanumericalUnderscore(input, 1, body)) {
+        return first == '#' ? Type.HashTag : Type.Mention;
+      }
+      return null;
+    }
+    if (isUrl(input, body)) {
+      return Type.URL;
+    }
+    if (isEmail(input, body)) {
+      return Type.Email;
+    }
+    return classifyWord(input, body);
+  }
+
+  // words, roman numerals and alphanumerical words. Input does not start with a digit.
+  private static Type classifyWord(String input, int body) {
+    boolean allLetters = true;
+    boolean allRoman = true;
+    for (int i = 0; i < body; i++) {
+      char c = input.charAt(i);
+      if (!isLetter(c)) {
+        allLetters = false;
+        if (!isDigit(c)) {
+          return null;
+        }
+      }
+      if ("ILVCDMX".indexOf(c) < 0) {
+        allRoman = false;
+      }
+    }
+    if (allRoman) {
+      return Type.RomanNumeral;
+    }
+    if (body < input.length()) {
+      return body > 1 ? Type.WordWithSymbol : null;
+    }
+    return allLetters ? Type.Word : Type.WordAlphanumerical;
+  }
+
+  // inputs starting with a digit or sign character.
+  private static Type classifyNumeral(String input, int body) {
+    if (isTime(input, body)) {
+      return Type.Time;
+    }
+    if (isDate(input, body)) {
+      return Type.Date;
+    }
+    if (numberBodyEnd(input, 0, body) == body) {
+      return Type.Number;
+    }
+    // alphanumerical words starting with a digit, like `3G`, `1e10` or `2'de` is handled above.
+    if (isDigit(input.charAt(0))) {
+      if (exponentEnd(input, 0, body) == body) {
+        return Type.Number;
+      }
+      if (allAlphanumerical(input, 0, body)) {
+        if (body < input.length()) {
+          return body > 1 ? Type.WordWithSymbol : null;
+        }
+        return Type.WordAlphanumerical;
+      }
+    }
+    return null;
+  }
+
+  // Returns the start index of the apostrophe suffix. If there is no such suffix, returns input
+  // length. If input ends with an apostrophe that is not followed by letters, returns 0.
+  private static int suffixStart(String input) {
+    int i = input.length() - 1;
+    while (i >= 0 && isLetter(input.charAt(i))) {
+      i--;
+    }
+    if (i < 0 || i == input.length() - 1) {
+      return isApostrophe(input.charAt(input.length() - 1)) ? 0 : input.length();
+    }
+    return isApostrophe(input.charAt(i)) ? i : input.length();
+  }
+
+  // Number rule of TurkishLexer without exponent and apostrophe suffix. Returns `end` if input
+  // between `start` and `end` is a number, otherwise -1.
+  private static int numberBodyEnd(String input, int start, int end) {
+    int i = start;
+    boolean signed = false;
+    if (i < end && (input.charAt(i) == '+' || input.charAt(i) == '-')) {
+      i++;
+      signed = true;
+    }
+    int j = digitsEnd(input, i, end);
+    if (j == i) {
+      return -1;
+    }
+    if (j == end) {
+      return end;
+    }
+    char separator = input.charAt(j);
+    // ordinal, like `2.`
+    if (separator == '.' && j == end - 1 && !signed) {
+      return end;
+    }
+    if (separator == '/') {
+      int k = digitsEnd(input, j + 1, end);
+      return k > j + 1 && k == end ? end : -1;
+    }
+    if (separator != '.' && separator != ',') {
+      return -1;
+    }
+    // `-1.35`, `1.000.000` or `2,345,531`
+    int groupCount = 0;
+    while (j < end && input.charAt(j) == separator) {
+      int k = digitsEnd(input, j + 1, end);
+      if (k == j + 1) {
+        return -1;
+      }
+      groupCount++;
+      j = k;
+    }
+    if (j != end) {
+      return -1;
+    }
+    return groupCount == 1 || !signed ? end : -1;
+  }
+
+  // [0-9]+ [Ee] [+-]? [0-9]+
+  private static int exponentEnd(String input, int start, int end) {
+    int i = digitsEnd(input, start, end);
+    if (i == start || i == end || (input.charAt(i) != 'e' && input.charAt(i) != 'E')) {
+      return -1;
+    }
+    i++;
+    if (i < end && (input.charAt(i) == '+' || input.charAt(i) == '-')) {
+      i++;
+    }
+    int j = digitsEnd(input, i, end);
+    return j > i ? j : -1;
+  }
+
+  // [0-2][0-9] [:.] [0-5][0-9] ([:.] [0-5][0-9])?
+  private static boolean isTime(String input, int end) {
+    if (end != 5 && end != 8) {
+      return false;
+    }
+    char c = input.charAt(0);
+    if (c < '0' || c > '2' || !isDigit(input.charAt(1))) {
+      return false;
+    }
+    for (int i = 2; i < end; i += 3) {
+      char separator = input.charAt(i);
+      char minute = input.charAt(i + 1);
+      if ((separator != ':' && separator != '.')
+          || minute < '0' || minute > '5'
+          || !isDigit(input.charAt(i + 2))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // [0-3]?[0-9] [./] [0-1]?[0-9] [./] ([1][7-9][0-9][0-9]|[2][0][0-9][0-9]|[0-9][0-9])
+  // Separators must be the same character.
+  private static boolean isDate(String input, int end) {
+    int i = dateFieldEnd(input, 0, end, '3');
+    if (i < 0 || i == end) {
+      return false;
+    }
+    char separator = input.charAt(i);
+    if (separator != '.' && separator != '/') {
+      return false;
+    }
+    int j = dateFieldEnd(input, i + 1, end, '1');
+    if (j < 0 || j == end || input.charAt(j) != separator) {
+      return false;
+    }
+    int k = j + 1;
+    int yearLength = digitsEnd(input, k, end) - k;
+    if (k + yearLength != end) {
+      return false;
+    }
+    if (yearLength == 2) {
+      return true;
+    }
+    if (yearLength != 4) {
+      return false;
+    }
+    char c0 = input.charAt(k);
+    char c1 = input.charAt(k + 1);
+    return (c0 == '1' && c1 >= '7') || (c0 == '2' && c1 == '0');
+  }
+
+  // one or two digits where first digit of a two digit field is not larger than `max`.
+  private static int dateFieldEnd(String input, int start, int end, char max) {
+    int j = digitsEnd(input, start, end);
+    int length = j - start;
+    if (length == 1) {
+      return j;
+    }
+    if (length == 2 && input.charAt(start) <= max) {
+      return j;
+    }
+    return -1;
+  }
+
+  // ('http://'|'https://') URLFragment or ('http://'|'https://')? 'www.' URLFragment
+  private static boolean isUrl(String input, int end) {
+    int i = 0;
+    if (input.startsWith("http://")) {
+      i = 7;
+    } else if (input.startsWith("https://")) {
+      i = 8;
+    }
+    if (input.startsWith("www.", i)) {
+      i += 4;
+    } else if (i == 0) {
+      return false;
+    }
+    if (i >= end) {
+      return false;
+    }
+    for (int k = i; k < end; k++) {
+      char c = input.charAt(k);
+      if (!isAlphanumerical(c) && URL_FRAGMENT_SYMBOLS.indexOf(c) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // X+ '.'? X+ '@' (X+ '.' X+)+ where X is alphanumerical or underscore.
+  private static boolean isEmail(String input, int end) {
+    int at = input.indexOf('@');
+    if (at < 2 || at >= end) {
+      return false;
+    }
+    int dot = input.indexOf('.');
+    if (dot >= 0 && dot < at) {
+      if (dot == 0 || dot == at - 1 || input.lastIndexOf('.', at - 1) != dot) {
+        return false;
+      }
+      if (!allAlphanumericalUnderscore(input, 0, dot)
+          || !allAlphanumericalUnderscore(input, dot + 1, at)) {
+        return false;
+      }
+    } else if (!allAlphanumericalUnderscore(input, 0, at)) {
+      return false;
+    }
+    // domain segments. There should be at least two and middle ones should have two or more
+    // characters.
+    int segmentStart = at + 1;
+    int segmentCount = 0;
+    while (true) {
+      int segmentEnd = input.indexOf('.', segmentStart);
+      if (segmentEnd < 0 || segmentEnd > end) {
+        segmentEnd = end;
+      }
+      int segmentLength = segmentEnd - segmentStart;
+      if (segmentLength == 0 ||
+          !allAlphanumericalUnderscore(input, segmentStart, segmentEnd)) {
+        return false;
+      }
+      segmentCount++;
+      boolean last = segmentEnd == end;
+      if (segmentCount > 1 && !last && segmentLength < 2) {
+        return false;
+      }
+      if (last) {
+        break;
+      }
+      segmentStart = segmentEnd + 1;
+    }
+    return segmentCount > 1;
+  }
+
+  private static int digitsEnd(String input, int start, int end) {
+    int i = start;
+    while (i < end && isDigit(input.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean allAlphanumerical(String input, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!isAlphanumerical(input.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean allAlphanumericalUnderscore(String input, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = input.charAt(i);
+      if (c != '_' && !isAlphanumerical(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || TURKISH_LETTERS.indexOf(c) >= 0;
+  }
+
+  private static boolean isAlphanumerical(char c) {
+    return isDigit(c) || isLetter(c);
+  }
+
+  private static boolean isApostrophe(char c) {
+    return c == '\'' || c == '’';
+  }
+}
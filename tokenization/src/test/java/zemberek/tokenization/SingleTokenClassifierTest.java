@@ -0,0 +1,119 @@
+package zemberek.tokenization;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek.tokenization.Token.Type;
+
+public class SingleTokenClassifierTest {
+
+  private void check(String input) {
+    Type type = SingleTokenClassifier.classify(input);
+    if (type == null) {
+      return;
+    }
+    List<Token> tokens = TurkishTokenizer.ALL.tokenize(input);
+    Assert.assertEquals("Token count mismatch for input " + input, 1, tokens.size());
+    Assert.assertEquals("Token type mismatch for input " + input, tokens.get(0).getType(), type);
+    Assert.assertEquals(input, tokens.get(0).getText());
+  }
+
+  private void checkType(String input, Type expected) {
+    Assert.assertEquals(input, expected, SingleTokenClassifier.classify(input));
+    check(input);
+  }
+
+  @Test
+  public void knownTypesTest() {
+    checkType("kitap", Type.Word);
+    checkType("İstanbul", Type.Word);
+    checkType("Ankara'ya", Type.WordWithSymbol);
+    checkType("A1", Type.WordAlphanumerical);
+    checkType("3G", Type.WordAlphanumerical);
+    checkType("3G'de", Type.WordWithSymbol);
+    checkType("XIV", Type.RomanNumeral);
+    checkType("XIV'te", Type.RomanNumeral);
+    checkType("123", Type.Number);
+    checkType("-3", Type.Number);
+    checkType("3'te", Type.Number);
+    checkType("2.", Type.Number);
+    checkType("1.35", Type.Number);
+    checkType("-1,35", Type.Number);
+    checkType("1.000.000", Type.Number);
+    checkType("1/2", Type.Number);
+    checkType("1e10", Type.Number);
+    checkType("%12", Type.PercentNumeral);
+    checkType("%12,5'i", Type.PercentNumeral);
+    checkType("12:30", Type.Time);
+    checkType("12.30'da", Type.Time);
+    checkType("12.10.45", Type.Time);
+    checkType("1.2.2019", Type.Date);
+    checkType("01/02/19'da", Type.Date);
+    checkType("1.2.2119", Type.Number);
+    checkType(".", Type.Punctuation);
+    checkType("...", Type.Punctuation);
+    checkType("'", Type.Punctuation);
+    checkType("«", Type.Punctuation);
+    checkType(":)", Type.Emoticon);
+    checkType("<3", Type.Emoticon);
+    checkType("¯\\_(ツ)_/¯", Type.Emoticon);
+    checkType("http://www.aaa.com", Type.URL);
+    checkType("www.aaa.com.tr'den", Type.URL);
+    checkType("ali.veli@aaa.com.tr", Type.Email);
+    checkType("ali@aaa.com'a", Type.Email);
+    checkType("#hashtag", Type.HashTag);
+    checkType("@mention'a", Type.Mention);
+
+    checkType("", null);
+    checkType("iki kelime", null);
+    checkType("Prof.", null);
+    checkType("a'", null);
+  }
+
+  @Test
+  public void randomInputTest() {
+    String chars = "aAbeEIVXMCDçÇİı0123456789.,:/'’-+%#@_wh() !?=<3;^o";
+    Random r = new Random(0xbeef);
+    for (int i = 0; i < 200_000; i++) {
+      int length = r.nextInt(12) + 1;
+      StringBuilder sb = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        sb.append(chars.charAt(r.nextInt(chars.length())));
+      }
+      check(sb.toString());
+    }
+  }
+
+  @Test
+  public void randomNumeralTest() {
+    String chars = "0123456789.,:/'-";
+    Random r = new Random(0xcafe);
+    for (int i = 0; i < 200_000; i++) {
+      int length = r.nextInt(11) + 1;
+      StringBuilder sb = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        sb.append(chars.charAt(r.nextInt(chars.length())));
+      }
+      if (r.nextBoolean()) {
+        sb.append("'da");
+      }
+      check(sb.toString());
+    }
+  }
+
+  @Test
+  public void randomWebTest() {
+    String[] parts = {"www.", "http://", "https://", "ali", "_", ".", "@", "com", "tr", "/",
+        "a", "b1", "'de", "?", "#", "x.y"};
+    Random r = new Random(0xfeed);
+    for (int i = 0; i < 100_000; i++) {
+      int length = r.nextInt(6) + 1;
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < length; j++) {
+        sb.append(parts[r.nextInt(parts.length)]);
+      }
+      check(sb.toString());
+    }
+  }
+}